@@ -0,0 +1,239 @@
+package iuh.fit.haitebooks_backend.ai.client;
+
+import iuh.fit.haitebooks_backend.util.LatencyWindow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP client dùng chung cho mọi lời gọi AI ra ngoài (Cohere embed / chat)
+ * - Một java.net.http.HttpClient: ưu tiên HTTP/2 (ALPN), giữ kết nối keep-alive trong pool của JDK, connect timeout
+ * - RestTemplate theo endpoint dùng chung HttpClient đó, mỗi endpoint có read timeout riêng
+ * - Mỗi endpoint: giới hạn request đồng thời (Semaphore), circuit breaker, retry lỗi tạm thời
+ *   (timeout, mất kết nối, 5xx) với exponential backoff có jitter; 4xx trả ngay cho nơi gọi xử lý (VD: 429)
+ * - Response dạng stream đọc qua LineStream: mỗi dòng chờ tối đa stream-idle-timeout-ms
+ * - Thống kê theo endpoint: đang chạy / còn trống, số lần gọi / lỗi / retry / bị từ chối, trạng thái mạch, latency
+ */
+@Component
+public class AiHttpClient {
+
+    private static final Logger log = LoggerFactory.getLogger(AiHttpClient.class);
+    private static final int LATENCY_WINDOW = 1024;
+
+    public enum Endpoint {
+        COHERE_EMBED, COHERE_CHAT
+    }
+
+    @FunctionalInterface
+    public interface Call<T> {
+        T execute() throws Exception;
+    }
+
+    private static final class EndpointState {
+        private final int maxConcurrent;
+        private final Semaphore permits;
+        private final CircuitBreaker breaker;
+        private final RestTemplate restTemplate;
+        private final LatencyWindow latency = new LatencyWindow(LATENCY_WINDOW);
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong shortCircuited = new AtomicLong();
+
+        private EndpointState(int maxConcurrent, CircuitBreaker breaker, RestTemplate restTemplate) {
+            this.maxConcurrent = maxConcurrent;
+            this.permits = new Semaphore(maxConcurrent, true);
+            this.breaker = breaker;
+            this.restTemplate = restTemplate;
+        }
+    }
+
+    private final HttpClient httpClient;
+    private final Map<Endpoint, EndpointState> endpoints = new EnumMap<>(Endpoint.class);
+    private final long acquireTimeoutMs;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final long streamIdleTimeoutMs;
+
+    public AiHttpClient(@Value("${ai.http.connect-timeout-ms:5000}") long connectTimeoutMs,
+                        @Value("${ai.http.embed.read-timeout-ms:30000}") long embedReadTimeoutMs,
+                        @Value("${ai.http.chat.read-timeout-ms:60000}") long chatReadTimeoutMs,
+                        @Value("${ai.http.stream-idle-timeout-ms:30000}") long streamIdleTimeoutMs,
+                        @Value("${ai.http.embed.max-concurrent:4}") int embedMaxConcurrent,
+                        @Value("${ai.http.chat.max-concurrent:32}") int chatMaxConcurrent,
+                        @Value("${ai.http.acquire-timeout-ms:2000}") long acquireTimeoutMs,
+                        @Value("${ai.http.retry.max-attempts:3}") int maxAttempts,
+                        @Value("${ai.http.retry.initial-backoff-ms:500}") long initialBackoffMs,
+                        @Value("${ai.http.retry.max-backoff-ms:5000}") long maxBackoffMs,
+                        @Value("${ai.http.circuit.failure-threshold:5}") int failureThreshold,
+                        @Value("${ai.http.circuit.open-seconds:30}") long openSeconds) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2) // Tự lùi về HTTP/1.1 nếu server không hỗ trợ
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.streamIdleTimeoutMs = streamIdleTimeoutMs;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMs = Math.max(1L, initialBackoffMs);
+        this.maxBackoffMs = Math.max(this.initialBackoffMs, maxBackoffMs);
+        endpoints.put(Endpoint.COHERE_EMBED, new EndpointState(Math.max(1, embedMaxConcurrent),
+                new CircuitBreaker(failureThreshold, openSeconds * 1000L), restTemplate(embedReadTimeoutMs)));
+        endpoints.put(Endpoint.COHERE_CHAT, new EndpointState(Math.max(1, chatMaxConcurrent),
+                new CircuitBreaker(failureThreshold, openSeconds * 1000L), restTemplate(chatReadTimeoutMs)));
+    }
+
+    /**
+     * RestTemplate của endpoint (dùng chung pool kết nối, đã có read timeout)
+     */
+    public RestTemplate restTemplate(Endpoint endpoint) {
+        return endpoints.get(endpoint).restTemplate;
+    }
+
+    /**
+     * Gửi request và trả về body dạng stream ngay khi gửi đi (không chờ header)
+     * Nơi gọi phải đóng LineStream; nên gọi bên trong callOnce để stream được tính vào giới hạn đồng thời
+     */
+    public LineStream openLineStream(HttpRequest request) {
+        LineStream lines = new LineStream(streamIdleTimeoutMs);
+        CompletableFuture<HttpResponse<Void>> exchange = httpClient.sendAsync(request, lines.bodyHandler());
+        exchange.whenComplete((response, error) -> {
+            if (error != null) {
+                lines.fail(error);
+            }
+        });
+        lines.attach(exchange);
+        return lines;
+    }
+
+    /**
+     * Gọi endpoint, tự thử lại khi lỗi tạm thời
+     * @throws OutboundCallRejectedException Circuit breaker đang mở hoặc chờ quá acquire-timeout-ms để có lượt
+     */
+    public <T> T call(Endpoint endpoint, Call<T> call) throws Exception {
+        return execute(endpoint, call, maxAttempts);
+    }
+
+    /**
+     * Gọi endpoint một lần, không thử lại (VD: stream đã gửi token cho client thì không thể gửi lại từ đầu)
+     * Lượt được giữ tới khi call trả về, nên với stream giới hạn đồng thời tính cả thời gian đọc body
+     */
+    public <T> T callOnce(Endpoint endpoint, Call<T> call) throws Exception {
+        return execute(endpoint, call, 1);
+    }
+
+    private <T> T execute(Endpoint endpoint, Call<T> call, int attempts) throws Exception {
+        EndpointState state = endpoints.get(endpoint);
+        state.calls.incrementAndGet();
+        if (!state.permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+            state.rejected.incrementAndGet();
+            throw new OutboundCallRejectedException(endpoint + ": đã đủ " + state.maxConcurrent + " request đồng thời");
+        }
+        state.inFlight.incrementAndGet();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                if (!state.breaker.tryAcquire()) {
+                    state.shortCircuited.incrementAndGet();
+                    throw new OutboundCallRejectedException(endpoint + ": circuit breaker đang mở");
+                }
+                long start = System.nanoTime();
+                try {
+                    T result = call.execute();
+                    state.latency.record(System.nanoTime() - start);
+                    state.breaker.onSuccess();
+                    return result;
+                } catch (InterruptedException e) {
+                    state.breaker.release();
+                    throw e;
+                } catch (Exception e) {
+                    state.latency.record(System.nanoTime() - start);
+                    if (!isTransient(e)) {
+                        // Endpoint vẫn phản hồi (VD: 4xx) -> không tính là sự cố
+                        state.breaker.onSuccess();
+                        throw e;
+                    }
+                    state.failures.incrementAndGet();
+                    state.breaker.onFailure();
+                    if (attempt >= attempts) {
+                        throw e;
+                    }
+                    long backoff = backoffMillis(attempt);
+                    state.retries.incrementAndGet();
+                    log.warn("🔁 {} lỗi tạm thời (lần {}/{}): {} - thử lại sau {} ms",
+                            endpoint, attempt, attempts, e.getMessage(), backoff);
+                    TimeUnit.MILLISECONDS.sleep(backoff);
+                }
+            }
+        } finally {
+            state.inFlight.decrementAndGet();
+            state.permits.release();
+        }
+    }
+
+    // Exponential backoff với "equal jitter": nửa cố định + nửa ngẫu nhiên để các request không thử lại cùng lúc
+    private long backoffMillis(int attempt) {
+        long cap = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 20));
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+
+    private static boolean isTransient(Exception e) {
+        if (e instanceof HttpStatusCodeException status) {
+            return status.getStatusCode().is5xxServerError();
+        }
+        return e instanceof IOException || e instanceof UncheckedIOException || e instanceof ResourceAccessException;
+    }
+
+    private RestTemplate restTemplate(long readTimeoutMs) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        return new RestTemplate(requestFactory);
+    }
+
+    /**
+     * Thống kê theo endpoint (JDK không công bố số kết nối trong pool -> dùng số lượt đang chạy / còn trống)
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("httpVersion", httpClient.version().name());
+        endpoints.forEach((endpoint, state) -> {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("maxConcurrent", state.maxConcurrent);
+            stats.put("inFlight", state.inFlight.get());
+            stats.put("availablePermits", state.permits.availablePermits());
+            stats.put("queued", state.permits.getQueueLength());
+            stats.put("calls", state.calls.get());
+            stats.put("failures", state.failures.get());
+            stats.put("retries", state.retries.get());
+            stats.put("rejected", state.rejected.get());
+            stats.put("shortCircuited", state.shortCircuited.get());
+            stats.put("circuitState", state.breaker.state().name());
+            stats.put("circuitOpenCount", state.breaker.openCount());
+            stats.put("latency", state.latency.summary());
+            result.put(endpoint.name(), stats);
+        });
+        return result;
+    }
+}
@@ -0,0 +1,95 @@
+package iuh.fit.haitebooks_backend.ai.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker cho một endpoint bên ngoài
+ * - CLOSED: cho qua mọi request; failureThreshold lỗi tạm thời liên tiếp -> OPEN
+ * - OPEN: từ chối ngay (không tốn thread chờ timeout) trong openDuration
+ * - HALF_OPEN: cho đúng một request thử; thành công -> CLOSED, lỗi -> OPEN lại
+ * Không phụ thuộc Spring, đồng hồ có thể thay thế để kiểm thử
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier nanoClock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAtNanos = 0L;
+    private boolean trialInFlight = false;
+    private long openCount = 0L;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this(failureThreshold, openMillis, System::nanoTime);
+    }
+
+    public CircuitBreaker(int failureThreshold, long openMillis, LongSupplier nanoClock) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, openMillis));
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @return true nếu request được phép gửi (nơi gọi phải báo lại bằng onSuccess / onFailure / release)
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (nanoClock.getAsLong() - openedAtNanos < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                return false;
+            }
+            trialInFlight = true;
+        }
+        return true;
+    }
+
+    /**
+     * Endpoint đã phản hồi (kể cả lỗi 4xx do request) -> đóng mạch
+     */
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+        trialInFlight = false;
+    }
+
+    /**
+     * Lỗi tạm thời (timeout, mất kết nối, 5xx)
+     */
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAtNanos = nanoClock.getAsLong();
+            trialInFlight = false;
+            openCount++;
+        }
+    }
+
+    /**
+     * Request bị hủy giữa chừng (không biết kết quả) -> trả lại lượt thử của HALF_OPEN
+     */
+    public synchronized void release() {
+        trialInFlight = false;
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public synchronized long openCount() {
+        return openCount;
+    }
+}
@@ -0,0 +1,162 @@
+package iuh.fit.haitebooks_backend.ai.client;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Body của một response dạng stream (mỗi dòng một event), đọc từng dòng với idle timeout
+ * - HttpClient đẩy từng dòng vào hàng đợi (bất đồng bộ), thread đọc chờ tối đa idleTimeoutMs cho mỗi dòng
+ *   -> server ngừng gửi giữa chừng thì next() ném HttpTimeoutException thay vì chặn thread mãi mãi
+ * - Chỉ xin thêm một dòng sau khi dòng trước đã được đọc (backpressure), hàng đợi không phình ra
+ * - close() gọi được từ thread khác (VD: client đã ngắt kết nối): hủy subscription để giải phóng kết nối
+ *   và đánh thức thread đang chờ trong next()
+ * HTTP status khác 200: 5xx -> IOException (lỗi tạm thời), còn lại -> IllegalStateException
+ */
+public class LineStream implements Flow.Subscriber<String>, AutoCloseable {
+
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final long idleTimeoutMs;
+    private Flow.Subscription subscription; // Chỉ truy cập khi giữ lock của this
+    private CompletableFuture<?> exchange;  // Chỉ truy cập khi giữ lock của this
+    private volatile boolean closed = false;
+
+    public LineStream(long idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * BodyHandler gắn với stream này (status khác 200 -> bỏ body, next() ném lỗi)
+     */
+    public HttpResponse.BodyHandler<Void> bodyHandler() {
+        return responseInfo -> {
+            int status = responseInfo.statusCode();
+            if (status == 200) {
+                return HttpResponse.BodySubscribers.fromLineSubscriber(this);
+            }
+            String message = "Stream trả về HTTP " + status;
+            queue.offer(status >= 500 ? new IOException(message) : new IllegalStateException(message));
+            return HttpResponse.BodySubscribers.discarding();
+        };
+    }
+
+    /**
+     * Gắn lượt gửi request để close() hủy được cả khi đang chờ header
+     */
+    public void attach(CompletableFuture<?> exchange) {
+        synchronized (this) {
+            if (!closed) {
+                this.exchange = exchange;
+                return;
+            }
+        }
+        exchange.cancel(true);
+    }
+
+    /**
+     * Lỗi trước khi có body (kết nối, timeout chờ header...)
+     */
+    public void fail(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        queue.offer(cause);
+    }
+
+    /**
+     * @return Dòng tiếp theo, null nếu stream đã kết thúc hoặc đã bị đóng
+     * @throws HttpTimeoutException Quá idleTimeoutMs không nhận được dòng nào (stream bị đóng)
+     */
+    public String next() throws IOException, InterruptedException {
+        if (closed) {
+            return null;
+        }
+        Object item = queue.poll(idleTimeoutMs, TimeUnit.MILLISECONDS);
+        if (item == null) {
+            close();
+            throw new HttpTimeoutException("Không nhận được dữ liệu sau " + idleTimeoutMs + " ms");
+        }
+        if (item == END || closed) {
+            return null;
+        }
+        if (item instanceof IOException e) {
+            throw e;
+        }
+        if (item instanceof RuntimeException e) {
+            throw e;
+        }
+        if (item instanceof Throwable e) {
+            throw new IOException(e);
+        }
+        requestNext();
+        return (String) item;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        Flow.Subscription current;
+        CompletableFuture<?> pending;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            current = subscription;
+            pending = exchange;
+        }
+        if (current != null) {
+            current.cancel();
+        }
+        if (pending != null) {
+            pending.cancel(true);
+        }
+        queue.offer(END);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        synchronized (this) {
+            this.subscription = subscription;
+        }
+        if (closed) {
+            subscription.cancel();
+        } else {
+            subscription.request(1);
+        }
+    }
+
+    @Override
+    public void onNext(String line) {
+        queue.offer(line);
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        queue.offer(error);
+    }
+
+    @Override
+    public void onComplete() {
+        queue.offer(END);
+    }
+
+    private void requestNext() {
+        Flow.Subscription current;
+        synchronized (this) {
+            current = subscription;
+        }
+        if (current != null && !closed) {
+            current.request(1);
+        }
+    }
+}
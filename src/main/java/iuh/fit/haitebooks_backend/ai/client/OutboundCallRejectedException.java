@@ -0,0 +1,10 @@
+package iuh.fit.haitebooks_backend.ai.client;
+
+/**
+ * Request tới API bên ngoài bị từ chối trước khi gửi: circuit breaker đang mở hoặc vượt giới hạn request đồng thời
+ */
+public class OutboundCallRejectedException extends RuntimeException {
+    public OutboundCallRejectedException(String message) {
+        super(message);
+    }
+}
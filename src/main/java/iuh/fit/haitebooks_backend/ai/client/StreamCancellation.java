@@ -0,0 +1,56 @@
+package iuh.fit.haitebooks_backend.ai.client;
+
+/**
+ * Cho phép đóng stream tới API bên ngoài từ thread khác (VD: client SSE ngắt kết nối hoặc emitter timeout)
+ * - Thread đọc stream gắn stream đang mở bằng attach(), gỡ bằng detach() khi đọc xong
+ * - cancel() đóng stream đang gắn; stream gắn sau khi đã cancel bị đóng ngay
+ */
+public class StreamCancellation {
+
+    private AutoCloseable stream;     // Chỉ truy cập khi giữ lock của this
+    private boolean cancelled = false; // Chỉ truy cập khi giữ lock của this
+
+    public void attach(AutoCloseable stream) {
+        synchronized (this) {
+            if (!cancelled) {
+                this.stream = stream;
+                return;
+            }
+        }
+        closeQuietly(stream);
+    }
+
+    public synchronized void detach(AutoCloseable stream) {
+        if (this.stream == stream) {
+            this.stream = null;
+        }
+    }
+
+    public void cancel() {
+        AutoCloseable current;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            current = stream;
+            stream = null;
+        }
+        closeQuietly(current);
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    private static void closeQuietly(AutoCloseable stream) {
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.close();
+        } catch (Exception ignored) {
+            // Stream đã đóng hoặc kết nối đã hỏng - không còn gì để giải phóng
+        }
+    }
+}
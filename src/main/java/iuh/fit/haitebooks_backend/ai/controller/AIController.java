@@ -1,23 +1,38 @@
 package iuh.fit.haitebooks_backend.ai.controller;
 
+import iuh.fit.haitebooks_backend.ai.client.AiHttpClient;
 import iuh.fit.haitebooks_backend.ai.service.BookEmbeddingGenerator;
 import iuh.fit.haitebooks_backend.ai.service.BookRecommendationService;
 import iuh.fit.haitebooks_backend.ai.service.BookSearchService;
+import iuh.fit.haitebooks_backend.ai.service.ChatPipelineMetrics;
 import iuh.fit.haitebooks_backend.ai.service.ChatbotService;
-import iuh.fit.haitebooks_backend.ai.service.EmbeddingAsyncService;
+import iuh.fit.haitebooks_backend.ai.service.ChatStreamService;
+import iuh.fit.haitebooks_backend.ai.service.CoPurchaseService;
+import iuh.fit.haitebooks_backend.ai.service.ConversationStore;
+import iuh.fit.haitebooks_backend.ai.service.EmbeddingJobService;
+import iuh.fit.haitebooks_backend.ai.service.EmbeddingStorageMigrator;
+import iuh.fit.haitebooks_backend.ai.service.HnswVectorIndex;
+import iuh.fit.haitebooks_backend.ai.service.MatrixFactorizationRecommender;
+import iuh.fit.haitebooks_backend.ai.service.QueryEmbeddingCache;
+import iuh.fit.haitebooks_backend.ai.service.SemanticAnswerCache;
+import iuh.fit.haitebooks_backend.ai.service.UserRecommendationCache;
+import iuh.fit.haitebooks_backend.ai.service.VectorSearchRouter;
 import iuh.fit.haitebooks_backend.dtos.request.ChatRequest;
 import iuh.fit.haitebooks_backend.dtos.response.BookResponse;
 import iuh.fit.haitebooks_backend.dtos.response.ChatResponse;
+import iuh.fit.haitebooks_backend.dtos.response.EmbeddingJobResponse;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.HashMap;
 import java.util.List;
@@ -32,20 +47,56 @@ public class AIController {
 
     private final BookSearchService bookSearchService;
     private final BookRecommendationService bookRecommendationService;
-    private final EmbeddingAsyncService embeddingAsyncService;
+    private final EmbeddingJobService embeddingJobService;
     private final ChatbotService chatbotService;
     private final iuh.fit.haitebooks_backend.service.UserService userService;
+    private final VectorSearchRouter vectorSearchRouter;
+    private final HnswVectorIndex hnswVectorIndex;
+    private final EmbeddingStorageMigrator embeddingStorageMigrator;
+    private final QueryEmbeddingCache queryEmbeddingCache;
+    private final CoPurchaseService coPurchaseService;
+    private final UserRecommendationCache userRecommendationCache;
+    private final MatrixFactorizationRecommender matrixFactorizationRecommender;
+    private final ChatStreamService chatStreamService;
+    private final ChatPipelineMetrics chatPipelineMetrics;
+    private final SemanticAnswerCache semanticAnswerCache;
+    private final ConversationStore conversationStore;
+    private final AiHttpClient aiHttpClient;
 
     public AIController(BookSearchService bookSearchService, 
                        BookRecommendationService bookRecommendationService,
-                       EmbeddingAsyncService embeddingAsyncService,
+                       EmbeddingJobService embeddingJobService,
                        ChatbotService chatbotService,
-                       iuh.fit.haitebooks_backend.service.UserService userService) {
+                       iuh.fit.haitebooks_backend.service.UserService userService,
+                       VectorSearchRouter vectorSearchRouter,
+                       HnswVectorIndex hnswVectorIndex,
+                       EmbeddingStorageMigrator embeddingStorageMigrator,
+                       QueryEmbeddingCache queryEmbeddingCache,
+                       CoPurchaseService coPurchaseService,
+                       UserRecommendationCache userRecommendationCache,
+                       MatrixFactorizationRecommender matrixFactorizationRecommender,
+                       ChatStreamService chatStreamService,
+                       ChatPipelineMetrics chatPipelineMetrics,
+                       SemanticAnswerCache semanticAnswerCache,
+                       ConversationStore conversationStore,
+                       AiHttpClient aiHttpClient) {
         this.bookSearchService = bookSearchService;
         this.bookRecommendationService = bookRecommendationService;
-        this.embeddingAsyncService = embeddingAsyncService;
+        this.embeddingJobService = embeddingJobService;
         this.chatbotService = chatbotService;
         this.userService = userService;
+        this.vectorSearchRouter = vectorSearchRouter;
+        this.hnswVectorIndex = hnswVectorIndex;
+        this.embeddingStorageMigrator = embeddingStorageMigrator;
+        this.queryEmbeddingCache = queryEmbeddingCache;
+        this.coPurchaseService = coPurchaseService;
+        this.userRecommendationCache = userRecommendationCache;
+        this.matrixFactorizationRecommender = matrixFactorizationRecommender;
+        this.chatStreamService = chatStreamService;
+        this.chatPipelineMetrics = chatPipelineMetrics;
+        this.semanticAnswerCache = semanticAnswerCache;
+        this.conversationStore = conversationStore;
+        this.aiHttpClient = aiHttpClient;
     }
 
     /**
@@ -128,22 +179,250 @@ public class AIController {
 
     /**
      * Tạo embedding cho tất cả sách chưa có embedding
-     * Chạy trong background thread để không block request
-     * @return Thông báo xác nhận
+     * Chạy dưới dạng job trong background, có checkpoint để hủy / resume
+     * @return Thông tin job vừa tạo (409 nếu đang có job khác chạy)
      */
     @PostMapping("/generate-embeddings")
-    public ResponseEntity<Map<String, String>> generateEmbeddings() {
+    public ResponseEntity<EmbeddingJobResponse> generateEmbeddings() {
         log.info("📥 Nhận yêu cầu tạo embedding cho tất cả sách");
-        
-        // Chạy async để không block request
-        embeddingAsyncService.generateEmbeddingsAsync();
-        
-        Map<String, String> response = new HashMap<>();
-        response.put("message", "🚀 Đã bắt đầu sinh embedding cho các sách chưa có. Xem log để theo dõi tiến trình.");
-        response.put("status", "processing");
+        return ResponseEntity.accepted().body(embeddingJobService.start());
+    }
+
+    /**
+     * Trạng thái job embedding gần nhất (Admin)
+     */
+    @GetMapping("/generate-embeddings/status")
+    public ResponseEntity<EmbeddingJobResponse> getLatestEmbeddingJob() {
+        return ResponseEntity.ok(embeddingJobService.getLatestJob());
+    }
+
+    /**
+     * Trạng thái của một job embedding (Admin)
+     */
+    @GetMapping("/generate-embeddings/{jobId}")
+    public ResponseEntity<EmbeddingJobResponse> getEmbeddingJob(@PathVariable Long jobId) {
+        return ResponseEntity.ok(embeddingJobService.getJob(jobId));
+    }
+
+    /**
+     * Hủy job embedding đang chạy - dừng sau khi batch hiện tại được lưu (Admin)
+     */
+    @PostMapping("/generate-embeddings/{jobId}/cancel")
+    public ResponseEntity<EmbeddingJobResponse> cancelEmbeddingJob(@PathVariable Long jobId) {
+        return ResponseEntity.accepted().body(embeddingJobService.cancel(jobId));
+    }
+
+    /**
+     * Tiếp tục job embedding đã bị hủy / lỗi / ngắt từ checkpoint (Admin)
+     */
+    @PostMapping("/generate-embeddings/{jobId}/resume")
+    public ResponseEntity<EmbeddingJobResponse> resumeEmbeddingJob(@PathVariable Long jobId) {
+        return ResponseEntity.accepted().body(embeddingJobService.resume(jobId));
+    }
+
+    /**
+     * Chuyển các embedding JSON cũ sang cột nhị phân theo từng batch (Admin)
+     * @return Trạng thái migrate (số dòng còn lại, định dạng đích)
+     */
+    @PostMapping("/embeddings/migrate-storage")
+    public ResponseEntity<Map<String, Object>> migrateEmbeddingStorage() {
+        boolean started = embeddingStorageMigrator.migrateAsync();
+        Map<String, Object> response = new HashMap<>(embeddingStorageMigrator.status());
+        response.put("message", started
+                ? "🚀 Đã bắt đầu migrate embedding sang dạng nhị phân. Xem log để theo dõi tiến trình."
+                : "⏳ Đang có lượt migrate khác chạy, vui lòng đợi");
+        return ResponseEntity.accepted().body(response);
+    }
+
+    /**
+     * Build lại HNSW index trong background (Admin)
+     * @return Trạng thái hiện tại của HNSW index
+     */
+    @PostMapping("/vector-index/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildVectorIndex() {
+        boolean started = hnswVectorIndex.rebuildAsync();
+        Map<String, Object> response = new HashMap<>(hnswVectorIndex.status());
+        response.put("message", started
+                ? "🚀 Đã bắt đầu build lại HNSW index"
+                : "⏳ HNSW index đang được build, vui lòng đợi");
+        return ResponseEntity.accepted().body(response);
+    }
+
+    /**
+     * Tính lại toàn bộ ma trận đồng mua từ lịch sử đơn hàng trong background (Admin)
+     */
+    @PostMapping("/co-purchase/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildCoPurchases() {
+        boolean started = coPurchaseService.rebuildAsync();
+        Map<String, Object> response = new HashMap<>();
+        response.put("rebuilding", coPurchaseService.isRebuilding());
+        response.put("message", started
+                ? "🚀 Đã bắt đầu rebuild ma trận đồng mua"
+                : "⏳ Ma trận đồng mua đang được rebuild, vui lòng đợi");
         return ResponseEntity.accepted().body(response);
     }
 
+    /**
+     * Train lại model matrix factorization (BPR) trong background (Admin)
+     */
+    @PostMapping("/recommendation-model/train")
+    public ResponseEntity<Map<String, Object>> trainRecommendationModel() {
+        boolean started = matrixFactorizationRecommender.trainAsync();
+        Map<String, Object> response = new HashMap<>(matrixFactorizationRecommender.status());
+        response.put("message", started
+                ? "🚀 Đã bắt đầu train model gợi ý"
+                : "⏳ Model gợi ý đang được train, vui lòng đợi");
+        return ResponseEntity.accepted().body(response);
+    }
+
+    /**
+     * Đánh giá offline model matrix factorization trong background: precision@K / recall@K trên tập holdout,
+     * so với baseline sách phổ biến (Admin). Kết quả lượt gần nhất nằm trong "lastEvaluation"
+     * của response và của GET /stats/recommendation-model
+     * @param k Số gợi ý mỗi user (mặc định 10)
+     * @param holdout Tỉ lệ tương tác của mỗi user giữ lại làm tập test (mặc định 0.2)
+     */
+    @PostMapping("/recommendation-model/evaluate")
+    public ResponseEntity<Map<String, Object>> evaluateRecommendationModel(
+            @RequestParam(defaultValue = "10") @Min(value = 1, message = "K phải lớn hơn 0") Integer k,
+            @RequestParam(defaultValue = "0.2") Double holdout) {
+        double ratio = Math.max(0.05, Math.min(0.5, holdout));
+        boolean started = matrixFactorizationRecommender.evaluateAsync(Math.min(k, 100), ratio);
+        Map<String, Object> response = new HashMap<>(matrixFactorizationRecommender.status());
+        response.put("message", started
+                ? "🚀 Đã bắt đầu đánh giá model gợi ý"
+                : "⏳ Model gợi ý đang được train / đánh giá, vui lòng đợi");
+        return ResponseEntity.accepted().body(response);
+    }
+
+    /**
+     * Trạng thái model matrix factorization (Admin)
+     */
+    @GetMapping("/stats/recommendation-model")
+    public ResponseEntity<Map<String, Object>> getRecommendationModelStats() {
+        return ResponseEntity.ok(matrixFactorizationRecommender.status());
+    }
+
+    /**
+     * Đo recall@K và latency của HNSW so với brute-force exact (Admin)
+     * @param k Số kết quả so sánh (mặc định 10)
+     * @param queries Số truy vấn mẫu lấy từ chính vector của sách (mặc định 200, tối đa 1000)
+     * @param efSearch Danh sách efSearch cần đo (mặc định 16, 32, 64, 128, 256)
+     * @return Báo cáo recall / latency cho từng efSearch
+     */
+    @PostMapping("/vector-index/evaluate")
+    public ResponseEntity<Map<String, Object>> evaluateVectorIndex(
+            @RequestParam(defaultValue = "10") @Min(value = 1, message = "K phải lớn hơn 0") Integer k,
+            @RequestParam(defaultValue = "200") @Min(value = 1, message = "Queries phải lớn hơn 0") Integer queries,
+            @RequestParam(required = false) List<Integer> efSearch) {
+        List<Integer> efValues = (efSearch != null && !efSearch.isEmpty())
+                ? efSearch
+                : List.of(16, 32, 64, 128, 256);
+        return ResponseEntity.ok(vectorSearchRouter.evaluate(Math.min(k, 100), queries, efValues));
+    }
+
+    /**
+     * Thống kê cache embedding của câu truy vấn (Admin)
+     * @return hit / miss / eviction / expiration, số entry và dung lượng hiện tại
+     */
+    @GetMapping("/stats/query-embedding-cache")
+    public ResponseEntity<Map<String, Object>> getQueryEmbeddingCacheStats() {
+        var stats = queryEmbeddingCache.stats();
+        Map<String, Object> response = new HashMap<>();
+        response.put("hits", stats.hits());
+        response.put("misses", stats.misses());
+        response.put("hitRate", stats.hitRate());
+        response.put("evictions", stats.evictions());
+        response.put("expirations", stats.expirations());
+        response.put("coalescedRequests", queryEmbeddingCache.coalescedRequests());
+        response.put("size", stats.size());
+        response.put("bytes", stats.bytes());
+        response.put("maxEntries", stats.maxEntries());
+        response.put("maxBytes", stats.maxBytes());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Thống kê cache danh sách gợi ý theo user (Admin)
+     * @return hit / miss / eviction / expiration, số user đã có danh sách và số user đang được tính lại
+     */
+    @GetMapping("/stats/recommendation-cache")
+    public ResponseEntity<Map<String, Object>> getRecommendationCacheStats() {
+        var stats = userRecommendationCache.stats();
+        Map<String, Object> response = new HashMap<>();
+        response.put("hits", stats.hits());
+        response.put("misses", stats.misses());
+        response.put("hitRate", stats.hitRate());
+        response.put("evictions", stats.evictions());
+        response.put("expirations", stats.expirations());
+        response.put("size", stats.size());
+        response.put("maxEntries", stats.maxEntries());
+        response.put("refreshing", userRecommendationCache.refreshingCount());
+        response.put("topN", userRecommendationCache.topN());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Latency từng bước của chatbot (Admin)
+     * @return Theo bước (RETRIEVAL, ORDER_CONTEXT, CONTEXT, FIRST_TOKEN, GENERATION, TOTAL):
+     *         số lần, timeout, lỗi và avg / p50 / p95 / p99 / max (ms) trên các lượt gần nhất
+     */
+    @GetMapping("/stats/chat-latency")
+    public ResponseEntity<Map<String, Object>> getChatLatencyStats() {
+        return ResponseEntity.ok(chatPipelineMetrics.snapshot());
+    }
+
+    /**
+     * Thống kê cache câu trả lời chatbot theo ngữ nghĩa (Admin)
+     * @return hit / miss / hitRate theo câu hỏi; eviction / expiration / size / bytes theo nhóm (tập sách + phiên bản)
+     */
+    @GetMapping("/stats/chat-answer-cache")
+    public ResponseEntity<Map<String, Object>> getChatAnswerCacheStats() {
+        return ResponseEntity.ok(semanticAnswerCache.stats());
+    }
+
+    /**
+     * Thống kê bộ nhớ hội thoại chatbot (Admin)
+     * @return hit / miss theo lượt hỏi, số hội thoại đang giữ, dung lượng và số hội thoại đọc lại từ DB
+     */
+    @GetMapping("/stats/chat-conversations")
+    public ResponseEntity<Map<String, Object>> getChatConversationStats() {
+        var stats = conversationStore.stats();
+        Map<String, Object> response = new HashMap<>();
+        response.put("hits", stats.hits());
+        response.put("misses", stats.misses());
+        response.put("hitRate", stats.hitRate());
+        response.put("evictions", stats.evictions());
+        response.put("expirations", stats.expirations());
+        response.put("size", stats.size());
+        response.put("bytes", stats.bytes());
+        response.put("maxEntries", stats.maxEntries());
+        response.put("maxBytes", stats.maxBytes());
+        response.put("restoredFromDb", conversationStore.restoredFromDb());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Thống kê HTTP client gọi Cohere theo endpoint (Admin)
+     * @return số request đang chạy / còn trống, lỗi, retry, bị từ chối, trạng thái circuit breaker và latency
+     */
+    @GetMapping("/stats/http-client")
+    public ResponseEntity<Map<String, Object>> getHttpClientStats() {
+        return ResponseEntity.ok(aiHttpClient.stats());
+    }
+
+    /**
+     * Xóa toàn bộ cache câu trả lời chatbot, ví dụ sau khi đổi system prompt (Admin)
+     */
+    @PostMapping("/chat-answer-cache/clear")
+    public ResponseEntity<Map<String, Object>> clearChatAnswerCache() {
+        semanticAnswerCache.clear();
+        log.info("🧹 Đã xóa cache câu trả lời chatbot");
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", "🧹 Đã xóa cache câu trả lời chatbot");
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * Chatbot hỗ trợ khách hàng
      * Sử dụng RAG (Retrieval-Augmented Generation) với dữ liệu sách và đơn hàng
@@ -160,16 +439,7 @@ public class AIController {
         
         try {
             // Lấy userId từ authentication nếu có
-            Long userId = null;
-            if (userDetails != null) {
-                try {
-                    var userResponse = userService.getByUsername(userDetails.getUsername());
-                    userId = userResponse.getId();
-                    log.info("🔐 Lấy userId từ authentication: {}", userId);
-                } catch (Exception e) {
-                    log.warn("⚠️ Không thể lấy userId từ authentication: {}", e.getMessage());
-                }
-            }
+            Long userId = resolveUserId(userDetails);
             
             Map<String, Object> result = chatbotService.chat(
                 request.getMessage(), 
@@ -197,4 +467,31 @@ public class AIController {
             return ResponseEntity.status(500).body(errorResponse);
         }
     }
+
+    /**
+     * Chatbot dạng stream (Server-Sent Events): gửi từng đoạn text ngay khi model sinh ra
+     * Event "token": {"text": "..."}, kết thúc bằng "done" (ChatResponse) hoặc "error" ({"message": "..."})
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(
+            @RequestBody @jakarta.validation.Valid ChatRequest request,
+            @AuthenticationPrincipal org.springframework.security.core.userdetails.UserDetails userDetails) {
+        log.info("💬 Nhận yêu cầu chat (stream): {}", request.getMessage());
+        return chatStreamService.stream(request.getMessage(), request.getConversationId(), resolveUserId(userDetails));
+    }
+
+    // userId của user đã đăng nhập (null nếu khách vãng lai hoặc không tra được)
+    private Long resolveUserId(UserDetails userDetails) {
+        if (userDetails == null) {
+            return null;
+        }
+        try {
+            Long userId = userService.getByUsername(userDetails.getUsername()).getId();
+            log.info("🔐 Lấy userId từ authentication: {}", userId);
+            return userId;
+        } catch (Exception e) {
+            log.warn("⚠️ Không thể lấy userId từ authentication: {}", e.getMessage());
+            return null;
+        }
+    }
 }
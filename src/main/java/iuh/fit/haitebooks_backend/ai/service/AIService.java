@@ -7,12 +7,31 @@ import java.util.List;
 public class AIService {
 
     private final CohereEmbeddingService cohereEmbeddingService;
+    private final QueryEmbeddingCache queryEmbeddingCache;
 
-    public AIService(CohereEmbeddingService cohereEmbeddingService) {
+    public AIService(CohereEmbeddingService cohereEmbeddingService,
+                     QueryEmbeddingCache queryEmbeddingCache) {
         this.cohereEmbeddingService = cohereEmbeddingService;
+        this.queryEmbeddingCache = queryEmbeddingCache;
     }
 
     public List<Double> generateEmbedding(String text) {
         return cohereEmbeddingService.generateEmbedding(text);
     }
+
+    /**
+     * Embedding cho câu truy vấn tìm kiếm - dùng cache, truy vấn lặp lại không gọi API
+     * Không chờ rate limiter của backfill (gọi trên thread của request), bị rate limit -> mảng rỗng
+     * @return Vector dùng chung với cache, không được sửa nội dung
+     */
+    public float[] generateQueryEmbedding(String query) {
+        return queryEmbeddingCache.get(query, cohereEmbeddingService::generateQueryEmbedding);
+    }
+
+    /**
+     * Sinh embedding cho nhiều text trong một lần gọi API (tối đa CohereEmbeddingService.MAX_TEXTS_PER_REQUEST)
+     */
+    public List<float[]> generateEmbeddings(List<String> texts) {
+        return cohereEmbeddingService.generateEmbeddings(texts);
+    }
 }
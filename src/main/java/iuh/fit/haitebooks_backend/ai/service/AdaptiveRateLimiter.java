@@ -0,0 +1,104 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket tự điều chỉnh tốc độ theo phản hồi của API
+ * - Mỗi request lấy 1 token, token được nạp lại theo tốc độ hiện tại (request / giây)
+ * - Gặp 429: giảm tốc độ một nửa và tạm dừng theo Retry-After (nếu có)
+ * - Thành công liên tiếp: tăng dần tốc độ (cộng thêm) cho tới mức tối đa
+ * Không phụ thuộc Spring, đồng hồ có thể thay thế để kiểm thử với stub server
+ */
+public class AdaptiveRateLimiter {
+
+    private static final double INCREASE_STEP = 0.1; // request/giây cộng thêm sau mỗi lần thành công
+    private static final double DECREASE_FACTOR = 0.5;
+
+    private final double minRate;
+    private final double maxRate;
+    private final double burst;
+    private final LongSupplier nanoClock;
+
+    private double rate;
+    private double tokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos = 0L;
+    private long throttledCount = 0L;
+
+    public AdaptiveRateLimiter(double initialRate, double minRate, double maxRate, double burst) {
+        this(initialRate, minRate, maxRate, burst, System::nanoTime);
+    }
+
+    public AdaptiveRateLimiter(double initialRate, double minRate, double maxRate, double burst,
+                               LongSupplier nanoClock) {
+        this.minRate = Math.max(0.01, minRate);
+        this.maxRate = Math.max(this.minRate, maxRate);
+        this.rate = Math.min(this.maxRate, Math.max(this.minRate, initialRate));
+        this.burst = Math.max(1.0, burst);
+        this.tokens = 1.0;
+        this.nanoClock = nanoClock;
+        this.lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Chờ tới khi có token (block thread hiện tại)
+     */
+    public void acquire() throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                long now = nanoClock.getAsLong();
+                refill(now);
+                if (now < pausedUntilNanos) {
+                    waitNanos = pausedUntilNanos - now;
+                } else if (tokens >= 1.0) {
+                    tokens -= 1.0;
+                    return;
+                } else {
+                    waitNanos = (long) ((1.0 - tokens) / rate * TimeUnit.SECONDS.toNanos(1));
+                }
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.max(waitNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+    }
+
+    /**
+     * Request thành công -> tăng dần tốc độ
+     */
+    public synchronized void onSuccess() {
+        rate = Math.min(maxRate, rate + INCREASE_STEP);
+    }
+
+    /**
+     * Bị rate limit (429) -> giảm một nửa tốc độ, bỏ token còn lại và tạm dừng
+     * @param retryAfterMillis Thời gian chờ từ header Retry-After (<= 0 nếu không có)
+     */
+    public synchronized void onThrottled(long retryAfterMillis) {
+        long now = nanoClock.getAsLong();
+        refill(now);
+        throttledCount++;
+        rate = Math.max(minRate, rate * DECREASE_FACTOR);
+        tokens = 0.0;
+        long pauseNanos = retryAfterMillis > 0
+                ? TimeUnit.MILLISECONDS.toNanos(retryAfterMillis)
+                : (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        pausedUntilNanos = Math.max(pausedUntilNanos, now + pauseNanos);
+    }
+
+    public synchronized double currentRate() {
+        return rate;
+    }
+
+    public synchronized long throttledCount() {
+        return throttledCount;
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(burst, tokens + elapsed * rate / TimeUnit.SECONDS.toNanos(1));
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -2,157 +2,158 @@ package iuh.fit.haitebooks_backend.ai.service;
 
 import iuh.fit.haitebooks_backend.model.Book;
 import iuh.fit.haitebooks_backend.model.BookEmbedding;
+import iuh.fit.haitebooks_backend.model.EmbeddingFormat;
+import iuh.fit.haitebooks_backend.repository.BookEmbeddingJdbcRepository;
 import iuh.fit.haitebooks_backend.repository.BookEmbeddingRepository;
 import iuh.fit.haitebooks_backend.repository.BookRepository;
+import iuh.fit.haitebooks_backend.repository.projection.BookTextRow;
+import iuh.fit.haitebooks_backend.util.EmbeddingCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @Service
 public class BookEmbeddingGenerator {
 
     private static final Logger log = LoggerFactory.getLogger(BookEmbeddingGenerator.class);
-    private static final long DELAY_BETWEEN_REQUESTS_MS = 2000; // 2 giây giữa các request để tránh rate limit
 
     private final BookRepository bookRepository;
     private final BookEmbeddingRepository embeddingRepository;
     private final AIService aiService;
+    private final BookVectorIndex vectorIndex;
+    private final BookEmbeddingJdbcRepository embeddingJdbcRepository;
+    private final EmbeddingFormat storageFormat;
+    private final int batchSize;
 
     public BookEmbeddingGenerator(BookRepository bookRepository,
                                   BookEmbeddingRepository embeddingRepository,
-                                  AIService aiService) {
+                                  AIService aiService,
+                                  BookVectorIndex vectorIndex,
+                                  BookEmbeddingJdbcRepository embeddingJdbcRepository,
+                                  @Value("${ai.embedding.storage-format:FLOAT32}") EmbeddingFormat storageFormat,
+                                  @Value("${ai.embedding.batch-size:96}") int batchSize) {
         this.bookRepository = bookRepository;
         this.embeddingRepository = embeddingRepository;
         this.aiService = aiService;
+        this.vectorIndex = vectorIndex;
+        this.embeddingJdbcRepository = embeddingJdbcRepository;
+        this.storageFormat = storageFormat;
+        this.batchSize = Math.max(1, Math.min(batchSize, CohereEmbeddingService.MAX_TEXTS_PER_REQUEST));
+    }
+
+    /**
+     * Nhận tiến độ sau mỗi batch và cho phép dừng giữa chừng (dùng bởi EmbeddingJobService)
+     */
+    public interface ProgressListener {
+        ProgressListener NONE = new ProgressListener() {
+        };
+
+        default void onStart(int totalBooks) {
+        }
+
+        /**
+         * @param lastBookId Checkpoint: mọi sách có id <= lastBookId đều đã lưu embedding hoặc bị bỏ qua
+         *                   (không có nội dung); sách lỗi luôn nằm sau checkpoint để lần resume thử lại
+         */
+        default void onBatch(long lastBookId, int created, int skipped, int failed) {
+        }
+
+        default boolean isCancelled() {
+            return false;
+        }
     }
 
     /**
      * Tạo embedding cho tất cả sách chưa có embedding
-     * Không dùng @Transactional ở đây vì transaction quá dài (có thể mất vài phút)
-     * Thay vào đó, commit từng embedding một để đảm bảo dữ liệu được lưu ngay
      */
     public void generateAllEmbeddings() {
-        log.info("🚀 Bắt đầu sinh embedding cho các sách chưa có...");
-        
+        generateAllEmbeddings(0L, ProgressListener.NONE);
+    }
+
+    /**
+     * Tạo embedding cho các sách chưa có embedding theo pipeline batch:
+     * 1. Một query anti-join lấy danh sách sách còn thiếu (chỉ các trường văn bản)
+     * 2. Gửi nhiều text trong một request embed (tốc độ do AdaptiveRateLimiter điều tiết)
+     * 3. Ghi mỗi batch bằng JDBC batch insert rồi cập nhật vector index
+     * Không dùng @Transactional vì transaction quá dài; mỗi batch được commit riêng
+     * @param afterBookId Chỉ xử lý sách có id > afterBookId (checkpoint khi resume)
+     * @param listener Nhận tiến độ sau mỗi batch, có thể yêu cầu dừng
+     */
+    public void generateAllEmbeddings(long afterBookId, ProgressListener listener) {
+        log.info("🚀 Bắt đầu sinh embedding cho các sách chưa có (từ sau ID {})...", afterBookId);
+        long start = System.currentTimeMillis();
+
         try {
-            // ✅ Debug: Kiểm tra số lượng sách trước khi query
-            long totalBooksCount = bookRepository.count();
-            log.info("📊 Tổng số sách (từ count()): {}", totalBooksCount);
-            
-            List<Book> allBooks = bookRepository.findAll();
-            int totalBooks = allBooks.size();
+            List<BookTextRow> missing = bookRepository.findTextRowsWithoutEmbedding(afterBookId);
+            int totalMissing = missing.size();
             int createdCount = 0;
-            int skippedCount = 0;
+            int emptyCount = 0;
             int errorCount = 0;
 
-            log.info("📚 Tổng số sách trong database (từ findAll()): {}", totalBooks);
-            
-            // ✅ Cảnh báo nếu count() và findAll().size() không khớp
-            if (totalBooksCount != totalBooks) {
-                log.warn("⚠️ CẢNH BÁO: count()={} nhưng findAll().size()={}. Có thể có vấn đề với query!", 
-                        totalBooksCount, totalBooks);
-            }
-            
-            // ✅ Debug: Log danh sách ID của tất cả sách để kiểm tra
-            if (totalBooks > 0) {
-                List<Long> bookIds = allBooks.stream()
-                        .map(Book::getId)
-                        .toList();
-                log.info("📋 Danh sách ID sách ({} sách): {}", totalBooks, bookIds);
-                log.info("📋 Sách đầu tiên: ID={}, Title='{}'", 
-                        allBooks.get(0).getId(), allBooks.get(0).getTitle());
-                if (totalBooks > 1) {
-                    log.info("📋 Sách cuối cùng: ID={}, Title='{}'", 
-                            allBooks.get(totalBooks - 1).getId(), 
-                            allBooks.get(totalBooks - 1).getTitle());
-                }
-            } else {
-                log.warn("⚠️ Không tìm thấy sách nào trong database! Kiểm tra kết nối database.");
-            }
+            log.info("📚 Có {} sách chưa có embedding (batch {} text / request)", totalMissing, batchSize);
+            listener.onStart(totalMissing);
 
-            for (int i = 0; i < allBooks.size(); i++) {
-                Book book = allBooks.get(i);
-                
-                try {
-                    // Kiểm tra xem đã có embedding chưa
-                    if (embeddingRepository.findByBookId(book.getId()).isPresent()) {
-                        skippedCount++;
-                        if ((i + 1) % 10 == 0) {
-                            log.debug("⏭️ Đã kiểm tra {}/{} sách, bỏ qua '{}': đã có embedding", 
-                                    i + 1, totalBooks, book.getTitle());
-                        }
-                        continue;
-                    }
-
-                    // Tạo text content từ title và description
-                    String text = buildBookText(book);
-                    if (text.trim().isEmpty()) {
-                        log.warn("⚠️ Sách '{}' không có nội dung để tạo embedding", book.getTitle());
-                        errorCount++;
-                        continue;
-                    }
-
-                    // Tạo embedding
-                    log.info("🔄 [{}/{}] Đang tạo embedding cho: '{}'", i + 1, totalBooks, book.getTitle());
-                    List<Double> embedding = aiService.generateEmbedding(text);
-
-                    if (embedding.isEmpty()) {
-                        log.warn("⚠️ Không tạo được embedding cho '{}' (ID: {}). Có thể do rate limit hoặc lỗi API.", 
-                                book.getTitle(), book.getId());
-                        errorCount++;
-                        // Nghỉ lâu hơn khi gặp lỗi để tránh rate limit
-                        if (i < allBooks.size() - 1) {
-                            Thread.sleep(DELAY_BETWEEN_REQUESTS_MS * 2);
-                        }
-                        continue;
-                    }
+            List<BookTextRow> batch = new ArrayList<>(batchSize);
+            List<String> texts = new ArrayList<>(batchSize);
+            int batchSkipped = 0;
+            // Checkpoint dừng lại ở batch lỗi đầu tiên; các batch thành công phía sau đã có embedding
+            // nên query anti-join lúc resume tự loại ra, chỉ sách lỗi (và sách rỗng) được đọc lại
+            long checkpoint = afterBookId;
+            boolean failedBefore = false;
+            for (int i = 0; i < totalMissing; i++) {
+                BookTextRow row = missing.get(i);
+                String text = buildBookText(row.getTitle(), row.getDescription(), row.getAuthor());
+                if (text.trim().isEmpty()) {
+                    log.warn("⚠️ Sách '{}' (ID: {}) không có nội dung để tạo embedding", row.getTitle(), row.getId());
+                    emptyCount++;
+                    batchSkipped++;
+                } else {
+                    batch.add(row);
+                    texts.add(text);
+                }
 
-                    // Lưu embedding vào database (commit ngay lập tức)
-                    try {
-                        saveEmbedding(book, embedding);
-                        createdCount++;
-                        log.info("✅ [{}/{}] Đã tạo embedding cho: '{}' ({} chiều)", 
-                                i + 1, totalBooks, book.getTitle(), embedding.size());
-                    } catch (Exception saveEx) {
-                        log.error("❌ Lỗi khi lưu embedding cho '{}' (ID: {}): {}", 
-                                book.getTitle(), book.getId(), saveEx.getMessage(), saveEx);
-                        errorCount++;
-                        continue;
+                boolean last = i == totalMissing - 1;
+                if (batch.size() == batchSize || (last && (!batch.isEmpty() || batchSkipped > 0))) {
+                    int saved = batch.isEmpty() ? 0 : embedAndSaveBatch(batch, texts);
+                    createdCount += saved;
+                    errorCount += batch.size() - saved;
+                    if (saved < batch.size()) {
+                        failedBefore = true;
+                    } else if (!failedBefore) {
+                        checkpoint = row.getId();
                     }
+                    listener.onBatch(checkpoint, saved, batchSkipped, batch.size() - saved);
+                    log.info("📦 [{}/{}] Đã tạo {} embedding, lỗi {}", i + 1, totalMissing, createdCount, errorCount);
+                    batch.clear();
+                    texts.clear();
+                    batchSkipped = 0;
 
-                    // Nghỉ giữa các request để tránh rate limit
-                    if (i < allBooks.size() - 1) {
-                        Thread.sleep(DELAY_BETWEEN_REQUESTS_MS);
+                    if (listener.isCancelled()) {
+                        log.warn("⏹️ Đã dừng sinh embedding theo yêu cầu tại sách ID {}", row.getId());
+                        break;
                     }
+                }
 
-                } catch (InterruptedException e) {
+                if (Thread.currentThread().isInterrupted()) {
                     log.error("❌ Thread bị gián đoạn");
-                    Thread.currentThread().interrupt();
                     break;
-                } catch (Exception e) {
-                    errorCount++;
-                    log.error("❌ Lỗi khi xử lý sách '{}' (ID: {}): {}", 
-                            book.getTitle(), book.getId(), e.getMessage(), e);
-                    // Tiếp tục với sách tiếp theo thay vì dừng lại
                 }
             }
 
-            log.info("🎯 Hoàn tất! Tổng kết:");
-            log.info("   - Tổng số sách: {}", totalBooks);
+            log.info("🎯 Hoàn tất! Tổng kết ({} ms):", System.currentTimeMillis() - start);
+            log.info("   - Sách thiếu embedding: {}", totalMissing);
             log.info("   - Đã tạo mới: {}", createdCount);
-            log.info("   - Đã có sẵn (bỏ qua): {}", skippedCount);
+            log.info("   - Không có nội dung: {}", emptyCount);
             log.info("   - Lỗi: {}", errorCount);
-            
+
             if (errorCount > 0) {
                 log.warn("⚠️ Có {} sách không tạo được embedding. Kiểm tra log phía trên để xem chi tiết lỗi.", errorCount);
             }
-            
-            if (createdCount + skippedCount + errorCount != totalBooks) {
-                log.warn("⚠️ Tổng số không khớp! Có thể có sách bị bỏ sót.");
-            }
 
         } catch (Exception e) {
             log.error("❌ Lỗi nghiêm trọng khi sinh embedding: {}", e.getMessage(), e);
@@ -160,6 +161,42 @@ public class BookEmbeddingGenerator {
         }
     }
 
+    /**
+     * Gọi API cho một batch text và lưu kết quả bằng JDBC batch insert
+     * @return Số embedding đã lưu
+     */
+    private int embedAndSaveBatch(List<BookTextRow> batch, List<String> texts) {
+        List<float[]> embeddings = aiService.generateEmbeddings(texts);
+        if (embeddings.size() != batch.size()) {
+            log.warn("⚠️ Không tạo được embedding cho batch {} sách (ID {} - {}). Có thể do rate limit hoặc lỗi API.",
+                    batch.size(), batch.get(0).getId(), batch.get(batch.size() - 1).getId());
+            return 0;
+        }
+
+        List<BookEmbeddingJdbcRepository.Row> rows = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            float[] vector = embeddings.get(i);
+            rows.add(new BookEmbeddingJdbcRepository.Row(
+                    batch.get(i).getId(), EmbeddingCodec.encode(vector, storageFormat), vector.length));
+        }
+
+        try {
+            embeddingJdbcRepository.insertBatch(rows);
+        } catch (Exception e) {
+            log.error("❌ Lỗi khi lưu batch embedding (ID {} - {}): {}",
+                    batch.get(0).getId(), batch.get(batch.size() - 1).getId(), e.getMessage(), e);
+            return 0;
+        }
+
+        // ✅ Cập nhật vector index trong bộ nhớ (dùng đúng giá trị đã lưu)
+        for (int i = 0; i < batch.size(); i++) {
+            BookTextRow row = batch.get(i);
+            EmbeddingCodec.Encoded encoded = rows.get(i).encoded();
+            vectorIndex.upsert(row.getId(), EmbeddingCodec.decode(encoded.data(), encoded.format(), encoded.scale()));
+        }
+        return batch.size();
+    }
+
     /**
      * Tạo embedding cho một cuốn sách cụ thể
      * @param book Sách cần tạo embedding
@@ -216,32 +253,40 @@ public class BookEmbeddingGenerator {
     private void saveEmbedding(Book book, List<Double> embedding) {
         BookEmbedding bookEmbedding = new BookEmbedding();
         bookEmbedding.setBook(book);
-        bookEmbedding.setEmbeddingVector(embedding);
+        // ✅ Lưu dạng nhị phân (float32 / int8 theo cấu hình) thay vì chuỗi JSON
+        bookEmbedding.setEmbeddingArray(BookVectorIndex.toFloatArray(embedding), storageFormat);
         embeddingRepository.save(bookEmbedding);
+
+        // ✅ Cập nhật vector index trong bộ nhớ để search thấy sách mới ngay (dùng đúng giá trị đã lưu)
+        vectorIndex.upsert(book.getId(), bookEmbedding.getEmbeddingArray());
     }
 
     /**
      * Xây dựng text content từ book để tạo embedding
      */
     private String buildBookText(Book book) {
+        return buildBookText(book.getTitle(), book.getDescription(), book.getAuthor());
+    }
+
+    private String buildBookText(String title, String description, String author) {
         StringBuilder text = new StringBuilder();
         
-        if (book.getTitle() != null && !book.getTitle().trim().isEmpty()) {
-            text.append(book.getTitle().trim());
+        if (title != null && !title.trim().isEmpty()) {
+            text.append(title.trim());
         }
         
-        if (book.getDescription() != null && !book.getDescription().trim().isEmpty()) {
+        if (description != null && !description.trim().isEmpty()) {
             if (text.length() > 0) {
                 text.append(" ");
             }
-            text.append(book.getDescription().trim());
+            text.append(description.trim());
         }
         
-        if (book.getAuthor() != null && !book.getAuthor().trim().isEmpty()) {
+        if (author != null && !author.trim().isEmpty()) {
             if (text.length() > 0) {
                 text.append(" ");
             }
-            text.append(book.getAuthor().trim());
+            text.append(author.trim());
         }
         
         return text.toString();
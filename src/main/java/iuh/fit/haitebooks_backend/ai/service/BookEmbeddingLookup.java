@@ -0,0 +1,73 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import iuh.fit.haitebooks_backend.repository.BookEmbeddingRepository;
+import iuh.fit.haitebooks_backend.repository.projection.BookEmbeddingRow;
+import iuh.fit.haitebooks_backend.util.EmbeddingCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Truy cập embedding của nhiều sách cùng lúc
+ * - Ưu tiên đọc từ vector index trong bộ nhớ (không query)
+ * - Các sách chưa có trong index được lấy bằng đúng một query findRowsByBookIdIn
+ * Thay cho việc gọi findByBookId cho từng sách trong vòng lặp (N+1 query)
+ */
+@Service
+public class BookEmbeddingLookup {
+
+    private static final Logger log = LoggerFactory.getLogger(BookEmbeddingLookup.class);
+
+    private final BookVectorIndex vectorIndex;
+    private final BookEmbeddingRepository embeddingRepository;
+
+    public BookEmbeddingLookup(BookVectorIndex vectorIndex, BookEmbeddingRepository embeddingRepository) {
+        this.vectorIndex = vectorIndex;
+        this.embeddingRepository = embeddingRepository;
+    }
+
+    /**
+     * Lấy vector của các sách cho trước
+     * @return Map bookId -> vector (sách chưa có embedding không có trong map)
+     */
+    public Map<Long, float[]> getVectors(Collection<Long> bookIds) {
+        Map<Long, float[]> vectors = vectorIndex.getVectors(bookIds);
+        if (vectors.size() == bookIds.size()) {
+            return vectors;
+        }
+
+        Set<Long> missing = new HashSet<>(bookIds);
+        missing.removeAll(vectors.keySet());
+        missing.remove(null);
+        if (missing.isEmpty()) {
+            return vectors;
+        }
+        List<BookEmbeddingRow> rows = embeddingRepository.findRowsByBookIdIn(missing);
+        for (BookEmbeddingRow row : rows) {
+            float[] vector = EmbeddingCodec.read(row.getEmbeddingBlob(), row.getEmbeddingFormat(),
+                    row.getEmbeddingScale(), row.getEmbeddingJson());
+            if (vector.length > 0) {
+                vectors.put(row.getBookId(), vector);
+            }
+        }
+        log.debug("📝 {} sách không có trong vector index, lấy thêm {} embedding từ database", missing.size(), rows.size());
+        return vectors;
+    }
+
+    /**
+     * Lấy vector của một sách (mảng rỗng nếu sách chưa có embedding)
+     */
+    public float[] getVector(Long bookId) {
+        if (bookId == null) {
+            return new float[0];
+        }
+        float[] vector = getVectors(List.of(bookId)).get(bookId);
+        return vector != null ? vector : new float[0];
+    }
+}
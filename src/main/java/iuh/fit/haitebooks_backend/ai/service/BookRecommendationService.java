@@ -1,18 +1,20 @@
 package iuh.fit.haitebooks_backend.ai.service;
 
 import iuh.fit.haitebooks_backend.dtos.response.BookResponse;
+import iuh.fit.haitebooks_backend.event.OrderCreatedEvent;
+import iuh.fit.haitebooks_backend.event.UserInteractionEvent;
 import iuh.fit.haitebooks_backend.mapper.BookMapper;
 import iuh.fit.haitebooks_backend.model.Book;
-import iuh.fit.haitebooks_backend.model.BookEmbedding;
-import iuh.fit.haitebooks_backend.model.Order;
-import iuh.fit.haitebooks_backend.model.Order_Item;
-import iuh.fit.haitebooks_backend.repository.BookEmbeddingRepository;
 import iuh.fit.haitebooks_backend.repository.BookRepository;
 import iuh.fit.haitebooks_backend.repository.OrderRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -29,21 +31,40 @@ public class BookRecommendationService {
     private static final double COLLABORATIVE_WEIGHT = 0.6; // 60% cho collaborative filtering
 
     private final BookRepository bookRepository;
-    private final BookEmbeddingRepository embeddingRepo;
+    private final BookEmbeddingLookup embeddingLookup;
     private final AIService aiService;
     private final CollaborativeFilteringService collaborativeFilteringService;
     private final OrderRepository orderRepository;
+    private final BookVectorIndex vectorIndex;
+    private final VectorSearchRouter vectorSearchRouter;
+    private final UserRecommendationCache recommendationCache;
+    private final UserTasteProfileService tasteProfileService;
+    private final MatrixFactorizationRecommender matrixFactorization;
+    private final TransactionTemplate readOnlyTransaction;
 
     public BookRecommendationService(BookRepository bookRepository,
-                                     BookEmbeddingRepository embeddingRepo,
+                                     BookEmbeddingLookup embeddingLookup,
                                      AIService aiService,
                                      CollaborativeFilteringService collaborativeFilteringService,
-                                     OrderRepository orderRepository) {
+                                     OrderRepository orderRepository,
+                                     BookVectorIndex vectorIndex,
+                                     VectorSearchRouter vectorSearchRouter,
+                                     UserRecommendationCache recommendationCache,
+                                     UserTasteProfileService tasteProfileService,
+                                     MatrixFactorizationRecommender matrixFactorization,
+                                     PlatformTransactionManager transactionManager) {
         this.bookRepository = bookRepository;
-        this.embeddingRepo = embeddingRepo;
+        this.embeddingLookup = embeddingLookup;
         this.aiService = aiService;
         this.collaborativeFilteringService = collaborativeFilteringService;
         this.orderRepository = orderRepository;
+        this.vectorIndex = vectorIndex;
+        this.vectorSearchRouter = vectorSearchRouter;
+        this.recommendationCache = recommendationCache;
+        this.tasteProfileService = tasteProfileService;
+        this.matrixFactorization = matrixFactorization;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
     }
 
     /**
@@ -71,55 +92,27 @@ public class BookRecommendationService {
 
             Book target = targetOpt.get();
 
-            // 1. Lấy hoặc tạo embedding cho sách mục tiêu
-            List<Double> targetVector = getOrCreateEmbedding(target);
-            if (targetVector.isEmpty()) {
+            // 1. Lấy embedding của sách mục tiêu từ vector index (fallback về database, một query)
+            float[] targetVector = embeddingLookup.getVector(bookId);
+            if (targetVector.length == 0) {
                 log.warn("⚠️ Không thể tạo embedding cho sách: {}", target.getTitle());
                 return List.of();
             }
 
-            // 2. Load tất cả sách (trừ sách hiện tại)
-            List<Book> allBooks = bookRepository.findAll();
-            if (allBooks.isEmpty()) {
-                log.info("📚 Không có sách nào trong database");
-                return List.of();
-            }
-
-            // 3. Tính similarity với tất cả sách khác
-            Map<Book, Double> similarityMap = new HashMap<>();
-            int processedCount = 0;
-            int skippedCount = 0;
-
-            for (Book book : allBooks) {
-                if (book.getId().equals(bookId)) {
-                    skippedCount++;
-                    continue;
-                }
-
-                List<Double> bookVector = getOrCreateEmbedding(book);
-                if (bookVector.isEmpty()) {
-                    skippedCount++;
-                    continue;
-                }
-
-                double score = cosineSimilarity(targetVector, bookVector);
-                if (score >= MIN_SIMILARITY_THRESHOLD) {
-                    similarityMap.put(book, score);
-                }
-                processedCount++;
-            }
-
-            log.info("📊 Đã xử lý {} sách, bỏ qua {} sách", processedCount, skippedCount);
+            // 2. Tìm top-K láng giềng gần nhất qua backend đang cấu hình (exact hoặc HNSW)
+            VectorSearchBackend backend = vectorSearchRouter.backend();
+            List<VectorHit> hits = backend.nearest(targetVector, resultLimit, MIN_SIMILARITY_THRESHOLD, bookId);
+            log.info("📊 Backend '{}' trả về {} sách tương tự", backend.name(), hits.size());
 
-            // 4. Sắp xếp và lấy top kết quả
-            List<Book> topBooks = similarityMap.entrySet().stream()
-                    .sorted(Map.Entry.<Book, Double>comparingByValue().reversed())
-                    .limit(resultLimit)
-                    .map(Map.Entry::getKey)
-                    .collect(Collectors.toList());
+            // 3. Chỉ hydrate các sách trong top-K - category đã được eager fetch bởi @EntityGraph
+            List<Long> topBookIds = hits.stream().map(VectorHit::bookId).toList();
+            Map<Long, Book> bookMap = bookRepository.findAllById(topBookIds).stream()
+                    .collect(Collectors.toMap(Book::getId, book -> book));
 
-            // 5. Map sang BookResponse - category đã được eager fetch bởi @EntityGraph
-            List<BookResponse> results = topBooks.stream()
+            // 4. Map sang BookResponse theo đúng thứ tự độ tương đồng
+            List<BookResponse> results = topBookIds.stream()
+                    .map(bookMap::get)
+                    .filter(Objects::nonNull)
                     .map(BookMapper::toBookResponse)
                     .collect(Collectors.toList());
 
@@ -142,7 +135,8 @@ public class BookRecommendationService {
 
     /**
      * Hybrid Recommendation: Gợi ý sách cho user dựa trên Content-Based + Collaborative Filtering
-     * Không cần train model - sử dụng dữ liệu hành vi hiện có
+     * Chỉ đọc danh sách đã tính sẵn trong cache; user chưa có danh sách (lần đầu / vừa thay đổi hành vi)
+     * nhận danh sách sách phổ biến trong lúc danh sách riêng được tính trong background
      * 
      * @param userId ID của user cần gợi ý
      * @param limit Số lượng sách gợi ý tối đa (mặc định 10)
@@ -156,55 +150,28 @@ public class BookRecommendationService {
         }
 
         int resultLimit = (limit != null && limit > 0) ? limit : 10;
-        log.info("🎯 Bắt đầu hybrid recommendation cho userId: {}, limit: {}", userId, resultLimit);
 
         try {
-            // 1. Collaborative Filtering: Tính điểm dựa trên hành vi người dùng
-            Map<Long, Double> collaborativeScores = collaborativeFilteringService.calculateBookScores(userId);
-            log.info("📊 Collaborative Filtering: {} sách có điểm", collaborativeScores.size());
-
-            // 2. Content-Based: Tính điểm dựa trên embedding của sách user đã mua/thích
-            Map<Long, Double> contentBasedScores = calculateContentBasedScores(userId);
-            log.info("📊 Content-Based: {} sách có điểm", contentBasedScores.size());
-
-            // 3. Kết hợp 2 phương pháp (Hybrid)
-            Map<Long, Double> hybridScores = new HashMap<>();
-            
-            // Merge collaborative scores
-            for (Map.Entry<Long, Double> entry : collaborativeScores.entrySet()) {
-                double score = entry.getValue() * COLLABORATIVE_WEIGHT;
-                hybridScores.put(entry.getKey(), score);
-            }
-            
-            // Merge content-based scores
-            for (Map.Entry<Long, Double> entry : contentBasedScores.entrySet()) {
-                hybridScores.merge(entry.getKey(), 
-                    entry.getValue() * CONTENT_BASED_WEIGHT, 
-                    (oldVal, newVal) -> oldVal + newVal); // Cộng dồn nếu có cả 2
+            List<Long> bookIds = recommendationCache.get(userId);
+            if (bookIds == null) {
+                recommendationCache.refreshAsync(userId, () -> computeRecommendations(userId));
+                log.info("🧊 Chưa có gợi ý tính sẵn cho user {}, trả về sách phổ biến", userId);
+                bookIds = recommendationCache.popularBookIds();
+            } else if (bookIds.isEmpty()) {
+                // User chưa có hành vi nào -> gợi ý sách phổ biến
+                bookIds = recommendationCache.popularBookIds();
             }
 
-            // 4. Sắp xếp và lấy top book IDs
-            List<Long> topBookIds = hybridScores.entrySet().stream()
-                    .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
-                    .limit(resultLimit)
-                    .map(Map.Entry::getKey)
-                    .collect(Collectors.toList());
-            
+            List<Long> topBookIds = bookIds.subList(0, Math.min(bookIds.size(), resultLimit));
+
             // ✅ Tối ưu: Query tất cả books một lần thay vì N queries
-            List<Book> allBooks = bookRepository.findAllById(topBookIds);
-            
-            // Tạo map để giữ thứ tự và lookup nhanh
-            Map<Long, Book> bookMap = allBooks.stream()
+            Map<Long, Book> bookMap = bookRepository.findAllById(topBookIds).stream()
                     .collect(Collectors.toMap(Book::getId, book -> book));
-            
-            // Sắp xếp lại theo thứ tự trong topBookIds để đảm bảo thứ tự đúng
-            List<Book> topBooks = topBookIds.stream()
-                    .map(bookMap::get)
-                    .filter(book -> book != null)
-                    .collect(Collectors.toList());
 
-            // 5. Map sang BookResponse - category đã được eager fetch bởi @EntityGraph
-            List<BookResponse> results = topBooks.stream()
+            // Map sang BookResponse theo đúng thứ tự điểm - category đã được eager fetch bởi @EntityGraph
+            List<BookResponse> results = topBookIds.stream()
+                    .map(bookMap::get)
+                    .filter(Objects::nonNull)
                     .map(BookMapper::toBookResponse)
                     .collect(Collectors.toList());
 
@@ -218,137 +185,108 @@ public class BookRecommendationService {
     }
 
     /**
-     * Tính điểm Content-Based dựa trên embedding của sách user đã mua/thích
+     * Đơn hàng mới làm thay đổi gợi ý của user -> xóa danh sách cũ và tính lại
      */
-    private Map<Long, Double> calculateContentBasedScores(Long userId) {
-        Map<Long, Double> scores = new HashMap<>();
-        
-        // Lấy danh sách sách user đã mua từ orders
-        Set<Long> userBookIds = new HashSet<>();
-        List<Order> userOrders = orderRepository.findByUserId(userId);
-        for (Order order : userOrders) {
-            if (order.getOrderItems() != null) {
-                for (Order_Item item : order.getOrderItems()) {
-                    if (item.getBook() != null) {
-                        userBookIds.add(item.getBook().getId());
-                    }
-                }
-            }
-        }
-
-        // Nếu user chưa mua sách nào, trả về empty (để collaborative filtering làm việc)
-        if (userBookIds.isEmpty()) {
-            log.debug("📝 User {} chưa mua sách nào, bỏ qua content-based", userId);
-            return scores;
-        }
-
-        // Tính average embedding của sách user đã mua
-        List<Double> userProfileVector = calculateUserProfileVector(userBookIds);
-        if (userProfileVector.isEmpty()) {
-            return scores;
-        }
-
-        // So sánh với tất cả sách khác
-        List<Book> allBooks = bookRepository.findAll();
-        for (Book book : allBooks) {
-            if (userBookIds.contains(book.getId())) {
-                continue; // Bỏ qua sách đã có
-            }
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onOrderCreated(OrderCreatedEvent event) {
+        refreshUser(event.userId());
+    }
 
-            List<Double> bookVector = getOrCreateEmbedding(book);
-            if (bookVector.isEmpty()) {
-                continue;
-            }
+    /**
+     * Review / yêu thích / giỏ hàng thay đổi -> xóa danh sách cũ và tính lại
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserInteraction(UserInteractionEvent event) {
+        refreshUser(event.userId());
+    }
 
-            double similarity = cosineSimilarity(userProfileVector, bookVector);
-            if (similarity >= MIN_SIMILARITY_THRESHOLD) {
-                scores.put(book.getId(), similarity);
-            }
+    private void refreshUser(Long userId) {
+        if (userId == null) {
+            return;
         }
-
-        return scores;
+        recommendationCache.invalidate(userId);
+        recommendationCache.refreshAsync(userId, () -> computeRecommendations(userId));
     }
 
     /**
-     * Tính average embedding vector từ danh sách sách (user profile)
+     * Tính danh sách gợi ý đầy đủ cho user (chạy trong background, transaction chỉ đọc riêng)
+     * @return Danh sách bookId sắp xếp giảm dần theo điểm hybrid, tối đa topN
      */
-    private List<Double> calculateUserProfileVector(Set<Long> bookIds) {
-        List<List<Double>> vectors = new ArrayList<>();
-        
-        for (Long bookId : bookIds) {
-            Optional<Book> bookOpt = bookRepository.findById(bookId);
-            if (bookOpt.isPresent()) {
-                List<Double> vector = getOrCreateEmbedding(bookOpt.get());
-                if (!vector.isEmpty()) {
-                    vectors.add(vector);
-                }
-            }
-        }
+    private List<Long> computeRecommendations(Long userId) {
+        List<Long> result = readOnlyTransaction.execute(tx -> {
+            // 1. Collaborative Filtering: Tính điểm dựa trên hành vi người dùng
+            Map<Long, Double> collaborativeScores = calculateCollaborativeScores(userId);
+            log.debug("📊 Collaborative Filtering: {} sách có điểm", collaborativeScores.size());
 
-        if (vectors.isEmpty()) {
-            return List.of();
-        }
+            // 2. Content-Based: Tính điểm dựa trên embedding của sách user đã mua/thích
+            Map<Long, Double> contentBasedScores = calculateContentBasedScores(userId);
+            log.debug("📊 Content-Based: {} sách có điểm", contentBasedScores.size());
 
-        // Tính average vector
-        int dimension = vectors.get(0).size();
-        List<Double> averageVector = new ArrayList<>(Collections.nCopies(dimension, 0.0));
-        
-        for (List<Double> vector : vectors) {
-            for (int i = 0; i < dimension; i++) {
-                averageVector.set(i, averageVector.get(i) + vector.get(i));
+            // 3. Kết hợp 2 phương pháp (Hybrid)
+            Map<Long, Double> hybridScores = new HashMap<>();
+            
+            // Merge collaborative scores
+            for (Map.Entry<Long, Double> entry : collaborativeScores.entrySet()) {
+                double score = entry.getValue() * COLLABORATIVE_WEIGHT;
+                hybridScores.put(entry.getKey(), score);
+            }
+            
+            // Merge content-based scores
+            for (Map.Entry<Long, Double> entry : contentBasedScores.entrySet()) {
+                hybridScores.merge(entry.getKey(), 
+                    entry.getValue() * CONTENT_BASED_WEIGHT, 
+                    (oldVal, newVal) -> oldVal + newVal); // Cộng dồn nếu có cả 2
             }
-        }
-        
-        int count = vectors.size();
-        for (int i = 0; i < dimension; i++) {
-            averageVector.set(i, averageVector.get(i) / count);
-        }
 
-        return averageVector;
+            // 4. Sắp xếp và lấy top book IDs
+            return hybridScores.entrySet().stream()
+                    .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
+                    .limit(recommendationCache.topN())
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+        });
+        return result != null ? result : List.of();
     }
 
     /**
-     * Lấy embedding từ database hoặc tạo mới nếu chưa có
-     * Lưu ý: Chỉ đọc, không tạo mới trong read-only transaction
+     * Điểm collaborative: model matrix factorization nếu bật (ai.recommendation.collaborative-engine=mf),
+     * quay về heuristic khi model chưa train xong hoặc user chưa có trong model
      */
-    private List<Double> getOrCreateEmbedding(Book book) {
-        Optional<BookEmbedding> embeddingOpt = embeddingRepo.findByBookId(book.getId());
-        
-        if (embeddingOpt.isPresent()) {
-            BookEmbedding embedding = embeddingOpt.get();
-            List<Double> vector = embedding.getEmbeddingVector();
-            if (vector != null && !vector.isEmpty()) {
-                return vector;
+    private Map<Long, Double> calculateCollaborativeScores(Long userId) {
+        if (matrixFactorization.isEnabled()) {
+            Map<Long, Double> scores = matrixFactorization.scoreForUser(userId, recommendationCache.topN() * 2);
+            if (!scores.isEmpty()) {
+                return scores;
             }
         }
-
-        // Nếu chưa có embedding, trả về empty (không tạo mới trong read-only transaction)
-        log.debug("📝 Sách '{}' chưa có embedding", book.getTitle());
-        return List.of();
+        return collaborativeFilteringService.calculateBookScores(userId);
     }
 
     /**
-     * Tính cosine similarity giữa 2 vector
+     * Tính điểm Content-Based: độ tương đồng giữa vector sở thích của user và embedding của từng sách
      */
-    private double cosineSimilarity(List<Double> v1, List<Double> v2) {
-        if (v1 == null || v2 == null || v1.size() != v2.size()) {
-            return 0.0;
-        }
+    private Map<Long, Double> calculateContentBasedScores(Long userId) {
+        Map<Long, Double> scores = new HashMap<>();
 
-        double dot = 0.0, normA = 0.0, normB = 0.0;
-        for (int i = 0; i < v1.size(); i++) {
-            double a = v1.get(i);
-            double b = v2.get(i);
-            dot += a * b;
-            normA += a * a;
-            normB += b * b;
+        // Vector sở thích đã lưu sẵn (cập nhật tăng dần theo đơn hàng / review / yêu thích)
+        float[] userProfileVector = tasteProfileService.getProfileVector(userId);
+        if (userProfileVector.length == 0) {
+            log.debug("📝 User {} chưa có profile sở thích, bỏ qua content-based", userId);
+            return scores;
         }
 
-        double denominator = Math.sqrt(normA) * Math.sqrt(normB);
-        if (denominator == 0.0) {
-            return 0.0;
+        // Lấy danh sách sách user đã mua (một query chỉ lấy ID, không load đơn hàng / sách)
+        Set<Long> userBookIds = new HashSet<>(orderRepository.findPurchasedBookIdsByUserId(userId));
+
+        // So sánh với tất cả sách khác trong một lượt dot product trên vector index (không query từng sách)
+        List<VectorHit> hits = vectorIndex.nearest(userProfileVector, Math.max(vectorIndex.size(), 1),
+                MIN_SIMILARITY_THRESHOLD, null);
+        for (VectorHit hit : hits) {
+            if (!userBookIds.contains(hit.bookId())) { // Bỏ qua sách đã có
+                scores.put(hit.bookId(), hit.score());
+            }
         }
 
-        return dot / (denominator + 1e-10);
+        return scores;
     }
-}
\ No newline at end of file
+}
@@ -3,9 +3,8 @@ package iuh.fit.haitebooks_backend.ai.service;
 import iuh.fit.haitebooks_backend.dtos.response.BookResponse;
 import iuh.fit.haitebooks_backend.mapper.BookMapper;
 import iuh.fit.haitebooks_backend.model.Book;
-import iuh.fit.haitebooks_backend.model.BookEmbedding;
 import iuh.fit.haitebooks_backend.repository.BookRepository;
-import iuh.fit.haitebooks_backend.repository.BookEmbeddingRepository;
+import iuh.fit.haitebooks_backend.service.CatalogSearchEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -23,27 +22,31 @@ public class BookSearchService {
     
     // Trọng số cho hybrid search
     private static final double SEMANTIC_WEIGHT = 0.6; // 60% cho semantic similarity
-    private static final double TEXT_MATCH_WEIGHT = 0.4; // 40% cho text matching
+    private static final double TEXT_MATCH_WEIGHT = 0.4; // 40% cho text matching (BM25 đã chuẩn hóa)
     
     // Boost factors
-    private static final double TITLE_EXACT_MATCH_BOOST = 0.3; // Boost khi query xuất hiện trong title
-    private static final double TITLE_PARTIAL_MATCH_BOOST = 0.15; // Boost khi từ khóa xuất hiện trong title
-    private static final double DESCRIPTION_MATCH_BOOST = 0.1; // Boost khi query xuất hiện trong description
+    private static final double TITLE_EXACT_MATCH_BOOST = 0.3; // Boost khi cả cụm query xuất hiện trong title
 
     private final BookRepository bookRepository;
-    private final BookEmbeddingRepository embeddingRepository;
+    private final BookVectorIndex vectorIndex;
     private final AIService aiService;
+    private final VectorSearchRouter vectorSearchRouter;
+    private final CatalogSearchEngine searchEngine;
 
     public BookSearchService(BookRepository bookRepository,
-                             BookEmbeddingRepository embeddingRepository,
-                             AIService aiService) {
+                             BookVectorIndex vectorIndex,
+                             AIService aiService,
+                             VectorSearchRouter vectorSearchRouter,
+                             CatalogSearchEngine searchEngine) {
         this.bookRepository = bookRepository;
-        this.embeddingRepository = embeddingRepository;
+        this.vectorIndex = vectorIndex;
         this.aiService = aiService;
+        this.vectorSearchRouter = vectorSearchRouter;
+        this.searchEngine = searchEngine;
     }
 
     /**
-     * Semantic search tối ưu: batch load embeddings, tính cosine similarity
+     * Semantic search tối ưu: chấm điểm trên vector index trong bộ nhớ, chỉ hydrate top-K sách
      * @param query Câu truy vấn tìm kiếm
      * @param limit Số lượng kết quả tối đa (mặc định 10)
      * @return Danh sách sách được sắp xếp theo độ liên quan
@@ -59,100 +62,72 @@ public class BookSearchService {
         log.info("🔍 Bắt đầu tìm kiếm semantic với query: '{}', limit: {}", query, resultLimit);
 
         try {
-            // 1. Tạo embedding cho query
-            List<Double> queryVector = aiService.generateEmbedding(query.trim());
-            if (queryVector.isEmpty()) {
+            // 1. Tạo embedding cho query (lấy từ cache nếu đã embed gần đây)
+            float[] queryVector = aiService.generateQueryEmbedding(query);
+            if (queryVector.length == 0) {
                 log.warn("⚠️ Không thể tạo embedding cho query: '{}'", query);
                 return List.of();
             }
 
-            // 2. Load tất cả sách và embedding vào bộ nhớ
-            List<Book> allBooks = bookRepository.findAll();
-            if (allBooks.isEmpty()) {
-                log.info("📚 Không có sách nào trong database");
-                return List.of();
-            }
-
-            // 3. Map Book -> embedding vector
-            Map<Book, List<Double>> bookVectors = new HashMap<>();
-            List<BookEmbedding> allEmbeddings = embeddingRepository.findAll();
-
-            // Build map BookId -> BookEmbedding
-            Map<Long, BookEmbedding> embeddingMap = allEmbeddings.stream()
-                    .filter(be -> be.getBook() != null)
-                    .collect(Collectors.toMap(be -> be.getBook().getId(), be -> be));
-
-            int missingEmbeddings = 0;
-            for (Book book : allBooks) {
-                BookEmbedding embedding = embeddingMap.get(book.getId());
-                if (embedding != null && embedding.getEmbeddingVector() != null && !embedding.getEmbeddingVector().isEmpty()) {
-                    bookVectors.put(book, embedding.getEmbeddingVector());
-                } else {
-                    missingEmbeddings++;
-                    log.debug("📝 Sách '{}' chưa có embedding, sẽ bỏ qua trong lần tìm kiếm này", book.getTitle());
-                }
-            }
-
-            if (missingEmbeddings > 0) {
-                log.info("ℹ️ Có {} sách chưa có embedding, đã bỏ qua", missingEmbeddings);
-            }
-
-            if (bookVectors.isEmpty()) {
+            // 2. Chấm điểm hybrid trên vector index thường trú (không load entity, không parse JSON)
+            vectorIndex.ensureLoaded();
+            if (vectorIndex.size() == 0) {
                 log.warn("⚠️ Không có sách nào có embedding để tìm kiếm");
                 return List.of();
             }
 
-            // 4. Tính hybrid score: kết hợp semantic similarity + text matching
-            Map<Book, Double> scoreMap = new HashMap<>();
-            String queryLower = query.trim().toLowerCase();
-            String[] queryWords = queryLower.split("\\s+");
-            
-            for (Map.Entry<Book, List<Double>> entry : bookVectors.entrySet()) {
-                Book book = entry.getKey();
-                List<Double> bookVector = entry.getValue();
-                
-                // 4.1. Tính semantic similarity (0.0 - 1.0)
-                double semanticScore = cosineSimilarity(queryVector, bookVector);
-                
-                // 4.2. Tính text matching score (0.0 - 1.0)
-                double textScore = calculateTextMatchScore(book, queryLower, queryWords);
-                
-                // 4.3. Tính hybrid score (kết hợp semantic + text matching)
-                double hybridScore = (semanticScore * SEMANTIC_WEIGHT) + (textScore * TEXT_MATCH_WEIGHT);
-                
-                // 4.4. Áp dụng boost cho exact/partial matches
-                double boostedScore = applyBoosts(book, queryLower, queryWords, hybridScore);
-                
-                // Chỉ thêm vào kết quả nếu score >= ngưỡng tối thiểu
-                if (boostedScore >= MIN_SIMILARITY_THRESHOLD) {
-                    scoreMap.put(book, boostedScore);
-                    
-                    // Log chi tiết cho top results để debug
-                    if (scoreMap.size() <= 5) {
-                        log.debug("📊 Book: '{}' | Semantic: {:.3f} | Text: {:.3f} | Hybrid: {:.3f} | Final: {:.3f}", 
-                                book.getTitle(), semanticScore, textScore, hybridScore, boostedScore);
-                    }
+            // Với HNSW: chỉ tính cosine cho ứng viên semantic gần nhất + sách có khớp văn bản
+            Set<Long> semanticCandidates = null;
+            if (vectorSearchRouter.useHnsw()) {
+                semanticCandidates = new HashSet<>();
+                for (VectorHit hit : vectorSearchRouter.backend().nearest(queryVector,
+                        vectorSearchRouter.candidatePoolSize(resultLimit), -1.0, null)) {
+                    semanticCandidates.add(hit.bookId());
                 }
             }
 
-            // 5. Sắp xếp và lấy top kết quả
-            List<Book> topBooks = scoreMap.entrySet().stream()
-                    .sorted(Map.Entry.<Book, Double>comparingByValue().reversed())
-                    .limit(resultLimit)
-                    .map(Map.Entry::getKey)
-                    .collect(Collectors.toList());
-            
-            // Log top 3 scores để debug
-            if (!scoreMap.isEmpty()) {
-                log.info("🏆 Top 3 scores:");
-                scoreMap.entrySet().stream()
-                        .sorted(Map.Entry.<Book, Double>comparingByValue().reversed())
-                        .limit(3)
-                        .forEach(entry -> log.info("   - '{}': {:.4f}", entry.getKey().getTitle(), entry.getValue()));
+            // Text matching: điểm BM25 (title, tác giả, category, mô tả) tra trên catalog search index một lần cho cả query
+            Map<Long, CatalogSearchEngine.TextScore> textScores = searchEngine.textScores(query);
+
+            List<VectorHit> hits = vectorIndex.search(queryVector, resultLimit, MIN_SIMILARITY_THRESHOLD,
+                    (semanticScore, bookId) -> {
+                        CatalogSearchEngine.TextScore text = textScores.get(bookId);
+                        if (text == null) {
+                            // Không khớp từ khóa nào: text score = 0, không có boost
+                            return Math.min(semanticScore * SEMANTIC_WEIGHT, 1.0);
+                        }
+                        // Tính hybrid score (kết hợp semantic + text matching)
+                        double hybridScore = (semanticScore * SEMANTIC_WEIGHT) + (text.score() * TEXT_MATCH_WEIGHT);
+                        if (text.titlePhrase()) {
+                            hybridScore += TITLE_EXACT_MATCH_BOOST;
+                        }
+                        return Math.min(hybridScore, 1.0);
+                    }, semanticCandidates);
+
+            if (hits.isEmpty()) {
+                log.info("✅ Không có sách nào đạt ngưỡng cho query: '{}'", query);
+                return List.of();
             }
 
-            // 6. Map sang BookResponse - category đã được eager fetch bởi @EntityGraph
-            List<BookResponse> results = topBooks.stream()
+            // 3. Chỉ hydrate K sách cuối cùng - category đã được eager fetch bởi @EntityGraph
+            List<Long> topBookIds = hits.stream().map(VectorHit::bookId).toList();
+            Map<Long, Book> bookMap = bookRepository.findAllById(topBookIds).stream()
+                    .collect(Collectors.toMap(Book::getId, book -> book));
+
+            // Log top 3 scores để debug (kết quả đã được sắp xếp sẵn)
+            log.info("🏆 Top 3 scores:");
+            hits.stream()
+                    .limit(3)
+                    .forEach(hit -> {
+                        Book book = bookMap.get(hit.bookId());
+                        log.info("   - '{}': {}", book != null ? book.getTitle() : hit.bookId(),
+                                String.format("%.4f", hit.score()));
+                    });
+
+            // 4. Map sang BookResponse theo đúng thứ tự điểm số
+            List<BookResponse> results = topBookIds.stream()
+                    .map(bookMap::get)
+                    .filter(Objects::nonNull)
                     .map(BookMapper::toBookResponse)
                     .collect(Collectors.toList());
 
@@ -172,132 +147,4 @@ public class BookSearchService {
     public List<BookResponse> smartSearch(String query) {
         return smartSearch(query, DEFAULT_LIMIT);
     }
-
-    /**
-     * Tính cosine similarity giữa 2 vector
-     */
-    private double cosineSimilarity(List<Double> v1, List<Double> v2) {
-        if (v1 == null || v2 == null || v1.size() != v2.size()) {
-            return 0.0;
-        }
-
-        double dot = 0.0, normA = 0.0, normB = 0.0;
-        for (int i = 0; i < v1.size(); i++) {
-            double a = v1.get(i);
-            double b = v2.get(i);
-            dot += a * b;
-            normA += a * a;
-            normB += b * b;
-        }
-
-        double denominator = Math.sqrt(normA) * Math.sqrt(normB);
-        if (denominator == 0.0) {
-            return 0.0;
-        }
-
-        return dot / (denominator + 1e-10); // Thêm epsilon để tránh chia cho 0
-    }
-    
-    /**
-     * Tính text matching score dựa trên việc query xuất hiện trong title/description
-     * @param book Sách cần tính điểm
-     * @param queryLower Query đã chuyển thành lowercase
-     * @param queryWords Mảng các từ trong query
-     * @return Điểm số từ 0.0 đến 1.0
-     */
-    private double calculateTextMatchScore(Book book, String queryLower, String[] queryWords) {
-        double score = 0.0;
-        
-        String title = (book.getTitle() != null) ? book.getTitle().toLowerCase() : "";
-        String description = (book.getDescription() != null) ? book.getDescription().toLowerCase() : "";
-        String author = (book.getAuthor() != null) ? book.getAuthor().toLowerCase() : "";
-        
-        // 1. Exact match trong title (quan trọng nhất)
-        if (title.contains(queryLower)) {
-            score += 0.8; // Rất cao nếu query xuất hiện chính xác trong title
-        }
-        
-        // 2. Tất cả từ khóa xuất hiện trong title
-        boolean allWordsInTitle = true;
-        int wordsInTitle = 0;
-        for (String word : queryWords) {
-            if (title.contains(word)) {
-                wordsInTitle++;
-            } else {
-                allWordsInTitle = false;
-            }
-        }
-        if (allWordsInTitle && queryWords.length > 0) {
-            score += 0.6; // Tất cả từ khóa có trong title
-        } else if (wordsInTitle > 0) {
-            score += (wordsInTitle * 0.2) / queryWords.length; // Một phần từ khóa có trong title
-        }
-        
-        // 3. Exact match trong description
-        if (description.contains(queryLower)) {
-            score += 0.3;
-        }
-        
-        // 4. Từ khóa xuất hiện trong description
-        int wordsInDescription = 0;
-        for (String word : queryWords) {
-            if (description.contains(word)) {
-                wordsInDescription++;
-            }
-        }
-        if (wordsInDescription > 0) {
-            score += (wordsInDescription * 0.15) / queryWords.length;
-        }
-        
-        // 5. Từ khóa xuất hiện trong author (ít quan trọng hơn)
-        for (String word : queryWords) {
-            if (author.contains(word)) {
-                score += 0.05;
-                break; // Chỉ cộng 1 lần
-            }
-        }
-        
-        // Normalize về 0.0 - 1.0
-        return Math.min(score, 1.0);
-    }
-    
-    /**
-     * Áp dụng boost cho exact/partial matches
-     * @param book Sách cần boost
-     * @param queryLower Query đã chuyển thành lowercase
-     * @param queryWords Mảng các từ trong query
-     * @param baseScore Điểm số cơ bản
-     * @return Điểm số sau khi boost
-     */
-    private double applyBoosts(Book book, String queryLower, String[] queryWords, double baseScore) {
-        double boostedScore = baseScore;
-        
-        String title = (book.getTitle() != null) ? book.getTitle().toLowerCase() : "";
-        String description = (book.getDescription() != null) ? book.getDescription().toLowerCase() : "";
-        
-        // Boost 1: Exact match trong title (rất quan trọng)
-        if (title.contains(queryLower)) {
-            boostedScore += TITLE_EXACT_MATCH_BOOST;
-        }
-        
-        // Boost 2: Tất cả từ khóa có trong title
-        boolean allWordsInTitle = true;
-        for (String word : queryWords) {
-            if (!title.contains(word)) {
-                allWordsInTitle = false;
-                break;
-            }
-        }
-        if (allWordsInTitle && queryWords.length > 0) {
-            boostedScore += TITLE_PARTIAL_MATCH_BOOST;
-        }
-        
-        // Boost 3: Query xuất hiện trong description
-        if (description.contains(queryLower)) {
-            boostedScore += DESCRIPTION_MATCH_BOOST;
-        }
-        
-        // Đảm bảo không vượt quá 1.0
-        return Math.min(boostedScore, 1.0);
-    }
 }
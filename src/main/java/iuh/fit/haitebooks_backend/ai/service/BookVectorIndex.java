@@ -0,0 +1,570 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import iuh.fit.haitebooks_backend.repository.BookEmbeddingRepository;
+import iuh.fit.haitebooks_backend.repository.projection.BookEmbeddingRow;
+import iuh.fit.haitebooks_backend.util.EmbeddingCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * Index vector embedding thường trú trong bộ nhớ cho semantic search
+ * - Toàn bộ vector được lưu liên tục trong một mảng float[] (slot * dimension) kèm norm tính sẵn
+ * - Load một lần khi khởi động, cập nhật tăng dần khi có embedding mới / sách bị xóa
+ * - Tìm top-K bằng dot product + min-heap giới hạn K, không load entity JPA trong lúc chấm điểm
+ * - Catalog lớn được chia thành các partition chấm điểm song song (mỗi partition một heap K), rồi merge
+ * Đây cũng là backend "exact" (brute-force) cho VectorSearchRouter
+ */
+@Service
+public class BookVectorIndex implements VectorSearchBackend {
+
+    private static final Logger log = LoggerFactory.getLogger(BookVectorIndex.class);
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int LOAD_PAGE_SIZE = 500;
+    // Mỗi partition tối thiểu bấy nhiêu slot, tránh chi phí chia việc lớn hơn phần tính toán
+    private static final int MIN_PARTITION_SIZE = 4096;
+
+    private final BookEmbeddingRepository embeddingRepository;
+    private final int parallelThreshold;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object loadMonitor = new Object();
+    private volatile boolean loaded = false;
+
+    // Dữ liệu theo slot - chỉ truy cập khi giữ lock
+    private int dimension = 0;
+    private int size = 0;
+    private long[] bookIds = new long[INITIAL_CAPACITY];
+    private float[] norms = new float[INITIAL_CAPACITY];
+    private float[] vectors = new float[0];
+    private final Map<Long, Integer> slotByBookId = new HashMap<>();
+
+    // Thay đổi nhận được trong lúc rebuild đọc database, áp dụng lại sau khi đổi sang dữ liệu mới
+    // (chỉ truy cập khi giữ write lock)
+    private boolean rebuilding = false;
+    private final List<PendingChange> pendingChanges = new ArrayList<>();
+
+    // Các index phụ (VD: HNSW) đăng ký nhận thay đổi để cập nhật theo
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public BookVectorIndex(BookEmbeddingRepository embeddingRepository,
+                           @Value("${ai.vector.parallel-threshold:20000}") int parallelThreshold) {
+        this.embeddingRepository = embeddingRepository;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Hàm chấm điểm cuối cùng cho mỗi sách từ cosine similarity (phần văn bản tra theo bookId)
+     */
+    @FunctionalInterface
+    public interface HybridScorer {
+        double score(double cosine, long bookId);
+    }
+
+    /**
+     * Nhận thông báo khi vector trong index thay đổi (gọi ngoài lock)
+     */
+    public interface Listener {
+        void onUpsert(long bookId, float[] vector);
+
+        void onRemove(long bookId);
+
+        void onRebuilt();
+    }
+
+    private record PendingChange(long bookId, float[] vector) {
+    }
+
+    /**
+     * Chấm điểm một slot trong lúc quét, trả về NaN nếu bỏ qua slot đó
+     */
+    @FunctionalInterface
+    private interface SlotScorer {
+        double score(int slot);
+    }
+
+    /**
+     * Nhận từng vector trong index (data chỉ hợp lệ trong lúc gọi, cần copy nếu giữ lại)
+     */
+    @FunctionalInterface
+    public interface VectorVisitor {
+        void visit(long bookId, float[] data, int offset, int dimension);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public String name() {
+        return "exact";
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        ensureLoaded();
+    }
+
+    /**
+     * Đảm bảo index đã được load (lần gọi đầu tiên sẽ chờ load xong)
+     */
+    public void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (loadMonitor) {
+            if (!loaded) {
+                rebuild();
+            }
+        }
+    }
+
+    /**
+     * Load lại toàn bộ index từ database theo từng trang (keyset trên id)
+     * upsert / remove xảy ra trong lúc đọc database được ghi lại và áp dụng lên dữ liệu mới trước khi công bố
+     */
+    public void rebuild() {
+        synchronized (loadMonitor) {
+            lock.writeLock().lock();
+            try {
+                rebuilding = true;
+                pendingChanges.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            try {
+                loadAndPublish();
+            } finally {
+                // Load lỗi -> dừng ghi lại thay đổi, dữ liệu cũ vẫn được cập nhật trực tiếp như bình thường
+                lock.writeLock().lock();
+                try {
+                    rebuilding = false;
+                    pendingChanges.clear();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    private void loadAndPublish() {
+        long start = System.currentTimeMillis();
+        log.info("🔄 Bắt đầu load vector index từ database...");
+
+        int newDimension = 0;
+        int newSize = 0;
+        long[] newIds = new long[(int) Math.max(INITIAL_CAPACITY, embeddingRepository.count())];
+        float[] newNorms = new float[newIds.length];
+        float[] newVectors = new float[0];
+        Map<Long, Integer> newSlots = new HashMap<>();
+        int skipped = 0;
+        int replayed;
+
+        long afterId = 0L;
+        while (true) {
+            List<BookEmbeddingRow> page = embeddingRepository.findRowsAfter(afterId, PageRequest.of(0, LOAD_PAGE_SIZE));
+            if (page.isEmpty()) {
+                break;
+            }
+            for (BookEmbeddingRow row : page) {
+                afterId = row.getId();
+                Long bookId = row.getBookId();
+                float[] vector = EmbeddingCodec.read(row.getEmbeddingBlob(), row.getEmbeddingFormat(),
+                        row.getEmbeddingScale(), row.getEmbeddingJson());
+                if (bookId == null || vector.length == 0 || newSlots.containsKey(bookId)) {
+                    skipped++;
+                    continue;
+                }
+                if (newDimension == 0) {
+                    newDimension = vector.length;
+                    newVectors = new float[newIds.length * newDimension];
+                } else if (vector.length != newDimension) {
+                    log.warn("⚠️ Embedding của sách {} có {} chiều, khác {} chiều của index - bỏ qua",
+                            bookId, vector.length, newDimension);
+                    skipped++;
+                    continue;
+                }
+                if (newSize == newIds.length) {
+                    int newCapacity = newIds.length * 2;
+                    newIds = Arrays.copyOf(newIds, newCapacity);
+                    newNorms = Arrays.copyOf(newNorms, newCapacity);
+                    newVectors = Arrays.copyOf(newVectors, newCapacity * newDimension);
+                }
+                System.arraycopy(vector, 0, newVectors, newSize * newDimension, newDimension);
+                newIds[newSize] = bookId;
+                newNorms[newSize] = norm(vector);
+                newSlots.put(bookId, newSize);
+                newSize++;
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            dimension = newDimension;
+            size = newSize;
+            bookIds = newIds;
+            norms = newNorms;
+            vectors = newVectors;
+            slotByBookId.clear();
+            slotByBookId.putAll(newSlots);
+            for (PendingChange change : pendingChanges) {
+                if (change.vector() != null) {
+                    upsertSlot(change.bookId(), change.vector());
+                } else {
+                    removeSlot(change.bookId());
+                }
+            }
+            replayed = pendingChanges.size();
+            pendingChanges.clear();
+            rebuilding = false;
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("✅ Đã load vector index: {} sách, {} chiều, bỏ qua {}, áp dụng lại {} thay đổi ({} ms)",
+                newSize, newDimension, skipped, replayed, System.currentTimeMillis() - start);
+        listeners.forEach(Listener::onRebuilt);
+    }
+
+    /**
+     * Thêm mới hoặc thay thế vector của một sách (gọi sau khi lưu embedding)
+     */
+    public void upsert(Long bookId, float[] vector) {
+        if (bookId == null || vector == null || vector.length == 0) {
+            return;
+        }
+        boolean upserted;
+        lock.writeLock().lock();
+        try {
+            if (rebuilding) {
+                pendingChanges.add(new PendingChange(bookId, vector.clone()));
+            }
+            upserted = upsertSlot(bookId, vector);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!upserted) {
+            return;
+        }
+        for (Listener listener : listeners) {
+            listener.onUpsert(bookId, vector);
+        }
+    }
+
+    /**
+     * Xóa sách khỏi index (dời slot cuối vào chỗ trống để dữ liệu luôn liên tục)
+     */
+    public void remove(Long bookId) {
+        if (bookId == null) {
+            return;
+        }
+        boolean removed;
+        lock.writeLock().lock();
+        try {
+            if (rebuilding) {
+                pendingChanges.add(new PendingChange(bookId, null));
+            }
+            removed = removeSlot(bookId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (removed) {
+            for (Listener listener : listeners) {
+                listener.onRemove(bookId);
+            }
+        }
+    }
+
+    /**
+     * Tìm top-K sách theo hàm chấm điểm hybrid, chỉ giữ những sách có điểm >= minScore
+     * @param query Vector truy vấn
+     * @param k Số lượng kết quả tối đa
+     * @param minScore Ngưỡng điểm tối thiểu
+     * @param scorer Hàm kết hợp cosine similarity với điểm văn bản của sách
+     * @return Danh sách kết quả sắp xếp giảm dần theo điểm
+     */
+    public List<VectorHit> search(float[] query, int k, double minScore, HybridScorer scorer) {
+        return search(query, k, minScore, scorer, null);
+    }
+
+    /**
+     * Giống search() nhưng chỉ tính dot product cho các ứng viên semantic (VD: lấy từ HNSW)
+     * và cho các sách có khớp văn bản; sách còn lại coi như nằm ngoài top semantic nên bỏ qua.
+     * @param semanticCandidates Tập bookId ứng viên semantic, null = chấm điểm toàn bộ (exact)
+     */
+    public List<VectorHit> search(float[] query, int k, double minScore, HybridScorer scorer,
+                                  Set<Long> semanticCandidates) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            if (size == 0 || query == null || query.length != dimension) {
+                return List.of();
+            }
+            boolean[] candidateSlots = null;
+            if (semanticCandidates != null) {
+                candidateSlots = new boolean[size];
+                for (Long bookId : semanticCandidates) {
+                    Integer slot = slotByBookId.get(bookId);
+                    if (slot != null) {
+                        candidateSlots[slot] = true;
+                    }
+                }
+            }
+            boolean[] candidates = candidateSlots;
+            double queryNorm = norm(query);
+            return collectTopK(k, slot -> {
+                // Không phải ứng viên semantic và không khớp văn bản -> bỏ qua, không tính dot product
+                if (candidates != null && !candidates[slot] && scorer.score(0.0, bookIds[slot]) <= 0.0) {
+                    return Double.NaN;
+                }
+                double score = scorer.score(cosine(query, queryNorm, slot), bookIds[slot]);
+                return score >= minScore ? score : Double.NaN;
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Tìm top-K sách có cosine similarity cao nhất với vector truy vấn (brute-force chính xác)
+     */
+    @Override
+    public List<VectorHit> nearest(float[] query, int k, double minScore, Long excludeBookId) {
+        long excluded = excludeBookId != null ? excludeBookId : Long.MIN_VALUE;
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            if (size == 0 || query == null || query.length != dimension) {
+                return List.of();
+            }
+            double queryNorm = norm(query);
+            return collectTopK(k, slot -> {
+                if (bookIds[slot] == excluded) {
+                    return Double.NaN;
+                }
+                double cosine = cosine(query, queryNorm, slot);
+                return cosine >= minScore ? cosine : Double.NaN;
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Duyệt toàn bộ vector trong index (giữ read lock trong suốt quá trình duyệt)
+     */
+    public void forEachVector(VectorVisitor visitor) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < size; slot++) {
+                visitor.visit(bookIds[slot], vectors, slot * dimension, dimension);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lấy bản sao vector của một sách (null nếu chưa có trong index)
+     */
+    public float[] getVector(Long bookId) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            Integer slot = bookId != null ? slotByBookId.get(bookId) : null;
+            if (slot == null) {
+                return null;
+            }
+            return Arrays.copyOfRange(vectors, slot * dimension, (slot + 1) * dimension);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lấy bản sao vector của nhiều sách trong một lần giữ lock (sách chưa có trong index bị bỏ qua)
+     */
+    public Map<Long, float[]> getVectors(Collection<Long> bookIds) {
+        ensureLoaded();
+        Map<Long, float[]> result = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (Long bookId : bookIds) {
+                Integer slot = bookId != null ? slotByBookId.get(bookId) : null;
+                if (slot != null) {
+                    result.put(bookId, Arrays.copyOfRange(vectors, slot * dimension, (slot + 1) * dimension));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    public boolean contains(Long bookId) {
+        lock.readLock().lock();
+        try {
+            return bookId != null && slotByBookId.containsKey(bookId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int dimension() {
+        lock.readLock().lock();
+        try {
+            return dimension;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Chuyển List<Double> (từ API) sang float[]
+     */
+    public static float[] toFloatArray(List<Double> vector) {
+        if (vector == null) {
+            return new float[0];
+        }
+        float[] result = new float[vector.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = vector.get(i).floatValue();
+        }
+        return result;
+    }
+
+    /**
+     * Quét toàn bộ slot và giữ top-K (gọi khi đang giữ read lock)
+     * Catalog nhỏ quét tuần tự; catalog lớn chia thành các đoạn slot liên tục chấm điểm song song trên
+     * ForkJoinPool chung, mỗi đoạn giữ một heap K riêng rồi merge - không tạo map điểm cho toàn bộ catalog
+     */
+    private List<VectorHit> collectTopK(int k, SlotScorer scorer) {
+        int total = size;
+        int partitions = total >= parallelThreshold
+                ? Math.min(Runtime.getRuntime().availableProcessors(), total / MIN_PARTITION_SIZE)
+                : 1;
+        if (partitions <= 1) {
+            return scoreRange(k, scorer, 0, total).toSortedList();
+        }
+        int chunk = (total + partitions - 1) / partitions;
+        // Các luồng worker chỉ đọc mảng; writer bị chặn bởi read lock mà luồng gọi đang giữ
+        TopKCollector merged = IntStream.range(0, partitions)
+                .parallel()
+                .mapToObj(p -> scoreRange(k, scorer, p * chunk, Math.min(total, (p + 1) * chunk)))
+                .reduce((a, b) -> {
+                    a.merge(b);
+                    return a;
+                })
+                .orElseGet(() -> new TopKCollector(k));
+        return merged.toSortedList();
+    }
+
+    private TopKCollector scoreRange(int k, SlotScorer scorer, int from, int to) {
+        TopKCollector collector = new TopKCollector(k);
+        for (int slot = from; slot < to; slot++) {
+            double score = scorer.score(slot);
+            if (!Double.isNaN(score)) {
+                collector.offer(bookIds[slot], score);
+            }
+        }
+        return collector;
+    }
+
+    // Cosine giữa query và vector tại slot - giữ công thức như bản cũ (epsilon ở mẫu số)
+    private double cosine(float[] query, double queryNorm, int slot) {
+        double denominator = queryNorm * norms[slot];
+        if (denominator == 0.0) {
+            return 0.0;
+        }
+        int base = slot * dimension;
+        double dot = 0.0;
+        for (int i = 0; i < dimension; i++) {
+            dot += query[i] * vectors[base + i];
+        }
+        return dot / (denominator + 1e-10);
+    }
+
+    // Ghi vector vào slot của sách (gọi khi đang giữ write lock), false nếu khác số chiều của index
+    private boolean upsertSlot(long bookId, float[] vector) {
+        if (dimension == 0) {
+            dimension = vector.length;
+            vectors = new float[bookIds.length * dimension];
+        } else if (vector.length != dimension) {
+            log.warn("⚠️ Không thể thêm embedding {} chiều vào index {} chiều (sách {})",
+                    vector.length, dimension, bookId);
+            return false;
+        }
+        Integer slot = slotByBookId.get(bookId);
+        if (slot == null) {
+            ensureCapacity(size + 1);
+            slot = size++;
+            slotByBookId.put(bookId, slot);
+            bookIds[slot] = bookId;
+        }
+        System.arraycopy(vector, 0, vectors, slot * dimension, dimension);
+        norms[slot] = norm(vector);
+        return true;
+    }
+
+    // Xóa slot của sách, dời slot cuối vào chỗ trống (gọi khi đang giữ write lock)
+    private boolean removeSlot(long bookId) {
+        Integer slot = slotByBookId.remove(bookId);
+        if (slot == null) {
+            return false;
+        }
+        int last = size - 1;
+        if (slot != last) {
+            long movedId = bookIds[last];
+            bookIds[slot] = movedId;
+            norms[slot] = norms[last];
+            System.arraycopy(vectors, last * dimension, vectors, slot * dimension, dimension);
+            slotByBookId.put(movedId, slot);
+        }
+        size--;
+        return true;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= bookIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(required, bookIds.length * 2);
+        bookIds = Arrays.copyOf(bookIds, newCapacity);
+        norms = Arrays.copyOf(norms, newCapacity);
+        vectors = Arrays.copyOf(vectors, newCapacity * dimension);
+    }
+
+    private static float norm(float[] vector) {
+        double sum = 0.0;
+        for (float v : vector) {
+            sum += v * v;
+        }
+        return (float) Math.sqrt(sum);
+    }
+}
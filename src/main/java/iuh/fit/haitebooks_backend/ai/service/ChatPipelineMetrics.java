@@ -0,0 +1,68 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import iuh.fit.haitebooks_backend.util.LatencyWindow;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency từng bước của chatbot (Admin xem tại /api/ai/stats/chat-latency)
+ * - Mỗi bước giữ WINDOW mẫu gần nhất để tính avg / p50 / p95 / p99 / max
+ * - Đếm riêng số lần quá timeout và số lần lỗi (vẫn tính thời gian đã chờ vào cửa sổ)
+ */
+@Component
+public class ChatPipelineMetrics {
+
+    private static final int WINDOW = 1024;
+
+    public enum Stage {
+        RETRIEVAL,      // Tìm sách liên quan (embed câu hỏi + vector search / keyword)
+        ORDER_CONTEXT,  // Đọc đơn hàng của user
+        CONTEXT,        // Toàn bộ bước dựng context (RETRIEVAL và ORDER_CONTEXT chạy song song)
+        FIRST_TOKEN,    // Từ lúc nhận tin nhắn đến token đầu tiên (chỉ với stream)
+        GENERATION,     // Gọi Cohere Chat
+        TOTAL
+    }
+
+    private record StageStats(LatencyWindow latency, AtomicLong timeouts, AtomicLong failures) {
+    }
+
+    private final Map<Stage, StageStats> stages = new EnumMap<>(Stage.class);
+
+    public ChatPipelineMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new StageStats(new LatencyWindow(WINDOW), new AtomicLong(), new AtomicLong()));
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        stages.get(stage).latency().record(nanos);
+    }
+
+    public void recordTimeout(Stage stage, long nanos) {
+        StageStats stats = stages.get(stage);
+        stats.timeouts().incrementAndGet();
+        stats.latency().record(nanos);
+    }
+
+    public void recordFailure(Stage stage, long nanos) {
+        StageStats stats = stages.get(stage);
+        stats.failures().incrementAndGet();
+        stats.latency().record(nanos);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        stages.forEach((stage, stats) -> {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("timeouts", stats.timeouts().get());
+            summary.put("failures", stats.failures().get());
+            summary.putAll(stats.latency().summary());
+            result.put(stage.name(), summary);
+        });
+        return result;
+    }
+}
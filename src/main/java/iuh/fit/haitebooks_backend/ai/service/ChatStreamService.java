@@ -0,0 +1,122 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import iuh.fit.haitebooks_backend.ai.client.StreamCancellation;
+import iuh.fit.haitebooks_backend.dtos.response.ChatResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stream câu trả lời chatbot qua Server-Sent Events
+ * - Thread của Tomcat trả về ngay sau khi tạo SseEmitter, việc gọi Cohere chạy trên chatStreamExecutor
+ * - Các event: token ({"text": ...}) cho từng đoạn text, done (ChatResponse đầy đủ) hoặc error ({"message": ...})
+ *   khi có lỗi / stream tới Cohere bị đứt giữa chừng (các token đã gửi giữ nguyên)
+ * - Client ngắt kết nối / timeout / lỗi emitter -> đóng ngay stream tới Cohere (StreamCancellation),
+ *   không chờ tới token tiếp theo
+ */
+@Service
+public class ChatStreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatStreamService.class);
+    private static final String BUSY_MESSAGE = "Hệ thống đang bận, vui lòng thử lại sau.";
+    private static final String ERROR_MESSAGE = "Xin lỗi, có lỗi xảy ra. Vui lòng thử lại sau.";
+    private static final String INTERRUPTED_MESSAGE = "Câu trả lời bị gián đoạn, vui lòng thử lại.";
+
+    private final ChatbotService chatbotService;
+    private final Executor chatStreamExecutor;
+    private final long timeoutMs;
+
+    public ChatStreamService(ChatbotService chatbotService,
+                             @Qualifier("chatStreamExecutor") Executor chatStreamExecutor,
+                             @Value("${ai.chat.stream-timeout-ms:120000}") long timeoutMs) {
+        this.chatbotService = chatbotService;
+        this.chatStreamExecutor = chatStreamExecutor;
+        this.timeoutMs = timeoutMs;
+    }
+
+    public SseEmitter stream(String message, String conversationId, Long userId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        AtomicBoolean open = new AtomicBoolean(true);
+        StreamCancellation cancellation = new StreamCancellation();
+        emitter.onTimeout(() -> {
+            log.warn("⏱️ Stream chat quá {} ms, đóng kết nối", timeoutMs);
+            open.set(false);
+            cancellation.cancel();
+            emitter.complete();
+        });
+        emitter.onError(e -> {
+            open.set(false);
+            cancellation.cancel();
+        });
+        emitter.onCompletion(() -> {
+            open.set(false);
+            cancellation.cancel();
+        });
+
+        try {
+            chatStreamExecutor.execute(() -> run(emitter, open, cancellation, message, conversationId, userId));
+        } catch (TaskRejectedException e) {
+            log.warn("🚫 Hàng đợi stream chat đã đầy, từ chối yêu cầu");
+            send(emitter, open, "error", Map.of("message", BUSY_MESSAGE));
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void run(SseEmitter emitter, AtomicBoolean open, StreamCancellation cancellation,
+                     String message, String conversationId, Long userId) {
+        try {
+            Map<String, Object> result = chatbotService.streamChat(message, conversationId, userId,
+                    token -> send(emitter, open, "token", Map.of("text", token)), cancellation);
+            if (!open.get()) {
+                return;
+            }
+            if (Boolean.TRUE.equals(result.get("interrupted"))) {
+                send(emitter, open, "error", Map.of("message", INTERRUPTED_MESSAGE,
+                        "conversationId", result.get("conversationId")));
+                emitter.complete();
+                return;
+            }
+            ChatResponse response = new ChatResponse(
+                    (String) result.get("response"),
+                    (List<String>) result.get("suggestedBooks"),
+                    (List<String>) result.get("sources"),
+                    (String) result.get("conversationId")
+            );
+            send(emitter, open, "done", response);
+            emitter.complete();
+        } catch (Exception e) {
+            log.error("❌ Lỗi khi stream chat: {}", e.getMessage(), e);
+            send(emitter, open, "error", Map.of("message", ERROR_MESSAGE));
+            emitter.complete();
+        }
+    }
+
+    // Data gửi dạng JSON để xuống dòng trong text không làm vỡ khung SSE
+    private static boolean send(SseEmitter emitter, AtomicBoolean open, String event, Object data) {
+        if (!open.get()) {
+            return false;
+        }
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // Client đã đóng kết nối hoặc emitter đã hoàn tất
+            log.debug("🔌 Không gửi được event {}: {}", event, e.getMessage());
+            open.set(false);
+            return false;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package iuh.fit.haitebooks_backend.ai.service;
 
+import iuh.fit.haitebooks_backend.ai.client.AiHttpClient;
+import iuh.fit.haitebooks_backend.ai.client.LineStream;
+import iuh.fit.haitebooks_backend.ai.client.StreamCancellation;
 import iuh.fit.haitebooks_backend.dtos.response.BookResponse;
 import iuh.fit.haitebooks_backend.dtos.response.OrderResponse;
 import iuh.fit.haitebooks_backend.mapper.BookMapper;
@@ -10,13 +13,26 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.Arrays;
 
@@ -28,16 +44,40 @@ public class ChatbotService {
     @Value("${COHERE_API_KEY}")
     private String cohereApiKey;
 
-    private static final String CHAT_API_URL = "https://api.cohere.ai/v1/chat";
     private static final String EMBED_API_URL = "https://api.cohere.ai/v1/embed";
-
-    private final RestTemplate restTemplate = new RestTemplate();
+    private static final String CHAT_MODEL = "command-r-08-2024";
+    // Thời gian chờ tối đa đến khi Cohere trả về header của stream (giữa các token: ai.http.stream-idle-timeout-ms)
+    private static final Duration STREAM_RESPONSE_TIMEOUT = Duration.ofSeconds(30);
+    private static final int ORDER_CONTEXT_LIMIT = 5;
+    // Số sách của các lượt trước được giữ lại trong context của lượt tiếp theo
+    private static final int CARRIED_BOOK_LIMIT = 5;
+
+    private final String chatApiUrl;
+    private final AiHttpClient aiHttpClient;
+    private final RestTemplate restTemplate;
     private final BookRepository bookRepository;
     private final CohereEmbeddingService embeddingService;
     private final OrderService orderService;
     private final BookSearchService bookSearchService;
+    private final Executor chatContextExecutor;
+    private final ChatPipelineMetrics metrics;
+    private final AIService aiService;
+    private final SemanticAnswerCache answerCache;
+    private final ConversationStore conversationStore;
+    private final long retrievalTimeoutMs;
+    private final long orderContextTimeoutMs;
 
     // System prompt cho chatbot
+    // Dùng khi bước tìm sách quá hạn / lỗi: không được khẳng định cửa hàng có hay không có sách
+    private static final String RETRIEVAL_UNAVAILABLE_CONTEXT = """
+        📚 THÔNG TIN SÁCH TRONG CỬA HÀNG:
+        Hiện không tra cứu được danh sách sách của cửa hàng.
+        
+        ⚠️ HƯỚNG DẪN:
+        - Không khẳng định cửa hàng có hoặc không có một cuốn sách cụ thể
+        - Có thể gợi ý sách từ kiến thức chung và mời khách hàng tìm kiếm trên website để kiểm tra sách có sẵn
+        """;
+
     private static final String SYSTEM_PROMPT = """
         Bạn là trợ lý AI thân thiện của cửa hàng sách HaiTeBooks. 
         Nhiệm vụ của bạn là:
@@ -76,7 +116,26 @@ public class ChatbotService {
     public ChatbotService(BookRepository bookRepository, 
                          CohereEmbeddingService embeddingService,
                          OrderService orderService,
-                         BookSearchService bookSearchService) {
+                         AiHttpClient aiHttpClient,
+                         BookSearchService bookSearchService,
+                         @Value("${cohere.api.base-url:https://api.cohere.ai}") String baseUrl,
+                         @Qualifier("chatContextExecutor") Executor chatContextExecutor,
+                         ChatPipelineMetrics metrics,
+                         AIService aiService,
+                         SemanticAnswerCache answerCache,
+                         ConversationStore conversationStore,
+                         @Value("${ai.chat.retrieval-timeout-ms:5000}") long retrievalTimeoutMs,
+                         @Value("${ai.chat.order-context-timeout-ms:2000}") long orderContextTimeoutMs) {
+        this.chatApiUrl = baseUrl.replaceAll("/+$", "") + "/v1/chat";
+        this.aiHttpClient = aiHttpClient;
+        this.restTemplate = aiHttpClient.restTemplate(AiHttpClient.Endpoint.COHERE_CHAT);
+        this.chatContextExecutor = chatContextExecutor;
+        this.metrics = metrics;
+        this.aiService = aiService;
+        this.answerCache = answerCache;
+        this.conversationStore = conversationStore;
+        this.retrievalTimeoutMs = retrievalTimeoutMs;
+        this.orderContextTimeoutMs = orderContextTimeoutMs;
         this.bookRepository = bookRepository;
         this.embeddingService = embeddingService;
         this.orderService = orderService;
@@ -86,74 +145,316 @@ public class ChatbotService {
     /**
      * Xử lý tin nhắn từ khách hàng và trả lời
      * @param userMessage Tin nhắn từ khách hàng
-     * @param conversationId ID cuộc hội thoại (optional)
+     * @param conversationId ID cuộc hội thoại (optional - lượt sau gửi lại ID trong response để chatbot nhớ các lượt trước)
      * @param userId ID của user (optional - nếu đã đăng nhập)
      */
     public Map<String, Object> chat(String userMessage, String conversationId, Long userId) {
         log.info("💬 Nhận tin nhắn từ user: {} (userId: {})", userMessage, userId);
+        long start = System.nanoTime();
+        conversationId = conversationStore.resolveId(conversationId, userId);
 
         try {
-            // 1. Tìm kiếm sách liên quan (RAG)
-            List<Book> relevantBooks = findRelevantBooks(userMessage);
-            log.info("📚 Tìm thấy {} sách liên quan", relevantBooks.size());
+            // 1-4. Tìm sách liên quan (RAG) + thông tin đơn hàng -> context (chạy song song)
+            ChatContext prepared = prepareContext(userMessage, userId, conversationStore.get(conversationId, userId));
+
+            // 5. Câu hỏi gần giống đã được trả lời với cùng context -> dùng lại, nếu không thì gọi Cohere Chat API
+            long generationStart = System.nanoTime();
+            float[] queryVector = prepared.cacheable() ? aiService.generateQueryEmbedding(userMessage) : null;
+            String aiResponse = queryVector != null ? answerCache.find(queryVector, prepared.bookIds()) : null;
+            boolean answered = aiResponse != null;
+            if (aiResponse == null) {
+                ChatAnswer answer = callCohereChatAPI(userMessage, prepared.context(), prepared.history());
+                metrics.record(ChatPipelineMetrics.Stage.GENERATION, System.nanoTime() - generationStart);
+                if (answer.generated() && queryVector != null) {
+                    answerCache.put(queryVector, prepared.bookIds(), answer.text());
+                }
+                answered = answer.generated();
+                aiResponse = answer.text();
+            }
+            if (answered) {
+                conversationStore.append(conversationId, userId, userMessage, aiResponse, prepared.bookIds());
+            }
 
-            // 2. Tạo context từ thông tin sách
-            String bookContext = buildContextFromBooks(relevantBooks);
+            // 6-8. Sources, sách đề xuất và response
+            Map<String, Object> response = buildResult(aiResponse, prepared.relevantBooks(), conversationId);
+            long total = System.nanoTime() - start;
+            metrics.record(ChatPipelineMetrics.Stage.TOTAL, total);
+            log.info("✅ Đã trả lời tin nhắn thành công ({} ms, sinh câu trả lời {} ms)",
+                    total / 1_000_000, (System.nanoTime() - generationStart) / 1_000_000);
+            return response;
 
-            // 3. Lấy thông tin đơn hàng nếu user đã đăng nhập
-            String orderContext = "";
-            if (userId != null) {
-                orderContext = buildOrderContext(userId, userMessage);
-                log.info("📦 Đã lấy thông tin đơn hàng cho user {}", userId);
+        } catch (Exception e) {
+            log.error("❌ Lỗi khi xử lý chat: {}", e.getMessage(), e);
+            return errorResult(conversationId);
+        }
+    }
+
+    /**
+     * Giống chat() nhưng chuyển từng đoạn text cho onToken ngay khi Cohere sinh ra (stream: true)
+     * - Stream lỗi trước token đầu tiên -> gọi API thường (có fallback model) và gửi cả câu trả lời một lần
+     * - Stream đứt giữa chừng -> giữ phần đã gửi, kết quả có "interrupted": true (không ghi vào hội thoại)
+     * @param onToken Nhận từng đoạn text, trả về false để dừng đọc stream (client đã ngắt kết nối)
+     * @param cancellation Đóng stream tới Cohere ngay khi client ngắt kết nối, không chờ token tiếp theo
+     * @return Cùng cấu trúc với chat() và thêm "interrupted", response là toàn bộ text đã gửi
+     */
+    public Map<String, Object> streamChat(String userMessage, String conversationId, Long userId,
+                                          Predicate<String> onToken, StreamCancellation cancellation) {
+        log.info("💬 Nhận tin nhắn (stream) từ user: {} (userId: {})", userMessage, userId);
+        long start = System.nanoTime();
+        conversationId = conversationStore.resolveId(conversationId, userId);
+
+        try {
+            ChatContext prepared = prepareContext(userMessage, userId, conversationStore.get(conversationId, userId));
+            long contextMillis = (System.nanoTime() - start) / 1_000_000;
+            long generationStart = System.nanoTime();
+            float[] queryVector = prepared.cacheable() ? aiService.generateQueryEmbedding(userMessage) : null;
+            String cached = queryVector != null ? answerCache.find(queryVector, prepared.bookIds()) : null;
+
+            StringBuilder streamed = new StringBuilder();
+            boolean[] clientOpen = {true};
+            boolean answered = false;
+            boolean interrupted = false;
+            Predicate<String> forward = token -> {
+                if (streamed.isEmpty()) {
+                    long firstToken = System.nanoTime() - start;
+                    metrics.record(ChatPipelineMetrics.Stage.FIRST_TOKEN, firstToken);
+                    log.info("⚡ Token đầu tiên sau {} ms (RAG + context: {} ms)",
+                            firstToken / 1_000_000, contextMillis);
+                }
+                streamed.append(token);
+                clientOpen[0] = onToken.test(token);
+                return clientOpen[0];
+            };
+
+            try {
+                if (cached != null) {
+                    answered = forward.test(cached);
+                } else if (cancellation.isCancelled()) {
+                    // Client đã ngắt kết nối trong lúc dựng context -> không gọi Cohere
+                    clientOpen[0] = false;
+                } else if (streamCohereChat(userMessage, prepared.context(), prepared.history(), forward,
+                        cancellation)) {
+                    answered = true;
+                    if (queryVector != null) {
+                        answerCache.put(queryVector, prepared.bookIds(), streamed.toString());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw e;
+            } catch (Exception e) {
+                if (cancellation.isCancelled()) {
+                    log.debug("🔌 Stream Cohere đã bị đóng theo client: {}", e.getMessage());
+                } else if (streamed.isEmpty()) {
+                    log.warn("⚠️ Stream Cohere lỗi trước token đầu tiên ({}), chuyển sang gọi thường", e.getMessage());
+                    ChatAnswer answer = callCohereChatAPI(userMessage, prepared.context(), prepared.history());
+                    if (answer.generated() && queryVector != null) {
+                        answerCache.put(queryVector, prepared.bookIds(), answer.text());
+                    }
+                    answered = forward.test(answer.text()) && answer.generated();
+                } else if (clientOpen[0]) {
+                    log.warn("⚠️ Stream Cohere bị đứt sau {} ký tự: {}", streamed.length(), e.getMessage());
+                    interrupted = true;
+                }
             }
 
-            // 4. Kết hợp context
-            String context = bookContext;
-            if (!orderContext.isEmpty()) {
-                context += "\n\n" + orderContext;
+            if (cancellation.isCancelled()) {
+                clientOpen[0] = false;
+            }
+            if (answered) {
+                conversationStore.append(conversationId, userId, userMessage, streamed.toString(), prepared.bookIds());
+            }
+            long now = System.nanoTime();
+            if (cached == null) {
+                metrics.record(ChatPipelineMetrics.Stage.GENERATION, now - generationStart);
             }
+            metrics.record(ChatPipelineMetrics.Stage.TOTAL, now - start);
+            if (!clientOpen[0]) {
+                log.info("🔌 Client đã ngắt kết nối, dừng stream sau {} ký tự", streamed.length());
+            } else {
+                log.info("✅ Đã stream xong câu trả lời ({} ký tự, {} ms)", streamed.length(),
+                        (now - start) / 1_000_000);
+            }
+            Map<String, Object> result = buildResult(streamed.toString(), prepared.relevantBooks(), conversationId);
+            result.put("interrupted", interrupted);
+            return result;
 
-            // 5. Gọi Cohere Chat API
-            String aiResponse = callCohereChatAPI(userMessage, context);
+        } catch (InterruptedException e) {
+            log.warn("⚠️ Stream chat bị gián đoạn");
+            return errorResult(conversationId);
+        } catch (Exception e) {
+            log.error("❌ Lỗi khi xử lý chat (stream): {}", e.getMessage(), e);
+            return errorResult(conversationId);
+        }
+    }
 
-            // 6. Tạo sources (danh sách sách được tham khảo - context đã dùng)
-            // Đây là những sách đã được đưa vào context để AI trả lời
-            List<String> sources = relevantBooks.stream()
-                    .limit(3) // Chỉ lấy 3 sách đầu tiên
-                    .map(Book::getTitle)
-                    .collect(Collectors.toList());
+    /**
+     * @param relevantBooks Sách tìm được cho lượt này, sau đó là sách giữ lại từ các lượt trước
+     * @param history Các lượt gần nhất của hội thoại, gửi kèm dạng chat_history
+     * @param cacheable Có thể dùng SemanticAnswerCache: đã truy xuất được sách, không kèm đơn hàng của user
+     *                  và không có lịch sử hội thoại
+     */
+    private record ChatContext(List<Book> relevantBooks, String context, List<ConversationStore.Turn> history,
+                               boolean cacheable) {
 
-            // 7. Trích xuất tên sách được đề xuất từ response của AI
-            // Nếu AI đề cập đến sách nào trong response, đó là sách được đề xuất
-            List<String> suggestedBooks = extractBookNames(aiResponse, relevantBooks);
-            
-            // Nếu không tìm thấy sách nào được đề xuất trong response,
-            // thì dùng sources làm suggestedBooks (vì đó là những sách liên quan nhất)
-            if (suggestedBooks.isEmpty() && !sources.isEmpty()) {
-                suggestedBooks = new ArrayList<>(sources);
+        private List<Long> bookIds() {
+            return relevantBooks.stream().map(Book::getId).toList();
+        }
+    }
+
+    /**
+     * @param generated true nếu là câu trả lời của model (false: thông báo lỗi dựng sẵn, không được cache)
+     */
+    private record ChatAnswer(String text, boolean generated) {
+    }
+
+    /**
+     * Dựng context cho prompt: tìm sách (RAG) và đọc đơn hàng chạy song song trên chatContextExecutor
+     * Mỗi bước có timeout riêng; bước nào quá hạn / lỗi thì bỏ phần context đó, vẫn trả lời với phần còn lại
+     * Lượt tiếp theo của hội thoại: giữ lại sách đã giới thiệu (chỉ gửi giá / tồn kho, không gửi lại mô tả),
+     * các lượt cũ được gửi dạng tóm tắt + vài lượt gần nhất thay vì toàn bộ
+     */
+    private ChatContext prepareContext(String userMessage, Long userId, ConversationStore.Conversation conversation) {
+        long start = System.nanoTime();
+
+        // 1. Tìm kiếm sách liên quan (RAG) - null nếu không kịp / lỗi
+        CompletableFuture<List<Book>> booksFuture = runStage(ChatPipelineMetrics.Stage.RETRIEVAL,
+                () -> findRelevantBooks(userMessage), null, retrievalTimeoutMs);
+
+        // 3. Lấy thông tin đơn hàng nếu user đã đăng nhập
+        CompletableFuture<String> orderFuture = userId == null
+                ? CompletableFuture.completedFuture("")
+                : runStage(ChatPipelineMetrics.Stage.ORDER_CONTEXT,
+                        () -> buildOrderContext(userId, userMessage), "", orderContextTimeoutMs);
+
+        List<Book> relevantBooks = booksFuture.join();
+        String orderContext = orderFuture.join();
+
+        // 2. Tạo context từ thông tin sách (kèm sách của các lượt trước)
+        boolean cacheable = relevantBooks != null && orderContext.isEmpty() && !conversation.hasHistory();
+        boolean retrieved = relevantBooks != null;
+        if (retrieved) {
+            log.info("📚 Tìm thấy {} sách liên quan", relevantBooks.size());
+        }
+        List<Book> books = withCarriedBooks(retrieved ? relevantBooks : List.of(), conversation.bookIds());
+        String bookContext = !retrieved && books.isEmpty()
+                ? RETRIEVAL_UNAVAILABLE_CONTEXT
+                : buildContextFromBooks(books, new HashSet<>(conversation.bookIds()));
+        if (!orderContext.isEmpty()) {
+            log.info("📦 Đã lấy thông tin đơn hàng cho user {}", userId);
+        }
+
+        // 4. Kết hợp context
+        String context = bookContext;
+        if (!orderContext.isEmpty()) {
+            context += "\n\n" + orderContext;
+        }
+        if (!conversation.summary().isEmpty()) {
+            context += "\n\n🗂️ TÓM TẮT CÁC LƯỢT TRƯỚC TRONG CUỘC TRÒ CHUYỆN:\n" + conversation.summary();
+        }
+        long elapsed = System.nanoTime() - start;
+        metrics.record(ChatPipelineMetrics.Stage.CONTEXT, elapsed);
+        log.info("⏱️ Dựng context xong sau {} ms", elapsed / 1_000_000);
+        return new ChatContext(books, context, conversation.turns(), cacheable);
+    }
+
+    // Sách tìm được cho lượt này, sau đó là tối đa CARRIED_BOOK_LIMIT sách gần nhất của các lượt trước
+    private List<Book> withCarriedBooks(List<Book> relevantBooks, List<Long> previousBookIds) {
+        Set<Long> present = relevantBooks.stream().map(Book::getId).collect(Collectors.toSet());
+        List<Long> carriedIds = previousBookIds.stream()
+                .filter(id -> !present.contains(id))
+                .limit(CARRIED_BOOK_LIMIT)
+                .toList();
+        if (carriedIds.isEmpty()) {
+            return relevantBooks;
+        }
+        Map<Long, Book> carried = bookRepository.findAllById(carriedIds).stream()
+                .collect(Collectors.toMap(Book::getId, book -> book));
+        List<Book> books = new ArrayList<>(relevantBooks);
+        carriedIds.stream().map(carried::get).filter(Objects::nonNull).forEach(books::add);
+        return books;
+    }
+
+    /**
+     * Chạy một bước dựng context trên chatContextExecutor, ghi latency vào ChatPipelineMetrics
+     * Quá timeoutMs hoặc lỗi -> trả fallback; bước quá hạn bị hủy (còn trong hàng đợi thì không chạy nữa,
+     * đang chạy thì bị interrupt) để không giữ thread của pool cho một kết quả không còn ai dùng
+     */
+    private <T> CompletableFuture<T> runStage(ChatPipelineMetrics.Stage stage, Supplier<T> task,
+                                              T fallback, long timeoutMs) {
+        long start = System.nanoTime();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        FutureTask<Void> work = new FutureTask<>(() -> {
+            try {
+                result.complete(task.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
             }
+        }, null);
+        try {
+            chatContextExecutor.execute(work);
+        } catch (RejectedExecutionException e) {
+            // Pool đầy -> chạy ngay trên thread hiện tại
+            log.warn("⚠️ chatContextExecutor đã đầy, chạy {} tuần tự", stage);
+            work.run();
+        }
+        return result
+                .orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .handle((value, error) -> {
+                    long elapsed = System.nanoTime() - start;
+                    if (error == null) {
+                        metrics.record(stage, elapsed);
+                        return value;
+                    }
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    if (cause instanceof TimeoutException) {
+                        work.cancel(true);
+                        metrics.recordTimeout(stage, elapsed);
+                        log.warn("⏱️ {} quá {} ms, bỏ phần context này", stage, timeoutMs);
+                    } else {
+                        metrics.recordFailure(stage, elapsed);
+                        log.warn("⚠️ {} lỗi, bỏ phần context này: {}", stage, cause.getMessage());
+                    }
+                    return fallback;
+                });
+    }
 
-            // 8. Tạo response
-            Map<String, Object> response = new HashMap<>();
-            response.put("response", aiResponse);
-            response.put("suggestedBooks", suggestedBooks);
-            response.put("sources", sources);
-            response.put("conversationId", conversationId != null ? conversationId : UUID.randomUUID().toString());
+    private Map<String, Object> buildResult(String aiResponse, List<Book> relevantBooks, String conversationId) {
+        // 6. Tạo sources (danh sách sách được tham khảo - context đã dùng)
+        // Đây là những sách đã được đưa vào context để AI trả lời
+        List<String> sources = relevantBooks.stream()
+                .limit(3) // Chỉ lấy 3 sách đầu tiên
+                .map(Book::getTitle)
+                .collect(Collectors.toList());
 
-            log.info("✅ Đã trả lời tin nhắn thành công");
-            return response;
+        // 7. Trích xuất tên sách được đề xuất từ response của AI
+        // Nếu AI đề cập đến sách nào trong response, đó là sách được đề xuất
+        List<String> suggestedBooks = extractBookNames(aiResponse, relevantBooks);
 
-        } catch (Exception e) {
-            log.error("❌ Lỗi khi xử lý chat: {}", e.getMessage(), e);
-            
-            // Fallback response
-            Map<String, Object> errorResponse = new HashMap<>();
-            errorResponse.put("response", "Xin lỗi, tôi đang gặp sự cố kỹ thuật. Vui lòng thử lại sau hoặc liên hệ bộ phận hỗ trợ.");
-            errorResponse.put("suggestedBooks", List.of());
-            errorResponse.put("sources", List.of());
-            errorResponse.put("conversationId", conversationId != null ? conversationId : UUID.randomUUID().toString());
-            return errorResponse;
+        // Nếu không tìm thấy sách nào được đề xuất trong response,
+        // thì dùng sources làm suggestedBooks (vì đó là những sách liên quan nhất)
+        if (suggestedBooks.isEmpty() && !sources.isEmpty()) {
+            suggestedBooks = new ArrayList<>(sources);
         }
+
+        // 8. Tạo response
+        Map<String, Object> response = new HashMap<>();
+        response.put("response", aiResponse);
+        response.put("suggestedBooks", suggestedBooks);
+        response.put("sources", sources);
+        response.put("conversationId", conversationId != null ? conversationId : UUID.randomUUID().toString());
+        return response;
+    }
+
+    private Map<String, Object> errorResult(String conversationId) {
+        // Fallback response
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("response", "Xin lỗi, tôi đang gặp sự cố kỹ thuật. Vui lòng thử lại sau hoặc liên hệ bộ phận hỗ trợ.");
+        errorResponse.put("suggestedBooks", List.of());
+        errorResponse.put("sources", List.of());
+        errorResponse.put("conversationId", conversationId != null ? conversationId : UUID.randomUUID().toString());
+        return errorResponse;
     }
 
     /**
@@ -166,14 +467,16 @@ public class ChatbotService {
             List<BookResponse> semanticResults = bookSearchService.smartSearch(userMessage, 10);
             
             if (!semanticResults.isEmpty()) {
-                // Chuyển BookResponse về Book entity
-                List<Book> books = semanticResults.stream()
-                        .map(bookResponse -> {
-                            // Tìm Book từ ID
-                            return bookRepository.findById(bookResponse.getId()).orElse(null);
-                        })
-                        .filter(book -> book != null)
+                // Chuyển BookResponse về Book entity (một query, giữ thứ tự theo độ liên quan)
+                List<Long> ids = semanticResults.stream()
+                        .map(BookResponse::getId)
                         .limit(10) // Lấy tối đa 10 sách từ semantic search
+                        .toList();
+                Map<Long, Book> booksById = bookRepository.findAllById(ids).stream()
+                        .collect(Collectors.toMap(Book::getId, book -> book));
+                List<Book> books = ids.stream()
+                        .map(booksById::get)
+                        .filter(Objects::nonNull)
                         .collect(Collectors.toList());
                 
                 if (!books.isEmpty()) {
@@ -234,8 +537,9 @@ public class ChatbotService {
     /**
      * Xây dựng context từ danh sách sách để đưa vào prompt
      * Phân biệt khi có sách và khi không có sách trong cửa hàng
+     * @param alreadyDescribed Sách đã giới thiệu ở lượt trước của hội thoại -> chỉ gửi giá / tồn kho hiện tại
      */
-    private String buildContextFromBooks(List<Book> books) {
+    private String buildContextFromBooks(List<Book> books, Set<Long> alreadyDescribed) {
         if (books.isEmpty()) {
             return """
                 📚 THÔNG TIN SÁCH TRONG CỬA HÀNG:
@@ -265,6 +569,17 @@ public class ChatbotService {
         
         for (int i = 0; i < books.size(); i++) {
             Book book = books.get(i);
+            if (alreadyDescribed.contains(book.getId())) {
+                context.append(String.format(
+                    "%d. Tên sách: %s (đã giới thiệu ở lượt trước)\n" +
+                    "   Giá: %.0f VNĐ - Tồn kho: %d cuốn\n\n",
+                    i + 1,
+                    book.getTitle(),
+                    book.getPrice(),
+                    book.getStock()
+                ));
+                continue;
+            }
             context.append(String.format(
                 "%d. Tên sách: %s\n" +
                 "   Tác giả: %s\n" +
@@ -295,7 +610,7 @@ public class ChatbotService {
     /**
      * Gọi Cohere Chat API
      */
-    private String callCohereChatAPI(String userMessage, String context) {
+    private ChatAnswer callCohereChatAPI(String userMessage, String context, List<ConversationStore.Turn> history) {
         try {
             HttpHeaders headers = new HttpHeaders();
             headers.set("Authorization", "Bearer " + cohereApiKey);
@@ -309,7 +624,7 @@ public class ChatbotService {
 
             JSONObject body = new JSONObject();
             // Sử dụng command-r-08-2024 (model mới thay thế command-r đã bị xóa vào 15/09/2025)
-            body.put("model", "command-r-08-2024");
+            body.put("model", CHAT_MODEL);
             
             body.put("message", userMessage);
             
@@ -319,6 +634,7 @@ public class ChatbotService {
                 fullPreamble += "\n\n" + context;
             }
             body.put("preamble", fullPreamble);
+            putChatHistory(body, history);
 
             body.put("temperature", 0.7);
             body.put("max_tokens", 1000);
@@ -326,9 +642,8 @@ public class ChatbotService {
 
             HttpEntity<String> request = new HttpEntity<>(body.toString(), headers);
 
-            ResponseEntity<String> response = restTemplate.exchange(
-                    CHAT_API_URL, HttpMethod.POST, request, String.class
-            );
+            ResponseEntity<String> response = aiHttpClient.call(AiHttpClient.Endpoint.COHERE_CHAT,
+                    () -> restTemplate.exchange(chatApiUrl, HttpMethod.POST, request, String.class));
 
             if (response.getStatusCode() == HttpStatus.OK) {
                 JSONObject json = new JSONObject(response.getBody());
@@ -338,10 +653,10 @@ public class ChatbotService {
                     String text = json.getString("text");
                     log.info("✅ Nhận response từ Cohere: {}", 
                         text.length() > 100 ? text.substring(0, 100) + "..." : text);
-                    return text;
+                    return new ChatAnswer(text, true);
                 } else {
                     log.warn("⚠️ Response không có field 'text': {}", json.toString());
-                    return "Xin lỗi, tôi không thể tạo câu trả lời. Vui lòng thử lại sau.";
+                    return new ChatAnswer("Xin lỗi, tôi không thể tạo câu trả lời. Vui lòng thử lại sau.", false);
                 }
             } else {
                 log.error("⚠️ Lỗi API: {} - {}", response.getStatusCode(), response.getBody());
@@ -350,10 +665,10 @@ public class ChatbotService {
                 if (response.getStatusCode() == HttpStatus.NOT_FOUND || 
                     response.getStatusCode() == HttpStatus.BAD_REQUEST) {
                     log.info("🔄 Thử fallback với model khác...");
-                    return tryFallbackChat(userMessage, context);
+                    return tryFallbackChat(userMessage, context, history);
                 }
                 
-                return "Xin lỗi, tôi không thể xử lý câu hỏi này ngay bây giờ. Vui lòng thử lại sau.";
+                return new ChatAnswer("Xin lỗi, tôi không thể xử lý câu hỏi này ngay bây giờ. Vui lòng thử lại sau.", false);
             }
 
         } catch (HttpClientErrorException e) {
@@ -364,14 +679,93 @@ public class ChatbotService {
             if (e.getStatusCode() == HttpStatus.NOT_FOUND || 
                 e.getStatusCode() == HttpStatus.BAD_REQUEST) {
                 log.info("🔄 Thử fallback với model khác...");
-                return tryFallbackChat(userMessage, context);
+                return tryFallbackChat(userMessage, context, history);
             }
             
-            return "Xin lỗi, có lỗi xảy ra khi xử lý câu hỏi của bạn. Vui lòng thử lại sau.";
+            return new ChatAnswer("Xin lỗi, có lỗi xảy ra khi xử lý câu hỏi của bạn. Vui lòng thử lại sau.", false);
         } catch (Exception e) {
             log.error("❌ Lỗi khi gọi Cohere Chat API: {}", e.getMessage(), e);
-            return "Xin lỗi, có lỗi xảy ra khi xử lý câu hỏi của bạn. Vui lòng thử lại sau.";
+            return new ChatAnswer("Xin lỗi, có lỗi xảy ra khi xử lý câu hỏi của bạn. Vui lòng thử lại sau.", false);
+        }
+    }
+
+    /**
+     * Gọi Cohere Chat API với stream: true
+     * Cohere trả về mỗi dòng một JSON event: text-generation (kèm "text") ... stream-end
+     * Không thử lại (token đã gửi cho client), lượt gọi giữ chỗ trong giới hạn đồng thời của COHERE_CHAT tới khi đọc xong
+     * Cohere ngừng gửi quá stream-idle-timeout-ms -> đóng stream, trả lại thread và lượt gọi (HttpTimeoutException)
+     * @param onToken Trả về false -> đóng stream ngay (giải phóng kết nối tới Cohere)
+     * @return true nếu nhận đủ câu trả lời (tới stream-end), false nếu dừng sớm vì client ngắt kết nối
+     */
+    private boolean streamCohereChat(String userMessage, String context, List<ConversationStore.Turn> history,
+                                     Predicate<String> onToken, StreamCancellation cancellation) throws Exception {
+        JSONObject body = new JSONObject();
+        body.put("model", CHAT_MODEL);
+        body.put("message", userMessage);
+        body.put("preamble", context.isEmpty() ? SYSTEM_PROMPT : SYSTEM_PROMPT + "\n\n" + context);
+        putChatHistory(body, history);
+        body.put("temperature", 0.7);
+        body.put("max_tokens", 1000);
+        body.put("stream", true);
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(chatApiUrl))
+                .timeout(STREAM_RESPONSE_TIMEOUT)
+                .header("Authorization", "Bearer " + cohereApiKey)
+                .header("Cohere-Version", "2022-12-06")
+                .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+
+        return aiHttpClient.callOnce(AiHttpClient.Endpoint.COHERE_CHAT, () -> readChatStream(request, onToken, cancellation));
+    }
+
+    // RestTemplate đọc hết body mới trả về -> stream đọc từng dòng khi tới (LineStream, có idle timeout)
+    // HTTP 5xx từ Cohere được LineStream ném ra dạng IOException -> tính vào circuit breaker như lỗi kết nối
+    private boolean readChatStream(HttpRequest request, Predicate<String> onToken, StreamCancellation cancellation)
+            throws java.io.IOException, InterruptedException {
+        try (LineStream lines = aiHttpClient.openLineStream(request)) {
+            cancellation.attach(lines);
+            String line;
+            while ((line = lines.next()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JSONObject event = new JSONObject(line);
+                String type = event.optString("event_type");
+                if ("text-generation".equals(type)) {
+                    String token = event.optString("text");
+                    if (!token.isEmpty() && !onToken.test(token)) {
+                        return false;
+                    }
+                } else if ("stream-end".equals(type)) {
+                    String reason = event.optString("finish_reason");
+                    if (!"COMPLETE".equals(reason) && !"MAX_TOKENS".equals(reason)) {
+                        throw new IllegalStateException("Cohere stream kết thúc với finish_reason=" + reason);
+                    }
+                    return true;
+                }
+            }
+            if (lines.isClosed()) {
+                // Bị đóng từ phía client (StreamCancellation)
+                return false;
+            }
+        } finally {
+            cancellation.detach(lines);
         }
+        throw new IllegalStateException("Cohere stream đóng trước stream-end");
+    }
+
+    // Các lượt gần nhất của hội thoại theo định dạng chat_history của Cohere
+    private static void putChatHistory(JSONObject body, List<ConversationStore.Turn> history) {
+        if (history.isEmpty()) {
+            return;
+        }
+        JSONArray chatHistory = new JSONArray();
+        for (ConversationStore.Turn turn : history) {
+            chatHistory.put(new JSONObject().put("role", "USER").put("message", turn.question()));
+            chatHistory.put(new JSONObject().put("role", "CHATBOT").put("message", turn.answer()));
+        }
+        body.put("chat_history", chatHistory);
     }
 
     /**
@@ -410,7 +804,7 @@ public class ChatbotService {
      * Fallback chat với model khác nếu model chính không khả dụng
      * Thử theo thứ tự: command-a-03-2025 -> command-r-plus-08-2024
      */
-    private String tryFallbackChat(String userMessage, String context) {
+    private ChatAnswer tryFallbackChat(String userMessage, String context, List<ConversationStore.Turn> history) {
         // Danh sách các model fallback theo thứ tự ưu tiên
         String[] fallbackModels = {
             "command-a-03-2025",      // Model mới nhất và mạnh nhất
@@ -430,19 +824,19 @@ public class ChatbotService {
                 body.put("model", model);
                 body.put("message", userMessage);
                 body.put("preamble", SYSTEM_PROMPT + "\n\n" + context);
+                putChatHistory(body, history);
                 body.put("temperature", 0.7);
                 body.put("max_tokens", 800);
 
                 HttpEntity<String> request = new HttpEntity<>(body.toString(), headers);
-                ResponseEntity<String> response = restTemplate.exchange(
-                        CHAT_API_URL, HttpMethod.POST, request, String.class
-                );
+                ResponseEntity<String> response = aiHttpClient.call(AiHttpClient.Endpoint.COHERE_CHAT,
+                        () -> restTemplate.exchange(chatApiUrl, HttpMethod.POST, request, String.class));
 
                 if (response.getStatusCode() == HttpStatus.OK) {
                     JSONObject json = new JSONObject(response.getBody());
                     if (json.has("text")) {
                         log.info("✅ Fallback thành công với model: {}", model);
-                        return json.getString("text");
+                        return new ChatAnswer(json.getString("text"), true);
                     }
                 }
             } catch (HttpClientErrorException e) {
@@ -457,7 +851,7 @@ public class ChatbotService {
         }
         
         log.error("❌ Tất cả các model fallback đều không khả dụng");
-        return "Xin lỗi, hệ thống đang gặp sự cố. Vui lòng liên hệ bộ phận hỗ trợ.";
+        return new ChatAnswer("Xin lỗi, hệ thống đang gặp sự cố. Vui lòng liên hệ bộ phận hỗ trợ.", false);
     }
 
     /**
@@ -477,10 +871,10 @@ public class ChatbotService {
                                      lowerMessage.contains("giao hàng") ||
                                      lowerMessage.contains("shipping");
 
-            // Lấy danh sách đơn hàng
-            List<OrderResponse> orders = orderService.findByUser(userId);
+            // Chỉ đọc vài đơn gần nhất + tổng số đơn (không load toàn bộ lịch sử)
+            List<OrderResponse> recentOrders = orderService.findRecentByUser(userId, ORDER_CONTEXT_LIMIT);
             
-            if (orders.isEmpty()) {
+            if (recentOrders.isEmpty()) {
                 if (askingAboutOrder) {
                     return "Khách hàng chưa có đơn hàng nào trong hệ thống.";
                 }
@@ -488,13 +882,7 @@ public class ChatbotService {
             }
 
             StringBuilder context = new StringBuilder("Thông tin đơn hàng của khách hàng:\n\n");
-            context.append(String.format("Tổng số đơn hàng: %d\n\n", orders.size()));
-
-            // Chỉ lấy 5 đơn hàng gần nhất để không quá dài
-            List<OrderResponse> recentOrders = orders.stream()
-                    .sorted((a, b) -> b.getOrderDate().compareTo(a.getOrderDate()))
-                    .limit(5)
-                    .collect(Collectors.toList());
+            context.append(String.format("Tổng số đơn hàng: %d\n\n", orderService.countByUser(userId)));
 
             for (OrderResponse order : recentOrders) {
                 context.append(String.format(
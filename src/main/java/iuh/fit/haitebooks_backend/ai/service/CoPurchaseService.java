@@ -0,0 +1,187 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import iuh.fit.haitebooks_backend.event.OrderCreatedEvent;
+import iuh.fit.haitebooks_backend.repository.BookCoPurchaseJdbcRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Duy trì ma trận đồng mua item-item (book_co_purchases) cho "Users who bought X also bought Y"
+ * - Cập nhật tăng dần sau khi đơn hàng mới được commit (chỉ đếm sách user mua lần đầu)
+ * - Rebuild toàn bộ định kỳ trong background để sửa sai lệch (đơn bị xóa, cập nhật đồng thời...)
+ * - Điểm gợi ý = Jaccard giữa tập người mua của hai sách, tra trực tiếp theo các sách user đã mua
+ */
+@Service
+public class CoPurchaseService {
+
+    private static final Logger log = LoggerFactory.getLogger(CoPurchaseService.class);
+
+    private final BookCoPurchaseJdbcRepository coPurchaseRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor executor;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+
+    public CoPurchaseService(BookCoPurchaseJdbcRepository coPurchaseRepository,
+                             PlatformTransactionManager transactionManager,
+                             @Qualifier("embeddingTaskExecutor") Executor executor) {
+        this.coPurchaseRepository = coPurchaseRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.executor = executor;
+    }
+
+    /**
+     * Ma trận còn trống (lần đầu triển khai) -> build từ lịch sử đơn hàng
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (coPurchaseRepository.count() == 0) {
+            rebuildAsync();
+        }
+    }
+
+    /**
+     * Rebuild định kỳ mỗi đêm (mặc định 3h30 theo giờ Việt Nam)
+     */
+    @Scheduled(cron = "${ai.co-purchase.rebuild-cron:0 30 3 * * ?}", zone = "Asia/Ho_Chi_Minh")
+    public void scheduledRebuild() {
+        log.info("🔄 [SCHEDULER] Bắt đầu rebuild ma trận đồng mua...");
+        if (!rebuildAsync()) {
+            log.info("⏳ [SCHEDULER] Ma trận đồng mua đang được rebuild, bỏ qua lượt này");
+        }
+    }
+
+    /**
+     * Cập nhật ma trận khi đơn hàng mới đã commit
+     * Chỉ các sách user mua lần đầu mới làm tăng đếm (đếm theo người dùng, không theo số đơn)
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onOrderCreated(OrderCreatedEvent event) {
+        if (event.userId() == null) {
+            return;
+        }
+        try {
+            List<Long> orderBooks = coPurchaseRepository.findOrderBookIds(event.orderId());
+            Set<Long> previousBooks = new HashSet<>(
+                    coPurchaseRepository.findUserBookIdsExcludingOrder(event.userId(), event.orderId()));
+            List<Long> newBooks = orderBooks.stream()
+                    .filter(bookId -> !previousBooks.contains(bookId))
+                    .toList();
+            if (newBooks.isEmpty()) {
+                return;
+            }
+
+            List<BookCoPurchaseJdbcRepository.Pair> pairs = new ArrayList<>();
+            for (Long bookId : newBooks) {
+                // Mỗi cặp có hướng giữa các sách mới được sinh đúng một lần khi duyệt cả hai phía
+                for (Long otherBookId : newBooks) {
+                    pairs.add(new BookCoPurchaseJdbcRepository.Pair(bookId, otherBookId));
+                }
+                for (Long otherBookId : previousBooks) {
+                    pairs.add(new BookCoPurchaseJdbcRepository.Pair(bookId, otherBookId));
+                    pairs.add(new BookCoPurchaseJdbcRepository.Pair(otherBookId, bookId));
+                }
+            }
+            coPurchaseRepository.incrementPairs(pairs);
+            log.debug("🛒 Đã cập nhật {} cặp đồng mua cho đơn #{}", pairs.size(), event.orderId());
+        } catch (Exception e) {
+            // Không ảnh hưởng đơn hàng đã commit, lượt rebuild kế tiếp sẽ bù lại
+            log.warn("⚠️ Không thể cập nhật ma trận đồng mua cho đơn #{}: {}", event.orderId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuild trong background, trả về false nếu đang có lượt rebuild khác
+     */
+    public boolean rebuildAsync() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    rebuild();
+                } catch (Exception e) {
+                    log.error("❌ Lỗi khi rebuild ma trận đồng mua: {}", e.getMessage(), e);
+                } finally {
+                    rebuilding.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            rebuilding.set(false);
+            throw e;
+        }
+        return true;
+    }
+
+    public boolean isRebuilding() {
+        return rebuilding.get();
+    }
+
+    /**
+     * Điểm "Users who bought X also bought Y" cho các sách user chưa mua
+     * score(Y) = max theo X đã mua của |buyers(X) ∩ buyers(Y)| / |buyers(X) ∪ buyers(Y)|
+     * @param purchasedBookIds Các sách user đã mua
+     * @return Map<BookId, Score> - Điểm số từ 0.0 đến 1.0
+     */
+    public Map<Long, Double> alsoBoughtScores(Set<Long> purchasedBookIds) {
+        Map<Long, Double> scores = new HashMap<>();
+        if (purchasedBookIds.isEmpty()) {
+            return scores;
+        }
+
+        Map<Long, Integer> buyers = new HashMap<>();
+        List<BookCoPurchaseJdbcRepository.Row> neighbours = new ArrayList<>();
+        for (BookCoPurchaseJdbcRepository.Row row : coPurchaseRepository.findByBookIds(purchasedBookIds)) {
+            if (row.bookId() == row.otherBookId()) {
+                buyers.put(row.bookId(), row.pairCount());
+            } else if (!purchasedBookIds.contains(row.otherBookId())) {
+                neighbours.add(row);
+            }
+        }
+        if (neighbours.isEmpty()) {
+            return scores;
+        }
+
+        Set<Long> candidates = new HashSet<>();
+        for (BookCoPurchaseJdbcRepository.Row row : neighbours) {
+            candidates.add(row.otherBookId());
+        }
+        for (BookCoPurchaseJdbcRepository.Row row : coPurchaseRepository.findBuyerCounts(candidates)) {
+            buyers.put(row.bookId(), row.pairCount());
+        }
+
+        for (BookCoPurchaseJdbcRepository.Row row : neighbours) {
+            int both = row.pairCount();
+            int union = buyers.getOrDefault(row.bookId(), both) + buyers.getOrDefault(row.otherBookId(), both) - both;
+            if (both <= 0 || union <= 0) {
+                continue;
+            }
+            scores.merge(row.otherBookId(), Math.min((double) both / union, 1.0), Math::max);
+        }
+
+        return scores;
+    }
+
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        Integer rows = transactionTemplate.execute(tx -> coPurchaseRepository.rebuildAll());
+        log.info("✅ Đã rebuild ma trận đồng mua: {} dòng ({} ms)", rows, System.currentTimeMillis() - start);
+    }
+}
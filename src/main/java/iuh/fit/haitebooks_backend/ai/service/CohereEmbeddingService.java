@@ -1,5 +1,7 @@
 package iuh.fit.haitebooks_backend.ai.service;
 
+import iuh.fit.haitebooks_backend.ai.client.AiHttpClient;
+import iuh.fit.haitebooks_backend.ai.client.OutboundCallRejectedException;
 import jakarta.annotation.PostConstruct;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -8,91 +10,210 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Gọi Cohere Embed API
+ * - Hỗ trợ gửi nhiều text trong một request (tối đa 96 text / request theo giới hạn của API)
+ * - Sinh embedding hàng loạt (backfill) được điều tiết bởi AdaptiveRateLimiter, tự giảm tốc và chờ khi gặp 429
+ * - Embedding câu truy vấn (tìm kiếm, chatbot) chạy trên thread của request: không chờ limiter, gặp 429 thì trả về
+ *   rỗng ngay (nơi gọi tự fallback) và báo cho limiter để backfill giảm tốc
+ * - Kết nối, timeout, giới hạn đồng thời và retry lỗi tạm thời do AiHttpClient đảm nhận
+ */
 @Service
 public class CohereEmbeddingService {
 
     private static final Logger log = LoggerFactory.getLogger(CohereEmbeddingService.class);
+    public static final int MAX_TEXTS_PER_REQUEST = 96;
+    private static final int MAX_THROTTLED_RETRIES = 8;
 
     @Value("${COHERE_API_KEY}")
     private String cohereApiKey;
 
-    private static final String API_URL = "https://api.cohere.ai/v1/embed";
-
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final String apiUrl;
+    private final AdaptiveRateLimiter rateLimiter;
+    private final AiHttpClient aiHttpClient;
+    private final RestTemplate restTemplate;
+
+    public CohereEmbeddingService(AiHttpClient aiHttpClient,
+                                  @Value("${cohere.api.base-url:https://api.cohere.ai}") String baseUrl,
+                                  @Value("${ai.embedding.rate-limit.initial-per-second:1.0}") double initialRate,
+                                  @Value("${ai.embedding.rate-limit.min-per-second:0.1}") double minRate,
+                                  @Value("${ai.embedding.rate-limit.max-per-second:5.0}") double maxRate) {
+        this.apiUrl = baseUrl.replaceAll("/+$", "") + "/v1/embed";
+        this.rateLimiter = new AdaptiveRateLimiter(initialRate, minRate, maxRate, Math.max(1.0, maxRate));
+        this.aiHttpClient = aiHttpClient;
+        this.restTemplate = aiHttpClient.restTemplate(AiHttpClient.Endpoint.COHERE_EMBED);
+    }
 
     @PostConstruct
     public void checkEndpoint() {
-        log.info("✅ Using Cohere endpoint: {}", API_URL);
+        log.info("✅ Using Cohere endpoint: {}", apiUrl);
     }
 
     public List<Double> generateEmbedding(String text) {
-        int maxRetries = 3;
-        int retryDelayMs = 3000; // Tăng delay lên 3 giây
+        List<float[]> embeddings = generateEmbeddings(List.of(text));
+        if (embeddings.isEmpty()) {
+            return List.of();
+        }
+        float[] vector = embeddings.get(0);
+        List<Double> embedding = new ArrayList<>(vector.length);
+        for (float v : vector) {
+            embedding.add((double) v);
+        }
+        return embedding;
+    }
+
+    /**
+     * Sinh embedding cho nhiều text trong một request (backfill - chờ theo rate limiter, gặp 429 thì chờ và thử lại)
+     * @param texts Tối đa MAX_TEXTS_PER_REQUEST text
+     * @return Danh sách vector theo đúng thứ tự texts, rỗng nếu thất bại
+     */
+    public List<float[]> generateEmbeddings(List<String> texts) {
+        if (texts == null || texts.isEmpty()) {
+            return List.of();
+        }
+        if (texts.size() > MAX_TEXTS_PER_REQUEST) {
+            throw new IllegalArgumentException("Tối đa " + MAX_TEXTS_PER_REQUEST + " text cho mỗi request embed");
+        }
 
-        for (int attempt = 1; attempt <= maxRetries; attempt++) {
+        int throttled = 0;
+        while (throttled < MAX_THROTTLED_RETRIES) {
             try {
-                String textPreview = text.length() > 60 ? text.substring(0, 60) + "..." : text;
-                log.debug("🔄 Gọi Cohere API lần {} cho text: \"{}\"", attempt, textPreview);
-
-                // Header
-                HttpHeaders headers = new HttpHeaders();
-                headers.set("Authorization", "Bearer " + cohereApiKey);
-                headers.set("Cohere-Version", "2022-12-06");
-                headers.setContentType(MediaType.APPLICATION_JSON);
-
-                // Body
-                JSONObject body = new JSONObject();
-                body.put("model", "embed-multilingual-v3.0");
-                body.put("input_type", "search_document");
-                body.put("texts", new JSONArray().put(text));
-
-
-                HttpEntity<String> request = new HttpEntity<>(body.toString(), headers);
-
-                // Gửi request
-                ResponseEntity<String> response = restTemplate.exchange(
-                        API_URL, HttpMethod.POST, request, String.class
-                );
-
-                if (response.getStatusCode() == HttpStatus.OK) {
-                    JSONObject json = new JSONObject(response.getBody());
-                    JSONArray embeddingsArray = json.getJSONArray("embeddings").getJSONArray(0);
-
-                    List<Double> embedding = new ArrayList<>();
-                    for (int i = 0; i < embeddingsArray.length(); i++) {
-                        embedding.add(embeddingsArray.getDouble(i));
-                    }
-
-                    log.info("✅ Embedding sinh thành công ({} chiều)", embedding.size());
-                    return embedding;
-
-                } else {
-                    log.warn("⚠️ Lỗi API: {} - {}", response.getStatusCode(), response.getBody());
-                    // Nếu là rate limit (429), tăng delay trước khi retry
-                    if (response.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
-                        log.warn("🚫 Rate limit detected! Sẽ đợi lâu hơn...");
-                        retryDelayMs = 10000; // Đợi 10 giây nếu bị rate limit
-                    }
+                rateLimiter.acquire();
+                List<float[]> embeddings = requestEmbeddings(texts);
+                if (!embeddings.isEmpty()) {
+                    rateLimiter.onSuccess();
                 }
-
+                return embeddings;
+
+            } catch (HttpStatusCodeException e) {
+                if (isThrottled(e)) {
+                    throttled++;
+                    long retryAfterMs = parseRetryAfterMillis(e.getResponseHeaders());
+                    rateLimiter.onThrottled(retryAfterMs);
+                    log.warn("🚫 Rate limit detected! Giảm tốc độ còn {} request/giây (Retry-After: {} ms)",
+                            String.format("%.2f", rateLimiter.currentRate()), retryAfterMs);
+                    continue;
+                }
+                log.warn("⚠️ Lỗi API: {} - {}", e.getStatusCode(), e.getResponseBodyAsString());
+                return List.of();
+            } catch (OutboundCallRejectedException e) {
+                log.warn("⛔ Bỏ qua lượt gọi Cohere Embed: {}", e.getMessage());
+                return List.of();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("❌ Thread bị gián đoạn khi chờ gọi Cohere API");
+                return List.of();
             } catch (Exception e) {
-                log.error("❌ Lỗi khi gọi Cohere API (lần {}): {}", attempt, e.getMessage(), e);
+                log.error("❌ Lỗi khi gọi Cohere API: {}", e.getMessage(), e);
+                return List.of();
             }
+        }
 
-            if (attempt < maxRetries) {
-                try {
-                    log.debug("⏳ Đợi {}ms trước khi thử lại...", retryDelayMs);
-                    Thread.sleep(retryDelayMs);
-                } catch (InterruptedException ignored) {}
+        log.error("🚫 Không thể sinh embedding sau {} lần bị rate limit", throttled);
+        return List.of();
+    }
+
+    /**
+     * Embedding cho một câu truy vấn, gọi trên thread của request
+     * Không chờ rate limiter của backfill; bị 429 -> trả về rỗng ngay thay vì chờ Retry-After
+     * @return Vector của text, mảng rỗng nếu thất bại
+     */
+    public float[] generateQueryEmbedding(String text) {
+        if (text == null || text.isBlank()) {
+            return new float[0];
+        }
+        try {
+            List<float[]> embeddings = requestEmbeddings(List.of(text));
+            return embeddings.isEmpty() ? new float[0] : embeddings.get(0);
+        } catch (HttpStatusCodeException e) {
+            if (isThrottled(e)) {
+                // Cùng API key với backfill -> backfill giảm tốc, request hiện tại không chờ
+                rateLimiter.onThrottled(parseRetryAfterMillis(e.getResponseHeaders()));
+                log.warn("🚫 Cohere Embed bị rate limit, bỏ qua embedding cho câu truy vấn");
+            } else {
+                log.warn("⚠️ Lỗi API: {} - {}", e.getStatusCode(), e.getResponseBodyAsString());
             }
+            return new float[0];
+        } catch (OutboundCallRejectedException e) {
+            log.warn("⛔ Bỏ qua lượt gọi Cohere Embed: {}", e.getMessage());
+            return new float[0];
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("❌ Thread bị gián đoạn khi gọi Cohere API");
+            return new float[0];
+        } catch (Exception e) {
+            log.error("❌ Lỗi khi gọi Cohere API: {}", e.getMessage(), e);
+            return new float[0];
         }
+    }
 
-        log.error("🚫 Không thể sinh embedding sau {} lần thử", maxRetries);
-        return List.of();
+    // Một request embed (AiHttpClient tự thử lại khi timeout / lỗi kết nối / 5xx), rỗng nếu số vector không khớp
+    private List<float[]> requestEmbeddings(List<String> texts) throws Exception {
+        log.debug("🔄 Gọi Cohere API cho {} text", texts.size());
+
+        // Header
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", "Bearer " + cohereApiKey);
+        headers.set("Cohere-Version", "2022-12-06");
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        // Body
+        JSONObject body = new JSONObject();
+        body.put("model", "embed-multilingual-v3.0");
+        body.put("input_type", "search_document");
+        JSONArray textArray = new JSONArray();
+        texts.forEach(textArray::put);
+        body.put("texts", textArray);
+
+        HttpEntity<String> request = new HttpEntity<>(body.toString(), headers);
+        ResponseEntity<String> response = aiHttpClient.call(AiHttpClient.Endpoint.COHERE_EMBED,
+                () -> restTemplate.exchange(apiUrl, HttpMethod.POST, request, String.class));
+
+        JSONArray embeddingsArray = new JSONObject(response.getBody()).getJSONArray("embeddings");
+        List<float[]> embeddings = new ArrayList<>(embeddingsArray.length());
+        for (int i = 0; i < embeddingsArray.length(); i++) {
+            JSONArray values = embeddingsArray.getJSONArray(i);
+            float[] vector = new float[values.length()];
+            for (int j = 0; j < vector.length; j++) {
+                vector[j] = (float) values.getDouble(j);
+            }
+            embeddings.add(vector);
+        }
+        if (embeddings.size() != texts.size()) {
+            log.warn("⚠️ Cohere trả về {} embedding cho {} text", embeddings.size(), texts.size());
+            return List.of();
+        }
+        log.info("✅ Embedding sinh thành công cho {} text ({} chiều)", embeddings.size(), embeddings.get(0).length);
+        return embeddings;
+    }
+
+    private static boolean isThrottled(HttpStatusCodeException e) {
+        return e.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+
+    public AdaptiveRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    // Retry-After dạng số giây (Cohere không dùng dạng HTTP-date)
+    private static long parseRetryAfterMillis(HttpHeaders headers) {
+        if (headers == null) {
+            return 0L;
+        }
+        String value = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) {
+            return 0L;
+        }
+        try {
+            return (long) (Double.parseDouble(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
     }
 }
@@ -1,8 +1,5 @@
 package iuh.fit.haitebooks_backend.ai.service;
 
-import iuh.fit.haitebooks_backend.model.Book;
-import iuh.fit.haitebooks_backend.model.Order;
-import iuh.fit.haitebooks_backend.model.Order_Item;
 import iuh.fit.haitebooks_backend.model.Review;
 import iuh.fit.haitebooks_backend.repository.BookRepository;
 import iuh.fit.haitebooks_backend.repository.CartRepository;
@@ -31,17 +28,20 @@ public class CollaborativeFilteringService {
     private final CartRepository cartRepository;
     private final ReviewRepository reviewRepository;
     private final FavoriteBookRepository favoriteBookRepository;
+    private final CoPurchaseService coPurchaseService;
 
     public CollaborativeFilteringService(BookRepository bookRepository,
                                         OrderRepository orderRepository,
                                         CartRepository cartRepository,
                                         ReviewRepository reviewRepository,
-                                        FavoriteBookRepository favoriteBookRepository) {
+                                        FavoriteBookRepository favoriteBookRepository,
+                                        CoPurchaseService coPurchaseService) {
         this.bookRepository = bookRepository;
         this.orderRepository = orderRepository;
         this.cartRepository = cartRepository;
         this.reviewRepository = reviewRepository;
         this.favoriteBookRepository = favoriteBookRepository;
+        this.coPurchaseService = coPurchaseService;
     }
 
     /**
@@ -60,7 +60,7 @@ public class CollaborativeFilteringService {
         }
 
         // 2. "Users who bought X also bought Y" - Collaborative Filtering
-        Map<Long, Double> alsoBoughtScores = calculateAlsoBoughtScores(purchasedBookIds, userId);
+        Map<Long, Double> alsoBoughtScores = calculateAlsoBoughtScores(purchasedBookIds);
         mergeScores(bookScores, alsoBoughtScores, 0.7); // Weight: 0.7
 
         // 3. Sách trong giỏ hàng của user (quan tâm nhưng chưa mua - weight: 0.5)
@@ -97,85 +97,20 @@ public class CollaborativeFilteringService {
 
     /**
      * Tính điểm "Users who bought X also bought Y"
-     * Đây là collaborative filtering cốt lõi
+     * Đây là collaborative filtering cốt lõi - tra ma trận đồng mua theo các sách user đã mua
+     * thay vì quét toàn bộ bảng đơn hàng cho mỗi request
      */
-    private Map<Long, Double> calculateAlsoBoughtScores(Set<Long> userPurchasedBookIds, Long excludeUserId) {
-        Map<Long, Double> scores = new HashMap<>();
-        
-        if (userPurchasedBookIds.isEmpty()) {
-            return scores;
-        }
-
-        // Tìm tất cả user đã mua ít nhất 1 sách giống user hiện tại
-        List<Order> allOrders = orderRepository.findAll();
-        Map<Long, Set<Long>> userPurchases = new HashMap<>(); // userId -> set of bookIds
-
-        for (Order order : allOrders) {
-            if (order.getUser() == null || order.getUser().getId().equals(excludeUserId)) {
-                continue;
-            }
-            
-            Long otherUserId = order.getUser().getId();
-            Set<Long> otherUserBooks = userPurchases.computeIfAbsent(otherUserId, k -> new HashSet<>());
-            
-            if (order.getOrderItems() != null) {
-                for (Order_Item item : order.getOrderItems()) {
-                    if (item.getBook() != null) {
-                        otherUserBooks.add(item.getBook().getId());
-                    }
-                }
-            }
-        }
-
-        // Tính điểm: nếu user khác mua nhiều sách giống user hiện tại, 
-        // thì các sách khác họ mua sẽ có điểm cao
-        for (Map.Entry<Long, Set<Long>> entry : userPurchases.entrySet()) {
-            Set<Long> otherUserBooks = entry.getValue();
-            
-            // Tính độ tương đồng (Jaccard similarity)
-            Set<Long> intersection = new HashSet<>(userPurchasedBookIds);
-            intersection.retainAll(otherUserBooks);
-            
-            if (intersection.isEmpty()) {
-                continue; // Không có sách chung
-            }
-
-            Set<Long> union = new HashSet<>(userPurchasedBookIds);
-            union.addAll(otherUserBooks);
-            double similarity = (double) intersection.size() / union.size();
-
-            // Các sách user khác mua nhưng user hiện tại chưa mua
-            Set<Long> recommendedBooks = new HashSet<>(otherUserBooks);
-            recommendedBooks.removeAll(userPurchasedBookIds);
-
-            // Gán điểm dựa trên similarity
-            for (Long bookId : recommendedBooks) {
-                scores.merge(bookId, similarity, Math::max);
-            }
-        }
-
+    private Map<Long, Double> calculateAlsoBoughtScores(Set<Long> userPurchasedBookIds) {
+        Map<Long, Double> scores = coPurchaseService.alsoBoughtScores(userPurchasedBookIds);
         log.debug("🎯 Tìm thấy {} sách từ 'Users who bought X also bought Y'", scores.size());
         return scores;
     }
 
     /**
-     * Lấy danh sách sách user đã mua
+     * Lấy danh sách sách user đã mua (một query chỉ lấy ID)
      */
     private Set<Long> getPurchasedBookIds(Long userId) {
-        List<Order> userOrders = orderRepository.findByUserId(userId);
-        Set<Long> bookIds = new HashSet<>();
-        
-        for (Order order : userOrders) {
-            if (order.getOrderItems() != null) {
-                for (Order_Item item : order.getOrderItems()) {
-                    if (item.getBook() != null) {
-                        bookIds.add(item.getBook().getId());
-                    }
-                }
-            }
-        }
-        
-        return bookIds;
+        return new HashSet<>(orderRepository.findPurchasedBookIdsByUserId(userId));
     }
 
     /**
@@ -227,21 +162,15 @@ public class CollaborativeFilteringService {
         }
 
         // Lấy categories của sách đã mua
-        Set<Long> preferredCategories = new HashSet<>();
-        List<Book> purchasedBooks = bookRepository.findAllById(purchasedBookIds);
-        for (Book book : purchasedBooks) {
-            if (book.getCategory() != null) {
-                preferredCategories.add(book.getCategory().getId());
-            }
+        List<Long> preferredCategories = bookRepository.findCategoryIdsByIdIn(purchasedBookIds);
+        if (preferredCategories.isEmpty()) {
+            return scores;
         }
 
-        // Tìm sách cùng category
-        List<Book> allBooks = bookRepository.findAll();
-        for (Book book : allBooks) {
-            if (book.getCategory() != null && 
-                preferredCategories.contains(book.getCategory().getId()) &&
-                !purchasedBookIds.contains(book.getId())) {
-                scores.put(book.getId(), 0.3);
+        // Tìm sách cùng category (chỉ ID, không quét toàn bộ catalog)
+        for (Long bookId : bookRepository.findIdsByCategoryIdIn(preferredCategories)) {
+            if (!purchasedBookIds.contains(bookId)) {
+                scores.put(bookId, 0.3);
             }
         }
 
@@ -258,22 +187,16 @@ public class CollaborativeFilteringService {
             return scores;
         }
 
-        // Lấy authors của sách đã mua
-        Set<String> preferredAuthors = new HashSet<>();
-        List<Book> purchasedBooks = bookRepository.findAllById(purchasedBookIds);
-        for (Book book : purchasedBooks) {
-            if (book.getAuthor() != null && !book.getAuthor().trim().isEmpty()) {
-                preferredAuthors.add(book.getAuthor().trim().toLowerCase());
-            }
+        // Lấy authors của sách đã mua (đã trim + chữ thường)
+        List<String> preferredAuthors = bookRepository.findNormalizedAuthorsByIdIn(purchasedBookIds);
+        if (preferredAuthors.isEmpty()) {
+            return scores;
         }
 
-        // Tìm sách cùng author
-        List<Book> allBooks = bookRepository.findAll();
-        for (Book book : allBooks) {
-            if (book.getAuthor() != null && 
-                preferredAuthors.contains(book.getAuthor().trim().toLowerCase()) &&
-                !purchasedBookIds.contains(book.getId())) {
-                scores.put(book.getId(), 0.25);
+        // Tìm sách cùng author (chỉ ID, không quét toàn bộ catalog)
+        for (Long bookId : bookRepository.findIdsByNormalizedAuthorIn(preferredAuthors)) {
+            if (!purchasedBookIds.contains(bookId)) {
+                scores.put(bookId, 0.25);
             }
         }
 
@@ -0,0 +1,266 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import iuh.fit.haitebooks_backend.model.ChatConversation;
+import iuh.fit.haitebooks_backend.repository.ChatConversationRepository;
+import iuh.fit.haitebooks_backend.util.BoundedTtlCache;
+import iuh.fit.haitebooks_backend.util.DateTimeUtil;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Bộ nhớ hội thoại của chatbot theo conversationId
+ * - Giữ nguyên văn MAX_TURNS lượt gần nhất (đã cắt ngắn), các lượt cũ hơn được gộp vào bản tóm tắt cuốn chiếu
+ *   (mỗi lượt một dòng trích câu hỏi + ý đầu của câu trả lời, không gọi thêm model)
+ * - Ghi nhớ ID sách đã đưa vào context để lượt sau chỉ gửi phần chênh lệch
+ * - LRU trong bộ nhớ giới hạn số hội thoại / dung lượng / thời gian không hoạt động (BoundedTtlCache)
+ * - Tùy chọn ghi xuống bảng chat_conversations (ai.chat.conversation.persist) để hội thoại bị đẩy khỏi LRU
+ *   hoặc sau khi khởi động lại vẫn tiếp tục được
+ * Hội thoại gắn với user tạo ra nó: bộ nhớ được khóa theo (userId, conversationId), không ghi đè hội thoại của người khác
+ * - User đã đăng nhập được tự đặt ID; ID đã thuộc về người khác (bản lưu DB) -> cấp ID mới
+ * - Khách chưa đăng nhập chỉ dùng được ID do server cấp (đã có hội thoại khách với ID đó), ID khác -> cấp ID mới
+ */
+@Service
+public class ConversationStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversationStore.class);
+    private static final Pattern VALID_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final int MAX_TURNS = 3;
+    private static final int MAX_BOOK_IDS = 10;
+    private static final int MAX_QUESTION_CHARS = 500;
+    private static final int MAX_ANSWER_CHARS = 1500;
+    private static final int MAX_SUMMARY_CHARS = 1200;
+    private static final int SUMMARY_QUESTION_CHARS = 150;
+    private static final int SUMMARY_ANSWER_CHARS = 200;
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+
+    public record Turn(String question, String answer) {
+    }
+
+    /**
+     * @param bookIds Sách đã đưa vào context ở các lượt trước, mới nhất trước
+     */
+    public record Conversation(Long userId, String summary, List<Turn> turns, List<Long> bookIds) {
+
+        public static final Conversation EMPTY = new Conversation(null, "", List.of(), List.of());
+
+        public boolean hasHistory() {
+            return !turns.isEmpty() || !summary.isEmpty();
+        }
+    }
+
+    private final ChatConversationRepository conversationRepository;
+    // userId = null với khách chưa đăng nhập
+    private record Key(Long userId, String conversationId) {
+    }
+
+    private final BoundedTtlCache<Key, Conversation> cache;
+    private final boolean persist;
+    private final long idleMinutes;
+    private final Object writeMonitor = new Object();
+    private final AtomicLong restored = new AtomicLong();
+
+    public ConversationStore(ChatConversationRepository conversationRepository,
+                             @Value("${ai.chat.conversation.max-entries:10000}") int maxEntries,
+                             @Value("${ai.chat.conversation.max-bytes:67108864}") long maxBytes,
+                             @Value("${ai.chat.conversation.idle-minutes:60}") long idleMinutes,
+                             @Value("${ai.chat.conversation.persist:false}") boolean persist) {
+        this.conversationRepository = conversationRepository;
+        this.cache = new BoundedTtlCache<>(maxEntries, maxBytes, idleMinutes * 60_000L, ConversationStore::weigh);
+        this.persist = persist;
+        this.idleMinutes = idleMinutes;
+    }
+
+    /**
+     * ID dùng cho lượt này: ID client gửi nếu hợp lệ và được phép dùng, ngược lại cấp ID mới
+     * Hội thoại đã lưu DB của chính user được nạp lại vào bộ nhớ để get() đọc được
+     */
+    public String resolveId(String conversationId, Long userId) {
+        if (conversationId == null || !VALID_ID.matcher(conversationId).matches()) {
+            return newId();
+        }
+        Key key = new Key(userId, conversationId);
+        if (cache.get(key) != null) {
+            return conversationId;
+        }
+        if (persist) {
+            Conversation stored = loadFromDb(conversationId);
+            if (stored != null) {
+                if (!Objects.equals(stored.userId(), userId)) {
+                    return newId(); // ID đã thuộc về người khác
+                }
+                restored.incrementAndGet();
+                cache.put(key, stored);
+                return conversationId;
+            }
+        }
+        // Chưa có hội thoại nào với ID này: user đăng nhập được tự đặt, khách chỉ dùng ID do server cấp
+        return userId != null ? conversationId : newId();
+    }
+
+    /**
+     * @return Lịch sử hội thoại của user với ID này (đã qua resolveId), EMPTY nếu chưa có
+     */
+    public Conversation get(String conversationId, Long userId) {
+        Conversation conversation = cache.get(new Key(userId, conversationId));
+        return conversation != null ? conversation : Conversation.EMPTY;
+    }
+
+    /**
+     * Ghi thêm một lượt hỏi - đáp (chỉ câu trả lời thật, không ghi thông báo lỗi)
+     * Chỉ ghi vào hội thoại của chính user; bản lưu DB của người khác với cùng ID không bị ghi đè
+     * @param bookIds Sách đã đưa vào context ở lượt này
+     */
+    public void append(String conversationId, Long userId, String question, String answer, List<Long> bookIds) {
+        Key key = new Key(userId, conversationId);
+        Conversation updated;
+        synchronized (writeMonitor) {
+            Conversation current = cache.get(key);
+            if (current == null) {
+                current = Conversation.EMPTY;
+            }
+
+            List<Turn> turns = new ArrayList<>(current.turns());
+            turns.add(new Turn(truncate(question, MAX_QUESTION_CHARS), truncate(answer, MAX_ANSWER_CHARS)));
+            String summary = current.summary();
+            while (turns.size() > MAX_TURNS) {
+                summary = appendSummary(summary, turns.remove(0));
+            }
+
+            Set<Long> ids = new LinkedHashSet<>(bookIds);
+            ids.addAll(current.bookIds());
+            updated = new Conversation(userId, summary, List.copyOf(turns),
+                    ids.stream().limit(MAX_BOOK_IDS).toList());
+            cache.put(key, updated);
+        }
+        if (persist) {
+            saveToDb(conversationId, updated);
+        }
+    }
+
+    public BoundedTtlCache.Stats stats() {
+        return cache.stats();
+    }
+
+    public long restoredFromDb() {
+        return restored.get();
+    }
+
+    // Xóa bản lưu DB của các hội thoại không hoạt động quá idle-minutes
+    @Scheduled(cron = "${ai.chat.conversation.purge-cron:0 45 3 * * ?}", zone = "Asia/Ho_Chi_Minh")
+    @Transactional
+    public void purgeIdleConversations() {
+        if (!persist) {
+            return;
+        }
+        int deleted = conversationRepository.deleteByUpdatedAtBefore(DateTimeUtil.nowVietnam().minusMinutes(idleMinutes));
+        log.info("🧹 Đã xóa {} hội thoại chatbot không còn hoạt động", deleted);
+    }
+
+    // Mỗi lượt cũ thành một dòng: câu hỏi + câu đầu tiên của câu trả lời; bỏ dòng cũ nhất khi quá dài
+    private static String appendSummary(String summary, Turn turn) {
+        String line = "- Khách hỏi: " + truncate(turn.question(), SUMMARY_QUESTION_CHARS)
+                + " | Trợ lý: " + truncate(firstSentence(turn.answer()), SUMMARY_ANSWER_CHARS);
+        String combined = summary.isEmpty() ? line : summary + "\n" + line;
+        while (combined.length() > MAX_SUMMARY_CHARS && combined.indexOf('\n') >= 0) {
+            combined = combined.substring(combined.indexOf('\n') + 1);
+        }
+        return truncate(combined, MAX_SUMMARY_CHARS);
+    }
+
+    private static String newId() {
+        return UUID.randomUUID().toString();
+    }
+
+    private static String firstSentence(String text) {
+        String flat = text.replaceAll("\\s+", " ").trim();
+        int end = -1;
+        for (char terminator : new char[]{'.', '!', '?'}) {
+            int index = flat.indexOf(terminator);
+            if (index > 0 && (end < 0 || index < end)) {
+                end = index;
+            }
+        }
+        return end > 0 ? flat.substring(0, end + 1) : flat;
+    }
+
+    private static String truncate(String text, int maxChars) {
+        if (text == null) {
+            return "";
+        }
+        return text.length() <= maxChars ? text : text.substring(0, maxChars) + "...";
+    }
+
+    private Conversation loadFromDb(String conversationId) {
+        try {
+            return conversationRepository.findById(conversationId).map(row -> {
+                List<Turn> turns = new ArrayList<>();
+                JSONArray array = new JSONArray(row.getTurns() != null ? row.getTurns() : "[]");
+                for (int i = 0; i < array.length(); i++) {
+                    JSONObject turn = array.getJSONObject(i);
+                    turns.add(new Turn(turn.optString("question"), turn.optString("answer")));
+                }
+                List<Long> bookIds = row.getBookIds() == null || row.getBookIds().isBlank() ? List.of()
+                        : Arrays.stream(row.getBookIds().split(",")).map(Long::valueOf).toList();
+                return new Conversation(row.getUserId(), row.getSummary() != null ? row.getSummary() : "",
+                        List.copyOf(turns), bookIds);
+            }).orElse(null);
+        } catch (Exception e) {
+            log.warn("⚠️ Không thể đọc hội thoại {} từ DB: {}", conversationId, e.getMessage());
+            return null;
+        }
+    }
+
+    private void saveToDb(String conversationId, Conversation conversation) {
+        try {
+            JSONArray turns = new JSONArray();
+            for (Turn turn : conversation.turns()) {
+                turns.put(new JSONObject(Map.of("question", turn.question(), "answer", turn.answer())));
+            }
+            ChatConversation row = conversationRepository.findById(conversationId).orElse(null);
+            if (row != null && !Objects.equals(row.getUserId(), conversation.userId())) {
+                // Hai người cùng lúc đặt một ID mới - giữ bản của người lưu trước
+                log.warn("⚠️ Hội thoại {} đã thuộc về user khác, không lưu xuống DB", conversationId);
+                return;
+            }
+            if (row == null) {
+                row = new ChatConversation();
+                row.setId(conversationId);
+            }
+            row.setUserId(conversation.userId());
+            row.setSummary(conversation.summary());
+            row.setTurns(turns.toString());
+            row.setBookIds(conversation.bookIds().stream().map(String::valueOf).collect(Collectors.joining(",")));
+            row.setUpdatedAt(DateTimeUtil.nowVietnam());
+            conversationRepository.save(row);
+        } catch (Exception e) {
+            // Không chặn câu trả lời vì lỗi ghi DB - hội thoại vẫn còn trong bộ nhớ
+            log.warn("⚠️ Không thể lưu hội thoại {} xuống DB: {}", conversationId, e.getMessage());
+        }
+    }
+
+    private static long weigh(Conversation conversation) {
+        long chars = conversation.summary().length();
+        for (Turn turn : conversation.turns()) {
+            chars += turn.question().length() + turn.answer().length();
+        }
+        return 2 * chars + 8L * conversation.bookIds().size() + ENTRY_OVERHEAD_BYTES;
+    }
+}
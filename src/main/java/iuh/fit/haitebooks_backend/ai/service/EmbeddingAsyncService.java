@@ -17,21 +17,6 @@ public class EmbeddingAsyncService {
         this.embeddingGenerator = embeddingGenerator;
     }
 
-    /**
-     * Method async để tạo embedding trong background
-     * Sử dụng executor "embeddingTaskExecutor" được cấu hình trong AsyncConfig
-     */
-    @Async("embeddingTaskExecutor")
-    public void generateEmbeddingsAsync() {
-        try {
-            log.info("🔄 Bắt đầu xử lý async: tạo embedding cho các sách");
-            embeddingGenerator.generateAllEmbeddings();
-            log.info("✅ Hoàn tất xử lý async: đã tạo embedding cho tất cả sách");
-        } catch (Exception e) {
-            log.error("❌ Lỗi khi sinh embedding trong async thread: {}", e.getMessage(), e);
-        }
-    }
-
     /**
      * Tạo embedding cho một cuốn sách cụ thể trong background thread
      * @param book Sách cần tạo embedding
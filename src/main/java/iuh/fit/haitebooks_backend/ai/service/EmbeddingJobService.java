@@ -0,0 +1,313 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import iuh.fit.haitebooks_backend.dtos.response.EmbeddingJobResponse;
+import iuh.fit.haitebooks_backend.exception.BadRequestException;
+import iuh.fit.haitebooks_backend.exception.ConflictException;
+import iuh.fit.haitebooks_backend.exception.NotFoundException;
+import iuh.fit.haitebooks_backend.mapper.EmbeddingJobMapper;
+import iuh.fit.haitebooks_backend.model.EmbeddingJob;
+import iuh.fit.haitebooks_backend.model.EmbeddingJobStatus;
+import iuh.fit.haitebooks_backend.repository.EmbeddingJobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Quản lý các lượt backfill embedding: tạo job, lưu checkpoint sau mỗi batch, hủy / resume
+ * - Chỉ cho phép một job chạy tại một thời điểm trên embeddingTaskExecutor
+ * - Job RUNNING thuộc về một instance (ownerInstanceId) và giữ lease được gia hạn theo heartbeat / sau mỗi batch
+ * - Chỉ job có lease đã hết hạn (instance chạy nó đã chết) mới bị thu hồi thành INTERRUPTED để resume,
+ *   job đang chạy trên instance khác dùng chung database không bị động tới
+ */
+@Service
+public class EmbeddingJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingJobService.class);
+
+    private final EmbeddingJobRepository jobRepository;
+    private final BookEmbeddingGenerator embeddingGenerator;
+    private final Executor executor;
+    private final String instanceId;
+    private final long leaseSeconds;
+
+    // Guard trong process: chỉ một backfill chạy cùng lúc
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile Long runningJobId;
+    private volatile boolean cancelRequested = false;
+    // Lease của job đang chạy đã bị instance khác thu hồi -> dừng, không ghi đè trạng thái
+    private volatile boolean leaseLost = false;
+
+    public EmbeddingJobService(EmbeddingJobRepository jobRepository,
+                               BookEmbeddingGenerator embeddingGenerator,
+                               @Qualifier("embeddingTaskExecutor") Executor executor,
+                               @Value("${ai.embedding.job.instance-id:}") String instanceId,
+                               @Value("${ai.embedding.job.lease-seconds:120}") long leaseSeconds) {
+        this.jobRepository = jobRepository;
+        this.embeddingGenerator = embeddingGenerator;
+        this.executor = executor;
+        this.instanceId = instanceId == null || instanceId.isBlank() ? defaultInstanceId() : instanceId.trim();
+        this.leaseSeconds = Math.max(1, leaseSeconds);
+    }
+
+    /**
+     * Lúc khởi động: job RUNNING của chính instance này chắc chắn đã bị ngắt (restart / deploy);
+     * job của instance khác chỉ bị thu hồi khi lease đã hết hạn
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void markInterruptedJobs() {
+        log.info("🆔 Instance embedding job: {} (lease {} giây)", instanceId, leaseSeconds);
+        for (EmbeddingJob job : jobRepository.findByStatus(EmbeddingJobStatus.RUNNING)) {
+            if (instanceId.equals(job.getOwnerInstanceId()) && !job.getId().equals(runningJobId)) {
+                job.setStatus(EmbeddingJobStatus.INTERRUPTED);
+                job.setErrorMessage("Server khởi động lại khi job đang chạy");
+                job.setLeaseExpiresAt(null);
+                jobRepository.save(job);
+                log.warn("⚠️ Job embedding #{} bị ngắt ở sách ID {}, có thể resume", job.getId(), job.getLastProcessedBookId());
+            }
+        }
+        reclaimExpiredJobs();
+    }
+
+    /**
+     * Heartbeat: gia hạn lease của job đang chạy trên instance này và thu hồi job có lease đã hết hạn
+     */
+    @Scheduled(fixedDelayString = "${ai.embedding.job.heartbeat-ms:30000}",
+            initialDelayString = "${ai.embedding.job.heartbeat-ms:30000}")
+    public void heartbeat() {
+        Long jobId = runningJobId;
+        if (jobId != null && !leaseLost && !renewLease(jobId)) {
+            leaseLost = true;
+            log.warn("⚠️ Job embedding #{} không còn thuộc instance {} (lease đã bị thu hồi), dừng sau batch hiện tại",
+                    jobId, instanceId);
+        }
+        reclaimExpiredJobs();
+    }
+
+    /**
+     * Thu hồi các job RUNNING có lease đã hết hạn (instance chạy job ngừng heartbeat) thành INTERRUPTED
+     * Điều kiện hết hạn được kiểm tra lại trong câu UPDATE nên nhiều instance chạy cùng lúc vẫn an toàn
+     */
+    void reclaimExpiredJobs() {
+        LocalDateTime now = LocalDateTime.now();
+        for (EmbeddingJob job : jobRepository.findByStatus(EmbeddingJobStatus.RUNNING)) {
+            if (job.getLeaseExpiresAt() != null && !job.getLeaseExpiresAt().isBefore(now)) {
+                continue;
+            }
+            String message = "Instance " + job.getOwnerInstanceId() + " ngừng gia hạn lease khi job đang chạy";
+            int reclaimed = jobRepository.reclaimIfLeaseExpired(job.getId(), EmbeddingJobStatus.RUNNING,
+                    EmbeddingJobStatus.INTERRUPTED, message, now);
+            if (reclaimed > 0) {
+                log.warn("⚠️ Thu hồi job embedding #{} của instance {} (lease hết hạn) ở sách ID {}, có thể resume",
+                        job.getId(), job.getOwnerInstanceId(), job.getLastProcessedBookId());
+            }
+        }
+    }
+
+    /**
+     * Tạo job mới, bắt đầu từ đầu danh sách sách thiếu embedding
+     */
+    public EmbeddingJobResponse start() {
+        acquireGuard();
+        try {
+            EmbeddingJob job = new EmbeddingJob();
+            job.setStatus(EmbeddingJobStatus.RUNNING);
+            claim(job);
+            job = jobRepository.save(job);
+            submit(job.getId(), 0L);
+            return EmbeddingJobMapper.toResponse(job);
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Tiếp tục job đã bị hủy / lỗi / ngắt từ checkpoint
+     */
+    public EmbeddingJobResponse resume(Long jobId) {
+        EmbeddingJob job = findJob(jobId);
+        if (job.getStatus() == EmbeddingJobStatus.RUNNING || job.getStatus() == EmbeddingJobStatus.COMPLETED) {
+            throw new BadRequestException("Job #" + jobId + " đang ở trạng thái " + job.getStatus() + ", không thể resume");
+        }
+        acquireGuard();
+        try {
+            job.setStatus(EmbeddingJobStatus.RUNNING);
+            job.setErrorMessage(null);
+            job.setFinishedAt(null);
+            // Sách lỗi lần trước nằm sau checkpoint và sẽ được thử lại -> không cộng dồn số lỗi cũ
+            job.setFailedCount(0);
+            claim(job);
+            job = jobRepository.save(job);
+            submit(job.getId(), job.getLastProcessedBookId());
+            return EmbeddingJobMapper.toResponse(job);
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Yêu cầu dừng job đang chạy (dừng sau khi batch hiện tại được lưu)
+     */
+    public EmbeddingJobResponse cancel(Long jobId) {
+        EmbeddingJob job = findJob(jobId);
+        if (job.getStatus() != EmbeddingJobStatus.RUNNING || !jobId.equals(runningJobId)) {
+            throw new BadRequestException("Job #" + jobId + " không đang chạy");
+        }
+        cancelRequested = true;
+        log.info("⏹️ Đã yêu cầu dừng job embedding #{}", jobId);
+        return EmbeddingJobMapper.toResponse(job);
+    }
+
+    public EmbeddingJobResponse getJob(Long jobId) {
+        return EmbeddingJobMapper.toResponse(findJob(jobId));
+    }
+
+    public EmbeddingJobResponse getLatestJob() {
+        return jobRepository.findFirstByOrderByIdDesc()
+                .map(EmbeddingJobMapper::toResponse)
+                .orElseThrow(() -> new NotFoundException("Chưa có job embedding nào"));
+    }
+
+    private EmbeddingJob findJob(Long jobId) {
+        return jobRepository.findById(jobId)
+                .orElseThrow(() -> new NotFoundException("Không tìm thấy job embedding #" + jobId));
+    }
+
+    private void claim(EmbeddingJob job) {
+        job.setOwnerInstanceId(instanceId);
+        job.setLeaseExpiresAt(LocalDateTime.now().plusSeconds(leaseSeconds));
+    }
+
+    private boolean renewLease(Long jobId) {
+        LocalDateTime now = LocalDateTime.now();
+        return jobRepository.renewLease(jobId, instanceId, EmbeddingJobStatus.RUNNING,
+                now.plusSeconds(leaseSeconds), now) > 0;
+    }
+
+    private void acquireGuard() {
+        // Kiểm tra cả DB phòng trường hợp nhiều instance dùng chung database
+        if (!running.compareAndSet(false, true)) {
+            throw new ConflictException("Đang có job embedding #" + runningJobId + " chạy, vui lòng đợi hoặc hủy job đó");
+        }
+        // Job của instance đã chết không chặn job mới quá hạn lease
+        reclaimExpiredJobs();
+        if (jobRepository.existsByStatus(EmbeddingJobStatus.RUNNING)) {
+            running.set(false);
+            throw new ConflictException("Đang có job embedding khác ở trạng thái RUNNING");
+        }
+    }
+
+    private void submit(Long jobId, long afterBookId) {
+        runningJobId = jobId;
+        cancelRequested = false;
+        leaseLost = false;
+        try {
+            executor.execute(() -> runJob(jobId, afterBookId));
+        } catch (RejectedExecutionException e) {
+            runningJobId = null;
+            finish(jobId, EmbeddingJobStatus.FAILED, "Executor đang quá tải, không thể chạy job");
+            throw new ConflictException("Executor embedding đang quá tải, vui lòng thử lại sau");
+        }
+    }
+
+    private void runJob(Long jobId, long afterBookId) {
+        log.info("🔄 Bắt đầu job embedding #{} từ sau sách ID {}", jobId, afterBookId);
+        try {
+            embeddingGenerator.generateAllEmbeddings(afterBookId, new BookEmbeddingGenerator.ProgressListener() {
+                @Override
+                public void onStart(int totalBooks) {
+                    EmbeddingJob job = findOwnedJob(jobId);
+                    if (job == null) {
+                        return;
+                    }
+                    // Resume: tổng = đã xử lý trước đó + phần còn lại
+                    job.setTotalBooks(job.getCreatedCount() + job.getSkippedCount() + job.getFailedCount() + totalBooks);
+                    jobRepository.save(job);
+                }
+
+                @Override
+                public void onBatch(long lastBookId, int created, int skipped, int failed) {
+                    EmbeddingJob job = findOwnedJob(jobId);
+                    if (job == null) {
+                        return;
+                    }
+                    // Mỗi batch cũng là một lần gia hạn lease
+                    job.setLeaseExpiresAt(LocalDateTime.now().plusSeconds(leaseSeconds));
+                    job.setLastProcessedBookId(lastBookId);
+                    job.setCreatedCount(job.getCreatedCount() + created);
+                    job.setSkippedCount(job.getSkippedCount() + skipped);
+                    job.setFailedCount(job.getFailedCount() + failed);
+                    jobRepository.save(job);
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return cancelRequested || leaseLost;
+                }
+            });
+
+            finish(jobId, cancelRequested ? EmbeddingJobStatus.CANCELLED : EmbeddingJobStatus.COMPLETED, null);
+        } catch (Exception e) {
+            log.error("❌ Job embedding #{} thất bại: {}", jobId, e.getMessage(), e);
+            finish(jobId, EmbeddingJobStatus.FAILED, e.getMessage());
+        } finally {
+            runningJobId = null;
+            cancelRequested = false;
+            leaseLost = false;
+            running.set(false);
+        }
+    }
+
+    /**
+     * Đọc lại job, null nếu job không còn RUNNING dưới quyền instance này (đã bị thu hồi)
+     */
+    private EmbeddingJob findOwnedJob(Long jobId) {
+        EmbeddingJob job = findJob(jobId);
+        if (job.getStatus() != EmbeddingJobStatus.RUNNING || !instanceId.equals(job.getOwnerInstanceId())) {
+            if (!leaseLost) {
+                log.warn("⚠️ Job embedding #{} đã bị thu hồi khỏi instance {} ({}), dừng",
+                        jobId, instanceId, job.getStatus());
+            }
+            leaseLost = true;
+            return null;
+        }
+        return job;
+    }
+
+    private void finish(Long jobId, EmbeddingJobStatus status, String errorMessage) {
+        EmbeddingJob job = findOwnedJob(jobId);
+        if (job == null) {
+            return;
+        }
+        job.setStatus(status);
+        job.setLeaseExpiresAt(null);
+        job.setErrorMessage(errorMessage);
+        job.setFinishedAt(LocalDateTime.now());
+        jobRepository.save(job);
+        log.info("🏁 Job embedding #{} kết thúc: {} (tạo {}, bỏ qua {}, lỗi {})", jobId, status,
+                job.getCreatedCount(), job.getSkippedCount(), job.getFailedCount());
+    }
+
+    private static String defaultInstanceId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "instance";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
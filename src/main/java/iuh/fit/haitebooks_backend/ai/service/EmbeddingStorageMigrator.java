@@ -0,0 +1,153 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import iuh.fit.haitebooks_backend.model.BookEmbedding;
+import iuh.fit.haitebooks_backend.model.EmbeddingFormat;
+import iuh.fit.haitebooks_backend.repository.BookEmbeddingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Chuyển các embedding cũ dạng JSON (MEDIUMTEXT) sang cột nhị phân embedding_blob
+ * - Chạy theo từng batch (keyset trên id), mỗi batch một transaction riêng
+ * - An toàn khi chạy lại: chỉ xử lý các dòng còn embedding_blob IS NULL
+ */
+@Service
+public class EmbeddingStorageMigrator {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingStorageMigrator.class);
+
+    private final BookEmbeddingRepository embeddingRepository;
+    private final BookVectorIndex vectorIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor executor;
+    private final EmbeddingFormat storageFormat;
+    private final int batchSize;
+    private final boolean migrateOnStartup;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public EmbeddingStorageMigrator(BookEmbeddingRepository embeddingRepository,
+                                    BookVectorIndex vectorIndex,
+                                    PlatformTransactionManager transactionManager,
+                                    @Qualifier("embeddingTaskExecutor") Executor executor,
+                                    @Value("${ai.embedding.storage-format:FLOAT32}") EmbeddingFormat storageFormat,
+                                    @Value("${ai.embedding.migration.batch-size:200}") int batchSize,
+                                    @Value("${ai.embedding.migration.on-startup:true}") boolean migrateOnStartup) {
+        this.embeddingRepository = embeddingRepository;
+        this.vectorIndex = vectorIndex;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.executor = executor;
+        this.storageFormat = storageFormat;
+        this.batchSize = Math.max(1, batchSize);
+        this.migrateOnStartup = migrateOnStartup;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (migrateOnStartup) {
+            migrateAsync();
+        }
+    }
+
+    /**
+     * Chạy migrate trong background, trả về false nếu đang có lượt migrate khác
+     */
+    public boolean migrateAsync() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        executor.execute(() -> {
+            try {
+                migrate();
+            } catch (Exception e) {
+                log.error("❌ Lỗi khi migrate embedding sang dạng nhị phân: {}", e.getMessage(), e);
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", running.get());
+        status.put("format", storageFormat.name());
+        status.put("pending", embeddingRepository.countByEmbeddingBlobIsNullAndEmbeddingJsonIsNotNull());
+        status.put("total", embeddingRepository.count());
+        return status;
+    }
+
+    private void migrate() {
+        long pending = embeddingRepository.countByEmbeddingBlobIsNullAndEmbeddingJsonIsNotNull();
+        if (pending == 0) {
+            log.info("✅ Tất cả embedding đã ở dạng nhị phân, không cần migrate");
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        log.info("🔄 Bắt đầu migrate {} embedding sang {} (batch {})", pending, storageFormat, batchSize);
+
+        long afterId = 0L;
+        int converted = 0;
+        int failed = 0;
+        while (true) {
+            List<Long> ids = embeddingRepository.findIdsPendingBinaryMigration(afterId, PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+            afterId = ids.get(ids.size() - 1);
+
+            int[] result = transactionTemplate.execute(tx -> convertBatch(ids));
+            if (result != null) {
+                converted += result[0];
+                failed += result[1];
+            }
+            log.info("📦 Đã migrate {}/{} embedding", converted, pending);
+        }
+
+        log.info("✅ Hoàn tất migrate embedding: {} thành công, {} lỗi ({} ms)",
+                converted, failed, System.currentTimeMillis() - start);
+
+        // INT8 làm thay đổi giá trị vector -> load lại index để khớp với dữ liệu đã lưu
+        if (converted > 0 && storageFormat == EmbeddingFormat.INT8) {
+            vectorIndex.rebuild();
+        }
+    }
+
+    // Trả về {số dòng đã chuyển, số dòng lỗi}
+    private int[] convertBatch(List<Long> ids) {
+        int converted = 0;
+        int failed = 0;
+        List<BookEmbedding> embeddings = embeddingRepository.findAllById(ids);
+        for (BookEmbedding embedding : embeddings) {
+            try {
+                float[] vector = embedding.getEmbeddingArray();
+                if (vector.length == 0) {
+                    failed++;
+                    continue;
+                }
+                embedding.setEmbeddingArray(vector, storageFormat);
+                converted++;
+            } catch (NumberFormatException e) {
+                log.warn("⚠️ Embedding {} có JSON không hợp lệ, bỏ qua: {}", embedding.getId(), e.getMessage());
+                failed++;
+            }
+        }
+        embeddingRepository.saveAll(embeddings);
+        return new int[]{converted, failed};
+    }
+}
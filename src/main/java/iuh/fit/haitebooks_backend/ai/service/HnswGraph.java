@@ -0,0 +1,376 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ * Đồ thị HNSW (Hierarchical Navigable Small World) cho tìm kiếm láng giềng gần đúng theo cosine
+ * - Vector được chuẩn hóa khi thêm vào nên cosine = dot product
+ * - Sách bị xóa chỉ đánh dấu (tombstone) để giữ liên kết của đồ thị, được dọn khi build lại
+ * Không thread-safe: HnswVectorIndex chịu trách nhiệm đồng bộ (ghi độc quyền, đọc song song)
+ */
+class HnswGraph {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final int dimension;
+    private final int m;
+    private final int maxConnectionsLevel0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private int size = 0;
+    private int liveCount = 0;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    private long[] bookIds = new long[INITIAL_CAPACITY];
+    private boolean[] deleted = new boolean[INITIAL_CAPACITY];
+    private float[] vectors;
+    // links[node][level] = {số láng giềng, id1, id2, ...}
+    private int[][][] links = new int[INITIAL_CAPACITY][][];
+    private final Map<Long, Integer> nodeByBookId = new HashMap<>();
+
+    // Đánh dấu node đã thăm theo "epoch" để không phải xóa mảng sau mỗi lần tìm
+    private final ThreadLocal<int[]> visitedMarks = ThreadLocal.withInitial(() -> new int[0]);
+    private final ThreadLocal<int[]> visitedEpoch = ThreadLocal.withInitial(() -> new int[]{0});
+
+    HnswGraph(int dimension, int m, int efConstruction) {
+        this.dimension = dimension;
+        this.m = Math.max(2, m);
+        this.maxConnectionsLevel0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.levelMultiplier = 1.0 / Math.log(this.m);
+        this.vectors = new float[INITIAL_CAPACITY * dimension];
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    int liveCount() {
+        return liveCount;
+    }
+
+    int deletedCount() {
+        return size - liveCount;
+    }
+
+    /**
+     * Thêm hoặc thay thế vector của một sách
+     */
+    void insert(long bookId, float[] vector) {
+        if (vector == null || vector.length != dimension) {
+            return;
+        }
+        Integer existing = nodeByBookId.get(bookId);
+        if (existing != null) {
+            // Vector thay đổi -> bỏ node cũ, thêm node mới để các liên kết phản ánh vector mới
+            markDeleted(existing);
+        }
+
+        ensureCapacity(size + 1);
+        int node = size++;
+        bookIds[node] = bookId;
+        deleted[node] = false;
+        normalizeInto(vector, vectors, node * dimension);
+        nodeByBookId.put(bookId, node);
+        liveCount++;
+
+        int level = randomLevel();
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[maxConnections(l) + 1];
+        }
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int current = entryPoint;
+        double currentScore = dot(node, current);
+        // Đi tham lam từ tầng cao xuống tầng level + 1
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(vectors, node * dimension, current, currentScore, l);
+            currentScore = dot(node, current);
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<ScoredNode> candidates = searchLayer(vectors, node * dimension, current, efConstruction, l, false);
+            List<ScoredNode> neighbours = selectNeighbours(candidates, m);
+            for (ScoredNode neighbour : neighbours) {
+                addLink(node, neighbour.node, l);
+                addLink(neighbour.node, node, l);
+            }
+            if (!candidates.isEmpty()) {
+                current = candidates.get(0).node;
+            }
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * Đánh dấu xóa sách (node vẫn dùng để điều hướng nhưng không được trả về)
+     */
+    void remove(long bookId) {
+        Integer node = nodeByBookId.remove(bookId);
+        if (node != null) {
+            markDeleted(node);
+        }
+    }
+
+    /**
+     * Tìm k láng giềng gần nhất
+     * @param efSearch Kích thước danh sách ứng viên, càng lớn recall càng cao nhưng chậm hơn
+     * @param excludeBookId Sách cần loại khỏi kết quả (Long.MIN_VALUE nếu không loại)
+     */
+    List<VectorHit> search(float[] query, int k, int efSearch, double minScore, long excludeBookId) {
+        if (entryPoint < 0 || query == null || query.length != dimension || k <= 0) {
+            return List.of();
+        }
+        float[] normalized = new float[dimension];
+        normalizeInto(query, normalized, 0);
+
+        int current = entryPoint;
+        double currentScore = dot(normalized, 0, current);
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(normalized, 0, current, currentScore, l);
+            currentScore = dot(normalized, 0, current);
+        }
+
+        List<ScoredNode> candidates = searchLayer(normalized, 0, current, Math.max(efSearch, k + 1), 0, true);
+        List<VectorHit> hits = new ArrayList<>(k);
+        for (ScoredNode candidate : candidates) {
+            long bookId = bookIds[candidate.node];
+            if (bookId == excludeBookId || candidate.score < minScore) {
+                continue;
+            }
+            hits.add(new VectorHit(bookId, candidate.score));
+            if (hits.size() == k) {
+                break;
+            }
+        }
+        return hits;
+    }
+
+    private record ScoredNode(int node, double score) {
+    }
+
+    private void markDeleted(int node) {
+        if (!deleted[node]) {
+            deleted[node] = true;
+            liveCount--;
+        }
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? maxConnectionsLevel0 : m;
+    }
+
+    private int randomLevel() {
+        double r = 1.0 - random.nextDouble(); // (0, 1]
+        return (int) Math.floor(-Math.log(r) * levelMultiplier);
+    }
+
+    private int greedyClosest(float[] query, int queryOffset, int start, double startScore, int level) {
+        int current = start;
+        double currentScore = startScore;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbours = neighboursAt(current, level);
+            if (neighbours == null) {
+                break;
+            }
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int candidate = neighbours[i];
+                double score = dot(query, queryOffset, candidate);
+                if (score > currentScore) {
+                    currentScore = score;
+                    current = candidate;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Beam search trên một tầng, trả về danh sách ứng viên giảm dần theo điểm
+     * @param skipDeleted true khi tìm kiếm (node đã xóa vẫn được duyệt qua nhưng không vào kết quả)
+     */
+    private List<ScoredNode> searchLayer(float[] query, int queryOffset, int entry, int ef, int level,
+                                         boolean skipDeleted) {
+        int[] marks = visitedMarks.get();
+        if (marks.length < size) {
+            marks = new int[Math.max(size, marks.length * 2)];
+            visitedMarks.set(marks);
+            visitedEpoch.get()[0] = 0;
+        }
+        int[] epochHolder = visitedEpoch.get();
+        int epoch = ++epochHolder[0];
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(marks, 0);
+            epochHolder[0] = 1;
+            epoch = 1;
+        }
+
+        // candidates: max-heap theo điểm; results: min-heap giới hạn ef
+        PriorityQueue<ScoredNode> candidates = new PriorityQueue<>((a, b) -> Double.compare(b.score, a.score));
+        PriorityQueue<ScoredNode> results = new PriorityQueue<>((a, b) -> Double.compare(a.score, b.score));
+
+        double entryScore = dot(query, queryOffset, entry);
+        marks[entry] = epoch;
+        candidates.add(new ScoredNode(entry, entryScore));
+        if (!skipDeleted || !deleted[entry]) {
+            results.add(new ScoredNode(entry, entryScore));
+        }
+
+        while (!candidates.isEmpty()) {
+            ScoredNode closest = candidates.poll();
+            if (results.size() >= ef && closest.score < results.peek().score) {
+                break;
+            }
+            int[] neighbours = neighboursAt(closest.node, level);
+            if (neighbours == null) {
+                continue;
+            }
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (marks[neighbour] == epoch) {
+                    continue;
+                }
+                marks[neighbour] = epoch;
+                double score = dot(query, queryOffset, neighbour);
+                if (results.size() < ef || score > results.peek().score) {
+                    candidates.add(new ScoredNode(neighbour, score));
+                    if (!skipDeleted || !deleted[neighbour]) {
+                        results.add(new ScoredNode(neighbour, score));
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+
+        List<ScoredNode> sorted = new ArrayList<>(results);
+        sorted.sort((a, b) -> Double.compare(b.score, a.score));
+        return sorted;
+    }
+
+    /**
+     * Heuristic chọn láng giềng của HNSW: ưu tiên ứng viên không bị "che" bởi láng giềng đã chọn
+     * để đồ thị giữ được các cạnh đi xa (tăng recall với dữ liệu phân cụm)
+     */
+    private List<ScoredNode> selectNeighbours(List<ScoredNode> candidates, int limit) {
+        List<ScoredNode> selected = new ArrayList<>(limit);
+        List<ScoredNode> pruned = new ArrayList<>();
+        for (ScoredNode candidate : candidates) {
+            if (selected.size() >= limit) {
+                break;
+            }
+            boolean keep = true;
+            for (ScoredNode chosen : selected) {
+                if (dot(candidate.node, chosen.node) > candidate.score) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected.add(candidate);
+            } else {
+                pruned.add(candidate);
+            }
+        }
+        // Bù thêm ứng viên bị loại nếu chưa đủ số láng giềng
+        for (int i = 0; i < pruned.size() && selected.size() < limit; i++) {
+            selected.add(pruned.get(i));
+        }
+        return selected;
+    }
+
+    private void addLink(int from, int to, int level) {
+        int[] neighbours = neighboursAt(from, level);
+        if (neighbours == null) {
+            return;
+        }
+        int count = neighbours[0];
+        for (int i = 1; i <= count; i++) {
+            if (neighbours[i] == to) {
+                return;
+            }
+        }
+        int capacity = maxConnections(level);
+        if (count < capacity) {
+            neighbours[count + 1] = to;
+            neighbours[0] = count + 1;
+            return;
+        }
+        // Đã đầy -> chọn lại láng giềng tốt nhất trong (cũ + mới)
+        List<ScoredNode> candidates = new ArrayList<>(count + 1);
+        for (int i = 1; i <= count; i++) {
+            candidates.add(new ScoredNode(neighbours[i], dot(from, neighbours[i])));
+        }
+        candidates.add(new ScoredNode(to, dot(from, to)));
+        candidates.sort((a, b) -> Double.compare(b.score, a.score));
+        List<ScoredNode> selected = selectNeighbours(candidates, capacity);
+        neighbours[0] = selected.size();
+        for (int i = 0; i < selected.size(); i++) {
+            neighbours[i + 1] = selected.get(i).node;
+        }
+    }
+
+    private int[] neighboursAt(int node, int level) {
+        int[][] nodeLinks = links[node];
+        return nodeLinks != null && level < nodeLinks.length ? nodeLinks[level] : null;
+    }
+
+    private double dot(int a, int b) {
+        return dot(vectors, a * dimension, b);
+    }
+
+    private double dot(float[] query, int queryOffset, int node) {
+        int base = node * dimension;
+        double sum = 0.0;
+        for (int i = 0; i < dimension; i++) {
+            sum += query[queryOffset + i] * vectors[base + i];
+        }
+        return sum;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= bookIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(required, bookIds.length * 2);
+        bookIds = Arrays.copyOf(bookIds, newCapacity);
+        deleted = Arrays.copyOf(deleted, newCapacity);
+        links = Arrays.copyOf(links, newCapacity);
+        vectors = Arrays.copyOf(vectors, newCapacity * dimension);
+    }
+
+    private static void normalizeInto(float[] source, float[] target, int offset) {
+        double sum = 0.0;
+        for (float v : source) {
+            sum += v * v;
+        }
+        double norm = Math.sqrt(sum);
+        double scale = norm > 0.0 ? 1.0 / norm : 0.0;
+        for (int i = 0; i < source.length; i++) {
+            target[offset + i] = (float) (source[i] * scale);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Backend HNSW cho tìm kiếm vector gần đúng
+ * - Đồ thị được build nền từ BookVectorIndex (không đọc lại database), xong mới thay vào
+ * - Thay đổi xảy ra trong lúc build được ghi lại và áp dụng lại sau khi thay đồ thị
+ * - Tham số M / efConstruction / efSearch cấu hình qua ai.vector.hnsw.*
+ */
+@Service
+public class HnswVectorIndex implements VectorSearchBackend, BookVectorIndex.Listener {
+
+    private static final Logger log = LoggerFactory.getLogger(HnswVectorIndex.class);
+
+    private final BookVectorIndex vectorIndex;
+    private final Executor executor;
+    private final boolean enabled;
+    private final int m;
+    private final int efConstruction;
+    private final int defaultEfSearch;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean building = new AtomicBoolean(false);
+    private volatile HnswGraph graph;
+    private volatile long lastBuildMillis = 0L;
+
+    // Thay đổi nhận được trong lúc build, áp dụng lại lên đồ thị mới (chỉ truy cập khi giữ write lock)
+    private final List<PendingChange> pendingChanges = new ArrayList<>();
+
+    public HnswVectorIndex(BookVectorIndex vectorIndex,
+                           @Qualifier("embeddingTaskExecutor") Executor executor,
+                           @Value("${ai.vector.backend:exact}") String backend,
+                           @Value("${ai.vector.hnsw.m:16}") int m,
+                           @Value("${ai.vector.hnsw.ef-construction:200}") int efConstruction,
+                           @Value("${ai.vector.hnsw.ef-search:64}") int efSearch) {
+        this.vectorIndex = vectorIndex;
+        this.executor = executor;
+        this.enabled = "hnsw".equalsIgnoreCase(backend.trim());
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.defaultEfSearch = efSearch;
+        vectorIndex.addListener(this);
+    }
+
+    private record PendingChange(long bookId, float[] vector) {
+    }
+
+    @Override
+    public String name() {
+        return "hnsw";
+    }
+
+    public boolean isReady() {
+        return graph != null;
+    }
+
+    public boolean isBuilding() {
+        return building.get();
+    }
+
+    public int efSearch() {
+        return defaultEfSearch;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        // Chỉ build sẵn khi HNSW là backend đang dùng; nếu không sẽ build khi được yêu cầu (đánh giá / rebuild)
+        if (enabled) {
+            rebuildAsync();
+        }
+    }
+
+    /**
+     * Build lại đồ thị trong background, trả về false nếu đang có lượt build khác
+     */
+    public boolean rebuildAsync() {
+        if (!building.compareAndSet(false, true)) {
+            return false;
+        }
+        executor.execute(() -> {
+            try {
+                build();
+            } catch (Exception e) {
+                log.error("❌ Lỗi khi build HNSW index: {}", e.getMessage(), e);
+            } finally {
+                building.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Build đồng bộ (dùng khi cần đồ thị ngay, VD: đánh giá recall lần đầu)
+     */
+    public void rebuildNow() {
+        if (!building.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            build();
+        } finally {
+            building.set(false);
+        }
+    }
+
+    private void build() {
+        long start = System.currentTimeMillis();
+        vectorIndex.ensureLoaded();
+        int dimension = vectorIndex.dimension();
+        if (dimension == 0) {
+            log.info("ℹ️ Chưa có embedding nào, bỏ qua build HNSW index");
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            pendingChanges.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // Copy vector ra trước để không giữ read lock của BookVectorIndex trong lúc build đồ thị
+        List<Long> ids = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        vectorIndex.forEachVector((bookId, data, offset, dim) -> {
+            ids.add(bookId);
+            vectors.add(Arrays.copyOfRange(data, offset, offset + dim));
+        });
+
+        HnswGraph newGraph = new HnswGraph(dimension, m, efConstruction);
+        for (int i = 0; i < ids.size(); i++) {
+            newGraph.insert(ids.get(i), vectors.get(i));
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (PendingChange change : pendingChanges) {
+                if (change.vector() != null) {
+                    newGraph.insert(change.bookId(), change.vector());
+                } else {
+                    newGraph.remove(change.bookId());
+                }
+            }
+            pendingChanges.clear();
+            graph = newGraph;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        lastBuildMillis = System.currentTimeMillis() - start;
+        log.info("✅ Đã build HNSW index: {} sách, M={}, efConstruction={} ({} ms)",
+                newGraph.liveCount(), m, efConstruction, lastBuildMillis);
+    }
+
+    @Override
+    public List<VectorHit> nearest(float[] query, int k, double minScore, Long excludeBookId) {
+        return nearest(query, k, minScore, excludeBookId, defaultEfSearch);
+    }
+
+    /**
+     * Tìm gần đúng với efSearch tùy chỉnh (dùng khi đánh giá recall / latency)
+     */
+    public List<VectorHit> nearest(float[] query, int k, double minScore, Long excludeBookId, int efSearch) {
+        lock.readLock().lock();
+        try {
+            HnswGraph current = graph;
+            if (current == null) {
+                return List.of();
+            }
+            long excluded = excludeBookId != null ? excludeBookId : Long.MIN_VALUE;
+            // Lấy dư 1 phần tử phòng trường hợp sách bị loại nằm trong top-K
+            return current.search(query, k, Math.max(efSearch, k + 1), minScore, excluded);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onUpsert(long bookId, float[] vector) {
+        float[] copy = vector.clone();
+        lock.writeLock().lock();
+        try {
+            if (building.get()) {
+                pendingChanges.add(new PendingChange(bookId, copy));
+            }
+            HnswGraph current = graph;
+            if (current != null && current.dimension() == copy.length) {
+                current.insert(bookId, copy);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onRemove(long bookId) {
+        lock.writeLock().lock();
+        try {
+            if (building.get()) {
+                pendingChanges.add(new PendingChange(bookId, null));
+            }
+            HnswGraph current = graph;
+            if (current != null) {
+                current.remove(bookId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onRebuilt() {
+        // Index gốc vừa load lại toàn bộ -> build lại đồ thị nếu đang dùng
+        if (enabled || graph != null) {
+            rebuildAsync();
+        }
+    }
+
+    /**
+     * Thông tin trạng thái của index
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        HnswGraph current = graph;
+        status.put("ready", current != null);
+        status.put("building", building.get());
+        status.put("m", m);
+        status.put("efConstruction", efConstruction);
+        status.put("efSearch", defaultEfSearch);
+        status.put("size", current != null ? current.liveCount() : 0);
+        status.put("tombstones", current != null ? current.deletedCount() : 0);
+        status.put("lastBuildMillis", lastBuildMillis);
+        return status;
+    }
+}
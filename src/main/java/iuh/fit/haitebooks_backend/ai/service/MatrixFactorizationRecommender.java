@@ -0,0 +1,457 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import iuh.fit.haitebooks_backend.repository.InteractionJdbcRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/**
+ * Collaborative filtering bằng matrix factorization (BPR - Bayesian Personalized Ranking) trên implicit feedback
+ * - Dữ liệu: sách đã mua, review >= 4 sao, yêu thích, giỏ hàng (mỗi cặp user-sách là một tương tác tích cực)
+ * - Train trong background (SGD), giữ factor của user / sách trong mảng float[] liên tục trong bộ nhớ
+ * - Chấm điểm một user = một vòng dot product trên toàn bộ sách + min-heap top-K
+ * - Model mới được thay thế nguyên khối (volatile), request đang đọc model cũ không bị ảnh hưởng
+ */
+@Service
+public class MatrixFactorizationRecommender {
+
+    private static final Logger log = LoggerFactory.getLogger(MatrixFactorizationRecommender.class);
+    private static final int MIN_POSITIVE_RATING = 4;
+    private static final int NEGATIVE_SAMPLE_ATTEMPTS = 10;
+    private static final float INIT_SCALE = 0.1f;
+
+    private final InteractionJdbcRepository interactionRepository;
+    private final UserRecommendationCache recommendationCache;
+    private final Executor executor;
+    private final boolean engineEnabled;
+    private final int factors;
+    private final int epochs;
+    private final double learningRate;
+    private final double regularization;
+    private final long seed;
+
+    // Train và đánh giá offline dùng chung cờ: mỗi lúc chỉ một lượt chiếm CPU của recommendationTaskExecutor
+    private final AtomicBoolean training = new AtomicBoolean(false);
+    private volatile Model model;
+    private volatile Map<String, Object> lastEvaluation;
+
+    /**
+     * Dữ liệu train: user / sách được đánh số liên tục, positives[u] là các chỉ số sách (đã sắp xếp) của user u
+     */
+    private record Dataset(long[] userIds, long[] itemIds, int[][] positives, int interactions) {
+    }
+
+    /**
+     * Model đã train: factor của user u nằm ở userFactors[u * factors .. (u + 1) * factors)
+     */
+    private record Model(Map<Long, Integer> userIndex, long[] itemIds, int[][] positives,
+                         float[] userFactors, float[] itemFactors, float[] itemBias, int factors,
+                         int interactions, LocalDateTime trainedAt, long trainMillis) {
+    }
+
+    public MatrixFactorizationRecommender(InteractionJdbcRepository interactionRepository,
+                                          UserRecommendationCache recommendationCache,
+                                          @Qualifier("recommendationTaskExecutor") Executor executor,
+                                          @Value("${ai.recommendation.collaborative-engine:heuristic}") String engine,
+                                          @Value("${ai.recommendation.mf.factors:32}") int factors,
+                                          @Value("${ai.recommendation.mf.epochs:30}") int epochs,
+                                          @Value("${ai.recommendation.mf.learning-rate:0.05}") double learningRate,
+                                          @Value("${ai.recommendation.mf.regularization:0.01}") double regularization,
+                                          @Value("${ai.recommendation.mf.seed:42}") long seed) {
+        this.interactionRepository = interactionRepository;
+        this.recommendationCache = recommendationCache;
+        this.executor = executor;
+        this.engineEnabled = "mf".equalsIgnoreCase(engine);
+        this.factors = Math.max(1, factors);
+        this.epochs = Math.max(1, epochs);
+        this.learningRate = learningRate;
+        this.regularization = regularization;
+        this.seed = seed;
+        log.info("🧮 Collaborative engine: {}", engineEnabled ? "mf (BPR)" : "heuristic");
+    }
+
+    /**
+     * BookRecommendationService có dùng model này làm thành phần collaborative hay không
+     */
+    public boolean isEnabled() {
+        return engineEnabled;
+    }
+
+    public boolean isReady() {
+        return model != null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void trainOnStartup() {
+        if (engineEnabled) {
+            trainAsync();
+        }
+    }
+
+    /**
+     * Train lại định kỳ (mặc định 4h sáng theo giờ Việt Nam)
+     */
+    @Scheduled(cron = "${ai.recommendation.mf.retrain-cron:0 0 4 * * ?}", zone = "Asia/Ho_Chi_Minh")
+    public void scheduledRetrain() {
+        if (!engineEnabled) {
+            return;
+        }
+        log.info("🔄 [SCHEDULER] Bắt đầu train lại model matrix factorization...");
+        if (!trainAsync()) {
+            log.info("⏳ [SCHEDULER] Model đang được train, bỏ qua lượt này");
+        }
+    }
+
+    /**
+     * Train trong background, trả về false nếu đang có lượt train / đánh giá khác
+     */
+    public boolean trainAsync() {
+        return runExclusive("train", this::trainNow);
+    }
+
+    /**
+     * Đánh giá offline trong background, kết quả xem qua getLastEvaluation() / status()
+     * @return false nếu đang có lượt train / đánh giá khác
+     */
+    public boolean evaluateAsync(int k, double holdoutRatio) {
+        return runExclusive("đánh giá", () -> lastEvaluation = evaluate(k, holdoutRatio));
+    }
+
+    /**
+     * Kết quả của lượt đánh giá offline gần nhất, null nếu chưa đánh giá lần nào
+     */
+    public Map<String, Object> getLastEvaluation() {
+        return lastEvaluation;
+    }
+
+    private boolean runExclusive(String action, Runnable task) {
+        if (!training.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("❌ Lỗi khi {} model matrix factorization: {}", action, e.getMessage(), e);
+                } finally {
+                    training.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            training.set(false);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Điểm collaborative cho các sách user chưa tương tác (0.0 - 1.0, sigmoid của điểm BPR)
+     * @param limit Số sách tối đa
+     * @return Map rỗng nếu model chưa sẵn sàng hoặc user chưa có trong model (user mới)
+     */
+    public Map<Long, Double> scoreForUser(Long userId, int limit) {
+        Model current = model;
+        if (current == null || userId == null) {
+            return Map.of();
+        }
+        Integer user = current.userIndex().get(userId);
+        if (user == null) {
+            return Map.of();
+        }
+        Map<Long, Double> scores = new LinkedHashMap<>();
+        for (VectorHit hit : topItems(current, user, limit)) {
+            scores.put(hit.bookId(), 1.0 / (1.0 + Math.exp(-hit.score())));
+        }
+        return scores;
+    }
+
+    public Map<String, Object> status() {
+        Model current = model;
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", engineEnabled);
+        status.put("training", training.get());
+        status.put("ready", current != null);
+        status.put("factors", factors);
+        status.put("epochs", epochs);
+        if (current != null) {
+            status.put("users", current.userIndex().size());
+            status.put("items", current.itemIds().length);
+            status.put("interactions", current.interactions());
+            status.put("trainedAt", current.trainedAt().toString());
+            status.put("trainMillis", current.trainMillis());
+        }
+        Map<String, Object> evaluation = lastEvaluation;
+        if (evaluation != null) {
+            status.put("lastEvaluation", evaluation);
+        }
+        return status;
+    }
+
+    /**
+     * Đánh giá offline: giữ lại một phần tương tác của mỗi user làm tập test, train trên phần còn lại
+     * rồi đo precision@K / recall@K (so với baseline sách phổ biến nhất trong tập train)
+     * Train đồng bộ trên luồng gọi - chỉ chạy qua evaluateAsync()
+     * @param k Số gợi ý mỗi user
+     * @param holdoutRatio Tỉ lệ tương tác của mỗi user đưa vào tập test (user cần >= 2 tương tác)
+     */
+    private Map<String, Object> evaluate(int k, double holdoutRatio) {
+        long start = System.currentTimeMillis();
+        Dataset full = loadDataset();
+        Random random = new Random(seed);
+
+        int[][] train = new int[full.positives().length][];
+        int[][] test = new int[full.positives().length][];
+        int trainInteractions = 0;
+        for (int u = 0; u < full.positives().length; u++) {
+            int[] items = full.positives()[u].clone();
+            int testCount = items.length >= 2 ? Math.max(1, (int) Math.round(items.length * holdoutRatio)) : 0;
+            testCount = Math.min(testCount, items.length - 1);
+            shuffle(items, random);
+            test[u] = Arrays.copyOfRange(items, 0, testCount);
+            train[u] = Arrays.copyOfRange(items, testCount, items.length);
+            Arrays.sort(train[u]);
+            trainInteractions += train[u].length;
+        }
+        Dataset trainSet = new Dataset(full.userIds(), full.itemIds(), train, trainInteractions);
+        Model trained = train(trainSet);
+
+        // Baseline: xếp hạng sách theo số user tương tác trong tập train
+        int[] popularity = new int[full.itemIds().length];
+        for (int[] items : train) {
+            for (int item : items) {
+                popularity[item]++;
+            }
+        }
+
+        double precision = 0.0;
+        double recall = 0.0;
+        double popularPrecision = 0.0;
+        double popularRecall = 0.0;
+        int evaluatedUsers = 0;
+        for (int u = 0; u < test.length; u++) {
+            if (test[u].length == 0) {
+                continue;
+            }
+            Set<Long> expected = new HashSet<>();
+            for (int item : test[u]) {
+                expected.add(full.itemIds()[item]);
+            }
+
+            int hits = 0;
+            for (VectorHit hit : topItems(trained, u, k)) {
+                if (expected.contains(hit.bookId())) {
+                    hits++;
+                }
+            }
+            TopKCollector popular = new TopKCollector(k);
+            for (int item = 0; item < popularity.length; item++) {
+                if (Arrays.binarySearch(train[u], item) < 0) {
+                    popular.offer(full.itemIds()[item], popularity[item]);
+                }
+            }
+            int popularHits = 0;
+            for (VectorHit hit : popular.toSortedList()) {
+                if (expected.contains(hit.bookId())) {
+                    popularHits++;
+                }
+            }
+
+            precision += (double) hits / k;
+            recall += (double) hits / expected.size();
+            popularPrecision += (double) popularHits / k;
+            popularRecall += (double) popularHits / expected.size();
+            evaluatedUsers++;
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("evaluatedAt", LocalDateTime.now().toString());
+        report.put("k", k);
+        report.put("holdoutRatio", holdoutRatio);
+        report.put("users", full.userIds().length);
+        report.put("items", full.itemIds().length);
+        report.put("interactions", full.interactions());
+        report.put("evaluatedUsers", evaluatedUsers);
+        if (evaluatedUsers == 0) {
+            report.put("message", "Không có user nào đủ tương tác (>= 2) để đánh giá");
+            return report;
+        }
+        report.put("precisionAtK", precision / evaluatedUsers);
+        report.put("recallAtK", recall / evaluatedUsers);
+        report.put("popularityPrecisionAtK", popularPrecision / evaluatedUsers);
+        report.put("popularityRecallAtK", popularRecall / evaluatedUsers);
+        report.put("elapsedMillis", System.currentTimeMillis() - start);
+        log.info("📏 BPR precision@{}={} recall@{}={} (popularity: {} / {})", k,
+                String.format("%.4f", precision / evaluatedUsers), k, String.format("%.4f", recall / evaluatedUsers),
+                String.format("%.4f", popularPrecision / evaluatedUsers),
+                String.format("%.4f", popularRecall / evaluatedUsers));
+        return report;
+    }
+
+    private void trainNow() {
+        Dataset dataset = loadDataset();
+        if (dataset.interactions() == 0) {
+            log.info("✅ Chưa có tương tác nào, bỏ qua train model matrix factorization");
+            return;
+        }
+        model = train(dataset);
+        log.info("✅ Đã train model BPR: {} user, {} sách, {} tương tác ({} ms)",
+                dataset.userIds().length, dataset.itemIds().length, dataset.interactions(), model.trainMillis());
+        // Danh sách gợi ý đã tính sẵn dựa trên model cũ -> tính lại theo model mới
+        recommendationCache.invalidateAll();
+    }
+
+    private Dataset loadDataset() {
+        Map<Long, Set<Long>> userItems = new LinkedHashMap<>();
+        for (InteractionJdbcRepository.Interaction interaction :
+                interactionRepository.findPositiveInteractions(MIN_POSITIVE_RATING)) {
+            userItems.computeIfAbsent(interaction.userId(), id -> new HashSet<>()).add(interaction.bookId());
+        }
+
+        Map<Long, Integer> itemIndex = new HashMap<>();
+        List<Long> itemIds = new ArrayList<>();
+        long[] userIds = new long[userItems.size()];
+        int[][] positives = new int[userItems.size()][];
+        int interactions = 0;
+        int u = 0;
+        for (Map.Entry<Long, Set<Long>> entry : userItems.entrySet()) {
+            userIds[u] = entry.getKey();
+            int[] items = new int[entry.getValue().size()];
+            int n = 0;
+            for (Long bookId : entry.getValue()) {
+                Integer index = itemIndex.get(bookId);
+                if (index == null) {
+                    index = itemIds.size();
+                    itemIndex.put(bookId, index);
+                    itemIds.add(bookId);
+                }
+                items[n++] = index;
+            }
+            Arrays.sort(items);
+            positives[u++] = items;
+            interactions += items.length;
+        }
+        return new Dataset(userIds, itemIds.stream().mapToLong(Long::longValue).toArray(), positives, interactions);
+    }
+
+    /**
+     * BPR-SGD: với mỗi mẫu (u, i đã tương tác, j chưa tương tác) tăng điểm của i so với j
+     */
+    private Model train(Dataset dataset) {
+        long start = System.currentTimeMillis();
+        int users = dataset.userIds().length;
+        int items = dataset.itemIds().length;
+        Random random = new Random(seed);
+
+        float[] userFactors = new float[users * factors];
+        float[] itemFactors = new float[items * factors];
+        float[] itemBias = new float[items];
+        for (int i = 0; i < userFactors.length; i++) {
+            userFactors[i] = (float) (random.nextGaussian() * INIT_SCALE);
+        }
+        for (int i = 0; i < itemFactors.length; i++) {
+            itemFactors[i] = (float) (random.nextGaussian() * INIT_SCALE);
+        }
+
+        int[] activeUsers = IntStream.range(0, users)
+                .filter(u -> dataset.positives()[u].length > 0)
+                .toArray();
+        if (activeUsers.length > 0 && items > 1) {
+            float lr = (float) learningRate;
+            float reg = (float) regularization;
+            long samplesPerEpoch = dataset.interactions();
+            for (int epoch = 0; epoch < epochs; epoch++) {
+                for (long s = 0; s < samplesPerEpoch; s++) {
+                    int u = activeUsers[random.nextInt(activeUsers.length)];
+                    int[] userPositives = dataset.positives()[u];
+                    if (userPositives.length >= items) {
+                        continue; // User đã tương tác với mọi sách, không có mẫu âm
+                    }
+                    int i = userPositives[random.nextInt(userPositives.length)];
+                    int j = -1;
+                    for (int attempt = 0; attempt < NEGATIVE_SAMPLE_ATTEMPTS; attempt++) {
+                        int candidate = random.nextInt(items);
+                        if (Arrays.binarySearch(userPositives, candidate) < 0) {
+                            j = candidate;
+                            break;
+                        }
+                    }
+                    if (j < 0) {
+                        continue;
+                    }
+
+                    int uBase = u * factors;
+                    int iBase = i * factors;
+                    int jBase = j * factors;
+                    double x = itemBias[i] - itemBias[j];
+                    for (int f = 0; f < factors; f++) {
+                        x += userFactors[uBase + f] * (itemFactors[iBase + f] - itemFactors[jBase + f]);
+                    }
+                    // Gradient của ln(sigmoid(x))
+                    float g = (float) (1.0 / (1.0 + Math.exp(x)));
+
+                    itemBias[i] += lr * (g - reg * itemBias[i]);
+                    itemBias[j] += lr * (-g - reg * itemBias[j]);
+                    for (int f = 0; f < factors; f++) {
+                        float pu = userFactors[uBase + f];
+                        float qi = itemFactors[iBase + f];
+                        float qj = itemFactors[jBase + f];
+                        userFactors[uBase + f] += lr * (g * (qi - qj) - reg * pu);
+                        itemFactors[iBase + f] += lr * (g * pu - reg * qi);
+                        itemFactors[jBase + f] += lr * (-g * pu - reg * qj);
+                    }
+                }
+            }
+        }
+
+        Map<Long, Integer> userIndex = new HashMap<>();
+        for (int u = 0; u < users; u++) {
+            userIndex.put(dataset.userIds()[u], u);
+        }
+        return new Model(userIndex, dataset.itemIds(), dataset.positives(), userFactors, itemFactors, itemBias,
+                factors, dataset.interactions(), LocalDateTime.now(), System.currentTimeMillis() - start);
+    }
+
+    // Một vòng dot product trên toàn bộ sách, bỏ qua sách user đã tương tác
+    private static List<VectorHit> topItems(Model model, int user, int k) {
+        TopKCollector collector = new TopKCollector(k);
+        int[] seen = model.positives()[user];
+        int f = model.factors();
+        int uBase = user * f;
+        float[] userFactors = model.userFactors();
+        float[] itemFactors = model.itemFactors();
+        for (int item = 0; item < model.itemIds().length; item++) {
+            if (Arrays.binarySearch(seen, item) >= 0) {
+                continue;
+            }
+            int iBase = item * f;
+            double score = model.itemBias()[item];
+            for (int d = 0; d < f; d++) {
+                score += userFactors[uBase + d] * itemFactors[iBase + d];
+            }
+            collector.offer(model.itemIds()[item], score);
+        }
+        return collector.toSortedList();
+    }
+
+    private static void shuffle(int[] values, Random random) {
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+}
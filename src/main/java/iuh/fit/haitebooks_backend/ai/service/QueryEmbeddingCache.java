@@ -0,0 +1,107 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import iuh.fit.haitebooks_backend.util.BoundedTtlCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache embedding của câu truy vấn (smartSearch, chatbot RAG) để bỏ qua lượt gọi Cohere cho truy vấn lặp lại
+ * - Key là query đã chuẩn hóa: Unicode NFC (dấu tiếng Việt), trim, lowercase, gộp khoảng trắng
+ * - Giới hạn theo số entry, dung lượng và TTL (BoundedTtlCache)
+ * - Single-flight: nhiều request cùng miss một query chỉ gọi API một lần
+ * Vector trả về được dùng chung, nơi gọi không được sửa nội dung mảng
+ */
+@Service
+public class QueryEmbeddingCache {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryEmbeddingCache.class);
+    private static final long ENTRY_OVERHEAD_BYTES = 64;
+
+    private final BoundedTtlCache<String, float[]> cache;
+    private final ConcurrentHashMap<String, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public QueryEmbeddingCache(@Value("${ai.query-embedding-cache.max-entries:10000}") int maxEntries,
+                               @Value("${ai.query-embedding-cache.max-bytes:67108864}") long maxBytes,
+                               @Value("${ai.query-embedding-cache.ttl-minutes:60}") long ttlMinutes) {
+        this.cache = new BoundedTtlCache<>(maxEntries, maxBytes, ttlMinutes * 60_000L,
+                (float[] vector) -> (long) vector.length * Float.BYTES + ENTRY_OVERHEAD_BYTES);
+    }
+
+    /**
+     * Chuẩn hóa query làm key cache
+     */
+    public static String normalize(String query) {
+        if (query == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(query, Normalizer.Form.NFC);
+        return normalized.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Lấy embedding từ cache, nếu chưa có thì gọi loader (chỉ một lần cho các request trùng nhau)
+     * Kết quả rỗng (lỗi API) không được cache
+     * @param loader Nhận query gốc đã trim, trả về vector (rỗng nếu lỗi)
+     */
+    public float[] get(String query, Function<String, float[]> loader) {
+        String key = normalize(query);
+        if (key.isEmpty()) {
+            return new float[0];
+        }
+        float[] cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<float[]> future = new CompletableFuture<>();
+        CompletableFuture<float[]> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                log.warn("⚠️ Request embedding trùng bị lỗi: {}", e.getMessage());
+                return new float[0];
+            }
+        }
+
+        try {
+            float[] vector = loader.apply(query.trim());
+            if (vector != null && vector.length > 0) {
+                cache.put(key, vector);
+            } else {
+                vector = new float[0];
+            }
+            future.complete(vector);
+            return vector;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    public BoundedTtlCache.Stats stats() {
+        return cache.stats();
+    }
+
+    public long coalescedRequests() {
+        return coalesced.get();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,204 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import iuh.fit.haitebooks_backend.event.CatalogChangedEvent;
+import iuh.fit.haitebooks_backend.service.CatalogVersionService;
+import iuh.fit.haitebooks_backend.util.BoundedTtlCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Cache câu trả lời chatbot theo ngữ nghĩa: câu hỏi gần giống nhau ("sách kỹ năng sống hay" /
+ * "gợi ý sách kỹ năng sống") dùng lại câu trả lời, bỏ qua lượt gọi Cohere Chat
+ * - Nhóm theo tập sách đã truy xuất + phiên bản (ETag) của từng sách: context đưa vào prompt giống hệt nhau
+ * - Trong nhóm: hit khi cosine(embedding câu hỏi, embedding đã lưu) >= similarity-threshold
+ * - Giới hạn số nhóm / dung lượng / TTL (BoundedTtlCache), mỗi nhóm tối đa MAX_ENTRIES_PER_KEY câu hỏi
+ * - Sách đổi (CatalogChangedEvent) -> xóa các nhóm chứa sách đó; ETag trong key đảm bảo không trả câu trả lời cũ
+ *   kể cả khi lượt sinh câu trả lời chạy song song với lúc sách thay đổi
+ * Chỉ dùng cho câu hỏi không kèm context riêng của user (đơn hàng) - nơi gọi chịu trách nhiệm kiểm tra
+ */
+@Service
+public class SemanticAnswerCache {
+
+    private static final Logger log = LoggerFactory.getLogger(SemanticAnswerCache.class);
+    private static final int MAX_ENTRIES_PER_KEY = 8;
+    private static final long ENTRY_OVERHEAD_BYTES = 96;
+
+    /**
+     * @param bookIds ID sách đã truy xuất (đã sắp xếp)
+     * @param versions ETag của từng sách theo cùng thứ tự
+     */
+    private record AnswerKey(List<Long> bookIds, String versions) {
+    }
+
+    // vector đã chuẩn hóa (norm = 1)
+    private record Entry(float[] vector, String answer, long createdAt) {
+    }
+
+    private final CatalogVersionService catalogVersionService;
+    private final BoundedTtlCache<AnswerKey, List<Entry>> cache;
+    private final long ttlMillis;
+    private final double similarityThreshold;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SemanticAnswerCache(CatalogVersionService catalogVersionService,
+                               @Value("${ai.chat.answer-cache.max-entries:2000}") int maxEntries,
+                               @Value("${ai.chat.answer-cache.max-bytes:33554432}") long maxBytes,
+                               @Value("${ai.chat.answer-cache.ttl-minutes:30}") long ttlMinutes,
+                               @Value("${ai.chat.answer-cache.similarity-threshold:0.92}") double similarityThreshold) {
+        this.catalogVersionService = catalogVersionService;
+        this.ttlMillis = ttlMinutes * 60_000L;
+        this.similarityThreshold = similarityThreshold;
+        this.cache = new BoundedTtlCache<>(maxEntries, maxBytes, ttlMillis, SemanticAnswerCache::weigh);
+    }
+
+    /**
+     * @param queryVector Embedding của câu hỏi (rỗng -> luôn miss)
+     * @param bookIds Sách đã đưa vào context
+     * @return Câu trả lời đã lưu, null nếu không có câu hỏi đủ giống
+     */
+    public String find(float[] queryVector, Collection<Long> bookIds) {
+        float[] normalized = normalize(queryVector);
+        List<Entry> entries = normalized != null ? cache.get(keyOf(bookIds)) : null;
+        if (entries != null) {
+            long now = System.currentTimeMillis();
+            Entry best = null;
+            double bestSimilarity = similarityThreshold;
+            for (Entry entry : entries) {
+                if (now - entry.createdAt() >= ttlMillis || entry.vector().length != normalized.length) {
+                    continue;
+                }
+                double similarity = dot(normalized, entry.vector());
+                if (similarity >= bestSimilarity) {
+                    best = entry;
+                    bestSimilarity = similarity;
+                }
+            }
+            if (best != null) {
+                hits.incrementAndGet();
+                log.info("♻️ Dùng lại câu trả lời đã cache (cosine {})", String.format("%.4f", bestSimilarity));
+                return best.answer();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Lưu câu trả lời vừa sinh (chỉ câu trả lời đầy đủ từ model, không lưu thông báo lỗi)
+     */
+    public void put(float[] queryVector, Collection<Long> bookIds, String answer) {
+        float[] normalized = normalize(queryVector);
+        if (normalized == null || answer == null || answer.isBlank()) {
+            return;
+        }
+        AnswerKey key = keyOf(bookIds);
+        long now = System.currentTimeMillis();
+        List<Entry> current = cache.get(key);
+        List<Entry> updated = new ArrayList<>(MAX_ENTRIES_PER_KEY);
+        updated.add(new Entry(normalized, answer, now));
+        if (current != null) {
+            // Giữ các câu hỏi mới nhất còn hạn
+            for (Entry entry : current) {
+                if (updated.size() >= MAX_ENTRIES_PER_KEY) {
+                    break;
+                }
+                if (now - entry.createdAt() < ttlMillis) {
+                    updated.add(entry);
+                }
+            }
+        }
+        cache.put(key, List.copyOf(updated));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        // Context chatbot không chứa tên category -> chỉ xóa các nhóm có sách thay đổi
+        Set<Long> changed = new HashSet<>(event.bookIds());
+        if (!changed.isEmpty()) {
+            cache.invalidateIf(key -> key.bookIds().stream().anyMatch(changed::contains));
+        }
+    }
+
+    /**
+     * hits / misses tính theo từng câu hỏi; evictions / expirations / size / bytes tính theo nhóm
+     */
+    public Map<String, Object> stats() {
+        BoundedTtlCache.Stats groups = cache.stats();
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("hits", hitCount);
+        result.put("misses", missCount);
+        result.put("hitRate", hitCount + missCount > 0 ? (double) hitCount / (hitCount + missCount) : 0.0);
+        result.put("similarityThreshold", similarityThreshold);
+        result.put("evictions", groups.evictions());
+        result.put("expirations", groups.expirations());
+        result.put("size", groups.size());
+        result.put("bytes", groups.bytes());
+        result.put("maxEntries", groups.maxEntries());
+        result.put("maxBytes", groups.maxBytes());
+        return result;
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    private AnswerKey keyOf(Collection<Long> bookIds) {
+        List<Long> sorted = bookIds.stream().distinct().sorted().toList();
+        String versions = sorted.stream()
+                .map(id -> catalogVersionService.book(id).etag())
+                .collect(Collectors.joining(","));
+        return new AnswerKey(sorted, versions);
+    }
+
+    private static float[] normalize(float[] vector) {
+        if (vector == null || vector.length == 0) {
+            return null;
+        }
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) {
+            return null;
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static long weigh(List<Entry> entries) {
+        long bytes = 0;
+        for (Entry entry : entries) {
+            bytes += (long) entry.vector().length * Float.BYTES + 2L * entry.answer().length() + ENTRY_OVERHEAD_BYTES;
+        }
+        return bytes;
+    }
+}
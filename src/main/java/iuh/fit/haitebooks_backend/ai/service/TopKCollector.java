@@ -0,0 +1,124 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Min-heap kích thước cố định giữ K phần tử có điểm cao nhất
+ * Dùng mảng nguyên thủy (không boxing) - chi phí O(N log K) thay vì sort toàn bộ O(N log N)
+ * Không thread-safe: mỗi luồng dùng một collector riêng rồi merge lại
+ * Điểm bằng nhau thì ưu tiên id nhỏ hơn, nên kết quả không phụ thuộc thứ tự offer / cách chia partition
+ */
+public final class TopKCollector {
+
+    private final int capacity;
+    private final double[] scores;
+    private final long[] ids;
+    private int size;
+
+    public TopKCollector(int capacity) {
+        this.capacity = Math.max(capacity, 0);
+        this.scores = new double[this.capacity];
+        this.ids = new long[this.capacity];
+    }
+
+    /**
+     * Thêm một phần tử, chỉ giữ lại nếu nằm trong top K hiện tại
+     * @return true nếu phần tử được giữ lại
+     */
+    public boolean offer(long id, double score) {
+        if (capacity == 0) {
+            return false;
+        }
+        if (size < capacity) {
+            scores[size] = score;
+            ids[size] = id;
+            siftUp(size);
+            size++;
+            return true;
+        }
+        if (!better(score, id, scores[0], ids[0])) {
+            return false;
+        }
+        scores[0] = score;
+        ids[0] = id;
+        siftDown(0);
+        return true;
+    }
+
+    /**
+     * Điểm thấp nhất cần vượt qua để vào top K (âm vô cùng nếu heap chưa đầy)
+     */
+    public double threshold() {
+        return size < capacity ? Double.NEGATIVE_INFINITY : scores[0];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gộp kết quả từ một collector khác (dùng khi tính song song theo partition)
+     */
+    public void merge(TopKCollector other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ids[i], other.scores[i]);
+        }
+    }
+
+    /**
+     * Trả về danh sách kết quả sắp xếp giảm dần theo điểm
+     */
+    public List<VectorHit> toSortedList() {
+        List<VectorHit> hits = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            hits.add(new VectorHit(ids[i], scores[i]));
+        }
+        hits.sort((a, b) -> {
+            int cmp = Double.compare(b.score(), a.score());
+            return cmp != 0 ? cmp : Long.compare(a.bookId(), b.bookId());
+        });
+        return hits;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!better(scores[parent], ids[parent], scores[index], ids[index])) {
+                break;
+            }
+            swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                break;
+            }
+            int right = left + 1;
+            int smallest = (right < size && better(scores[left], ids[left], scores[right], ids[right])) ? right : left;
+            if (!better(scores[index], ids[index], scores[smallest], ids[smallest])) {
+                break;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    // (scoreA, idA) xếp trên (scoreB, idB): điểm cao hơn, hoặc bằng điểm nhưng id nhỏ hơn
+    private static boolean better(double scoreA, long idA, double scoreB, long idB) {
+        return scoreA > scoreB || (scoreA == scoreB && idA < idB);
+    }
+
+    private void swap(int a, int b) {
+        double tmpScore = scores[a];
+        scores[a] = scores[b];
+        scores[b] = tmpScore;
+        long tmpId = ids[a];
+        ids[a] = ids[b];
+        ids[b] = tmpId;
+    }
+}
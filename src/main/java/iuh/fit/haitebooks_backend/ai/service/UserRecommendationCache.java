@@ -0,0 +1,184 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import iuh.fit.haitebooks_backend.repository.BookRepository;
+import iuh.fit.haitebooks_backend.service.PopularityService;
+import iuh.fit.haitebooks_backend.util.BoundedTtlCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Danh sách gợi ý top-N đã tính sẵn cho từng user (userId -> bookId theo thứ tự điểm)
+ * - Tính trong background trên recommendationTaskExecutor, request chỉ đọc từ cache
+ * - Hết hạn theo TTL, bị xóa khi hành vi của user thay đổi (đơn hàng, review, yêu thích, giỏ hàng)
+ * - Danh sách phổ biến (trending + bán chạy + mới nhất) dùng cho user chưa có danh sách riêng
+ */
+@Service
+public class UserRecommendationCache {
+
+    private static final Logger log = LoggerFactory.getLogger(UserRecommendationCache.class);
+    private static final long ENTRY_OVERHEAD_BYTES = 64;
+
+    private final BookRepository bookRepository;
+    private final PopularityService popularityService;
+    private final Executor executor;
+    private final BoundedTtlCache<Long, List<Long>> cache;
+    private final int topN;
+    private final long popularTtlMillis;
+
+    // User đang được tính lại -> thế hệ dữ liệu, tăng mỗi lần bị invalidate trong lúc đang tính
+    // Kết quả chỉ được lưu nếu thế hệ không đổi từ lúc bắt đầu tính (so sánh và put trong cùng một compute)
+    private final Map<Long, Long> generations = new ConcurrentHashMap<>();
+
+    private final Object popularMonitor = new Object();
+    private volatile List<Long> popularBookIds = List.of();
+    private volatile long popularLoadedAt = 0L;
+
+    public UserRecommendationCache(BookRepository bookRepository,
+                                   PopularityService popularityService,
+                                   @Qualifier("recommendationTaskExecutor") Executor executor,
+                                   @Value("${ai.recommendation.cache.max-entries:20000}") int maxEntries,
+                                   @Value("${ai.recommendation.cache.ttl-minutes:30}") long ttlMinutes,
+                                   @Value("${ai.recommendation.top-n:50}") int topN,
+                                   @Value("${ai.recommendation.popular.ttl-minutes:10}") long popularTtlMinutes) {
+        this.bookRepository = bookRepository;
+        this.popularityService = popularityService;
+        this.executor = executor;
+        this.cache = new BoundedTtlCache<>(maxEntries, 0L, ttlMinutes * 60_000L,
+                (List<Long> ids) -> (long) ids.size() * Long.BYTES + ENTRY_OVERHEAD_BYTES);
+        this.topN = Math.max(1, topN);
+        this.popularTtlMillis = popularTtlMinutes * 60_000L;
+    }
+
+    /**
+     * Số sách tối đa được tính sẵn cho mỗi user
+     */
+    public int topN() {
+        return topN;
+    }
+
+    /**
+     * Danh sách gợi ý đã tính sẵn, null nếu chưa có hoặc đã hết hạn / bị xóa
+     */
+    public List<Long> get(Long userId) {
+        return cache.get(userId);
+    }
+
+    public void invalidate(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        generations.computeIfPresent(userId, (id, generation) -> generation + 1);
+        cache.invalidate(userId);
+    }
+
+    public void invalidateAll() {
+        generations.replaceAll((id, generation) -> generation + 1);
+        cache.invalidateAll();
+    }
+
+    /**
+     * Tính lại danh sách của user trong background (mỗi user tối đa một lượt tính cùng lúc)
+     * @param loader Hàm tính danh sách bookId theo thứ tự điểm giảm dần
+     * @return false nếu user đang được tính hoặc executor quá tải
+     */
+    public boolean refreshAsync(Long userId, Supplier<List<Long>> loader) {
+        if (userId == null || generations.putIfAbsent(userId, 0L) != null) {
+            return false;
+        }
+        try {
+            executor.execute(() -> refresh(userId, loader));
+            return true;
+        } catch (RejectedExecutionException e) {
+            generations.remove(userId);
+            log.warn("⚠️ Executor gợi ý đang quá tải, bỏ qua tính lại cho user {}", userId);
+            return false;
+        }
+    }
+
+    /**
+     * Danh sách sách phổ biến (đang thịnh hành, bán chạy nhất, bổ sung sách mới nhất nếu thiếu) - làm mới theo TTL
+     */
+    public List<Long> popularBookIds() {
+        if (System.currentTimeMillis() - popularLoadedAt < popularTtlMillis) {
+            return popularBookIds;
+        }
+        synchronized (popularMonitor) {
+            if (System.currentTimeMillis() - popularLoadedAt >= popularTtlMillis) {
+                Set<Long> ids = new LinkedHashSet<>(popularityService.trendingBookIds(topN));
+                if (ids.size() < topN) {
+                    ids.addAll(popularityService.bestSellerBookIds(topN));
+                }
+                if (ids.size() < topN) {
+                    ids.addAll(bookRepository.findLatestBookIds(PageRequest.of(0, topN)));
+                }
+                popularBookIds = List.copyOf(new ArrayList<>(ids).subList(0, Math.min(ids.size(), topN)));
+                popularLoadedAt = System.currentTimeMillis();
+            }
+            return popularBookIds;
+        }
+    }
+
+    public BoundedTtlCache.Stats stats() {
+        return cache.stats();
+    }
+
+    public int refreshingCount() {
+        return generations.size();
+    }
+
+    private void refresh(Long userId, Supplier<List<Long>> loader) {
+        boolean released = false;
+        try {
+            while (true) {
+                long generation = generations.get(userId);
+                long start = System.currentTimeMillis();
+                List<Long> ids = loader.get();
+                List<Long> top = List.copyOf(ids.subList(0, Math.min(ids.size(), topN)));
+                if (!putIfCurrent(userId, generation, top)) {
+                    continue; // Hành vi thay đổi trong lúc tính -> kết quả đã cũ
+                }
+                log.debug("📦 Đã tính sẵn {} gợi ý cho user {} ({} ms)",
+                        top.size(), userId, System.currentTimeMillis() - start);
+                // Bị invalidate ngay sau khi lưu: lượt tính mới đã bị refreshAsync từ chối vì user vẫn đang tính
+                // -> tự tính lại thay vì để cache trống / cũ tới hết TTL
+                if (generations.remove(userId, generation)) {
+                    released = true;
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            log.error("❌ Lỗi khi tính gợi ý cho user {}: {}", userId, e.getMessage(), e);
+        } finally {
+            if (!released) {
+                generations.remove(userId);
+            }
+        }
+    }
+
+    // Lưu kết quả nếu user chưa bị invalidate kể từ khi bắt đầu tính (khóa cùng key với invalidate)
+    private boolean putIfCurrent(Long userId, long generation, List<Long> ids) {
+        boolean[] stored = {false};
+        generations.computeIfPresent(userId, (id, current) -> {
+            if (current == generation) {
+                cache.put(userId, ids);
+                stored[0] = true;
+            }
+            return current;
+        });
+        return stored[0];
+    }
+}
@@ -0,0 +1,321 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import iuh.fit.haitebooks_backend.event.OrderCreatedEvent;
+import iuh.fit.haitebooks_backend.event.UserInteractionEvent;
+import iuh.fit.haitebooks_backend.model.EmbeddingFormat;
+import iuh.fit.haitebooks_backend.model.FavoriteBook;
+import iuh.fit.haitebooks_backend.model.Order;
+import iuh.fit.haitebooks_backend.model.Order_Item;
+import iuh.fit.haitebooks_backend.model.Review;
+import iuh.fit.haitebooks_backend.model.UserTasteProfile;
+import iuh.fit.haitebooks_backend.repository.FavoriteBookRepository;
+import iuh.fit.haitebooks_backend.repository.OrderRepository;
+import iuh.fit.haitebooks_backend.repository.ReviewRepository;
+import iuh.fit.haitebooks_backend.repository.UserTasteProfileRepository;
+import iuh.fit.haitebooks_backend.util.EmbeddingCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Lưu và cập nhật tăng dần vector sở thích của user (UserTasteProfile)
+ * - Tín hiệu: mua sách (1.0), review 4 sao (0.5) / 5 sao (0.6), yêu thích (0.4)
+ * - Time decay tùy chọn: tín hiệu cũ giảm trọng số theo chu kỳ bán rã ai.taste-profile.half-life-days (0 = tắt)
+ * - Chưa có profile (user cũ) hoặc tín hiệu bị gỡ bỏ (xóa review / bỏ yêu thích) -> tính lại từ lịch sử
+ */
+@Service
+public class UserTasteProfileService {
+
+    private static final Logger log = LoggerFactory.getLogger(UserTasteProfileService.class);
+
+    private static final double PURCHASE_WEIGHT = 1.0;
+    private static final double FAVORITE_WEIGHT = 0.4;
+    private static final int HIGH_RATING = 4;
+    // Số lần thử lại khi ghi profile bị xung đột trước khi build lại từ dữ liệu gốc
+    private static final int MAX_CONFLICT_RETRIES = 3;
+
+    private final UserTasteProfileRepository profileRepository;
+    private final OrderRepository orderRepository;
+    private final ReviewRepository reviewRepository;
+    private final FavoriteBookRepository favoriteBookRepository;
+    private final BookEmbeddingLookup embeddingLookup;
+    private final TransactionTemplate transactionTemplate;
+    private final double halfLifeDays;
+
+    public UserTasteProfileService(UserTasteProfileRepository profileRepository,
+                                   OrderRepository orderRepository,
+                                   ReviewRepository reviewRepository,
+                                   FavoriteBookRepository favoriteBookRepository,
+                                   BookEmbeddingLookup embeddingLookup,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${ai.taste-profile.half-life-days:0}") double halfLifeDays) {
+        this.profileRepository = profileRepository;
+        this.orderRepository = orderRepository;
+        this.reviewRepository = reviewRepository;
+        this.favoriteBookRepository = favoriteBookRepository;
+        this.embeddingLookup = embeddingLookup;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.halfLifeDays = halfLifeDays;
+    }
+
+    /**
+     * Vector sở thích (trung bình có trọng số) của user, build từ lịch sử nếu chưa có
+     * @return Mảng rỗng nếu user chưa có tín hiệu nào có embedding
+     */
+    public float[] getProfileVector(Long userId) {
+        if (userId == null) {
+            return new float[0];
+        }
+        UserTasteProfile profile = profileRepository.findById(userId).orElse(null);
+        if (profile == null) {
+            profile = runInTransaction(userId, () -> rebuild(userId));
+        }
+        if (profile == null || profile.getTotalWeight() <= 0.0) {
+            return new float[0];
+        }
+        // Chia cho tổng trọng số -> vector trung bình (hệ số decay chung bị triệt tiêu)
+        float[] sum = EmbeddingCodec.decode(profile.getVectorSum(), EmbeddingFormat.FLOAT32, null);
+        float[] mean = new float[sum.length];
+        for (int i = 0; i < sum.length; i++) {
+            mean[i] = (float) (sum[i] / profile.getTotalWeight());
+        }
+        return mean;
+    }
+
+    /**
+     * Đơn hàng mới: cộng embedding các sách trong đơn vào profile
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    @Order(0) // Chạy trước listener tính lại danh sách gợi ý
+    public void onOrderCreated(OrderCreatedEvent event) {
+        if (event.userId() == null) {
+            return;
+        }
+        runInTransaction(event.userId(), () -> {
+            Order order = orderRepository.findById(event.orderId()).orElse(null);
+            if (order == null || order.getOrderItems() == null) {
+                return null;
+            }
+            Set<Long> bookIds = new LinkedHashSet<>();
+            for (Order_Item item : order.getOrderItems()) {
+                if (item.getBook() != null) {
+                    bookIds.add(item.getBook().getId());
+                }
+            }
+            Map<Long, Double> weights = new LinkedHashMap<>();
+            bookIds.forEach(bookId -> weights.put(bookId, PURCHASE_WEIGHT));
+            return addSignals(event.userId(), weights);
+        });
+    }
+
+    /**
+     * Review / yêu thích: review mới >= 4 sao hoặc thêm yêu thích -> cộng dồn;
+     * sửa / xóa review hoặc bỏ yêu thích -> tính lại từ lịch sử (không trừ được chính xác khi có decay)
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    @Order(0)
+    public void onUserInteraction(UserInteractionEvent event) {
+        if (event.userId() == null || event.bookId() == null) {
+            return;
+        }
+        switch (event.type()) {
+            case REVIEW_CREATED -> {
+                double weight = reviewWeight(event.rating());
+                if (weight > 0.0) {
+                    runInTransaction(event.userId(), () -> addSignals(event.userId(), Map.of(event.bookId(), weight)));
+                }
+            }
+            case FAVORITE_ADDED -> runInTransaction(event.userId(),
+                    () -> addSignals(event.userId(), Map.of(event.bookId(), FAVORITE_WEIGHT)));
+            case REVIEW_UPDATED, REVIEW_DELETED, FAVORITE_REMOVED ->
+                    runInTransaction(event.userId(), () -> rebuild(event.userId()));
+            default -> {
+                // Giỏ hàng không thuộc profile sở thích
+            }
+        }
+    }
+
+    /**
+     * Cộng tín hiệu mới vào profile; chưa có profile thì build từ lịch sử (đã gồm tín hiệu vừa commit)
+     */
+    private UserTasteProfile addSignals(Long userId, Map<Long, Double> weights) {
+        UserTasteProfile profile = profileRepository.findById(userId).orElse(null);
+        if (profile == null) {
+            return rebuild(userId);
+        }
+        Map<Long, float[]> vectors = embeddingLookup.getVectors(weights.keySet());
+        if (vectors.isEmpty()) {
+            return profile;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        float[] sum = EmbeddingCodec.decode(profile.getVectorSum(), EmbeddingFormat.FLOAT32, null);
+        double decay = decayFactor(profile.getUpdatedAt(), now);
+        double totalWeight = profile.getTotalWeight() * decay;
+        if (decay != 1.0) {
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] = (float) (sum[i] * decay);
+            }
+        }
+
+        int added = 0;
+        for (Map.Entry<Long, float[]> entry : vectors.entrySet()) {
+            float[] vector = entry.getValue();
+            if (vector.length != sum.length) {
+                // Đổi model embedding -> số chiều khác, build lại toàn bộ cho đồng nhất
+                log.warn("⚠️ Profile của user {} có {} chiều, embedding sách {} có {} chiều - build lại",
+                        userId, sum.length, entry.getKey(), vector.length);
+                return rebuild(userId);
+            }
+            double weight = weights.get(entry.getKey());
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] += (float) (vector[i] * weight);
+            }
+            totalWeight += weight;
+            added++;
+        }
+
+        profile.setVectorSum(EmbeddingCodec.encodeFloat32(sum));
+        profile.setTotalWeight(totalWeight);
+        profile.setSignalCount(profile.getSignalCount() + added);
+        profile.setUpdatedAt(now);
+        return profileRepository.save(profile);
+    }
+
+    /**
+     * Tính lại profile từ toàn bộ lịch sử (đơn hàng, review >= 4 sao, yêu thích) của user
+     */
+    private UserTasteProfile rebuild(Long userId) {
+        LocalDateTime now = LocalDateTime.now();
+        // Mỗi tín hiệu: (bookId, trọng số đã decay)
+        List<Map.Entry<Long, Double>> signals = new ArrayList<>();
+        for (Order order : orderRepository.findByUserId(userId)) {
+            if (order.getOrderItems() == null) {
+                continue;
+            }
+            Set<Long> bookIds = new HashSet<>();
+            for (Order_Item item : order.getOrderItems()) {
+                if (item.getBook() != null && bookIds.add(item.getBook().getId())) {
+                    signals.add(Map.entry(item.getBook().getId(),
+                            PURCHASE_WEIGHT * decayFactor(order.getOrderDate(), now)));
+                }
+            }
+        }
+        for (Review review : reviewRepository.findByUserId(userId)) {
+            double weight = reviewWeight(review.getRating());
+            if (review.getBook() != null && weight > 0.0) {
+                signals.add(Map.entry(review.getBook().getId(), weight * decayFactor(review.getCreatedAt(), now)));
+            }
+        }
+        for (FavoriteBook favorite : favoriteBookRepository.findByUserId(userId)) {
+            if (favorite.getBook() != null) {
+                signals.add(Map.entry(favorite.getBook().getId(),
+                        FAVORITE_WEIGHT * decayFactor(favorite.getCreatedAt(), now)));
+            }
+        }
+
+        Set<Long> bookIds = new HashSet<>();
+        signals.forEach(signal -> bookIds.add(signal.getKey()));
+        Map<Long, float[]> vectors = embeddingLookup.getVectors(bookIds);
+
+        float[] sum = null;
+        double totalWeight = 0.0;
+        int count = 0;
+        for (Map.Entry<Long, Double> signal : signals) {
+            float[] vector = vectors.get(signal.getKey());
+            if (vector == null) {
+                continue;
+            }
+            if (sum == null) {
+                sum = new float[vector.length];
+            } else if (vector.length != sum.length) {
+                continue;
+            }
+            double weight = signal.getValue();
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] += (float) (vector[i] * weight);
+            }
+            totalWeight += weight;
+            count++;
+        }
+
+        UserTasteProfile profile = profileRepository.findById(userId).orElse(null);
+        if (sum == null) {
+            // Không còn tín hiệu nào có embedding
+            if (profile != null) {
+                profileRepository.delete(profile);
+            }
+            return null;
+        }
+        if (profile == null) {
+            profile = new UserTasteProfile();
+            profile.setUserId(userId);
+        }
+        profile.setVectorSum(EmbeddingCodec.encodeFloat32(sum));
+        profile.setDimension(sum.length);
+        profile.setTotalWeight(totalWeight);
+        profile.setSignalCount(count);
+        profile.setUpdatedAt(now);
+        log.debug("🧭 Đã build profile sở thích cho user {} từ {} tín hiệu", userId, count);
+        return profileRepository.save(profile);
+    }
+
+    /**
+     * Chạy trong transaction riêng; xung đột ghi đồng thời (cùng user) -> đọc lại và thử lại tối đa
+     * MAX_CONFLICT_RETRIES lần. Vẫn xung đột thì build lại profile từ dữ liệu gốc (đơn hàng / review / yêu thích
+     * đã commit), nên tín hiệu vừa phát sinh không bị mất
+     */
+    private UserTasteProfile runInTransaction(Long userId, Supplier<UserTasteProfile> action) {
+        for (int attempt = 1; attempt <= MAX_CONFLICT_RETRIES; attempt++) {
+            try {
+                return transactionTemplate.execute(tx -> action.get());
+            } catch (ObjectOptimisticLockingFailureException | DataIntegrityViolationException e) {
+                log.warn("⚠️ Xung đột khi cập nhật profile sở thích của user {} (lần {}/{}): {}",
+                        userId, attempt, MAX_CONFLICT_RETRIES, e.getMessage());
+            } catch (Exception e) {
+                log.error("❌ Lỗi khi cập nhật profile sở thích của user {}: {}", userId, e.getMessage(), e);
+                return null;
+            }
+        }
+        try {
+            log.warn("🔁 Build lại profile sở thích của user {} từ dữ liệu gốc sau {} lần xung đột",
+                    userId, MAX_CONFLICT_RETRIES);
+            return transactionTemplate.execute(tx -> rebuild(userId));
+        } catch (Exception e) {
+            log.error("❌ Không build lại được profile sở thích của user {}: {}", userId, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    // Rating 4 = 0.5, Rating 5 = 0.6 (giống trọng số của collaborative filtering)
+    private static double reviewWeight(Integer rating) {
+        if (rating == null || rating < HIGH_RATING) {
+            return 0.0;
+        }
+        return 0.4 + (rating - HIGH_RATING) * 0.1;
+    }
+
+    // 2^(-tuổi / chu kỳ bán rã); 1.0 khi tắt decay
+    private double decayFactor(LocalDateTime from, LocalDateTime now) {
+        if (halfLifeDays <= 0.0 || from == null || !from.isBefore(now)) {
+            return 1.0;
+        }
+        double ageDays = Duration.between(from, now).toMinutes() / (24.0 * 60.0);
+        return Math.pow(0.5, ageDays / halfLifeDays);
+    }
+}
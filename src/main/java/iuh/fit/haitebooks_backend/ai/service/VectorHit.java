@@ -0,0 +1,7 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+/**
+ * Kết quả tìm kiếm vector: ID sách và điểm số tương ứng
+ */
+public record VectorHit(long bookId, double score) {
+}
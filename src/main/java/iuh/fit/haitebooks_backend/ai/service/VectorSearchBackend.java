@@ -0,0 +1,24 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import java.util.List;
+
+/**
+ * Backend tìm kiếm vector gần nhất (exact brute-force hoặc ANN như HNSW)
+ */
+public interface VectorSearchBackend {
+
+    /**
+     * Tên backend (exact, hnsw) - dùng cho log và báo cáo
+     */
+    String name();
+
+    /**
+     * Tìm top-K sách có cosine similarity cao nhất với vector truy vấn
+     * @param query Vector truy vấn
+     * @param k Số lượng kết quả tối đa
+     * @param minScore Ngưỡng cosine tối thiểu
+     * @param excludeBookId Sách cần loại khỏi kết quả (null nếu không loại)
+     * @return Danh sách kết quả sắp xếp giảm dần theo điểm
+     */
+    List<VectorHit> nearest(float[] query, int k, double minScore, Long excludeBookId);
+}
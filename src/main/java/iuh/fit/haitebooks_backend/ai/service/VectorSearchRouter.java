@@ -0,0 +1,159 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Chọn backend tìm kiếm vector theo cấu hình ai.vector.backend (exact | hnsw)
+ * - HNSW chưa build xong thì tự động dùng exact (brute-force) làm fallback
+ * - Cung cấp phép đo recall@K / latency giữa HNSW và exact để tinh chỉnh efSearch / M
+ */
+@Service
+public class VectorSearchRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(VectorSearchRouter.class);
+    private static final int MAX_EVALUATION_QUERIES = 1000;
+
+    private final BookVectorIndex exactIndex;
+    private final HnswVectorIndex hnswIndex;
+    private final boolean hnswEnabled;
+
+    public VectorSearchRouter(BookVectorIndex exactIndex,
+                              HnswVectorIndex hnswIndex,
+                              @Value("${ai.vector.backend:exact}") String backend) {
+        this.exactIndex = exactIndex;
+        this.hnswIndex = hnswIndex;
+        this.hnswEnabled = "hnsw".equalsIgnoreCase(backend.trim());
+        log.info("🧭 Vector search backend: {}", hnswEnabled ? "hnsw" : "exact");
+    }
+
+    /**
+     * Backend đang dùng cho truy vấn (HNSW nếu đã bật và sẵn sàng, ngược lại là exact)
+     */
+    public VectorSearchBackend backend() {
+        return useHnsw() ? hnswIndex : exactIndex;
+    }
+
+    public boolean useHnsw() {
+        return hnswEnabled && hnswIndex.isReady();
+    }
+
+    /**
+     * Số ứng viên semantic lấy từ HNSW trước khi chấm điểm hybrid
+     */
+    public int candidatePoolSize(int k) {
+        return Math.max(k * 4, hnswIndex.efSearch());
+    }
+
+    /**
+     * So sánh HNSW với exact: dùng chính vector của các sách trong index làm truy vấn (loại sách đó khỏi kết quả)
+     * @param k Số kết quả cần so sánh
+     * @param queries Số truy vấn mẫu
+     * @param efSearchValues Danh sách efSearch cần đo
+     * @return Báo cáo recall@K và latency (avg / p50 / p95 / p99, đơn vị micro giây) cho từng cấu hình
+     */
+    public Map<String, Object> evaluate(int k, int queries, List<Integer> efSearchValues) {
+        if (!hnswIndex.isReady()) {
+            log.info("🔄 HNSW index chưa sẵn sàng, build đồng bộ để đánh giá...");
+            hnswIndex.rebuildNow();
+        }
+
+        // Lấy mẫu truy vấn trải đều trên index
+        int sampleCount = Math.max(1, Math.min(queries, MAX_EVALUATION_QUERIES));
+        int total = exactIndex.size();
+        int step = Math.max(1, total / sampleCount);
+        List<Long> sampleIds = new ArrayList<>();
+        List<float[]> sampleVectors = new ArrayList<>();
+        int[] position = {0};
+        exactIndex.forEachVector((bookId, data, offset, dim) -> {
+            if (position[0]++ % step == 0 && sampleIds.size() < sampleCount) {
+                sampleIds.add(bookId);
+                sampleVectors.add(Arrays.copyOfRange(data, offset, offset + dim));
+            }
+        });
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("k", k);
+        report.put("queries", sampleIds.size());
+        report.put("indexSize", total);
+        report.put("hnsw", hnswIndex.status());
+        if (sampleIds.isEmpty() || !hnswIndex.isReady()) {
+            report.put("message", "Không có dữ liệu để đánh giá");
+            return report;
+        }
+
+        // Kết quả chuẩn từ brute-force
+        List<Set<Long>> groundTruth = new ArrayList<>();
+        long[] exactLatencies = new long[sampleIds.size()];
+        for (int i = 0; i < sampleIds.size(); i++) {
+            long start = System.nanoTime();
+            List<VectorHit> hits = exactIndex.nearest(sampleVectors.get(i), k, -1.0, sampleIds.get(i));
+            exactLatencies[i] = System.nanoTime() - start;
+            Set<Long> ids = new HashSet<>();
+            hits.forEach(hit -> ids.add(hit.bookId()));
+            groundTruth.add(ids);
+        }
+        report.put("exact", latencySummary(exactLatencies));
+
+        List<Map<String, Object>> runs = new ArrayList<>();
+        for (Integer efSearch : efSearchValues) {
+            long[] latencies = new long[sampleIds.size()];
+            long found = 0;
+            long expected = 0;
+            for (int i = 0; i < sampleIds.size(); i++) {
+                long start = System.nanoTime();
+                List<VectorHit> hits = hnswIndex.nearest(sampleVectors.get(i), k, -1.0, sampleIds.get(i), efSearch);
+                latencies[i] = System.nanoTime() - start;
+                Set<Long> truth = groundTruth.get(i);
+                expected += truth.size();
+                for (VectorHit hit : hits) {
+                    if (truth.contains(hit.bookId())) {
+                        found++;
+                    }
+                }
+            }
+            Map<String, Object> run = new LinkedHashMap<>();
+            run.put("efSearch", efSearch);
+            run.put("recallAtK", expected > 0 ? (double) found / expected : 1.0);
+            run.putAll(latencySummary(latencies));
+            runs.add(run);
+            log.info("📏 HNSW efSearch={} recall@{}={} p95={}µs", efSearch, k,
+                    String.format("%.4f", (Double) run.get("recallAtK")), run.get("p95Micros"));
+        }
+        report.put("hnswRuns", runs);
+        return report;
+    }
+
+    private static Map<String, Object> latencySummary(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long value : sorted) {
+            sum += value;
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("avgMicros", sorted.length > 0 ? sum / sorted.length / 1000 : 0);
+        summary.put("p50Micros", percentile(sorted, 0.50) / 1000);
+        summary.put("p95Micros", percentile(sorted, 0.95) / 1000);
+        summary.put("p99Micros", percentile(sorted, 0.99) / 1000);
+        return summary;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
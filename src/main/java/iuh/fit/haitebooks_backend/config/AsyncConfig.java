@@ -23,5 +23,50 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
-}
 
+    @Bean(name = "recommendationTaskExecutor")
+    public Executor recommendationTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(500);
+        executor.setThreadNamePrefix("recommendation-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    // Các bước dựng context của chatbot (tìm sách, đọc đơn hàng) chạy song song, mỗi bước có timeout riêng
+    // core = max để pool dùng đủ 16 thread trước khi xếp hàng; hàng đợi ngắn vì bước nào chờ lâu hơn timeout
+    // cũng bị bỏ - pool và hàng đợi đều đầy thì ChatbotService chạy bước đó trên thread của request
+    @Bean(name = "chatContextExecutor")
+    public Executor chatContextExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(16);
+        executor.setMaxPoolSize(16);
+        executor.setQueueCapacity(16);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setKeepAliveSeconds(60);
+        executor.setThreadNamePrefix("chat-context-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    // Mỗi stream chat giữ một thread trong suốt thời gian Cohere sinh token (thay cho thread của Tomcat)
+    // core = max và không có hàng đợi: ThreadPoolExecutor chỉ tạo thêm thread khi hàng đợi đầy, nên với core nhỏ +
+    // hàng đợi, stream thứ 5 trở đi phải chờ stream trước kết thúc. Đủ 32 stream -> từ chối ngay (báo bận qua SSE)
+    @Bean(name = "chatStreamExecutor")
+    public Executor chatStreamExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(32);
+        executor.setMaxPoolSize(32);
+        executor.setQueueCapacity(0);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setKeepAliveSeconds(60);
+        executor.setThreadNamePrefix("chat-stream-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+}
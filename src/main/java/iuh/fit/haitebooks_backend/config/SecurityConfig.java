@@ -63,6 +63,7 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.GET, "/api/ai/recommend/**").permitAll()
                         // Chatbot - public để khách hàng có thể sử dụng (có thể nhận authentication optional để lấy thông tin đơn hàng)
                         .requestMatchers(HttpMethod.POST, "/api/ai/chat").permitAll()
+                        .requestMatchers(HttpMethod.POST, "/api/ai/chat/stream").permitAll()
                         .requestMatchers(HttpMethod.GET, "/api/books/barcode/**").permitAll()
 
                         // 🔥 Public validate promotion
@@ -148,6 +149,10 @@ public class SecurityConfig {
                         .requestMatchers("/api/users/all").hasRole("ADMIN")
                         .requestMatchers("/api/users/{id}").hasRole("ADMIN")
 
+                        // AI - trạng thái job embedding và thống kê chỉ dành cho ADMIN
+                        .requestMatchers(HttpMethod.GET, "/api/ai/generate-embeddings/**").hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.GET, "/api/ai/stats/**").hasRole("ADMIN")
+
                         // AI - POST requires ADMIN (trừ /api/ai/chat đã được permitAll() ở trên - dòng 65)
                         // Lưu ý: /api/ai/chat được permitAll() nhưng vẫn có thể nhận authentication optional
                         .requestMatchers(HttpMethod.POST, "/api/ai/**").hasRole("ADMIN")
@@ -2,15 +2,21 @@ package iuh.fit.haitebooks_backend.controller;
 
 import iuh.fit.haitebooks_backend.dtos.request.UserRequest;
 import iuh.fit.haitebooks_backend.dtos.response.UserResponse;
+import iuh.fit.haitebooks_backend.event.CatalogChangedEvent;
 import iuh.fit.haitebooks_backend.model.User;
 import iuh.fit.haitebooks_backend.repository.UserRepository;
+import iuh.fit.haitebooks_backend.service.CatalogCache;
+import iuh.fit.haitebooks_backend.service.ProjectionBenchmarkService;
 import iuh.fit.haitebooks_backend.service.StatisticService;
 import iuh.fit.haitebooks_backend.service.UserService;
 import jakarta.validation.Valid;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/admin")
@@ -19,11 +25,19 @@ public class AdminController {
     private final UserRepository userRepository;
     private final StatisticService statisticService;
     private final UserService userService;
+    private final CatalogCache catalogCache;
+    private final ProjectionBenchmarkService projectionBenchmarkService;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public AdminController(UserRepository userRepository, StatisticService statisticService, UserService userService) {
+    public AdminController(UserRepository userRepository, StatisticService statisticService, UserService userService,
+                           CatalogCache catalogCache, ProjectionBenchmarkService projectionBenchmarkService,
+                           ApplicationEventPublisher eventPublisher) {
         this.userRepository = userRepository;
         this.statisticService = statisticService;
         this.userService = userService;
+        this.catalogCache = catalogCache;
+        this.projectionBenchmarkService = projectionBenchmarkService;
+        this.eventPublisher = eventPublisher;
     }
 
     @GetMapping("/users")
@@ -44,4 +58,36 @@ public class AdminController {
         UserResponse updated = userService.updateUser(id, request);
         return ResponseEntity.ok(updated);
     }
+
+    // ✅ Thống kê catalog cache (chi tiết sách, barcode, category): hit / miss / eviction theo từng vùng
+    @GetMapping("/catalog-cache/stats")
+    public ResponseEntity<Map<String, Object>> catalogCacheStats() {
+        Map<String, Object> response = new HashMap<>();
+        catalogCache.stats().forEach((name, stats) -> {
+            Map<String, Object> region = new HashMap<>();
+            region.put("hits", stats.hits());
+            region.put("misses", stats.misses());
+            region.put("hitRate", stats.hitRate());
+            region.put("evictions", stats.evictions());
+            region.put("expirations", stats.expirations());
+            region.put("size", stats.size());
+            region.put("maxEntries", stats.maxEntries());
+            response.put(name, region);
+        });
+        return ResponseEntity.ok(response);
+    }
+
+    // ✅ Xóa toàn bộ catalog cache (VD: sau khi sửa dữ liệu trực tiếp trong DB)
+    // Phát event như một thay đổi catalog thật để CatalogVersionService cũng đổi ETag (client không giữ bản cũ)
+    @DeleteMapping("/catalog-cache")
+    public ResponseEntity<Void> clearCatalogCache() {
+        eventPublisher.publishEvent(CatalogChangedEvent.categories());
+        return ResponseEntity.noContent().build();
+    }
+
+    // ✅ So sánh danh sách đơn hàng: entity graph vs projection (số dòng, byte đọc lên, bộ nhớ cấp phát, thời gian)
+    @GetMapping("/benchmarks/order-list")
+    public ResponseEntity<Map<String, Object>> benchmarkOrderList(@RequestParam(defaultValue = "5") int iterations) {
+        return ResponseEntity.ok(projectionBenchmarkService.compareOrderList(iterations));
+    }
 }
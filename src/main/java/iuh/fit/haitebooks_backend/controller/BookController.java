@@ -2,11 +2,18 @@ package iuh.fit.haitebooks_backend.controller;
 
 import iuh.fit.haitebooks_backend.dtos.request.BookRequest;
 import iuh.fit.haitebooks_backend.dtos.response.BookResponse;
+import iuh.fit.haitebooks_backend.dtos.response.CatalogSearchResponse;
+import iuh.fit.haitebooks_backend.dtos.response.CursorPageResponse;
+import iuh.fit.haitebooks_backend.dtos.response.SuggestionResponse;
+import iuh.fit.haitebooks_backend.service.AutocompleteService;
 import iuh.fit.haitebooks_backend.service.BookService;
+import iuh.fit.haitebooks_backend.service.CatalogVersionService;
+import iuh.fit.haitebooks_backend.util.ConditionalGet;
 import jakarta.validation.Valid;
 import org.springframework.data.domain.Page;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -15,16 +22,20 @@ import java.util.List;
 public class BookController {
 
     private final BookService bookService;
+    private final AutocompleteService autocompleteService;
+    private final CatalogVersionService catalogVersionService;
 
-    public BookController(BookService bookService) {
+    public BookController(BookService bookService, AutocompleteService autocompleteService,
+                          CatalogVersionService catalogVersionService) {
         this.bookService = bookService;
+        this.autocompleteService = autocompleteService;
+        this.catalogVersionService = catalogVersionService;
     }
 
-    // ✅ Lấy tất cả (không phân trang)
+    // ✅ Lấy tất cả (không phân trang) - trả 304 nếu client đã có bản mới nhất
     @GetMapping
-    public ResponseEntity<List<BookResponse>> getAllBooks() {
-        List<BookResponse> responses = bookService.getAllBooks();
-        return ResponseEntity.ok(responses);
+    public ResponseEntity<List<BookResponse>> getAllBooks(WebRequest request) {
+        return ConditionalGet.respond(request, catalogVersionService.bookList(), bookService::getAllBooks);
     }
 
     // ✅ Phân trang + filter
@@ -38,6 +49,48 @@ public class BookController {
         return ResponseEntity.ok(booksPage);
     }
 
+    // ✅ Tìm kiếm full-text có xếp hạng + facet (category, tác giả)
+    @GetMapping("/search")
+    public ResponseEntity<CatalogSearchResponse> searchBooks(
+            @RequestParam String q,
+            @RequestParam(required = false) Long categoryId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size
+    ) {
+        return ResponseEntity.ok(bookService.searchCatalog(q, categoryId, page, size));
+    }
+
+    // ✅ Gợi ý khi gõ (tên sách, tác giả, category) - không phân biệt dấu
+    @GetMapping("/suggest")
+    public ResponseEntity<List<SuggestionResponse>> suggest(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "8") Integer limit
+    ) {
+        return ResponseEntity.ok(autocompleteService.suggest(q, limit));
+    }
+
+    // ✅ Phân trang keyset: truyền nextCursor của trang trước vào "after"
+    @GetMapping("/cursor")
+    public ResponseEntity<CursorPageResponse<BookResponse>> getBooksAfter(
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "20") Integer size,
+            @RequestParam(required = false) String keyword
+    ) {
+        return ResponseEntity.ok(bookService.getBooksAfter(after, size, keyword));
+    }
+
+    // ✅ Sách đang thịnh hành (trang chủ)
+    @GetMapping("/trending")
+    public ResponseEntity<List<BookResponse>> getTrendingBooks(@RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(bookService.getTrendingBooks(limit));
+    }
+
+    // ✅ Sách bán chạy nhất
+    @GetMapping("/best-sellers")
+    public ResponseEntity<List<BookResponse>> getBestSellers(@RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(bookService.getBestSellers(limit));
+    }
+
     // ✅ Lấy sách bằng barcode (VD: quét barcode)
     @GetMapping("/barcode/{code}")
     public ResponseEntity<BookResponse> getBookByBarcode(@PathVariable String code) {
@@ -56,9 +109,8 @@ public class BookController {
 
     // ✅ Lấy theo ID
     @GetMapping("/{id}")
-    public ResponseEntity<BookResponse> getBookById(@PathVariable Long id) {
-        BookResponse book = bookService.getBookById(id);
-        return ResponseEntity.ok(book);
+    public ResponseEntity<BookResponse> getBookById(@PathVariable Long id, WebRequest request) {
+        return ConditionalGet.respond(request, catalogVersionService.book(id), () -> bookService.getBookById(id));
     }
 
     // ✅ Cập nhật sách (không thay đổi barcode)
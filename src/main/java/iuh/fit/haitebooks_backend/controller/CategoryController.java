@@ -4,10 +4,13 @@ import iuh.fit.haitebooks_backend.dtos.request.CategoryRequest;
 import iuh.fit.haitebooks_backend.dtos.response.CategoryResponse;
 import iuh.fit.haitebooks_backend.mapper.CategoryMapper;
 import iuh.fit.haitebooks_backend.model.BookCategory;
+import iuh.fit.haitebooks_backend.service.CatalogVersionService;
 import iuh.fit.haitebooks_backend.service.CategoryService;
+import iuh.fit.haitebooks_backend.util.ConditionalGet;
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -16,16 +19,18 @@ import java.util.List;
 public class CategoryController {
 
     private final CategoryService categoryService;
+    private final CatalogVersionService catalogVersionService;
 
-    public CategoryController(CategoryService categoryService) {
+    public CategoryController(CategoryService categoryService, CatalogVersionService catalogVersionService) {
         this.categoryService = categoryService;
+        this.catalogVersionService = catalogVersionService;
     }
 
-    // ✅ Lấy tất cả category
+    // ✅ Lấy tất cả category - trả 304 nếu client đã có bản mới nhất
     @GetMapping
-    public ResponseEntity<List<CategoryResponse>> getAllCategories() {
-        List<CategoryResponse> responses = categoryService.getAllCategories();
-        return ResponseEntity.ok(responses);
+    public ResponseEntity<List<CategoryResponse>> getAllCategories(WebRequest request) {
+        return ConditionalGet.respond(request, catalogVersionService.categoryList(),
+                categoryService::getAllCategories);
     }
 
     // ✅ Tạo mới
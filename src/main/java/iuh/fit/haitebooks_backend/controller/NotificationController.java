@@ -1,6 +1,7 @@
 package iuh.fit.haitebooks_backend.controller;
 
 import iuh.fit.haitebooks_backend.dtos.request.NotificationRequest;
+import iuh.fit.haitebooks_backend.dtos.response.CursorPageResponse;
 import iuh.fit.haitebooks_backend.dtos.response.NotificationResponse;
 import iuh.fit.haitebooks_backend.service.NotificationService;
 import org.springframework.http.ResponseEntity;
@@ -33,6 +34,16 @@ public class NotificationController {
         return ResponseEntity.ok(notificationService.getUserNotifications(userId));
     }
 
+    // Lấy thông báo user theo trang (keyset) - truyền nextCursor của trang trước vào "after"
+    @GetMapping("/{userId}/cursor")
+    public ResponseEntity<CursorPageResponse<NotificationResponse>> getUserNotificationsAfter(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "20") Integer size
+    ) {
+        return ResponseEntity.ok(notificationService.getUserNotificationsAfter(userId, after, size));
+    }
+
     // Lấy chưa đọc
     @GetMapping("/unread/{userId}")
     public ResponseEntity<List<NotificationResponse>> getUnread(@PathVariable Long userId) {
@@ -1,6 +1,7 @@
 package iuh.fit.haitebooks_backend.controller;
 
 import iuh.fit.haitebooks_backend.dtos.request.OrderRequest;
+import iuh.fit.haitebooks_backend.dtos.response.CursorPageResponse;
 import iuh.fit.haitebooks_backend.dtos.response.OrderResponse;
 import iuh.fit.haitebooks_backend.service.OrderService;
 import jakarta.validation.Valid;
@@ -26,6 +27,14 @@ public class OrderController {
         return ResponseEntity.ok(responses);
     }
 
+    // ✅ Lấy orders theo trang (keyset) - truyền nextCursor của trang trước vào "after"
+    @GetMapping("/cursor")
+    public ResponseEntity<CursorPageResponse<OrderResponse>> getOrdersAfter(
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "20") Integer size) {
+        return ResponseEntity.ok(orderService.getOrdersAfter(after, size));
+    }
+
     // ✅ Tạo đơn hàng
     @PostMapping
     public ResponseEntity<OrderResponse> createOrder(@Valid @RequestBody OrderRequest request) {
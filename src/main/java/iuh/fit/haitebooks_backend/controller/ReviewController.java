@@ -1,11 +1,15 @@
 package iuh.fit.haitebooks_backend.controller;
 
 import iuh.fit.haitebooks_backend.dtos.request.ReviewRequest;
+import iuh.fit.haitebooks_backend.dtos.response.CursorPageResponse;
 import iuh.fit.haitebooks_backend.dtos.response.ReviewResponse;
+import iuh.fit.haitebooks_backend.service.CatalogVersionService;
 import iuh.fit.haitebooks_backend.service.ReviewService;
+import iuh.fit.haitebooks_backend.util.ConditionalGet;
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -14,8 +18,10 @@ import java.util.List;
 public class ReviewController {
 
     private final ReviewService reviewService;
-    public ReviewController(ReviewService reviewService) {
+    private final CatalogVersionService catalogVersionService;
+    public ReviewController(ReviewService reviewService, CatalogVersionService catalogVersionService) {
         this.reviewService = reviewService;
+        this.catalogVersionService = catalogVersionService;
     }
 
     // ✅ Tạo review
@@ -32,11 +38,19 @@ public class ReviewController {
         return ResponseEntity.ok(responses);
     }
 
-    // ✅ Lấy review theo sách
+    // ✅ Lấy review theo trang (keyset) - truyền nextCursor của trang trước vào "after"
+    @GetMapping("/cursor")
+    public ResponseEntity<CursorPageResponse<ReviewResponse>> getReviewsAfter(
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "20") Integer size) {
+        return ResponseEntity.ok(reviewService.getAllAfter(after, size));
+    }
+
+    // ✅ Lấy review theo sách - trả 304 nếu client đã có bản mới nhất
     @GetMapping("/book/{bookId}")
-    public ResponseEntity<List<ReviewResponse>> getByBook(@PathVariable Long bookId) {
-        List<ReviewResponse> responses = reviewService.findByBook(bookId);
-        return ResponseEntity.ok(responses);
+    public ResponseEntity<List<ReviewResponse>> getByBook(@PathVariable Long bookId, WebRequest request) {
+        return ConditionalGet.respond(request, catalogVersionService.reviewsOfBook(bookId),
+                () -> reviewService.findByBook(bookId));
     }
 
     // ✅ Lấy review theo user
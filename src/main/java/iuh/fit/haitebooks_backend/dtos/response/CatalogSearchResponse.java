@@ -0,0 +1,28 @@
+package iuh.fit.haitebooks_backend.dtos.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatalogSearchResponse {
+    private List<BookResponse> items;
+    private long total;
+    private int page;
+    private int size;
+
+    /**
+     * Số sách khớp theo từng category (không phụ thuộc bộ lọc category đang chọn)
+     */
+    private Map<String, Long> categoryFacets;
+
+    /**
+     * Số sách khớp theo từng tác giả (top 10)
+     */
+    private Map<String, Long> authorFacets;
+}
@@ -0,0 +1,22 @@
+package iuh.fit.haitebooks_backend.dtos.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageResponse<T> {
+    private List<T> items;
+
+    /**
+     * Cursor để lấy trang kế tiếp (truyền lại qua tham số "after"), null nếu đã hết dữ liệu
+     */
+    private String nextCursor;
+
+    private boolean hasNext;
+    private int size;
+}
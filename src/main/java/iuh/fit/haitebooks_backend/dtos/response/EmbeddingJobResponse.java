@@ -0,0 +1,26 @@
+package iuh.fit.haitebooks_backend.dtos.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmbeddingJobResponse {
+    private Long id;
+    private String status;
+    private Long lastProcessedBookId;
+    private int totalBooks;
+    private int createdCount;
+    private int skippedCount;
+    private int failedCount;
+    private String ownerInstanceId;
+    private LocalDateTime leaseExpiresAt;
+    private String errorMessage;
+    private LocalDateTime startedAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,27 @@
+package iuh.fit.haitebooks_backend.dtos.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SuggestionResponse {
+    private String text;
+
+    /**
+     * TITLE, AUTHOR hoặc CATEGORY
+     */
+    private String type;
+
+    /**
+     * ID sách (chỉ có với TITLE)
+     */
+    private Long bookId;
+
+    /**
+     * ID category (chỉ có với CATEGORY)
+     */
+    private Long categoryId;
+}
@@ -0,0 +1,49 @@
+package iuh.fit.haitebooks_backend.event;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Phát ra khi dữ liệu catalog thay đổi (sách, tồn kho, category) - listener xử lý sau khi transaction commit
+ * @param bookIds Các sách bị thay đổi
+ * @param categoriesChanged true nếu category thay đổi (ảnh hưởng tới mọi sách vì BookResponse chứa tên category)
+ * @param change Loại thay đổi - quyết định các index trong bộ nhớ cần cập nhật gì
+ * @param categoryId Category được thêm / sửa / xóa (null nếu không rõ)
+ */
+public record CatalogChangedEvent(Collection<Long> bookIds, boolean categoriesChanged, Change change, Long categoryId) {
+
+    public enum Change {
+        STOCK,          // Chỉ tồn kho đổi (đặt hàng) - nội dung sách giữ nguyên
+        BOOKS_SAVED,    // Sách được thêm mới / cập nhật
+        BOOKS_DELETED,  // Sách bị xóa
+        CATEGORIES,     // Category được thêm mới / đổi tên
+        CATEGORY_DELETED // Category bị xóa, kéo theo các sách thuộc category (bookIds)
+    }
+
+    public static CatalogChangedEvent stockChanged(Collection<Long> bookIds) {
+        return new CatalogChangedEvent(List.copyOf(bookIds), false, Change.STOCK, null);
+    }
+
+    public static CatalogChangedEvent bookSaved(Long bookId) {
+        return new CatalogChangedEvent(List.of(bookId), false, Change.BOOKS_SAVED, null);
+    }
+
+    public static CatalogChangedEvent bookDeleted(Long bookId) {
+        return new CatalogChangedEvent(List.of(bookId), false, Change.BOOKS_DELETED, null);
+    }
+
+    public static CatalogChangedEvent categories() {
+        return new CatalogChangedEvent(List.of(), true, Change.CATEGORIES, null);
+    }
+
+    public static CatalogChangedEvent categorySaved(Long categoryId) {
+        return new CatalogChangedEvent(List.of(), true, Change.CATEGORIES, categoryId);
+    }
+
+    /**
+     * @param bookIds Sách thuộc category, bị xóa theo (cascade)
+     */
+    public static CatalogChangedEvent categoryDeleted(Long categoryId, Collection<Long> bookIds) {
+        return new CatalogChangedEvent(List.copyOf(bookIds), true, Change.CATEGORY_DELETED, categoryId);
+    }
+}
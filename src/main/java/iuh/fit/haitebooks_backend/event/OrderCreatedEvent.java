@@ -0,0 +1,9 @@
+package iuh.fit.haitebooks_backend.event;
+
+/**
+ * Phát ra khi một đơn hàng mới được tạo (listener nên xử lý sau khi transaction commit)
+ * @param orderId ID đơn hàng vừa tạo
+ * @param userId ID người đặt hàng
+ */
+public record OrderCreatedEvent(Long orderId, Long userId) {
+}
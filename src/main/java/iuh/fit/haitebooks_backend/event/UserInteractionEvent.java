@@ -0,0 +1,15 @@
+package iuh.fit.haitebooks_backend.event;
+
+/**
+ * Phát ra khi hành vi của user thay đổi (review, yêu thích, giỏ hàng) - ảnh hưởng tới gợi ý cá nhân
+ * @param userId ID người dùng
+ * @param type Loại hành vi
+ * @param bookId Sách liên quan (null nếu không xác định)
+ * @param rating Số sao của review (chỉ có với REVIEW_CREATED / REVIEW_UPDATED)
+ */
+public record UserInteractionEvent(Long userId, Type type, Long bookId, Integer rating) {
+
+    public enum Type {
+        REVIEW_CREATED, REVIEW_UPDATED, REVIEW_DELETED, FAVORITE_ADDED, FAVORITE_REMOVED, CART_ADDED, CART_CHANGED
+    }
+}
@@ -4,6 +4,7 @@ import iuh.fit.haitebooks_backend.dtos.request.BookRequest;
 import iuh.fit.haitebooks_backend.dtos.response.BookResponse;
 import iuh.fit.haitebooks_backend.model.Book;
 import iuh.fit.haitebooks_backend.model.BookCategory;
+import iuh.fit.haitebooks_backend.repository.projection.BookRow;
 
 public class BookMapper {
 
@@ -29,6 +30,23 @@ public class BookMapper {
         );
     }
 
+    // Từ projection của các endpoint danh sách
+    public static BookResponse toBookResponse(BookRow row) {
+        if (row == null) return null;
+
+        return new BookResponse(
+                row.getId(),
+                row.getTitle(),
+                row.getAuthor(),
+                row.getPrice(),
+                row.getStock(),
+                row.getDescription(),
+                row.getImageUrl(),
+                row.getBarcode(),
+                row.getCategoryName()
+        );
+    }
+
     public static Book toBookEntity(BookRequest request, BookCategory category) {
         if (request == null) return null;
 
@@ -2,6 +2,7 @@ package iuh.fit.haitebooks_backend.mapper;
 
 import iuh.fit.haitebooks_backend.dtos.response.CartResponse;
 import iuh.fit.haitebooks_backend.model.Cart;
+import iuh.fit.haitebooks_backend.repository.projection.CartRow;
 
 public class CartMapper {
 
@@ -15,5 +16,12 @@ public class CartMapper {
                 cart.getQuantity()
         );
     }
+
+    // Từ projection (không cần load Cart / User / Book entity)
+    public static CartResponse toResponse(CartRow row) {
+        if (row == null) return null;
+
+        return new CartResponse(row.getId(), row.getUserId(), row.getBookId(), row.getQuantity());
+    }
 }
 
@@ -0,0 +1,25 @@
+package iuh.fit.haitebooks_backend.mapper;
+
+import iuh.fit.haitebooks_backend.dtos.response.EmbeddingJobResponse;
+import iuh.fit.haitebooks_backend.model.EmbeddingJob;
+
+public class EmbeddingJobMapper {
+
+    public static EmbeddingJobResponse toResponse(EmbeddingJob job) {
+        return new EmbeddingJobResponse(
+                job.getId(),
+                job.getStatus() != null ? job.getStatus().name() : null,
+                job.getLastProcessedBookId(),
+                job.getTotalBooks(),
+                job.getCreatedCount(),
+                job.getSkippedCount(),
+                job.getFailedCount(),
+                job.getOwnerInstanceId(),
+                job.getLeaseExpiresAt(),
+                job.getErrorMessage(),
+                job.getStartedAt(),
+                job.getUpdatedAt(),
+                job.getFinishedAt()
+        );
+    }
+}
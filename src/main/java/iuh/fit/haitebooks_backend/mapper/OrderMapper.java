@@ -6,6 +6,8 @@ import iuh.fit.haitebooks_backend.dtos.response.PromotionResponse;
 import iuh.fit.haitebooks_backend.model.Order;
 import iuh.fit.haitebooks_backend.model.Order_Item;
 import iuh.fit.haitebooks_backend.model.Promotion;
+import iuh.fit.haitebooks_backend.repository.projection.OrderItemRow;
+import iuh.fit.haitebooks_backend.repository.projection.OrderSummaryRow;
 
 import java.util.List;
 
@@ -36,6 +38,33 @@ public class OrderMapper {
         );
     }
 
+    /**
+     * Từ projection của các endpoint danh sách
+     * @param items Dòng sản phẩm của đơn này
+     * @param promotion Khuyến mãi đã áp dụng (null nếu không có)
+     */
+    public static OrderResponse toOrderResponse(OrderSummaryRow row, List<OrderItemRow> items, Promotion promotion) {
+        if (row == null) return null;
+
+        return new OrderResponse(
+                row.getId(),
+                row.getUserId(),
+                row.getUserName(),
+                row.getUserEmail(),
+                row.getTotal(),
+                row.getStatus() != null ? row.getStatus().name() : null,
+                row.getOrderDate(),
+                row.getAddress(),
+                row.getNote(),
+                items.stream()
+                        .map(item -> new OrderItemResponse(item.getBookId(), item.getBookTitle(),
+                                item.getQuantity(), item.getPrice()))
+                        .toList(),
+                toPromotionResponse(promotion),
+                row.getPaymentMethod() != null ? row.getPaymentMethod().name() : null
+        );
+    }
+
     private static OrderItemResponse toOrderItemResponse(Order_Item item) {
         return new OrderItemResponse(
                 item.getBook().getId(),
@@ -5,6 +5,7 @@ import iuh.fit.haitebooks_backend.dtos.response.ReviewResponse;
 import iuh.fit.haitebooks_backend.model.Book;
 import iuh.fit.haitebooks_backend.model.Review;
 import iuh.fit.haitebooks_backend.model.User;
+import iuh.fit.haitebooks_backend.repository.projection.ReviewRow;
 
 import java.time.LocalDateTime;
 
@@ -34,4 +35,20 @@ public class ReviewMapper {
                 review.getCreatedAt()
         );
     }
+
+    // Từ projection của các endpoint danh sách
+    public static ReviewResponse toResponse(ReviewRow row) {
+        if (row == null) return null;
+
+        return new ReviewResponse(
+                row.getId(),
+                row.getUserId(),
+                row.getBookId(),
+                row.getUserName(),
+                row.getBookTitle(),
+                row.getRating(),
+                row.getComment(),
+                row.getCreatedAt()
+        );
+    }
 }
@@ -5,6 +5,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import lombok.*;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
@@ -46,6 +47,10 @@ public class Book {
     @JsonIgnoreProperties({"hibernateLazyInitializer", "handler", "books"})
     private BookCategory category;
 
+    // Thời điểm sửa gần nhất - nguồn của Last-Modified cho các endpoint catalog
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
     // Mapping to Cart
     @OneToMany(mappedBy = "book", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @JsonIgnore
@@ -65,4 +70,10 @@ public class Book {
     @OneToMany(mappedBy = "book", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @JsonIgnore
     private List<FavoriteBook> favoriteBooks;
+
+    @PrePersist
+    @PreUpdate
+    protected void touch() {
+        this.updatedAt = LocalDateTime.now();
+    }
 }
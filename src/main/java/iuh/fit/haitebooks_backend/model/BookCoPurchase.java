@@ -0,0 +1,46 @@
+package iuh.fit.haitebooks_backend.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+/**
+ * Ma trận đồng mua item-item: số người dùng khác nhau đã mua cả bookId và otherBookId
+ * - Lưu cả hai chiều (A, B) và (B, A) để tra theo book_id bằng primary key
+ * - Dòng đường chéo (bookId = otherBookId) là số người dùng khác nhau đã mua sách đó
+ */
+@Entity
+@Table(name = "book_co_purchases")
+@IdClass(BookCoPurchase.Key.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookCoPurchase {
+
+    @Id
+    @Column(name = "book_id")
+    private Long bookId;
+
+    @Id
+    @Column(name = "other_book_id")
+    private Long otherBookId;
+
+    @Column(name = "pair_count", nullable = false)
+    private int pairCount;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private Long bookId;
+        private Long otherBookId;
+    }
+}
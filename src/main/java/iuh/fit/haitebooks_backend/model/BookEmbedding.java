@@ -1,11 +1,12 @@
 package iuh.fit.haitebooks_backend.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import iuh.fit.haitebooks_backend.util.EmbeddingCodec;
 import jakarta.persistence.*;
 import lombok.*;
 
 import java.time.LocalDateTime;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
 
 @Entity
@@ -26,28 +27,71 @@ public class BookEmbedding {
     @JsonIgnore
     private Book book;
 
+    // Định dạng cũ (List.toString()), chỉ còn dùng cho các dòng chưa migrate sang embedding_blob
     @Lob
     @Column(name = "embedding_json", columnDefinition = "MEDIUMTEXT")
+    @ToString.Exclude
     private String embeddingJson;
 
+    // ✅ Vector nhị phân (float32 little-endian hoặc int8 + scale)
+    @Lob
+    @Column(name = "embedding_blob", columnDefinition = "MEDIUMBLOB")
+    @JsonIgnore
+    @ToString.Exclude
+    private byte[] embeddingBlob;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "embedding_format", length = 10)
+    private EmbeddingFormat embeddingFormat;
+
+    @Column(name = "embedding_scale")
+    private Float embeddingScale;
+
+    @Column(name = "dimension")
+    private Integer dimension;
+
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt = LocalDateTime.now();
 
     /**
-     * Convert JSON string vector thành List<Double>
+     * Giải mã vector thẳng ra float[] (ưu tiên cột nhị phân, fallback JSON cũ)
+     */
+    public float[] getEmbeddingArray() {
+        return EmbeddingCodec.read(embeddingBlob, embeddingFormat, embeddingScale, embeddingJson);
+    }
+
+    /**
+     * Lưu vector ở dạng nhị phân và bỏ JSON cũ
+     */
+    public void setEmbeddingArray(float[] vector, EmbeddingFormat format) {
+        EmbeddingCodec.Encoded encoded = EmbeddingCodec.encode(vector, format);
+        this.embeddingBlob = encoded.data();
+        this.embeddingFormat = encoded.format();
+        this.embeddingScale = encoded.scale();
+        this.dimension = vector.length;
+        this.embeddingJson = null;
+    }
+
+    /**
+     * Vector dạng List<Double> (giữ cho code cũ)
      */
     public List<Double> getEmbeddingVector() {
-        if (embeddingJson == null || embeddingJson.isEmpty()) return List.of();
-        return Arrays.stream(embeddingJson.replace("[", "").replace("]", "").split(","))
-                .map(String::trim)
-                .map(Double::parseDouble)
-                .toList();
+        float[] vector = getEmbeddingArray();
+        List<Double> result = new ArrayList<>(vector.length);
+        for (float v : vector) {
+            result.add((double) v);
+        }
+        return result;
     }
 
     /**
-     * Lưu List<Double> vào JSON string
+     * Lưu List<Double> ở dạng float32 nhị phân
      */
     public void setEmbeddingVector(List<Double> vector) {
-        this.embeddingJson = vector.toString();
+        float[] array = new float[vector.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = vector.get(i).floatValue();
+        }
+        setEmbeddingArray(array, EmbeddingFormat.FLOAT32);
     }
 }
@@ -0,0 +1,40 @@
+package iuh.fit.haitebooks_backend.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Bản lưu DB của cuộc hội thoại chatbot (chỉ dùng khi bật ai.chat.conversation.persist)
+ * Giữ dạng đã nén: tóm tắt các lượt cũ + vài lượt gần nhất + ID sách đã đưa vào context
+ */
+@Entity
+@Table(name = "chat_conversations")
+@Getter
+@Setter
+public class ChatConversation {
+
+    @Id
+    @Column(name = "id", length = 64)
+    private String id;
+
+    // null với khách chưa đăng nhập
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "summary", columnDefinition = "TEXT")
+    private String summary;
+
+    // ✅ JSON: [{"question": "...", "answer": "..."}]
+    @Column(name = "turns", columnDefinition = "TEXT")
+    private String turns;
+
+    // ✅ ID sách cách nhau bởi dấu phẩy, mới nhất trước
+    @Column(name = "book_ids", length = 255)
+    private String bookIds;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
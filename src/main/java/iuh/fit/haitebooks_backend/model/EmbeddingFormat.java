@@ -0,0 +1,6 @@
+package iuh.fit.haitebooks_backend.model;
+
+public enum EmbeddingFormat {
+    FLOAT32, // 4 byte / chiều, little-endian
+    INT8     // 1 byte / chiều, kèm scale để giải lượng tử
+}
@@ -0,0 +1,72 @@
+package iuh.fit.haitebooks_backend.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Một lượt backfill embedding, lưu checkpoint để có thể resume sau khi bị hủy / restart
+ */
+@Entity
+@Table(name = "embedding_jobs")
+@Getter
+@Setter
+public class EmbeddingJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 20, nullable = false)
+    private EmbeddingJobStatus status;
+
+    // Checkpoint: ID sách lớn nhất đã xử lý xong (resume sẽ tiếp tục từ id > giá trị này)
+    @Column(name = "last_processed_book_id", nullable = false)
+    private Long lastProcessedBookId = 0L;
+
+    @Column(name = "total_books", nullable = false)
+    private int totalBooks;
+
+    @Column(name = "created_count", nullable = false)
+    private int createdCount;
+
+    @Column(name = "skipped_count", nullable = false)
+    private int skippedCount;
+
+    @Column(name = "failed_count", nullable = false)
+    private int failedCount;
+
+    // Instance đang chạy job và hạn lease; instance đó gia hạn định kỳ (heartbeat),
+    // hết hạn mà job vẫn RUNNING nghĩa là instance đã chết -> instance khác thu hồi thành INTERRUPTED
+    @Column(name = "owner_instance_id", length = 100)
+    private String ownerInstanceId;
+
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+
+    @Column(name = "error_message", columnDefinition = "TEXT")
+    private String errorMessage;
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        this.startedAt = LocalDateTime.now();
+        this.updatedAt = this.startedAt;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        this.updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,9 @@
+package iuh.fit.haitebooks_backend.model;
+
+public enum EmbeddingJobStatus {
+    RUNNING,
+    COMPLETED,
+    CANCELLED,
+    FAILED,
+    INTERRUPTED // Server dừng giữa chừng (restart / deploy), có thể resume
+}
@@ -0,0 +1,49 @@
+package iuh.fit.haitebooks_backend.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Vector sở thích của user: tổng có trọng số các embedding sách user đã mua / yêu thích / đánh giá cao
+ * Vector trung bình = vectorSum / totalWeight, cập nhật tăng dần thay vì tính lại từ toàn bộ lịch sử
+ */
+@Entity
+@Table(name = "user_taste_profiles")
+@Getter
+@Setter
+public class UserTasteProfile {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    // ✅ Tổng vector dạng float32 little-endian
+    @Lob
+    @Column(name = "vector_sum", columnDefinition = "MEDIUMBLOB", nullable = false)
+    @JsonIgnore
+    @ToString.Exclude
+    private byte[] vectorSum;
+
+    @Column(name = "dimension", nullable = false)
+    private int dimension;
+
+    // Tổng trọng số (đã suy giảm theo thời gian nếu bật time decay)
+    @Column(name = "total_weight", nullable = false)
+    private double totalWeight;
+
+    @Column(name = "signal_count", nullable = false)
+    private int signalCount;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    // Optimistic lock: hai cập nhật đồng thời không ghi đè lên nhau
+    @Version
+    @Column(name = "version")
+    private Long version;
+}
@@ -0,0 +1,118 @@
+package iuh.fit.haitebooks_backend.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Đọc / ghi ma trận đồng mua (book_co_purchases) bằng JDBC
+ * - Tăng đếm theo batch với INSERT ... ON DUPLICATE KEY UPDATE (không đọc trước khi ghi)
+ * - Rebuild toàn bộ bằng một câu INSERT ... SELECT tổng hợp trực tiếp từ orders / order_items
+ */
+@Repository
+public class BookCoPurchaseJdbcRepository {
+
+    private static final String INCREMENT_SQL =
+            "INSERT INTO book_co_purchases (book_id, other_book_id, pair_count) VALUES (?, ?, 1) " +
+            "ON DUPLICATE KEY UPDATE pair_count = pair_count + 1";
+
+    // Cặp (user, sách) phân biệt - mỗi người chỉ được đếm một lần cho mỗi sách / mỗi cặp sách
+    private static final String USER_BOOKS =
+            "SELECT DISTINCT o.user_id, oi.book_id FROM orders o " +
+            "JOIN order_items oi ON oi.order_id = o.id WHERE o.user_id IS NOT NULL";
+
+    private static final String REBUILD_SQL =
+            "INSERT INTO book_co_purchases (book_id, other_book_id, pair_count) " +
+            "SELECT a.book_id, b.book_id, COUNT(*) " +
+            "FROM (" + USER_BOOKS + ") a JOIN (" + USER_BOOKS + ") b ON a.user_id = b.user_id " +
+            "GROUP BY a.book_id, b.book_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    public BookCoPurchaseJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    public record Pair(long bookId, long otherBookId) {
+    }
+
+    public record Row(long bookId, long otherBookId, int pairCount) {
+    }
+
+    /**
+     * Tăng 1 cho mỗi cặp (có hướng) trong danh sách, tạo dòng mới nếu chưa có
+     */
+    public void incrementPairs(List<Pair> pairs) {
+        if (pairs.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INCREMENT_SQL, pairs, pairs.size(), (ps, pair) -> {
+            ps.setLong(1, pair.bookId());
+            ps.setLong(2, pair.otherBookId());
+        });
+    }
+
+    /**
+     * Lấy toàn bộ dòng có book_id thuộc tập sách cho trước (gồm cả dòng đường chéo)
+     */
+    public List<Row> findByBookIds(Collection<Long> bookIds) {
+        if (bookIds.isEmpty()) {
+            return List.of();
+        }
+        return namedJdbcTemplate.query(
+                "SELECT book_id, other_book_id, pair_count FROM book_co_purchases WHERE book_id IN (:ids)",
+                new MapSqlParameterSource("ids", bookIds),
+                (rs, i) -> new Row(rs.getLong(1), rs.getLong(2), rs.getInt(3)));
+    }
+
+    /**
+     * Lấy số người mua phân biệt (dòng đường chéo) của các sách cho trước
+     */
+    public List<Row> findBuyerCounts(Collection<Long> bookIds) {
+        if (bookIds.isEmpty()) {
+            return List.of();
+        }
+        return namedJdbcTemplate.query(
+                "SELECT book_id, other_book_id, pair_count FROM book_co_purchases " +
+                "WHERE book_id IN (:ids) AND other_book_id = book_id",
+                new MapSqlParameterSource("ids", bookIds),
+                (rs, i) -> new Row(rs.getLong(1), rs.getLong(2), rs.getInt(3)));
+    }
+
+    /**
+     * Sách (phân biệt) trong một đơn hàng
+     */
+    public List<Long> findOrderBookIds(Long orderId) {
+        return jdbcTemplate.queryForList(
+                "SELECT DISTINCT book_id FROM order_items WHERE order_id = ?", Long.class, orderId);
+    }
+
+    /**
+     * Sách (phân biệt) user đã mua trong các đơn khác đơn cho trước
+     */
+    public List<Long> findUserBookIdsExcludingOrder(Long userId, Long orderId) {
+        return jdbcTemplate.queryForList(
+                "SELECT DISTINCT oi.book_id FROM order_items oi JOIN orders o ON oi.order_id = o.id " +
+                "WHERE o.user_id = ? AND o.id <> ?", Long.class, userId, orderId);
+    }
+
+    public long count() {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM book_co_purchases", Long.class);
+        return count != null ? count : 0L;
+    }
+
+    /**
+     * Xóa và tính lại toàn bộ ma trận (cần gọi trong transaction để reader thấy bản cũ cho tới khi commit)
+     * @return Số dòng sau khi rebuild
+     */
+    public int rebuildAll() {
+        jdbcTemplate.update("DELETE FROM book_co_purchases");
+        return jdbcTemplate.update(REBUILD_SQL);
+    }
+}
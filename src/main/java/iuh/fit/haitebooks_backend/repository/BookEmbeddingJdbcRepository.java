@@ -0,0 +1,58 @@
+package iuh.fit.haitebooks_backend.repository;
+
+import iuh.fit.haitebooks_backend.util.EmbeddingCodec;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Ghi embedding hàng loạt bằng JDBC batch insert (không qua JPA persistence context)
+ */
+@Repository
+public class BookEmbeddingJdbcRepository {
+
+    private static final String INSERT_SQL =
+            "INSERT IGNORE INTO book_embeddings " +
+            "(book_id, embedding_blob, embedding_format, embedding_scale, dimension, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public BookEmbeddingJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public record Row(long bookId, EmbeddingCodec.Encoded encoded, int dimension) {
+    }
+
+    /**
+     * Chèn nhiều embedding trong một batch; sách đã có embedding (trùng book_id) được bỏ qua
+     * @return Số dòng thực sự được chèn
+     */
+    public int insertBatch(List<Row> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int[][] results = jdbcTemplate.batchUpdate(INSERT_SQL, rows, rows.size(), (ps, row) -> {
+            ps.setLong(1, row.bookId());
+            ps.setBytes(2, row.encoded().data());
+            ps.setString(3, row.encoded().format().name());
+            ps.setFloat(4, row.encoded().scale());
+            ps.setInt(5, row.dimension());
+            ps.setTimestamp(6, now);
+        });
+        int inserted = 0;
+        for (int[] batch : results) {
+            for (int count : batch) {
+                // SUCCESS_NO_INFO (-2): driver không trả số dòng, coi như đã chèn
+                inserted += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+            }
+        }
+        return inserted;
+    }
+}
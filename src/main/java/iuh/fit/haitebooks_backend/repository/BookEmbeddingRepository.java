@@ -1,10 +1,37 @@
 package iuh.fit.haitebooks_backend.repository;
 
 import iuh.fit.haitebooks_backend.model.BookEmbedding;
+import iuh.fit.haitebooks_backend.repository.projection.BookEmbeddingRow;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface BookEmbeddingRepository extends JpaRepository<BookEmbedding, Long> {
     Optional<BookEmbedding> findByBookId(Long bookId);
+
+    // ✅ Tối ưu: Đọc theo trang (keyset trên id) dạng projection, không load entity Book kèm theo
+    @Query("SELECT e.id AS id, e.book.id AS bookId, e.embeddingBlob AS embeddingBlob, " +
+           "e.embeddingFormat AS embeddingFormat, e.embeddingScale AS embeddingScale, " +
+           "e.embeddingJson AS embeddingJson " +
+           "FROM BookEmbedding e WHERE e.id > :afterId ORDER BY e.id")
+    List<BookEmbeddingRow> findRowsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // ✅ Lấy embedding của nhiều sách bằng một query (projection, không load entity Book kèm theo)
+    @Query("SELECT e.id AS id, e.book.id AS bookId, e.embeddingBlob AS embeddingBlob, " +
+           "e.embeddingFormat AS embeddingFormat, e.embeddingScale AS embeddingScale, " +
+           "e.embeddingJson AS embeddingJson " +
+           "FROM BookEmbedding e WHERE e.book.id IN :bookIds")
+    List<BookEmbeddingRow> findRowsByBookIdIn(@Param("bookIds") Collection<Long> bookIds);
+
+    // Các dòng còn lưu JSON cũ, chưa chuyển sang cột nhị phân
+    @Query("SELECT e.id FROM BookEmbedding e " +
+           "WHERE e.embeddingBlob IS NULL AND e.embeddingJson IS NOT NULL AND e.id > :afterId ORDER BY e.id")
+    List<Long> findIdsPendingBinaryMigration(@Param("afterId") Long afterId, Pageable pageable);
+
+    long countByEmbeddingBlobIsNullAndEmbeddingJsonIsNotNull();
 }
@@ -1,25 +1,33 @@
 package iuh.fit.haitebooks_backend.repository;
 
 import iuh.fit.haitebooks_backend.model.Book;
+import iuh.fit.haitebooks_backend.repository.projection.BookRow;
+import iuh.fit.haitebooks_backend.repository.projection.BookSearchRow;
+import iuh.fit.haitebooks_backend.repository.projection.BookTextRow;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface BookRepository extends JpaRepository<Book, Long> {
 
+    // Các cột của BookResponse - dùng cho endpoint danh sách (không hydrate Book / BookCategory entity)
+    String BOOK_ROW_SELECT = "SELECT b.id AS id, b.title AS title, b.author AS author, b.price AS price, " +
+            "b.stock AS stock, b.description AS description, b.imageUrl AS imageUrl, b.barcode AS barcode, " +
+            "c.name AS categoryName FROM Book b LEFT JOIN b.category c ";
+
     // ✅ Tối ưu: Eager fetch category khi tìm theo barcode
     @EntityGraph(attributePaths = {"category"})
     Optional<Book> findByBarcode(String barcode);
 
-    // ✅ Tìm kiếm theo tiêu đề (có hỗ trợ phân trang)
-    Page<Book> findByTitleContainingIgnoreCase(String keyword, Pageable pageable);
-    
     // ✅ Tối ưu: Eager fetch category khi lấy tất cả sách
     @EntityGraph(attributePaths = {"category"})
     @Override
@@ -34,4 +42,61 @@ public interface BookRepository extends JpaRepository<Book, Long> {
     @EntityGraph(attributePaths = {"category"})
     @Override
     Optional<Book> findById(Long id);
+
+    // ✅ Tối ưu: Eager fetch category khi lấy nhiều sách theo danh sách ID
+    @EntityGraph(attributePaths = {"category"})
+    @Override
+    List<Book> findAllById(Iterable<Long> ids);
+
+    // ✅ Projection cho các endpoint danh sách
+    @Query(BOOK_ROW_SELECT + "ORDER BY b.id")
+    List<BookRow> findAllRows();
+
+    @Query(value = BOOK_ROW_SELECT, countQuery = "SELECT COUNT(b) FROM Book b")
+    Page<BookRow> findAllRows(Pageable pageable);
+
+    @Query(BOOK_ROW_SELECT + "WHERE b.id IN :ids")
+    List<BookRow> findRowsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // ✅ Chỉ lấy các trường văn bản + category (không load entity) để dựng catalog search index
+    String BOOK_SEARCH_ROW_SELECT = "SELECT b.id AS id, b.title AS title, b.author AS author, " +
+            "b.description AS description, c.id AS categoryId, c.name AS categoryName FROM Book b LEFT JOIN b.category c ";
+
+    @Query(BOOK_SEARCH_ROW_SELECT)
+    List<BookSearchRow> findAllSearchRows();
+
+    @Query(BOOK_SEARCH_ROW_SELECT + "WHERE b.id IN :ids")
+    List<BookSearchRow> findSearchRowsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // ✅ Anti-join: chỉ lấy các sách chưa có embedding bằng một query duy nhất (id > afterId để resume)
+    @Query("SELECT b.id AS id, b.title AS title, b.author AS author, b.description AS description FROM Book b " +
+           "WHERE b.id > :afterId AND NOT EXISTS (SELECT 1 FROM BookEmbedding e WHERE e.book.id = b.id) ORDER BY b.id")
+    List<BookTextRow> findTextRowsWithoutEmbedding(@Param("afterId") Long afterId);
+
+    // ✅ Phân trang keyset: các sách có id nhỏ hơn cursor (trang đầu khi afterId = null), lọc tiêu đề nếu có keyword
+    @Query(BOOK_ROW_SELECT + "WHERE (:afterId IS NULL OR b.id < :afterId) " +
+           "AND (:keyword IS NULL OR LOWER(b.title) LIKE LOWER(CONCAT('%', :keyword, '%'))) ORDER BY b.id DESC")
+    List<BookRow> findPageAfter(@Param("afterId") Long afterId, @Param("keyword") String keyword, Pageable pageable);
+
+    // ✅ ID các sách thuộc category (sẽ bị xóa theo khi xóa category)
+    @Query("SELECT b.id FROM Book b WHERE b.category.id = :categoryId")
+    List<Long> findIdsByCategoryId(@Param("categoryId") Long categoryId);
+
+    // ✅ Sách cùng category / cùng tác giả với các sách đã mua - chỉ lấy ID, không quét toàn bộ entity Book
+    @Query("SELECT DISTINCT b.category.id FROM Book b WHERE b.id IN :ids AND b.category IS NOT NULL")
+    List<Long> findCategoryIdsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT b.id FROM Book b WHERE b.category.id IN :categoryIds")
+    List<Long> findIdsByCategoryIdIn(@Param("categoryIds") Collection<Long> categoryIds);
+
+    // Tác giả đã chuẩn hóa (bỏ khoảng trắng hai đầu, chữ thường) để so khớp không phân biệt hoa thường
+    @Query("SELECT DISTINCT LOWER(TRIM(b.author)) FROM Book b WHERE b.id IN :ids AND TRIM(b.author) <> ''")
+    List<String> findNormalizedAuthorsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT b.id FROM Book b WHERE LOWER(TRIM(b.author)) IN :authors")
+    List<Long> findIdsByNormalizedAuthorIn(@Param("authors") Collection<String> authors);
+
+    // ✅ Sách mới nhất - chỉ lấy ID
+    @Query("SELECT b.id FROM Book b ORDER BY b.id DESC")
+    List<Long> findLatestBookIds(Pageable pageable);
 }
@@ -3,8 +3,11 @@ package iuh.fit.haitebooks_backend.repository;
 import iuh.fit.haitebooks_backend.model.Book;
 import iuh.fit.haitebooks_backend.model.Cart;
 import iuh.fit.haitebooks_backend.model.User;
+import iuh.fit.haitebooks_backend.repository.projection.CartRow;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,6 +15,11 @@ public interface CartRepository extends JpaRepository<Cart, Long> {
     @EntityGraph(attributePaths = {"book", "user"})
     List<Cart> findByUserId(Long userId);
     
+    // ✅ Projection: chỉ đọc bảng cart_items (user / book chỉ cần ID - là khóa ngoại, không join)
+    @Query("SELECT c.id AS id, c.user.id AS userId, c.book.id AS bookId, c.quantity AS quantity " +
+           "FROM Cart c WHERE c.user.id = :userId")
+    List<CartRow> findRowsByUserId(@Param("userId") Long userId);
+
     @EntityGraph(attributePaths = {"book", "user"})
     Optional<Cart> findByUserAndBook(User user, Book book);
 }
@@ -0,0 +1,39 @@
+package iuh.fit.haitebooks_backend.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+
+/**
+ * Đọc thời điểm sửa gần nhất của catalog (updated_at) để khởi tạo Last-Modified khi ứng dụng khởi động
+ */
+@Repository
+public class CatalogVersionJdbcRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CatalogVersionJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @return epoch millis, -1 nếu chưa có dữ liệu
+     */
+    public long findBooksLastModified() {
+        return queryMillis("SELECT MAX(updated_at) FROM books");
+    }
+
+    public long findCategoriesLastModified() {
+        return queryMillis("SELECT MAX(updated_at) FROM book_categories");
+    }
+
+    public long findReviewsLastModified() {
+        return queryMillis("SELECT MAX(COALESCE(updated_at, created_at)) FROM reviews");
+    }
+
+    private long queryMillis(String sql) {
+        Timestamp value = jdbcTemplate.queryForObject(sql, Timestamp.class);
+        return value != null ? value.getTime() : -1L;
+    }
+}
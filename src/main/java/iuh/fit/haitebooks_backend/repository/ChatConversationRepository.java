@@ -0,0 +1,16 @@
+package iuh.fit.haitebooks_backend.repository;
+
+import iuh.fit.haitebooks_backend.model.ChatConversation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+
+public interface ChatConversationRepository extends JpaRepository<ChatConversation, String> {
+
+    @Modifying
+    @Query("DELETE FROM ChatConversation c WHERE c.updatedAt < :cutoff")
+    int deleteByUpdatedAtBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -0,0 +1,41 @@
+package iuh.fit.haitebooks_backend.repository;
+
+import iuh.fit.haitebooks_backend.model.EmbeddingJob;
+import iuh.fit.haitebooks_backend.model.EmbeddingJobStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface EmbeddingJobRepository extends JpaRepository<EmbeddingJob, Long> {
+    Optional<EmbeddingJob> findFirstByOrderByIdDesc();
+
+    List<EmbeddingJob> findByStatus(EmbeddingJobStatus status);
+
+    boolean existsByStatus(EmbeddingJobStatus status);
+
+    // Gia hạn lease, trả về 0 nếu job không còn RUNNING dưới quyền instance này (đã bị thu hồi / kết thúc)
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmbeddingJob j SET j.leaseExpiresAt = :leaseUntil, j.updatedAt = :now " +
+           "WHERE j.id = :id AND j.ownerInstanceId = :owner AND j.status = :status")
+    int renewLease(@Param("id") Long id, @Param("owner") String owner, @Param("status") EmbeddingJobStatus status,
+                   @Param("leaseUntil") LocalDateTime leaseUntil, @Param("now") LocalDateTime now);
+
+    // Chuyển job sang trạng thái mới chỉ khi lease đã hết hạn (điều kiện nằm trong câu UPDATE nên chỉ một instance thắng)
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmbeddingJob j SET j.status = :newStatus, j.errorMessage = :message, j.leaseExpiresAt = NULL, " +
+           "j.updatedAt = :now WHERE j.id = :id AND j.status = :status " +
+           "AND (j.leaseExpiresAt IS NULL OR j.leaseExpiresAt < :now)")
+    int reclaimIfLeaseExpired(@Param("id") Long id, @Param("status") EmbeddingJobStatus status,
+                              @Param("newStatus") EmbeddingJobStatus newStatus, @Param("message") String message,
+                              @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,52 @@
+package iuh.fit.haitebooks_backend.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Đọc các cặp (user, sách) có tương tác tích cực cho việc train mô hình gợi ý
+ * Chỉ lấy hai cột ID bằng JDBC, không load entity / quan hệ
+ */
+@Repository
+public class InteractionJdbcRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public InteractionJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public enum Source {
+        ORDER, REVIEW, FAVORITE, CART
+    }
+
+    public record Interaction(long userId, long bookId, Source source) {
+    }
+
+    /**
+     * Tương tác tích cực: sách đã mua, review >= minRating sao, sách yêu thích, sách trong giỏ hàng
+     */
+    public List<Interaction> findPositiveInteractions(int minRating) {
+        List<Interaction> interactions = new ArrayList<>();
+        collect(interactions, Source.ORDER,
+                "SELECT DISTINCT o.user_id, oi.book_id FROM order_items oi " +
+                "JOIN orders o ON oi.order_id = o.id WHERE o.user_id IS NOT NULL");
+        collect(interactions, Source.REVIEW,
+                "SELECT user_id, book_id FROM reviews " +
+                "WHERE user_id IS NOT NULL AND book_id IS NOT NULL AND rating >= ?", minRating);
+        collect(interactions, Source.FAVORITE,
+                "SELECT user_id, book_id FROM favorite_books");
+        collect(interactions, Source.CART,
+                "SELECT user_id, book_id FROM cart_items WHERE user_id IS NOT NULL AND book_id IS NOT NULL");
+        return interactions;
+    }
+
+    private void collect(List<Interaction> target, Source source, String sql, Object... args) {
+        jdbcTemplate.query(sql, rs -> {
+            target.add(new Interaction(rs.getLong(1), rs.getLong(2), source));
+        }, args);
+    }
+}
@@ -2,12 +2,14 @@ package iuh.fit.haitebooks_backend.repository;
 
 import iuh.fit.haitebooks_backend.model.Notification;
 import iuh.fit.haitebooks_backend.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface NotificationRepository extends JpaRepository<Notification, Long> {
@@ -22,6 +24,20 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
     @EntityGraph(attributePaths = {"sender"})
     List<Notification> findByReceiverIdAndIsReadFalseOrderByCreatedAtDesc(Long receiverId);
 
+    // ✅ Phân trang keyset theo (createdAt, id) giảm dần - dùng index (receiver_id, created_at, id)
+    @EntityGraph(attributePaths = {"sender"})
+    @Query("SELECT n FROM Notification n WHERE n.receiver.id = :receiverId ORDER BY n.createdAt DESC, n.id DESC")
+    List<Notification> findFirstPageByReceiverId(@Param("receiverId") Long receiverId, Pageable pageable);
+
+    @EntityGraph(attributePaths = {"sender"})
+    @Query("SELECT n FROM Notification n WHERE n.receiver.id = :receiverId " +
+           "AND (n.createdAt < :createdAt OR (n.createdAt = :createdAt AND n.id < :id)) " +
+           "ORDER BY n.createdAt DESC, n.id DESC")
+    List<Notification> findPageAfter(@Param("receiverId") Long receiverId,
+                                     @Param("createdAt") LocalDateTime createdAt,
+                                     @Param("id") Long id,
+                                     Pageable pageable);
+
     void deleteByReceiverId(Long receiverId);
     
     // ✅ Tối ưu: Bulk update để đánh dấu tất cả notifications là đã đọc
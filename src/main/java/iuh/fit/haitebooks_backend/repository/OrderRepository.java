@@ -1,13 +1,30 @@
 package iuh.fit.haitebooks_backend.repository;
 
 import iuh.fit.haitebooks_backend.model.Order;
+import iuh.fit.haitebooks_backend.repository.projection.OrderItemRow;
+import iuh.fit.haitebooks_backend.repository.projection.OrderSummaryRow;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface OrderRepository extends JpaRepository<Order,Long> {
+
+    // Các cột OrderMapper cần cho phần đầu đơn hàng (user / promotion chỉ lấy ID và vài trường)
+    String SUMMARY_ROW_SELECT = "SELECT o.id AS id, u.id AS userId, u.username AS userName, u.email AS userEmail, " +
+            "o.total AS total, o.status AS status, o.orderDate AS orderDate, o.address AS address, o.note AS note, " +
+            "o.paymentMethod AS paymentMethod, p.id AS promotionId " +
+            "FROM Order o LEFT JOIN o.user u LEFT JOIN o.appliedPromotion p ";
+
+    // Dòng sản phẩm: chỉ lấy tên sách, không đọc mô tả / ảnh của Book
+    String ITEM_ROW_SELECT = "SELECT i.order.id AS orderId, b.id AS bookId, b.title AS bookTitle, " +
+            "i.quantity AS quantity, i.price AS price FROM Order_Item i JOIN i.book b ";
+
     @EntityGraph(attributePaths = {"user", "orderItems", "orderItems.book", "appliedPromotion"})
     List<Order> findByUserId(Long userId);
     
@@ -18,4 +35,36 @@ public interface OrderRepository extends JpaRepository<Order,Long> {
     @EntityGraph(attributePaths = {"user", "orderItems", "orderItems.book", "appliedPromotion"})
     @Override
     Optional<Order> findById(Long id);
+
+    // ✅ Phân trang keyset - chỉ lấy ID (LIMIT chạy ở database, không bị fetch join collection làm phân trang trong bộ nhớ)
+    @Query("SELECT o.id FROM Order o WHERE (:afterId IS NULL OR o.id < :afterId) ORDER BY o.id DESC")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // ✅ Projection cho các endpoint danh sách: một query phần đầu đơn + một query dòng sản phẩm
+    @Query(SUMMARY_ROW_SELECT + "ORDER BY o.id")
+    List<OrderSummaryRow> findAllSummaryRows();
+
+    @Query(SUMMARY_ROW_SELECT + "WHERE u.id = :userId ORDER BY o.id")
+    List<OrderSummaryRow> findSummaryRowsByUserId(@Param("userId") Long userId);
+
+    @Query(SUMMARY_ROW_SELECT + "WHERE u.id = :userId ORDER BY o.orderDate DESC, o.id DESC")
+    List<OrderSummaryRow> findRecentSummaryRowsByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    long countByUserId(Long userId);
+
+    // ✅ Chỉ ID các sách user đã mua (không đọc đơn hàng / dòng sản phẩm / sách)
+    @Query("SELECT DISTINCT i.book.id FROM Order_Item i WHERE i.order.user.id = :userId")
+    List<Long> findPurchasedBookIdsByUserId(@Param("userId") Long userId);
+
+    @Query(SUMMARY_ROW_SELECT + "WHERE o.id IN :ids")
+    List<OrderSummaryRow> findSummaryRowsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query(ITEM_ROW_SELECT + "ORDER BY i.id")
+    List<OrderItemRow> findAllItemRows();
+
+    @Query(ITEM_ROW_SELECT + "WHERE i.order.user.id = :userId ORDER BY i.id")
+    List<OrderItemRow> findItemRowsByUserId(@Param("userId") Long userId);
+
+    @Query(ITEM_ROW_SELECT + "WHERE i.order.id IN :orderIds ORDER BY i.id")
+    List<OrderItemRow> findItemRowsByOrderIdIn(@Param("orderIds") Collection<Long> orderIds);
 }
@@ -0,0 +1,89 @@
+package iuh.fit.haitebooks_backend.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Đọc số liệu tổng hợp theo (sách, ngày) để dựng lại bộ đếm độ phổ biến trong bộ nhớ
+ * Mọi câu truy vấn đều GROUP BY ở database, chỉ trả về các cột số
+ */
+@Repository
+public class PopularityJdbcRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PopularityJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Số lượng / số lượt theo sách và ngày
+     */
+    public record DailyCount(long bookId, LocalDate day, long count) {
+    }
+
+    public record BookCount(long bookId, long count) {
+    }
+
+    /**
+     * Tổng số cuốn đã bán của từng sách (toàn thời gian)
+     */
+    public List<BookCount> findTotalSold() {
+        return jdbcTemplate.query(
+                "SELECT book_id, SUM(quantity) FROM order_items GROUP BY book_id",
+                (rs, i) -> new BookCount(rs.getLong(1), rs.getLong(2)));
+    }
+
+    /**
+     * Số cuốn bán ra theo ngày đặt hàng, từ ngày since
+     */
+    public List<DailyCount> findDailySold(LocalDate since) {
+        return queryDaily(
+                "SELECT oi.book_id, DATE(o.order_date), SUM(oi.quantity) FROM order_items oi " +
+                "JOIN orders o ON oi.order_id = o.id WHERE o.order_date >= ? " +
+                "GROUP BY oi.book_id, DATE(o.order_date)", since);
+    }
+
+    public List<DailyCount> findDailyFavorites(LocalDate since) {
+        return queryDaily(
+                "SELECT book_id, DATE(created_at), COUNT(*) FROM favorite_books WHERE created_at >= ? " +
+                "GROUP BY book_id, DATE(created_at)", since);
+    }
+
+    public List<DailyCount> findDailyReviews(LocalDate since) {
+        return queryDaily(
+                "SELECT book_id, DATE(created_at), COUNT(*) FROM reviews " +
+                "WHERE book_id IS NOT NULL AND created_at >= ? GROUP BY book_id, DATE(created_at)", since);
+    }
+
+    /**
+     * Số user đang có sách trong giỏ (cart_items không có mốc thời gian)
+     */
+    public List<BookCount> findCartCounts() {
+        return jdbcTemplate.query(
+                "SELECT book_id, COUNT(*) FROM cart_items WHERE book_id IS NOT NULL GROUP BY book_id",
+                (rs, i) -> new BookCount(rs.getLong(1), rs.getLong(2)));
+    }
+
+    /**
+     * Sách và số lượng của một đơn hàng
+     */
+    public List<BookCount> findOrderQuantities(Long orderId) {
+        return jdbcTemplate.query(
+                "SELECT book_id, SUM(quantity) FROM order_items WHERE order_id = ? GROUP BY book_id",
+                (rs, i) -> new BookCount(rs.getLong(1), rs.getLong(2)), orderId);
+    }
+
+    private List<DailyCount> queryDaily(String sql, LocalDate since) {
+        List<DailyCount> rows = new ArrayList<>();
+        jdbcTemplate.query(sql, rs -> {
+            rows.add(new DailyCount(rs.getLong(1), rs.getDate(2).toLocalDate(), rs.getLong(3)));
+        }, Timestamp.valueOf(since.atStartOfDay()));
+        return rows;
+    }
+}
@@ -1,14 +1,24 @@
 package iuh.fit.haitebooks_backend.repository;
 
 import iuh.fit.haitebooks_backend.model.Review;
+import iuh.fit.haitebooks_backend.repository.projection.ReviewRow;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 
 @Repository
 public interface ReviewRepository extends JpaRepository<Review, Long> {
+
+    // Các cột ReviewMapper cần (tên người viết + tên sách), không hydrate User / Book entity
+    String REVIEW_ROW_SELECT = "SELECT r.id AS id, u.id AS userId, b.id AS bookId, u.fullName AS userName, " +
+            "b.title AS bookTitle, r.rating AS rating, r.comment AS comment, r.createdAt AS createdAt " +
+            "FROM Review r LEFT JOIN r.user u LEFT JOIN r.book b ";
+
     @EntityGraph(attributePaths = {"book", "user"})
     @Override
     List<Review> findAll();
@@ -21,8 +31,19 @@ public interface ReviewRepository extends JpaRepository<Review, Long> {
     @EntityGraph(attributePaths = {"book", "user"})
     List<Review> findByUserId(Long userId);
     
-    @EntityGraph(attributePaths = {"book", "user"})
-    List<Review> findByBookId(Long bookId);
-    
+    // ✅ Projection cho các endpoint danh sách
+    @Query(REVIEW_ROW_SELECT + "ORDER BY r.id")
+    List<ReviewRow> findAllRows();
+
+    @Query(REVIEW_ROW_SELECT + "WHERE u.id = :userId ORDER BY r.id")
+    List<ReviewRow> findRowsByUserId(@Param("userId") Long userId);
+
+    @Query(REVIEW_ROW_SELECT + "WHERE b.id = :bookId ORDER BY r.id")
+    List<ReviewRow> findRowsByBookId(@Param("bookId") Long bookId);
+
+    // ✅ Phân trang keyset theo id giảm dần (review mới nhất trước)
+    @Query(REVIEW_ROW_SELECT + "WHERE (:afterId IS NULL OR r.id < :afterId) ORDER BY r.id DESC")
+    List<ReviewRow> findPageAfter(@Param("afterId") Long afterId, Pageable pageable);
+
     boolean existsByUserIdAndBookId(Long userId, Long bookId);
 }
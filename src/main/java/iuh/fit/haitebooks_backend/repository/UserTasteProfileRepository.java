@@ -0,0 +1,7 @@
+package iuh.fit.haitebooks_backend.repository;
+
+import iuh.fit.haitebooks_backend.model.UserTasteProfile;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface UserTasteProfileRepository extends JpaRepository<UserTasteProfile, Long> {
+}
@@ -0,0 +1,16 @@
+package iuh.fit.haitebooks_backend.repository.projection;
+
+import iuh.fit.haitebooks_backend.model.EmbeddingFormat;
+
+/**
+ * Projection gọn cho bảng book_embeddings - chỉ lấy bookId và vector,
+ * không load entity BookEmbedding/Book (tránh fetch kèm OneToOne)
+ */
+public interface BookEmbeddingRow {
+    Long getId();
+    Long getBookId();
+    byte[] getEmbeddingBlob();
+    EmbeddingFormat getEmbeddingFormat();
+    Float getEmbeddingScale();
+    String getEmbeddingJson();
+}
@@ -0,0 +1,16 @@
+package iuh.fit.haitebooks_backend.repository.projection;
+
+/**
+ * Projection đúng các cột của BookResponse (tên category lấy bằng join, không load BookCategory entity)
+ */
+public interface BookRow {
+    Long getId();
+    String getTitle();
+    String getAuthor();
+    double getPrice();
+    int getStock();
+    String getDescription();
+    String getImageUrl();
+    String getBarcode();
+    String getCategoryName();
+}
@@ -0,0 +1,13 @@
+package iuh.fit.haitebooks_backend.repository.projection;
+
+/**
+ * Projection các trường văn bản và category của sách dùng cho catalog search index
+ */
+public interface BookSearchRow {
+    Long getId();
+    String getTitle();
+    String getAuthor();
+    String getDescription();
+    Long getCategoryId();
+    String getCategoryName();
+}
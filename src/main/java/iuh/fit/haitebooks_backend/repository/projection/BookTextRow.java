@@ -0,0 +1,11 @@
+package iuh.fit.haitebooks_backend.repository.projection;
+
+/**
+ * Projection các trường văn bản của sách dùng cho index tìm kiếm
+ */
+public interface BookTextRow {
+    Long getId();
+    String getTitle();
+    String getAuthor();
+    String getDescription();
+}
@@ -0,0 +1,11 @@
+package iuh.fit.haitebooks_backend.repository.projection;
+
+/**
+ * Projection giỏ hàng - chỉ đọc bảng cart_items, không join sách / user
+ */
+public interface CartRow {
+    Long getId();
+    Long getUserId();
+    Long getBookId();
+    int getQuantity();
+}
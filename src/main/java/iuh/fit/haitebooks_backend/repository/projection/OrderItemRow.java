@@ -0,0 +1,12 @@
+package iuh.fit.haitebooks_backend.repository.projection;
+
+/**
+ * Projection dòng sản phẩm của đơn hàng - chỉ lấy ID và tên sách thay vì cả Book entity
+ */
+public interface OrderItemRow {
+    Long getOrderId();
+    Long getBookId();
+    String getBookTitle();
+    int getQuantity();
+    double getPrice();
+}
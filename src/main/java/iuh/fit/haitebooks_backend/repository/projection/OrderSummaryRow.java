@@ -0,0 +1,23 @@
+package iuh.fit.haitebooks_backend.repository.projection;
+
+import iuh.fit.haitebooks_backend.model.Method;
+import iuh.fit.haitebooks_backend.model.Status_Order;
+
+import java.time.LocalDateTime;
+
+/**
+ * Projection phần đầu đơn hàng cho các màn hình danh sách (không load User / Promotion entity)
+ */
+public interface OrderSummaryRow {
+    Long getId();
+    Long getUserId();
+    String getUserName();
+    String getUserEmail();
+    double getTotal();
+    Status_Order getStatus();
+    LocalDateTime getOrderDate();
+    String getAddress();
+    String getNote();
+    Method getPaymentMethod();
+    Long getPromotionId();
+}
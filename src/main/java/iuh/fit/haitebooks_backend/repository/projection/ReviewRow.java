@@ -0,0 +1,17 @@
+package iuh.fit.haitebooks_backend.repository.projection;
+
+import java.time.LocalDateTime;
+
+/**
+ * Projection review kèm tên người viết và tên sách (không load User / Book entity)
+ */
+public interface ReviewRow {
+    Long getId();
+    Long getUserId();
+    Long getBookId();
+    String getUserName();
+    String getBookTitle();
+    int getRating();
+    String getComment();
+    LocalDateTime getCreatedAt();
+}
@@ -0,0 +1,558 @@
+package iuh.fit.haitebooks_backend.service;
+
+import iuh.fit.haitebooks_backend.dtos.response.SuggestionResponse;
+import iuh.fit.haitebooks_backend.repository.BookRepository;
+import iuh.fit.haitebooks_backend.repository.projection.BookSearchRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Gợi ý khi gõ (search-as-you-type) cho tên sách, tác giả và category - hoàn toàn trong bộ nhớ, không truy cập DB
+ * - Trie theo ký tự đã gấp dấu (gõ "lap tr" khớp "Lập trình"), mỗi node giữ sẵn top gợi ý theo độ phổ biến
+ *   nên một lượt tra chỉ tốn O(độ dài query)
+ * - Mỗi gợi ý được đưa vào trie từ đầu mỗi từ (gõ "java" khớp "Lập trình Java"), key cắt tối đa MAX_KEY_LENGTH ký tự
+ * - Cập nhật tăng dần khi thêm / sửa / xóa sách và category; gợi ý bị xóa được gỡ khỏi trie và top của các node
+ *   trên đường đi được tính lại từ các node con, nên gợi ý xếp sau được đẩy lên thay thế
+ * - Dựng lại định kỳ để cập nhật trọng số phổ biến; thay đổi xảy ra trong lúc dựng được áp dụng lại lên trie mới
+ */
+@Service
+public class AutocompleteService {
+
+    private static final Logger log = LoggerFactory.getLogger(AutocompleteService.class);
+    private static final int MAX_KEY_LENGTH = 24;
+    private static final int MAX_WORD_SUFFIXES = 6;
+    private static final int TOP_PER_NODE = 16;
+    private static final int DEFAULT_LIMIT = 8;
+    private static final int MAX_LIMIT = TOP_PER_NODE;
+    private static final int TRENDING_BOOST_SIZE = 100;
+
+    public enum Type {
+        TITLE, AUTHOR, CATEGORY
+    }
+
+    private static final class Entry {
+        private final String text;
+        private final String folded;
+        private final Type type;
+        private final Long id;
+        private final double weight;
+        private boolean removed;
+
+        private Entry(String text, String folded, Type type, Long id, double weight) {
+            this.text = text;
+            this.folded = folded;
+            this.type = type;
+            this.id = id;
+            this.weight = weight;
+        }
+    }
+
+    // Gợi ý nặng hơn đứng trước, bằng nhau thì chuỗi ngắn hơn
+    private static final Comparator<Entry> RANKING = Comparator.comparingDouble((Entry e) -> e.weight).reversed()
+            .thenComparingInt(e -> e.text.length())
+            .thenComparing(e -> e.text);
+
+    private static final char[] EMPTY_KEYS = new char[0];
+    private static final Node[] EMPTY_CHILDREN = new Node[0];
+    private static final Entry[] EMPTY_ENTRIES = new Entry[0];
+
+    /**
+     * Node của trie: con lưu trong mảng ký tự đã sắp xếp (tra bằng binary search) thay vì HashMap
+     */
+    private static final class Node {
+        private char[] keys = EMPTY_KEYS;
+        private Node[] children = EMPTY_CHILDREN;
+        private Entry[] top = EMPTY_ENTRIES;
+        // Gợi ý có key kết thúc tại node này (dùng để tính lại top khi gợi ý bị gỡ)
+        private Entry[] terminal = EMPTY_ENTRIES;
+
+        private Node child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node childOrCreate(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int at = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            newKeys[at] = c;
+            newChildren[at] = new Node();
+            System.arraycopy(keys, at, newKeys, at + 1, keys.length - at);
+            System.arraycopy(children, at, newChildren, at + 1, children.length - at);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[at];
+        }
+
+        // Giữ tối đa TOP_PER_NODE gợi ý tốt nhất của cây con, mỗi gợi ý một lần
+        private void offer(Entry entry) {
+            for (Entry existing : top) {
+                if (existing == entry) {
+                    return;
+                }
+            }
+            if (top.length == TOP_PER_NODE && RANKING.compare(entry, top[top.length - 1]) >= 0) {
+                return;
+            }
+            int at = 0;
+            while (at < top.length && RANKING.compare(top[at], entry) <= 0) {
+                at++;
+            }
+            int newLength = Math.min(top.length + 1, TOP_PER_NODE);
+            Entry[] newTop = new Entry[newLength];
+            System.arraycopy(top, 0, newTop, 0, at);
+            newTop[at] = entry;
+            System.arraycopy(top, at, newTop, at + 1, newLength - at - 1);
+            top = newTop;
+        }
+
+        private boolean inTop(Entry entry) {
+            for (Entry existing : top) {
+                if (existing == entry) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void addTerminal(Entry entry) {
+            Entry[] newTerminal = Arrays.copyOf(terminal, terminal.length + 1);
+            newTerminal[terminal.length] = entry;
+            terminal = newTerminal;
+        }
+
+        private void removeTerminal(Entry entry) {
+            int kept = 0;
+            Entry[] newTerminal = new Entry[terminal.length];
+            for (Entry existing : terminal) {
+                if (existing != entry) {
+                    newTerminal[kept++] = existing;
+                }
+            }
+            terminal = kept == 0 ? EMPTY_ENTRIES : Arrays.copyOf(newTerminal, kept);
+        }
+
+        // Top của cây con = top của các node con + gợi ý kết thúc tại node (các node con phải đúng trước)
+        private void recomputeTop() {
+            top = EMPTY_ENTRIES;
+            for (Entry entry : terminal) {
+                offer(entry);
+            }
+            for (Node child : children) {
+                for (Entry entry : child.top) {
+                    offer(entry);
+                }
+            }
+        }
+    }
+
+    private record BookRef(Entry title, String authorKey, Long categoryId) {
+    }
+
+    private static final class AuthorRef {
+        private final Entry entry;
+        private int books;
+
+        private AuthorRef(Entry entry) {
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * Toàn bộ dữ liệu gợi ý - được thay nguyên khối khi dựng lại
+     */
+    private static final class State {
+        private final Node root = new Node();
+        private final Map<Long, BookRef> books = new HashMap<>();
+        private final Map<String, AuthorRef> authors = new HashMap<>();
+        private final Map<Long, Entry> categories = new HashMap<>();
+    }
+
+    private final BookRepository bookRepository;
+    private final PopularityService popularityService;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object loadMonitor = new Object();
+    private volatile boolean loaded = false;
+    private State state = new State(); // Chỉ truy cập khi giữ lock
+
+    // Thay đổi nhận được trong lúc rebuild đọc database, áp dụng lại lên trie mới trước khi công bố
+    // (chỉ truy cập khi giữ write lock)
+    private boolean rebuilding = false;
+    private final List<Consumer<State>> pendingChanges = new ArrayList<>();
+
+    public AutocompleteService(BookRepository bookRepository, PopularityService popularityService) {
+        this.bookRepository = bookRepository;
+        this.popularityService = popularityService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        ensureLoaded();
+    }
+
+    public void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (loadMonitor) {
+            if (!loaded) {
+                rebuild();
+            }
+        }
+    }
+
+    /**
+     * Dựng lại định kỳ: cập nhật trọng số theo độ phổ biến mới nhất và dọn gợi ý đã xóa
+     */
+    @Scheduled(fixedDelayString = "${autocomplete.rebuild-interval-ms:600000}",
+            initialDelayString = "${autocomplete.rebuild-interval-ms:600000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * Dựng trie mới từ database rồi thay thế trie hiện tại
+     * Thêm / sửa / xóa xảy ra trong lúc đọc database được ghi lại và áp dụng lên trie mới trước khi thay thế
+     */
+    public void rebuild() {
+        synchronized (loadMonitor) {
+            lock.writeLock().lock();
+            try {
+                rebuilding = true;
+                pendingChanges.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            try {
+                buildAndPublish();
+            } finally {
+                lock.writeLock().lock();
+                try {
+                    rebuilding = false;
+                    pendingChanges.clear();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    private void buildAndPublish() {
+        long start = System.currentTimeMillis();
+        Map<Long, Double> trendingBoost = trendingBoost();
+        List<BookSearchRow> rows = bookRepository.findAllSearchRows();
+
+        // Tác giả / category lấy trọng số của sách phổ biến nhất - tính trước để mỗi gợi ý chỉ chèn một lần
+        double[] weights = new double[rows.size()];
+        Map<String, Double> authorWeights = new HashMap<>();
+        Map<Long, Double> categoryWeights = new HashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            BookSearchRow row = rows.get(i);
+            weights[i] = bookWeight(row.getId(), trendingBoost);
+            authorWeights.merge(normalize(row.getAuthor()), weights[i], Math::max);
+            if (row.getCategoryId() != null) {
+                categoryWeights.merge(row.getCategoryId(), weights[i], Math::max);
+            }
+        }
+        State fresh = new State();
+        for (int i = 0; i < rows.size(); i++) {
+            BookSearchRow row = rows.get(i);
+            addBook(fresh, row.getId(), row.getTitle(), row.getAuthor(), row.getCategoryId(), row.getCategoryName(),
+                    weights[i], authorWeights.getOrDefault(normalize(row.getAuthor()), weights[i]),
+                    row.getCategoryId() != null ? categoryWeights.get(row.getCategoryId()) : weights[i]);
+        }
+
+        int replayed;
+        lock.writeLock().lock();
+        try {
+            pendingChanges.forEach(change -> change.accept(fresh));
+            replayed = pendingChanges.size();
+            pendingChanges.clear();
+            rebuilding = false;
+            state = fresh;
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("✅ Đã dựng autocomplete: {} sách, {} tác giả, {} category, áp dụng lại {} thay đổi ({} ms)",
+                fresh.books.size(), fresh.authors.size(), fresh.categories.size(), replayed,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Gợi ý cho chuỗi đang gõ (không phân biệt dấu / hoa thường)
+     * @param query Chuỗi người dùng đang gõ
+     * @param limit Số gợi ý tối đa (mặc định 8, tối đa 16)
+     */
+    public List<SuggestionResponse> suggest(String query, Integer limit) {
+        String key = normalize(query);
+        if (key.isEmpty()) {
+            return List.of();
+        }
+        ensureLoaded();
+        int max = (limit != null && limit > 0) ? Math.min(limit, MAX_LIMIT) : DEFAULT_LIMIT;
+        // Query dài hơn key trong trie: tra theo phần đầu rồi lọc lại bằng chuỗi đầy đủ
+        boolean truncated = key.length() > MAX_KEY_LENGTH;
+        String path = truncated ? key.substring(0, MAX_KEY_LENGTH) : key;
+
+        lock.readLock().lock();
+        try {
+            Node node = state.root;
+            for (int i = 0; i < path.length() && node != null; i++) {
+                node = node.child(path.charAt(i));
+            }
+            if (node == null) {
+                return List.of();
+            }
+            List<SuggestionResponse> suggestions = new ArrayList<>(max);
+            for (Entry entry : node.top) {
+                if (entry.removed || (truncated && !(" " + entry.folded).contains(" " + key))) {
+                    continue;
+                }
+                suggestions.add(new SuggestionResponse(entry.text, entry.type.name(),
+                        entry.type == Type.TITLE ? entry.id : null,
+                        entry.type == Type.CATEGORY ? entry.id : null));
+                if (suggestions.size() == max) {
+                    break;
+                }
+            }
+            return suggestions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Thêm mới hoặc cập nhật sách (trọng số gồm cả điểm thịnh hành hiện tại, giống lúc dựng lại)
+     */
+    public void upsert(BookSearchRow book) {
+        if (book == null || book.getId() == null) {
+            return;
+        }
+        Long bookId = book.getId();
+        String title = book.getTitle();
+        String author = book.getAuthor();
+        Long categoryId = book.getCategoryId();
+        String categoryName = book.getCategoryName();
+        double weight = bookWeight(bookId, trendingBoost());
+        apply(target -> {
+            removeBook(target, bookId);
+            addBook(target, bookId, title, author, categoryId, categoryName, weight, weight, weight);
+        });
+    }
+
+    public void remove(Long bookId) {
+        if (bookId == null) {
+            return;
+        }
+        apply(target -> removeBook(target, bookId));
+    }
+
+    public void renameCategory(Long categoryId, String name) {
+        apply(target -> {
+            // Chỉ category đã có sách mới nằm trong trie
+            Entry previous = target.categories.remove(categoryId);
+            if (previous != null) {
+                removeEntry(target, previous);
+                addCategory(target, categoryId, name, previous.weight);
+            }
+        });
+    }
+
+    /**
+     * Xóa category và các sách thuộc category (category bị xóa kéo theo sách)
+     */
+    public void removeCategory(Long categoryId) {
+        apply(target -> {
+            Entry entry = target.categories.remove(categoryId);
+            if (entry != null) {
+                removeEntry(target, entry);
+            }
+            List<Long> bookIds = new ArrayList<>();
+            target.books.forEach((bookId, ref) -> {
+                if (Objects.equals(ref.categoryId(), categoryId)) {
+                    bookIds.add(bookId);
+                }
+            });
+            bookIds.forEach(bookId -> removeBook(target, bookId));
+        });
+    }
+
+    // Áp dụng thay đổi lên trie hiện tại; đang rebuild thì ghi lại để áp dụng lên trie mới
+    private void apply(Consumer<State> change) {
+        lock.writeLock().lock();
+        try {
+            if (rebuilding) {
+                pendingChanges.add(change);
+            }
+            change.accept(state);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Chuẩn hóa giống catalog search: tách từ, gấp dấu, nối lại bằng một khoảng trắng
+     */
+    private static String normalize(String text) {
+        List<String> tokens = CatalogSearchEngine.analyze(text);
+        StringBuilder builder = new StringBuilder();
+        for (String token : tokens) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(CatalogSearchEngine.fold(token));
+        }
+        return builder.toString();
+    }
+
+    // ===== Cập nhật trie (gọi khi giữ write lock hoặc trên State chưa công bố) =====
+
+    private void addBook(State target, Long bookId, String title, String author, Long categoryId,
+                         String categoryName, double weight, double authorWeight, double categoryWeight) {
+        Entry titleEntry = insert(target, title, Type.TITLE, bookId, weight);
+
+        String authorKey = normalize(author);
+        if (!authorKey.isEmpty()) {
+            AuthorRef ref = target.authors.get(authorKey);
+            if (ref == null || ref.entry.weight < authorWeight) {
+                // Tác giả lấy trọng số của sách phổ biến nhất
+                if (ref != null) {
+                    removeEntry(target, ref.entry);
+                }
+                AuthorRef replacement = new AuthorRef(insert(target, author.trim(), Type.AUTHOR, null, authorWeight));
+                replacement.books = ref != null ? ref.books : 0;
+                ref = replacement;
+                target.authors.put(authorKey, ref);
+            }
+            ref.books++;
+        }
+
+        if (categoryId != null && categoryName != null) {
+            Entry category = target.categories.get(categoryId);
+            if (category == null || category.weight < categoryWeight) {
+                if (category != null) {
+                    removeEntry(target, category);
+                }
+                addCategory(target, categoryId, categoryName, categoryWeight);
+            }
+        }
+        target.books.put(bookId, new BookRef(titleEntry, authorKey, categoryId));
+    }
+
+    private void removeBook(State target, Long bookId) {
+        BookRef ref = target.books.remove(bookId);
+        if (ref == null) {
+            return;
+        }
+        if (ref.title() != null) {
+            removeEntry(target, ref.title());
+        }
+        AuthorRef author = target.authors.get(ref.authorKey());
+        if (author != null && --author.books <= 0) {
+            removeEntry(target, author.entry);
+            target.authors.remove(ref.authorKey());
+        }
+    }
+
+    private void addCategory(State target, Long categoryId, String name, double weight) {
+        Entry entry = insert(target, name, Type.CATEGORY, categoryId, weight);
+        if (entry != null) {
+            target.categories.put(categoryId, entry);
+        }
+    }
+
+    // Đưa gợi ý vào trie từ đầu mỗi từ (tối đa MAX_WORD_SUFFIXES từ đầu tiên)
+    private Entry insert(State target, String text, Type type, Long id, double weight) {
+        String folded = normalize(text);
+        if (folded.isEmpty()) {
+            return null;
+        }
+        Entry entry = new Entry(text.trim(), folded, type, id, weight);
+        int start = 0;
+        for (int word = 0; word < MAX_WORD_SUFFIXES && start >= 0; word++) {
+            Node node = target.root;
+            int end = Math.min(folded.length(), start + MAX_KEY_LENGTH);
+            for (int i = start; i < end; i++) {
+                node = node.childOrCreate(folded.charAt(i));
+                node.offer(entry);
+            }
+            node.addTerminal(entry);
+            int space = folded.indexOf(' ', start);
+            start = space >= 0 ? space + 1 : -1;
+        }
+        return entry;
+    }
+
+    /**
+     * Gỡ gợi ý khỏi trie: bỏ khỏi các node kết thúc rồi tính lại top của những node trên đường đi đang chứa nó,
+     * node sâu trước node nông (top của node cha dựa trên top của node con)
+     */
+    private void removeEntry(State target, Entry entry) {
+        if (entry == null || entry.removed) {
+            return;
+        }
+        entry.removed = true;
+        String folded = entry.folded;
+        // Các node trên mọi đường đi của gợi ý, nhóm theo độ sâu
+        List<Set<Node>> byDepth = new ArrayList<>();
+        int start = 0;
+        for (int word = 0; word < MAX_WORD_SUFFIXES && start >= 0; word++) {
+            Node node = target.root;
+            int end = Math.min(folded.length(), start + MAX_KEY_LENGTH);
+            for (int i = start; i < end && node != null; i++) {
+                node = node.child(folded.charAt(i));
+                if (node != null) {
+                    int depth = i - start;
+                    while (byDepth.size() <= depth) {
+                        byDepth.add(Collections.newSetFromMap(new IdentityHashMap<>()));
+                    }
+                    byDepth.get(depth).add(node);
+                    if (i == end - 1) {
+                        node.removeTerminal(entry);
+                    }
+                }
+            }
+            int space = folded.indexOf(' ', start);
+            start = space >= 0 ? space + 1 : -1;
+        }
+        for (int depth = byDepth.size() - 1; depth >= 0; depth--) {
+            for (Node node : byDepth.get(depth)) {
+                if (node.inTop(entry)) {
+                    node.recomputeTop();
+                }
+            }
+        }
+    }
+
+    // ===== Trọng số =====
+
+    private double bookWeight(Long bookId, Map<Long, Double> trendingBoost) {
+        return Math.log1p(popularityService.soldCount(bookId)) + trendingBoost.getOrDefault(bookId, 0.0);
+    }
+
+    // Sách đang thịnh hành được cộng thêm 0..1 theo thứ hạng
+    private Map<Long, Double> trendingBoost() {
+        List<Long> trending = popularityService.trendingBookIds(TRENDING_BOOST_SIZE);
+        Map<Long, Double> boost = new HashMap<>();
+        for (int rank = 0; rank < trending.size(); rank++) {
+            boost.put(trending.get(rank), 1.0 - (double) rank / TRENDING_BOOST_SIZE);
+        }
+        return boost;
+    }
+}
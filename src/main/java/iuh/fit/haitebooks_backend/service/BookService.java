@@ -3,19 +3,29 @@ package iuh.fit.haitebooks_backend.service;
 import iuh.fit.haitebooks_backend.ai.service.EmbeddingAsyncService;
 import iuh.fit.haitebooks_backend.dtos.request.BookRequest;
 import iuh.fit.haitebooks_backend.dtos.response.BookResponse;
+import iuh.fit.haitebooks_backend.dtos.response.CatalogSearchResponse;
+import iuh.fit.haitebooks_backend.dtos.response.CursorPageResponse;
+import iuh.fit.haitebooks_backend.event.CatalogChangedEvent;
 import iuh.fit.haitebooks_backend.exception.NotFoundException;
 import iuh.fit.haitebooks_backend.mapper.BookMapper;
 import iuh.fit.haitebooks_backend.model.Book;
 import iuh.fit.haitebooks_backend.model.BookCategory;
 import iuh.fit.haitebooks_backend.repository.BookRepository;
 import iuh.fit.haitebooks_backend.repository.CategoryRepository;
+import iuh.fit.haitebooks_backend.repository.projection.BookRow;
+import iuh.fit.haitebooks_backend.util.CursorPaging;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.*;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Random;
 import java.util.stream.Collectors;
 
@@ -23,53 +33,106 @@ import java.util.stream.Collectors;
 public class BookService {
 
     private static final Logger log = LoggerFactory.getLogger(BookService.class);
+    private static final int DEFAULT_POPULAR_LIMIT = 10;
+    private static final int MAX_POPULAR_LIMIT = 50;
+    private static final int DEFAULT_SEARCH_PAGE_SIZE = 10;
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
 
     private final BookRepository bookRepository;
     private final CategoryRepository categoryRepository;
     private final EmbeddingAsyncService embeddingAsyncService;
     private final CloudinaryService cloudinaryService;
+    private final CatalogSearchEngine searchEngine;
+    private final PopularityService popularityService;
+    private final CatalogCache catalogCache;
+    private final ApplicationEventPublisher eventPublisher;
+    // Transaction read-only chỉ mở cho phần đọc DB khi catalog cache miss
+    private final TransactionTemplate readOnlyTransaction;
 
     public BookService(BookRepository bookRepository, 
                       CategoryRepository categoryRepository,
                       EmbeddingAsyncService embeddingAsyncService,
-                      CloudinaryService cloudinaryService) {
+                      CloudinaryService cloudinaryService,
+                      CatalogSearchEngine searchEngine,
+                      PopularityService popularityService,
+                      CatalogCache catalogCache,
+                      ApplicationEventPublisher eventPublisher,
+                      PlatformTransactionManager transactionManager) {
         this.bookRepository = bookRepository;
         this.categoryRepository = categoryRepository;
         this.embeddingAsyncService = embeddingAsyncService;
         this.cloudinaryService = cloudinaryService;
+        this.searchEngine = searchEngine;
+        this.popularityService = popularityService;
+        this.catalogCache = catalogCache;
+        this.eventPublisher = eventPublisher;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
     }
 
     @Transactional(readOnly = true)
     public List<BookResponse> getAllBooks() {
-        // Với @EntityGraph trong repository, category đã được eager fetch
-        List<Book> books = bookRepository.findAll();
-        // Map trong transaction - category đã được load bởi @EntityGraph
-        return books.stream()
+        // Projection: đọc đúng các cột của BookResponse, tên category lấy bằng join
+        return bookRepository.findAllRows().stream()
                 .map(BookMapper::toBookResponse)
                 .collect(Collectors.toList());
     }
 
     @Transactional(readOnly = true)
     public Page<BookResponse> getBooksWithPagination(String keyword, int page, int size) {
+        if (keyword != null && !keyword.isBlank()) {
+            // Có keyword: xếp hạng theo độ liên quan bằng catalog search index (không LIKE, không COUNT)
+            Pageable pageable = PageRequest.of(page, size);
+            CatalogSearchEngine.SearchResult result = searchEngine.search(keyword, null);
+            return new PageImpl<>(findBooksInOrder(pageSlice(result, page, size)), pageable, result.total());
+        }
+
         Pageable pageable = PageRequest.of(page, size, Sort.by("id").descending());
-        Page<Book> booksPage = (keyword != null && !keyword.isBlank())
-                ? bookRepository.findByTitleContainingIgnoreCase(keyword, pageable)
-                : bookRepository.findAll(pageable);
-        
-        // Với @EntityGraph trong repository, category đã được eager fetch
-        List<BookResponse> responses = booksPage.getContent().stream()
-                .map(BookMapper::toBookResponse)
-                .collect(Collectors.toList());
-        
-        return new PageImpl<>(responses, pageable, booksPage.getTotalElements());
+        // Projection: đọc đúng các cột của BookResponse
+        return bookRepository.findAllRows(pageable).map(BookMapper::toBookResponse);
     }
 
+    // ✅ Tìm kiếm full-text (title, tác giả, category, mô tả) kèm facet, lọc theo category nếu có
     @Transactional(readOnly = true)
+    public CatalogSearchResponse searchCatalog(String query, Long categoryId, int page, int size) {
+        int pageSize = size > 0 ? Math.min(size, MAX_SEARCH_PAGE_SIZE) : DEFAULT_SEARCH_PAGE_SIZE;
+        int pageIndex = Math.max(page, 0);
+        CatalogSearchEngine.SearchResult result = searchEngine.search(query, categoryId);
+        List<BookResponse> items = findBooksInOrder(pageSlice(result, pageIndex, pageSize));
+        return new CatalogSearchResponse(items, result.total(), pageIndex, pageSize,
+                result.categoryFacets(), result.authorFacets());
+    }
+
+    // ✅ Phân trang keyset (cursor) - không COUNT, trang sâu tốn chi phí như trang đầu
+    @Transactional(readOnly = true)
+    public CursorPageResponse<BookResponse> getBooksAfter(String after, Integer size, String keyword) {
+        int pageSize = CursorPaging.pageSize(size);
+        String filter = (keyword != null && !keyword.isBlank()) ? keyword.trim() : null;
+        List<BookRow> books = bookRepository.findPageAfter(CursorPaging.decodeId(after), filter,
+                PageRequest.of(0, pageSize + 1));
+        return CursorPaging.toPage(books, pageSize, BookMapper::toBookResponse,
+                book -> CursorPaging.encodeId(book.getId()));
+    }
+
+    // ✅ Sách đang thịnh hành (theo bộ đếm trong bộ nhớ) - không quét toàn bộ catalog
+    @Transactional(readOnly = true)
+    public List<BookResponse> getTrendingBooks(int limit) {
+        return findBooksInOrder(popularityService.trendingBookIds(clampLimit(limit)));
+    }
+
+    // ✅ Sách bán chạy nhất (theo bộ đếm trong bộ nhớ)
+    @Transactional(readOnly = true)
+    public List<BookResponse> getBestSellers(int limit) {
+        return findBooksInOrder(popularityService.bestSellerBookIds(clampLimit(limit)));
+    }
+
     public BookResponse findByBarcode(String barcode) {
+        // ✅ Đọc qua catalog cache; cache hit không mở transaction, chỉ khi miss mới đọc DB trong transaction read-only
         // Với @EntityGraph trong repository, category đã được eager fetch
-        Book book = bookRepository.findByBarcode(barcode).orElse(null);
-        if (book == null) return null;
-        return BookMapper.toBookResponse(book);
+        return catalogCache.getBookByBarcode(barcode, () -> readOnlyTransaction.execute(tx ->
+                bookRepository.findByBarcode(barcode)
+                        .map(BookMapper::toBookResponse)
+                        .orElse(null)));
     }
 
     // ✅ Thêm mới sách và tự sinh barcode hợp lệ
@@ -85,6 +148,9 @@ public class BookService {
         book.setBarcode(barcode);
 
         book = bookRepository.save(book);
+
+        // ✅ Đưa sách vào catalog search index / autocomplete sau khi commit (CatalogIndexSynchronizer)
+        eventPublisher.publishEvent(CatalogChangedEvent.bookSaved(book.getId()));
         
         // Category đã được set trực tiếp, không cần trigger load
         // ✅ Tự động tạo embedding cho sách mới (chạy async để không block response)
@@ -93,12 +159,12 @@ public class BookService {
         return BookMapper.toBookResponse(book);
     }
 
-    @Transactional(readOnly = true)
     public BookResponse getBookById(Long id) {
+        // ✅ Đọc qua catalog cache; cache hit không mở transaction, chỉ khi miss mới đọc DB trong transaction read-only
         // Với @EntityGraph trong repository, category đã được eager fetch
-        Book book = bookRepository.findById(id)
-                .orElseThrow(() -> new NotFoundException("Book not found with id " + id));
-        return BookMapper.toBookResponse(book);
+        return catalogCache.getBook(id, () -> readOnlyTransaction.execute(tx -> bookRepository.findById(id)
+                .map(BookMapper::toBookResponse)
+                .orElseThrow(() -> new NotFoundException("Book not found with id " + id))));
     }
 
     @Transactional
@@ -113,6 +179,9 @@ public class BookService {
         
         BookMapper.updateBookFromRequest(book, request, category);
         book = bookRepository.save(book);
+
+        // ✅ Đồng bộ catalog search index / autocomplete và xóa sách khỏi catalog cache sau khi commit
+        eventPublisher.publishEvent(CatalogChangedEvent.bookSaved(book.getId()));
         
         // ✅ Xóa ảnh cũ từ Cloudinary nếu có ảnh mới và ảnh cũ là Cloudinary URL
         if (oldImageUrl != null && !oldImageUrl.equals(book.getImageUrl()) && 
@@ -146,6 +215,35 @@ public class BookService {
         }
         
         bookRepository.delete(book);
+        // ✅ Gỡ sách khỏi các index trong bộ nhớ chỉ khi xóa thành công (VD: sách đã bán không xóa được vì order_items)
+        eventPublisher.publishEvent(CatalogChangedEvent.bookDeleted(id));
+    }
+
+    // Load các sách theo danh sách ID bằng một query, giữ nguyên thứ tự xếp hạng
+    private List<BookResponse> findBooksInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, BookRow> bookMap = bookRepository.findRowsByIdIn(ids).stream()
+                .collect(Collectors.toMap(BookRow::getId, book -> book));
+        return ids.stream()
+                .map(bookMap::get)
+                .filter(Objects::nonNull)
+                .map(BookMapper::toBookResponse)
+                .collect(Collectors.toList());
+    }
+
+    // ID sách của một trang trong danh sách kết quả đã xếp hạng
+    private static List<Long> pageSlice(CatalogSearchEngine.SearchResult result, int page, int size) {
+        int from = (int) Math.min((long) page * size, result.total());
+        int to = Math.min(from + size, result.total());
+        return result.hits().subList(from, to).stream()
+                .map(CatalogSearchEngine.ScoredBook::bookId)
+                .collect(Collectors.toList());
+    }
+
+    private static int clampLimit(int limit) {
+        return limit > 0 ? Math.min(limit, MAX_POPULAR_LIMIT) : DEFAULT_POPULAR_LIMIT;
     }
 
     // 🧮 Sinh mã barcode chuẩn EAN-13 (13 số, có checksum)
@@ -2,6 +2,7 @@ package iuh.fit.haitebooks_backend.service;
 
 import iuh.fit.haitebooks_backend.dtos.request.CartRequest;
 import iuh.fit.haitebooks_backend.dtos.response.CartResponse;
+import iuh.fit.haitebooks_backend.event.UserInteractionEvent;
 import iuh.fit.haitebooks_backend.exception.NotFoundException;
 import iuh.fit.haitebooks_backend.mapper.CartMapper;
 import iuh.fit.haitebooks_backend.model.Book;
@@ -10,6 +11,7 @@ import iuh.fit.haitebooks_backend.model.User;
 import iuh.fit.haitebooks_backend.repository.BookRepository;
 import iuh.fit.haitebooks_backend.repository.CartRepository;
 import iuh.fit.haitebooks_backend.repository.UserRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -23,20 +25,22 @@ public class CartService {
     private final CartRepository cartRepository;
     private final UserRepository userRepository;
     private final BookRepository bookRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     public CartService(CartRepository cartRepository,
                        UserRepository userRepository,
-                       BookRepository bookRepository) {
+                       BookRepository bookRepository,
+                       ApplicationEventPublisher eventPublisher) {
         this.cartRepository = cartRepository;
         this.userRepository = userRepository;
         this.bookRepository = bookRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     @Transactional(readOnly = true)
     public List<CartResponse> getCartByUser(Long userId) {
-        // Với @EntityGraph trong repository, book và user đã được eager fetch
-        List<Cart> carts = cartRepository.findByUserId(userId);
-        return carts.stream()
+        // Projection: chỉ đọc bảng cart_items, không join sách / user
+        return cartRepository.findRowsByUserId(userId).stream()
                 .map(CartMapper::toResponse)
                 .collect(Collectors.toList());
     }
@@ -62,6 +66,7 @@ public class CartService {
         }
 
         cart = cartRepository.save(cart);
+        eventPublisher.publishEvent(new UserInteractionEvent(user.getId(), UserInteractionEvent.Type.CART_ADDED, book.getId(), null));
         
         // Với @EntityGraph trong repository, book và user đã được eager fetch khi save
         return CartMapper.toResponse(cart);
@@ -79,6 +84,13 @@ public class CartService {
 
     @Transactional
     public void removeFromCart(Long id) {
-        cartRepository.deleteById(id);
+        cartRepository.findById(id).ifPresent(cart -> {
+            cartRepository.delete(cart);
+            if (cart.getUser() != null) {
+                Long bookId = cart.getBook() != null ? cart.getBook().getId() : null;
+                eventPublisher.publishEvent(new UserInteractionEvent(cart.getUser().getId(),
+                        UserInteractionEvent.Type.CART_CHANGED, bookId, null));
+            }
+        });
     }
 }
@@ -0,0 +1,136 @@
+package iuh.fit.haitebooks_backend.service;
+
+import iuh.fit.haitebooks_backend.dtos.response.BookResponse;
+import iuh.fit.haitebooks_backend.dtos.response.CategoryResponse;
+import iuh.fit.haitebooks_backend.event.CatalogChangedEvent;
+import iuh.fit.haitebooks_backend.util.BoundedTtlCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Cache read-through cho các endpoint catalog công khai: chi tiết sách theo ID, tra cứu theo barcode và danh sách category
+ * - Giới hạn theo số entry + TTL (BoundedTtlCache, loại theo LRU)
+ * - Barcode chỉ ánh xạ tới ID sách, nội dung sách luôn lấy từ cache theo ID nên chỉ cần xóa một chỗ khi sách đổi
+ * - Xóa entry sau khi transaction commit (CatalogChangedEvent); mỗi lần xóa tăng generation để lượt load
+ *   đang chạy song song (đọc dữ liệu cũ) không ghi đè lại vào cache
+ * Object trả về được dùng chung giữa các request, nơi gọi không được sửa nội dung
+ */
+@Service
+public class CatalogCache {
+
+    private static final String ALL_CATEGORIES = "all";
+
+    private final BoundedTtlCache<Long, BookResponse> booksById;
+    private final BoundedTtlCache<String, Long> bookIdsByBarcode;
+    private final BoundedTtlCache<String, List<CategoryResponse>> categories;
+
+    private final Object writeMonitor = new Object();
+    private long generation = 0L; // Chỉ truy cập khi giữ writeMonitor
+
+    public CatalogCache(@Value("${catalog.cache.max-books:5000}") int maxBooks,
+                        @Value("${catalog.cache.ttl-minutes:30}") long ttlMinutes) {
+        long ttlMillis = ttlMinutes * 60_000L;
+        this.booksById = new BoundedTtlCache<>(maxBooks, 0L, ttlMillis, book -> 0L);
+        this.bookIdsByBarcode = new BoundedTtlCache<>(maxBooks, 0L, ttlMillis, id -> 0L);
+        this.categories = new BoundedTtlCache<>(1, 0L, ttlMillis, list -> 0L);
+    }
+
+    /**
+     * Lấy sách theo ID, nếu chưa có thì load (loader trả null nếu không tồn tại - kết quả null không được cache)
+     */
+    public BookResponse getBook(Long id, Supplier<BookResponse> loader) {
+        BookResponse cached = booksById.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        long startGeneration = currentGeneration();
+        BookResponse book = loader.get();
+        if (book != null) {
+            putIfUnchanged(startGeneration, () -> booksById.put(id, book));
+        }
+        return book;
+    }
+
+    /**
+     * Lấy sách theo barcode, nếu chưa có thì load (loader trả null nếu không tồn tại)
+     */
+    public BookResponse getBookByBarcode(String barcode, Supplier<BookResponse> loader) {
+        Long id = bookIdsByBarcode.get(barcode);
+        if (id != null) {
+            BookResponse cached = booksById.get(id);
+            if (cached != null && barcode.equals(cached.getBarcode())) {
+                return cached;
+            }
+        }
+        long startGeneration = currentGeneration();
+        BookResponse book = loader.get();
+        if (book != null) {
+            putIfUnchanged(startGeneration, () -> {
+                booksById.put(book.getId(), book);
+                bookIdsByBarcode.put(barcode, book.getId());
+            });
+        }
+        return book;
+    }
+
+    public List<CategoryResponse> getCategories(Supplier<List<CategoryResponse>> loader) {
+        List<CategoryResponse> cached = categories.get(ALL_CATEGORIES);
+        if (cached != null) {
+            return cached;
+        }
+        long startGeneration = currentGeneration();
+        List<CategoryResponse> loaded = List.copyOf(loader.get());
+        putIfUnchanged(startGeneration, () -> categories.put(ALL_CATEGORIES, loaded));
+        return loaded;
+    }
+
+    // Chạy trước CatalogVersionService: xóa cache rồi mới phát ETag mới
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        synchronized (writeMonitor) {
+            generation++;
+            if (event.categoriesChanged()) {
+                // Tên category nằm trong BookResponse -> xóa toàn bộ
+                categories.invalidateAll();
+                booksById.invalidateAll();
+                bookIdsByBarcode.invalidateAll();
+                return;
+            }
+            event.bookIds().forEach(booksById::invalidate);
+        }
+    }
+
+    /**
+     * Thống kê hit / miss / eviction theo từng vùng cache
+     */
+    public Map<String, BoundedTtlCache.Stats> stats() {
+        return Map.of(
+                "booksById", booksById.stats(),
+                "bookIdsByBarcode", bookIdsByBarcode.stats(),
+                "categories", categories.stats());
+    }
+
+    private long currentGeneration() {
+        synchronized (writeMonitor) {
+            return generation;
+        }
+    }
+
+    // Bỏ qua kết quả load nếu catalog đã thay đổi trong lúc load
+    private void putIfUnchanged(long startGeneration, Runnable put) {
+        synchronized (writeMonitor) {
+            if (generation == startGeneration) {
+                put.run();
+            }
+        }
+    }
+}
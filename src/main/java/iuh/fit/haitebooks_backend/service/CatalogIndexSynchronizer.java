@@ -0,0 +1,112 @@
+package iuh.fit.haitebooks_backend.service;
+
+import iuh.fit.haitebooks_backend.ai.service.BookVectorIndex;
+import iuh.fit.haitebooks_backend.event.CatalogChangedEvent;
+import iuh.fit.haitebooks_backend.repository.BookRepository;
+import iuh.fit.haitebooks_backend.repository.CategoryRepository;
+import iuh.fit.haitebooks_backend.repository.projection.BookSearchRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Đồng bộ các index trong bộ nhớ (catalog search, autocomplete, vector index, bộ đếm độ phổ biến) theo CatalogChangedEvent
+ * - Chỉ chạy sau khi transaction commit: thao tác bị rollback không để lại sách "ma" hoặc làm mất sách khỏi index
+ * - Sách thêm / sửa được đọc lại từ DB (trạng thái đã commit) thay vì dùng entity của transaction
+ */
+@Service
+public class CatalogIndexSynchronizer {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogIndexSynchronizer.class);
+
+    private final BookRepository bookRepository;
+    private final CategoryRepository categoryRepository;
+    private final CatalogSearchEngine searchEngine;
+    private final AutocompleteService autocompleteService;
+    private final BookVectorIndex vectorIndex;
+    private final PopularityService popularityService;
+
+    public CatalogIndexSynchronizer(BookRepository bookRepository,
+                                    CategoryRepository categoryRepository,
+                                    CatalogSearchEngine searchEngine,
+                                    AutocompleteService autocompleteService,
+                                    BookVectorIndex vectorIndex,
+                                    PopularityService popularityService) {
+        this.bookRepository = bookRepository;
+        this.categoryRepository = categoryRepository;
+        this.searchEngine = searchEngine;
+        this.autocompleteService = autocompleteService;
+        this.vectorIndex = vectorIndex;
+        this.popularityService = popularityService;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        try {
+            switch (event.change()) {
+                case BOOKS_SAVED -> upsertBooks(event.bookIds());
+                case BOOKS_DELETED -> removeBooks(event.bookIds());
+                case CATEGORIES -> renameCategory(event.categoryId());
+                case CATEGORY_DELETED -> removeCategory(event.categoryId(), event.bookIds());
+                default -> {
+                    // Tồn kho không thuộc các index này
+                }
+            }
+        } catch (Exception e) {
+            // Dữ liệu đã commit - không làm lỗi request; search index dựng lại ở lần search kế tiếp,
+            // autocomplete ở lần dựng lại định kỳ tiếp theo
+            searchEngine.markStale();
+            log.error("❌ Không thể đồng bộ index catalog ({} - sách {}): {}",
+                    event.change(), event.bookIds(), e.getMessage(), e);
+        }
+    }
+
+    private void upsertBooks(Collection<Long> bookIds) {
+        if (bookIds.isEmpty()) {
+            return;
+        }
+        Set<Long> missing = new HashSet<>(bookIds);
+        for (BookSearchRow row : bookRepository.findSearchRowsByIdIn(bookIds)) {
+            searchEngine.upsert(row);
+            autocompleteService.upsert(row);
+            missing.remove(row.getId());
+        }
+        // Sách đã bị xóa bởi transaction khác trước khi kịp đọc lại
+        removeBooks(missing);
+    }
+
+    // Tên category là một trường của catalog search index và một gợi ý autocomplete
+    private void renameCategory(Long categoryId) {
+        if (categoryId == null) {
+            return;
+        }
+        categoryRepository.findById(categoryId).ifPresent(category -> {
+            searchEngine.renameCategory(categoryId, category.getName());
+            autocompleteService.renameCategory(categoryId, category.getName());
+        });
+    }
+
+    private void removeCategory(Long categoryId, Collection<Long> bookIds) {
+        removeBooks(bookIds);
+        if (categoryId != null) {
+            // Gỡ cả gợi ý category và sách được thêm vào category sau khi lấy danh sách bookIds
+            searchEngine.removeCategory(categoryId);
+            autocompleteService.removeCategory(categoryId);
+        }
+    }
+
+    private void removeBooks(Collection<Long> bookIds) {
+        for (Long bookId : bookIds) {
+            vectorIndex.remove(bookId);
+            searchEngine.remove(bookId);
+            autocompleteService.remove(bookId);
+            popularityService.remove(bookId);
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package iuh.fit.haitebooks_backend.service;
+
+import iuh.fit.haitebooks_backend.repository.BookRepository;
+import iuh.fit.haitebooks_backend.repository.projection.BookSearchRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Full-text search engine trong bộ nhớ cho catalog sách (thay cho LIKE '%kw%' không dùng được index)
+ * - Trường: title, author, category, description - mỗi trường có trọng số riêng (BM25 theo từng trường rồi cộng lại)
+ * - Phân tích tiếng Việt: Unicode NFC, lowercase, tách theo ký tự không phải chữ / số, gấp dấu (đ -> d, bỏ dấu)
+ *   nên "lap trinh" khớp "lập trình"; khớp đúng dấu được ưu tiên hơn
+ * - Từ cuối của query khớp theo tiền tố (gõ tới đâu tìm tới đó), từ dài >= 4 ký tự chịu được lỗi gõ (edit distance)
+ * - Đếm facet theo category / author trên tập kết quả
+ * - Cập nhật tăng dần khi thêm / sửa / xóa sách (BookService) và khi đổi tên / xóa category (CategoryService)
+ * - Cập nhật tăng dần bị lỗi -> index bị đánh dấu cũ và được dựng lại ở lần search kế tiếp;
+ *   ngoài ra dựng lại định kỳ để bắt các thay đổi không đi qua event (VD: sửa trực tiếp trong DB)
+ */
+@Service
+public class CatalogSearchEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogSearchEngine.class);
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    // BM25
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // Trọng số của từ khóa mở rộng so với khớp chính xác
+    private static final double PREFIX_WEIGHT = 0.7;
+    private static final double FUZZY_WEIGHT = 0.5;
+    private static final double ACCENT_MISMATCH_FACTOR = 0.7; // Khớp sau khi gấp dấu nhưng khác dấu
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int MIN_FUZZY_LENGTH = 4;
+    private static final int MAX_EXPANSIONS = 50;
+    private static final int MAX_FACET_VALUES = 10;
+
+    public enum Field {
+        TITLE(3.0), AUTHOR(2.0), CATEGORY(1.5), DESCRIPTION(1.0);
+
+        private final double boost;
+
+        Field(double boost) {
+            this.boost = boost;
+        }
+    }
+
+    private static final Field[] FIELDS = Field.values();
+
+    /**
+     * Một kết quả tìm kiếm (điểm BM25 chưa chuẩn hóa)
+     */
+    public record ScoredBook(long bookId, double score) {
+    }
+
+    /**
+     * Kết quả tìm kiếm: toàn bộ sách khớp theo thứ tự điểm + facet
+     * @param categoryFacets Số sách khớp theo category (tính trước khi lọc category)
+     * @param authorFacets Số sách khớp theo tác giả (sau khi lọc category)
+     */
+    public record SearchResult(List<ScoredBook> hits, Map<String, Long> categoryFacets,
+                               Map<String, Long> authorFacets) {
+        public int total() {
+            return hits.size();
+        }
+    }
+
+    /**
+     * Điểm văn bản dùng cho hybrid search
+     * @param score Điểm chuẩn hóa 0.0 - 1.0 (chia cho điểm cao nhất của query)
+     * @param titlePhrase Cả cụm từ của query xuất hiện liền nhau trong title
+     */
+    public record TextScore(double score, boolean titlePhrase) {
+    }
+
+    private record IndexedBook(String title, String author, String description, Long categoryId,
+                               String categoryName, String foldedTitle, int[] fieldLengths, Set<String> exactTerms) {
+    }
+
+    private record QueryToken(String raw, Map<String, Double> expansions) {
+    }
+
+    private final BookRepository bookRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object loadMonitor = new Object();
+    private volatile boolean loaded = false;
+    // Một cập nhật tăng dần bị lỗi, index có thể lệch với database
+    private volatile boolean stale = false;
+
+    // Chỉ truy cập khi giữ lock
+    private final Map<Long, IndexedBook> books = new HashMap<>();
+    // term đã gấp dấu -> (bookId -> tần suất theo từng trường), TreeMap để duyệt theo tiền tố
+    private final TreeMap<String, Map<Long, int[]>> postings = new TreeMap<>();
+    private final long[] totalFieldLengths = new long[FIELDS.length];
+
+    public CatalogSearchEngine(BookRepository bookRepository) {
+        this.bookRepository = bookRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        ensureLoaded();
+    }
+
+    public void ensureLoaded() {
+        if (loaded && !stale) {
+            return;
+        }
+        synchronized (loadMonitor) {
+            if (!loaded || stale) {
+                rebuild();
+            }
+        }
+    }
+
+    /**
+     * Đánh dấu index cần dựng lại (cập nhật tăng dần thất bại), lần search kế tiếp sẽ load lại từ database
+     */
+    public void markStale() {
+        stale = true;
+    }
+
+    /**
+     * Dựng lại định kỳ từ database
+     */
+    @Scheduled(fixedDelayString = "${catalog.search.rebuild-interval-ms:3600000}",
+            initialDelayString = "${catalog.search.rebuild-interval-ms:3600000}")
+    public void scheduledRebuild() {
+        synchronized (loadMonitor) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Load lại toàn bộ index từ database (chỉ các trường văn bản + category)
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            // Xóa cờ trước khi đọc: lỗi cập nhật xảy ra sau thời điểm này sẽ đánh dấu lại cho lần sau
+            stale = false;
+            books.clear();
+            postings.clear();
+            Arrays.fill(totalFieldLengths, 0L);
+            for (BookSearchRow row : bookRepository.findAllSearchRows()) {
+                addLocked(row.getId(), row.getTitle(), row.getAuthor(), row.getCategoryId(),
+                        row.getCategoryName(), row.getDescription());
+            }
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("✅ Đã load catalog search index: {} sách, {} term ({} ms)",
+                books.size(), postings.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Thêm mới hoặc cập nhật sách trong index
+     */
+    public void upsert(BookSearchRow book) {
+        if (book == null || book.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removeLocked(book.getId());
+            addLocked(book.getId(), book.getTitle(), book.getAuthor(), book.getCategoryId(), book.getCategoryName(),
+                    book.getDescription());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long bookId) {
+        if (bookId == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removeLocked(bookId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Cập nhật tên category cho mọi sách thuộc category
+     */
+    public void renameCategory(Long categoryId, String name) {
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<Long, IndexedBook> entry : List.copyOf(books.entrySet())) {
+                IndexedBook book = entry.getValue();
+                if (Objects.equals(book.categoryId(), categoryId)) {
+                    removeLocked(entry.getKey());
+                    addLocked(entry.getKey(), book.title(), book.author(), categoryId, name, book.description());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Xóa mọi sách thuộc category (category bị xóa kéo theo sách)
+     */
+    public void removeCategory(Long categoryId) {
+        lock.writeLock().lock();
+        try {
+            List<Long> ids = new ArrayList<>();
+            books.forEach((id, book) -> {
+                if (Objects.equals(book.categoryId(), categoryId)) {
+                    ids.add(id);
+                }
+            });
+            ids.forEach(this::removeLocked);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tìm kiếm full-text, xếp hạng BM25
+     * @param query Câu truy vấn
+     * @param categoryId Chỉ lấy sách thuộc category này (null = tất cả)
+     */
+    public SearchResult search(String query, Long categoryId) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            Map<Long, Double> scores = scoreLocked(query);
+            Map<String, Long> categoryFacets = new HashMap<>();
+            Map<String, Long> authorFacets = new HashMap<>();
+            List<ScoredBook> hits = new ArrayList<>();
+            for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+                IndexedBook book = books.get(entry.getKey());
+                if (book.categoryName() != null) {
+                    categoryFacets.merge(book.categoryName(), 1L, Long::sum);
+                }
+                if (categoryId != null && !categoryId.equals(book.categoryId())) {
+                    continue;
+                }
+                if (book.author() != null && !book.author().isBlank()) {
+                    authorFacets.merge(book.author(), 1L, Long::sum);
+                }
+                hits.add(new ScoredBook(entry.getKey(), entry.getValue()));
+            }
+            // Điểm bằng nhau thì sách mới hơn (id lớn hơn) đứng trước
+            hits.sort(Comparator.comparingDouble(ScoredBook::score).reversed()
+                    .thenComparing(Comparator.comparingLong(ScoredBook::bookId).reversed()));
+            return new SearchResult(hits, topFacets(categoryFacets), topFacets(authorFacets));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Điểm văn bản chuẩn hóa của mọi sách khớp query (phần text matching của hybrid search)
+     */
+    public Map<Long, TextScore> textScores(String query) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            Map<Long, Double> scores = scoreLocked(query);
+            if (scores.isEmpty()) {
+                return Map.of();
+            }
+            double max = Collections.max(scores.values());
+            String phrase = " " + String.join(" ", foldAll(analyze(query))) + " ";
+            Map<Long, TextScore> result = new HashMap<>();
+            for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+                IndexedBook book = books.get(entry.getKey());
+                boolean titlePhrase = book.foldedTitle().contains(phrase);
+                result.put(entry.getKey(), new TextScore(max > 0 ? entry.getValue() / max : 0.0, titlePhrase));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return books.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Tách văn bản thành các từ: NFC, lowercase, tách theo ký tự không phải chữ / số
+     */
+    public static List<String> analyze(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+        List<String> tokens = new ArrayList<>();
+        for (String token : NON_WORD.split(normalized)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Bỏ dấu tiếng Việt: tách dấu (NFD), xóa ký tự dấu, đ -> d
+     */
+    public static String fold(String token) {
+        String decomposed = Normalizer.normalize(token, Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").replace('đ', 'd');
+    }
+
+    // ===== Chấm điểm =====
+
+    private Map<Long, Double> scoreLocked(String query) {
+        List<String> rawTokens = analyze(query);
+        if (rawTokens.isEmpty() || books.isEmpty()) {
+            return Map.of();
+        }
+        List<QueryToken> tokens = new ArrayList<>();
+        for (int i = 0; i < rawTokens.size(); i++) {
+            tokens.add(new QueryToken(rawTokens.get(i), expand(fold(rawTokens.get(i)), i == rawTokens.size() - 1)));
+        }
+
+        int n = books.size();
+        double[] avgLengths = new double[FIELDS.length];
+        for (int f = 0; f < FIELDS.length; f++) {
+            avgLengths[f] = Math.max(1.0, (double) totalFieldLengths[f] / n);
+        }
+
+        Map<Long, Double> totals = new HashMap<>();
+        Map<Long, Integer> matchedTokens = new HashMap<>();
+        for (QueryToken token : tokens) {
+            // Mỗi từ của query: lấy điểm cao nhất trong các term mở rộng (tránh cộng dồn nhiều tiền tố)
+            Map<Long, Double> tokenScores = new HashMap<>();
+            for (Map.Entry<String, Double> expansion : token.expansions().entrySet()) {
+                Map<Long, int[]> posting = postings.get(expansion.getKey());
+                double[] idf = idf(posting, n);
+                for (Map.Entry<Long, int[]> entry : posting.entrySet()) {
+                    IndexedBook book = books.get(entry.getKey());
+                    double score = 0.0;
+                    for (int f = 0; f < FIELDS.length; f++) {
+                        int tf = entry.getValue()[f];
+                        if (tf == 0) {
+                            continue;
+                        }
+                        double lengthNorm = 1 - B + B * book.fieldLengths()[f] / avgLengths[f];
+                        score += FIELDS[f].boost * idf[f] * (tf * (K1 + 1)) / (tf + K1 * lengthNorm);
+                    }
+                    score *= expansion.getValue();
+                    if (expansion.getValue() == 1.0 && !book.exactTerms().contains(token.raw())) {
+                        score *= ACCENT_MISMATCH_FACTOR;
+                    }
+                    tokenScores.merge(entry.getKey(), score, Math::max);
+                }
+            }
+            tokenScores.forEach((bookId, score) -> {
+                totals.merge(bookId, score, Double::sum);
+                matchedTokens.merge(bookId, 1, Integer::sum);
+            });
+        }
+
+        // Hệ số phủ: sách khớp nhiều từ của query hơn được ưu tiên
+        int tokenCount = tokens.size();
+        totals.replaceAll((bookId, score) -> score * matchedTokens.get(bookId) / tokenCount);
+        return totals;
+    }
+
+    /**
+     * Các term trong từ điển ứng với một từ của query: khớp chính xác, tiền tố (từ cuối), gần đúng (lỗi gõ)
+     */
+    private Map<String, Double> expand(String folded, boolean last) {
+        Map<String, Double> expansions = new LinkedHashMap<>();
+        boolean exact = postings.containsKey(folded);
+        if (exact) {
+            expansions.put(folded, 1.0);
+        }
+        if (last && folded.length() >= MIN_PREFIX_LENGTH) {
+            for (String term : postings.subMap(folded, false, folded + Character.MAX_VALUE, false).keySet()) {
+                if (expansions.size() >= MAX_EXPANSIONS) {
+                    break;
+                }
+                expansions.putIfAbsent(term, PREFIX_WEIGHT);
+            }
+        }
+        if (!exact && folded.length() >= MIN_FUZZY_LENGTH) {
+            int maxEdits = folded.length() >= 8 ? 2 : 1;
+            // Giả định ký tự đầu gõ đúng - chỉ quét các term cùng ký tự đầu
+            String first = folded.substring(0, 1);
+            for (String term : postings.subMap(first, true, first + Character.MAX_VALUE, false).keySet()) {
+                if (expansions.size() >= MAX_EXPANSIONS) {
+                    break;
+                }
+                if (withinEditDistance(folded, term, maxEdits)) {
+                    expansions.putIfAbsent(term, FUZZY_WEIGHT);
+                }
+            }
+        }
+        return expansions;
+    }
+
+    private double[] idf(Map<Long, int[]> posting, int n) {
+        int[] df = new int[FIELDS.length];
+        for (int[] tf : posting.values()) {
+            for (int f = 0; f < FIELDS.length; f++) {
+                if (tf[f] > 0) {
+                    df[f]++;
+                }
+            }
+        }
+        double[] idf = new double[FIELDS.length];
+        for (int f = 0; f < FIELDS.length; f++) {
+            idf[f] = Math.log(1 + (n - df[f] + 0.5) / (df[f] + 0.5));
+        }
+        return idf;
+    }
+
+    // Levenshtein có chặn: dừng sớm khi cả hàng đã vượt maxEdits
+    private static boolean withinEditDistance(String a, String b, int maxEdits) {
+        if (Math.abs(a.length() - b.length()) > maxEdits) {
+            return false;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxEdits) {
+                return false;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()] <= maxEdits;
+    }
+
+    private static Map<String, Long> topFacets(Map<String, Long> counts) {
+        Map<String, Long> top = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(MAX_FACET_VALUES)
+                .forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+        return top;
+    }
+
+    // ===== Cập nhật index =====
+
+    private void addLocked(Long bookId, String title, String author, Long categoryId, String categoryName,
+                           String description) {
+        String[] texts = new String[FIELDS.length];
+        texts[Field.TITLE.ordinal()] = title;
+        texts[Field.AUTHOR.ordinal()] = author;
+        texts[Field.CATEGORY.ordinal()] = categoryName;
+        texts[Field.DESCRIPTION.ordinal()] = description;
+
+        int[] fieldLengths = new int[FIELDS.length];
+        Set<String> exactTerms = new HashSet<>();
+        Map<String, int[]> termFrequencies = new HashMap<>();
+        for (int f = 0; f < FIELDS.length; f++) {
+            List<String> tokens = analyze(texts[f]);
+            fieldLengths[f] = tokens.size();
+            totalFieldLengths[f] += tokens.size();
+            for (String token : tokens) {
+                exactTerms.add(token);
+                termFrequencies.computeIfAbsent(fold(token), t -> new int[FIELDS.length])[f]++;
+            }
+        }
+        termFrequencies.forEach((term, tf) -> postings.computeIfAbsent(term, t -> new HashMap<>()).put(bookId, tf));
+
+        String foldedTitle = " " + String.join(" ", foldAll(analyze(title))) + " ";
+        books.put(bookId, new IndexedBook(title, author, description, categoryId, categoryName, foldedTitle,
+                fieldLengths, Set.copyOf(exactTerms)));
+    }
+
+    private void removeLocked(Long bookId) {
+        IndexedBook book = books.remove(bookId);
+        if (book == null) {
+            return;
+        }
+        for (int f = 0; f < FIELDS.length; f++) {
+            totalFieldLengths[f] -= book.fieldLengths()[f];
+        }
+        Set<String> terms = new HashSet<>();
+        terms.addAll(foldAll(analyze(book.title())));
+        terms.addAll(foldAll(analyze(book.author())));
+        terms.addAll(foldAll(analyze(book.categoryName())));
+        terms.addAll(foldAll(analyze(book.description())));
+        for (String term : terms) {
+            Map<Long, int[]> posting = postings.get(term);
+            if (posting == null) {
+                continue;
+            }
+            posting.remove(bookId);
+            if (posting.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    private static List<String> foldAll(List<String> tokens) {
+        List<String> folded = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            folded.add(fold(token));
+        }
+        return folded;
+    }
+}
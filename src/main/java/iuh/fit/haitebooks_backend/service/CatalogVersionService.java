@@ -0,0 +1,146 @@
+package iuh.fit.haitebooks_backend.service;
+
+import iuh.fit.haitebooks_backend.event.CatalogChangedEvent;
+import iuh.fit.haitebooks_backend.event.UserInteractionEvent;
+import iuh.fit.haitebooks_backend.repository.CatalogVersionJdbcRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Theo dõi phiên bản dữ liệu catalog trong bộ nhớ để trả ETag / Last-Modified mà không cần chạy query
+ * - Mỗi thay đổi (sau khi commit) lấy một số thứ tự mới; ETag = thời điểm khởi động + số thứ tự
+ *   nên ETag cũ không bao giờ trùng sau khi restart
+ * - Last-Modified khởi tạo từ MAX(updated_at) trong DB, sau đó cập nhật theo từng thay đổi
+ * - Listener chạy sau CatalogCache để không phát ETag mới cho nội dung cũ còn trong cache
+ */
+@Service
+public class CatalogVersionService {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogVersionService.class);
+
+    /**
+     * @param etag ETag (weak - nội dung có thể được nén gzip)
+     * @param lastModified Epoch millis
+     */
+    public record Version(String etag, long lastModified) {
+    }
+
+    private record Stamp(long sequence, long modifiedAt) {
+
+        private Stamp max(Stamp other) {
+            return new Stamp(Math.max(sequence, other.sequence), Math.max(modifiedAt, other.modifiedAt));
+        }
+    }
+
+    private final CatalogVersionJdbcRepository versionRepository;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Mốc khi khởi động - dùng cho sách / review chưa thay đổi từ lúc đó
+    private volatile Stamp bookSeed;
+    private volatile Stamp reviewSeed;
+    private volatile Stamp books;
+    private volatile Stamp categories;
+    private final Map<Long, Stamp> bookStamps = new ConcurrentHashMap<>();
+    private final Map<Long, Stamp> reviewStamps = new ConcurrentHashMap<>();
+
+    public CatalogVersionService(CatalogVersionJdbcRepository versionRepository) {
+        this.versionRepository = versionRepository;
+        Stamp startup = new Stamp(0L, System.currentTimeMillis());
+        this.bookSeed = startup;
+        this.reviewSeed = startup;
+        this.books = startup;
+        this.categories = startup;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        try {
+            bookSeed = seed(versionRepository.findBooksLastModified());
+            reviewSeed = seed(versionRepository.findReviewsLastModified());
+            books = bookSeed;
+            categories = seed(versionRepository.findCategoriesLastModified());
+        } catch (Exception e) {
+            // Giữ thời điểm khởi động làm Last-Modified
+            log.warn("⚠️ Không thể đọc updated_at của catalog: {}", e.getMessage());
+        }
+    }
+
+    // ===== Phiên bản theo endpoint =====
+
+    /**
+     * Danh sách sách (đổi khi bất kỳ sách hoặc category nào đổi)
+     */
+    public Version bookList() {
+        return toVersion(books.max(categories));
+    }
+
+    /**
+     * Chi tiết một sách (BookResponse chứa tên category)
+     */
+    public Version book(Long bookId) {
+        return toVersion(bookStamps.getOrDefault(bookId, bookSeed).max(categories));
+    }
+
+    public Version categoryList() {
+        return toVersion(categories);
+    }
+
+    /**
+     * Danh sách review của một sách (ReviewResponse chứa tên sách)
+     */
+    public Version reviewsOfBook(Long bookId) {
+        return toVersion(reviewStamps.getOrDefault(bookId, reviewSeed).max(bookStamps.getOrDefault(bookId, bookSeed)));
+    }
+
+    // ===== Cập nhật sau khi transaction commit =====
+
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCatalogChanged(CatalogChangedEvent event) {
+        Stamp stamp = next();
+        if (event.categoriesChanged()) {
+            categories = stamp;
+        }
+        for (Long bookId : event.bookIds()) {
+            bookStamps.put(bookId, stamp);
+        }
+        books = stamp;
+    }
+
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserInteraction(UserInteractionEvent event) {
+        if (event.bookId() == null) {
+            return;
+        }
+        UserInteractionEvent.Type type = event.type();
+        if (type == UserInteractionEvent.Type.REVIEW_CREATED || type == UserInteractionEvent.Type.REVIEW_UPDATED
+                || type == UserInteractionEvent.Type.REVIEW_DELETED) {
+            reviewStamps.put(event.bookId(), next());
+        }
+    }
+
+    private Stamp next() {
+        return new Stamp(sequence.incrementAndGet(), System.currentTimeMillis());
+    }
+
+    private Stamp seed(long lastModified) {
+        return new Stamp(0L, lastModified > 0 ? lastModified : System.currentTimeMillis());
+    }
+
+    private Version toVersion(Stamp stamp) {
+        return new Version("W/\"" + epoch + "-" + stamp.sequence() + "\"", stamp.modifiedAt());
+    }
+}
@@ -2,13 +2,18 @@ package iuh.fit.haitebooks_backend.service;
 
 import iuh.fit.haitebooks_backend.dtos.request.CategoryRequest;
 import iuh.fit.haitebooks_backend.dtos.response.CategoryResponse;
+import iuh.fit.haitebooks_backend.event.CatalogChangedEvent;
 import iuh.fit.haitebooks_backend.exception.ConflictException;
 import iuh.fit.haitebooks_backend.exception.NotFoundException;
 import iuh.fit.haitebooks_backend.mapper.CategoryMapper;
 import iuh.fit.haitebooks_backend.model.BookCategory;
+import iuh.fit.haitebooks_backend.repository.BookRepository;
 import iuh.fit.haitebooks_backend.repository.CategoryRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -17,18 +22,30 @@ import java.util.stream.Collectors;
 public class CategoryService {
 
     private final CategoryRepository categoryRepository;
+    private final BookRepository bookRepository;
+    private final CatalogCache catalogCache;
+    private final ApplicationEventPublisher eventPublisher;
+    // Transaction read-only chỉ mở cho phần đọc DB khi catalog cache miss
+    private final TransactionTemplate readOnlyTransaction;
 
-    public CategoryService(CategoryRepository categoryRepository) {
+    public CategoryService(CategoryRepository categoryRepository, BookRepository bookRepository,
+                           CatalogCache catalogCache, ApplicationEventPublisher eventPublisher,
+                           PlatformTransactionManager transactionManager) {
         this.categoryRepository = categoryRepository;
+        this.bookRepository = bookRepository;
+        this.catalogCache = catalogCache;
+        this.eventPublisher = eventPublisher;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
     }
 
     // ✅ Lấy tất cả category
-    @Transactional(readOnly = true)
     public List<CategoryResponse> getAllCategories() {
-        return categoryRepository.findAll()
+        // ✅ Đọc qua catalog cache; cache hit không mở transaction, chỉ khi miss mới đọc DB trong transaction read-only
+        return catalogCache.getCategories(() -> readOnlyTransaction.execute(tx -> categoryRepository.findAll()
                 .stream()
                 .map(CategoryMapper::toResponse)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList())));
     }
 
     // ✅ Tạo mới — kiểm tra trùng tên
@@ -39,7 +56,9 @@ public class CategoryService {
         }
 
         BookCategory category = CategoryMapper.toEntity(request);
-        return categoryRepository.save(category);
+        category = categoryRepository.save(category);
+        eventPublisher.publishEvent(CatalogChangedEvent.categorySaved(category.getId()));
+        return category;
     }
 
     // ✅ Lấy theo ID
@@ -61,7 +80,10 @@ public class CategoryService {
         });
 
         CategoryMapper.updateEntity(category, request);
-        return categoryRepository.save(category);
+        category = categoryRepository.save(category);
+        // ✅ Tên category là một trường của catalog search index - cập nhật sau khi commit (CatalogIndexSynchronizer)
+        eventPublisher.publishEvent(CatalogChangedEvent.categorySaved(category.getId()));
+        return category;
     }
 
     // ✅ Xóa - Tối ưu: Dùng findById().orElseThrow() để tránh 2 queries
@@ -69,6 +91,9 @@ public class CategoryService {
     public void deleteCategory(Long id) {
         BookCategory category = categoryRepository.findById(id)
                 .orElseThrow(() -> new NotFoundException("Category not found with id " + id));
+        // Sách thuộc category bị xóa theo (cascade) -> ghi lại ID để gỡ khỏi các index sau khi commit
+        List<Long> bookIds = bookRepository.findIdsByCategoryId(id);
         categoryRepository.delete(category);
+        eventPublisher.publishEvent(CatalogChangedEvent.categoryDeleted(id, bookIds));
     }
 }
@@ -1,6 +1,7 @@
 package iuh.fit.haitebooks_backend.service;
 
 import iuh.fit.haitebooks_backend.dtos.request.FavoriteBookRequest;
+import iuh.fit.haitebooks_backend.event.UserInteractionEvent;
 import iuh.fit.haitebooks_backend.exception.ConflictException;
 import iuh.fit.haitebooks_backend.exception.NotFoundException;
 import iuh.fit.haitebooks_backend.model.Book;
@@ -9,6 +10,7 @@ import iuh.fit.haitebooks_backend.model.User;
 import iuh.fit.haitebooks_backend.repository.BookRepository;
 import iuh.fit.haitebooks_backend.repository.FavoriteBookRepository;
 import iuh.fit.haitebooks_backend.repository.UserRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -21,13 +23,16 @@ public class FavoriteBookService {
     private final FavoriteBookRepository favoriteBookRepository;
     private final UserRepository userRepository;
     private final BookRepository bookRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     public FavoriteBookService(FavoriteBookRepository favoriteBookRepository,
                                UserRepository userRepository,
-                               BookRepository bookRepository) {
+                               BookRepository bookRepository,
+                               ApplicationEventPublisher eventPublisher) {
         this.favoriteBookRepository = favoriteBookRepository;
         this.userRepository = userRepository;
         this.bookRepository = bookRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     @Transactional(readOnly = true)
@@ -75,7 +80,10 @@ public class FavoriteBookService {
                 .createdAt(java.time.LocalDateTime.now())
                 .build();
 
-        return favoriteBookRepository.save(favoriteBook);
+        FavoriteBook saved = favoriteBookRepository.save(favoriteBook);
+        eventPublisher.publishEvent(new UserInteractionEvent(user.getId(), UserInteractionEvent.Type.FAVORITE_ADDED,
+                book.getId(), null));
+        return saved;
     }
 
     @Transactional
@@ -86,6 +94,8 @@ public class FavoriteBookService {
                 .orElseThrow(() -> new NotFoundException("Book not found"));
 
         favoriteBookRepository.deleteByUserAndBook(user, book);
+        eventPublisher.publishEvent(new UserInteractionEvent(user.getId(), UserInteractionEvent.Type.FAVORITE_REMOVED,
+                book.getId(), null));
     }
 
     @Transactional(readOnly = true)
@@ -1,6 +1,7 @@
 package iuh.fit.haitebooks_backend.service;
 
 import iuh.fit.haitebooks_backend.dtos.request.NotificationRequest;
+import iuh.fit.haitebooks_backend.dtos.response.CursorPageResponse;
 import iuh.fit.haitebooks_backend.dtos.response.NotificationResponse;
 import iuh.fit.haitebooks_backend.exception.NotFoundException;
 import iuh.fit.haitebooks_backend.mapper.NotificationMapper;
@@ -8,7 +9,9 @@ import iuh.fit.haitebooks_backend.model.Notification;
 import iuh.fit.haitebooks_backend.model.User;
 import iuh.fit.haitebooks_backend.repository.NotificationRepository;
 import iuh.fit.haitebooks_backend.repository.UserRepository;
+import iuh.fit.haitebooks_backend.util.CursorPaging;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -72,6 +75,20 @@ public class NotificationService {
                 .toList();
     }
 
+    // 🔥 Lấy thông báo theo trang (keyset theo createdAt, id) - mới nhất trước
+    @Transactional(readOnly = true)
+    public CursorPageResponse<NotificationResponse> getUserNotificationsAfter(Long userId, String after, Integer size) {
+        int pageSize = CursorPaging.pageSize(size);
+        CursorPaging.TimeCursor cursor = CursorPaging.decodeTime(after);
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+        List<Notification> notifications = cursor == null
+                ? notificationRepo.findFirstPageByReceiverId(userId, limit)
+                : notificationRepo.findPageAfter(userId, cursor.createdAt(), cursor.id(), limit);
+        // Sender đã được eager fetch bởi @EntityGraph
+        return CursorPaging.toPage(notifications, pageSize, NotificationMapper::toResponse,
+                notification -> CursorPaging.encodeTime(notification.getCreatedAt(), notification.getId()));
+    }
+
     // 🔥 Lấy thông báo chưa đọc theo userId
     @Transactional(readOnly = true)
     public List<NotificationResponse> getUnread(Long userId) {
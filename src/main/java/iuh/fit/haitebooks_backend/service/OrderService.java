@@ -3,22 +3,33 @@ package iuh.fit.haitebooks_backend.service;
 import iuh.fit.haitebooks_backend.dtos.request.NotificationRequest;
 import iuh.fit.haitebooks_backend.dtos.request.OrderItemRequest;
 import iuh.fit.haitebooks_backend.dtos.request.OrderRequest;
+import iuh.fit.haitebooks_backend.dtos.response.CursorPageResponse;
 import iuh.fit.haitebooks_backend.dtos.response.OrderResponse;
+import iuh.fit.haitebooks_backend.event.CatalogChangedEvent;
+import iuh.fit.haitebooks_backend.event.OrderCreatedEvent;
 import iuh.fit.haitebooks_backend.exception.BadRequestException;
 import iuh.fit.haitebooks_backend.exception.NotFoundException;
 import iuh.fit.haitebooks_backend.mapper.OrderMapper;
 import iuh.fit.haitebooks_backend.model.*;
 import iuh.fit.haitebooks_backend.repository.BookRepository;
 import iuh.fit.haitebooks_backend.repository.OrderRepository;
+import iuh.fit.haitebooks_backend.repository.PromotionRepository;
 import iuh.fit.haitebooks_backend.repository.UserRepository;
+import iuh.fit.haitebooks_backend.repository.projection.OrderItemRow;
+import iuh.fit.haitebooks_backend.repository.projection.OrderSummaryRow;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import iuh.fit.haitebooks_backend.util.CursorPaging;
 import iuh.fit.haitebooks_backend.util.DateTimeUtil;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 @Service
@@ -31,14 +42,19 @@ public class OrderService {
     private final UserRepository userRepository;
     private final NotificationService notificationService;
     private final PromotionService promotionService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PromotionRepository promotionRepository;
 
     public OrderService(OrderRepository orderRepository, BookRepository bookRepository, UserRepository userRepository,
-                        NotificationService notificationService, PromotionService promotionService) {
+                        NotificationService notificationService, PromotionService promotionService,
+                        ApplicationEventPublisher eventPublisher, PromotionRepository promotionRepository) {
         this.orderRepository = orderRepository;
         this.bookRepository = bookRepository;
         this.userRepository = userRepository;
         this.notificationService = notificationService;
         this.promotionService = promotionService;
+        this.eventPublisher = eventPublisher;
+        this.promotionRepository = promotionRepository;
     }
 
     // ✅ Tạo đơn hàng mới
@@ -159,6 +175,11 @@ public class OrderService {
         noti.setContent("Đơn #" + order.getId() + " đã được tạo.");
         notificationService.send(noti, null);
 
+        // 🔥 Các listener (VD: ma trận đồng mua) chỉ xử lý sau khi transaction commit
+        eventPublisher.publishEvent(new OrderCreatedEvent(order.getId(), user.getId()));
+        // Tồn kho thay đổi -> xóa các sách này khỏi catalog cache
+        eventPublisher.publishEvent(CatalogChangedEvent.stockChanged(bookIds));
+
         // Với @EntityGraph trong repository, các relationships đã được eager fetch khi save
         return OrderMapper.toOrderResponse(order);
     }
@@ -166,22 +187,50 @@ public class OrderService {
     // ✅ Lấy tất cả đơn hàng
     @Transactional(readOnly = true)
     public List<OrderResponse> getAllOrders() {
-        // Với @EntityGraph trong repository, các relationships đã được eager fetch
-        List<Order> orders = orderRepository.findAll();
-        return orders.stream()
-                .map(OrderMapper::toOrderResponse)
+        // Projection: chỉ đọc các cột OrderMapper cần, không hydrate User / Book entity
+        return toOrderResponses(orderRepository.findAllSummaryRows(), orderRepository.findAllItemRows());
+    }
+
+    // ✅ Phân trang keyset cho màn hình admin: lấy ID của trang trước, sau đó load chi tiết đúng các đơn đó
+    @Transactional(readOnly = true)
+    public CursorPageResponse<OrderResponse> getOrdersAfter(String after, Integer size) {
+        int pageSize = CursorPaging.pageSize(size);
+        List<Long> ids = orderRepository.findIdsAfter(CursorPaging.decodeId(after), PageRequest.of(0, pageSize + 1));
+        Map<Long, OrderResponse> orderMap = ids.isEmpty() ? Map.of()
+                : toOrderResponses(orderRepository.findSummaryRowsByIdIn(ids),
+                        orderRepository.findItemRowsByOrderIdIn(ids)).stream()
+                .collect(Collectors.toMap(OrderResponse::getId, order -> order));
+        List<OrderResponse> orders = ids.stream()
+                .map(orderMap::get)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
+        return CursorPaging.toPage(orders, pageSize, order -> order,
+                order -> CursorPaging.encodeId(order.getId()));
     }
 
     // ✅ Lấy đơn hàng theo user
     @Transactional(readOnly = true)
     public List<OrderResponse> findByUser(Long userId) {
-        // Tối ưu: Bỏ existsById check, findByUserId sẽ trả về empty list nếu không có
-        // Với @EntityGraph trong repository, các relationships đã được eager fetch
-        List<Order> orders = orderRepository.findByUserId(userId);
-        return orders.stream()
-                .map(OrderMapper::toOrderResponse)
-                .collect(Collectors.toList());
+        // Tối ưu: Bỏ existsById check, trả về empty list nếu không có
+        // Projection: chỉ đọc các cột OrderMapper cần, không hydrate User / Book entity
+        return toOrderResponses(orderRepository.findSummaryRowsByUserId(userId),
+                orderRepository.findItemRowsByUserId(userId));
+    }
+
+    // ✅ Các đơn hàng gần nhất của user (chatbot chỉ cần vài đơn mới nhất, không đọc toàn bộ lịch sử)
+    @Transactional(readOnly = true)
+    public List<OrderResponse> findRecentByUser(Long userId, int limit) {
+        List<OrderSummaryRow> rows = orderRepository.findRecentSummaryRowsByUserId(userId, PageRequest.of(0, limit));
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        return toOrderResponses(rows, orderRepository.findItemRowsByOrderIdIn(
+                rows.stream().map(OrderSummaryRow::getId).toList()));
+    }
+
+    @Transactional(readOnly = true)
+    public long countByUser(Long userId) {
+        return orderRepository.countByUserId(userId);
     }
 
     // ✅ Lấy đơn hàng theo ID
@@ -271,4 +320,22 @@ public class OrderService {
         orderRepository.delete(order);
     }
 
+    // Ghép phần đầu đơn với dòng sản phẩm; khuyến mãi (ít, lặp lại nhiều) load một lần theo ID
+    private List<OrderResponse> toOrderResponses(List<OrderSummaryRow> rows, List<OrderItemRow> itemRows) {
+        Map<Long, List<OrderItemRow>> itemsByOrder = itemRows.stream()
+                .collect(Collectors.groupingBy(OrderItemRow::getOrderId));
+        List<Long> promotionIds = rows.stream()
+                .map(OrderSummaryRow::getPromotionId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        Map<Long, Promotion> promotions = promotionIds.isEmpty() ? Map.of()
+                : promotionRepository.findAllById(promotionIds).stream()
+                .collect(Collectors.toMap(Promotion::getId, promotion -> promotion));
+        return rows.stream()
+                .map(row -> OrderMapper.toOrderResponse(row,
+                        itemsByOrder.getOrDefault(row.getId(), List.of()),
+                        row.getPromotionId() != null ? promotions.get(row.getPromotionId()) : null))
+                .collect(Collectors.toList());
+    }
 }
@@ -0,0 +1,377 @@
+package iuh.fit.haitebooks_backend.service;
+
+import iuh.fit.haitebooks_backend.ai.service.TopKCollector;
+import iuh.fit.haitebooks_backend.ai.service.VectorHit;
+import iuh.fit.haitebooks_backend.event.OrderCreatedEvent;
+import iuh.fit.haitebooks_backend.event.UserInteractionEvent;
+import iuh.fit.haitebooks_backend.repository.PopularityJdbcRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Bộ đếm độ phổ biến của sách trong bộ nhớ - dùng cho trang chủ và gợi ý cho user mới (cold-start)
+ * - Trending: điểm hoạt động (mua, thêm giỏ, yêu thích, review) theo từng ngày trong cửa sổ trượt N ngày,
+ *   ngày càng cũ càng giảm trọng số (half-life)
+ * - Best seller: tổng số cuốn đã bán (toàn thời gian)
+ * - Ghi không khóa: vòng bucket theo ngày (AtomicReferenceArray + CAS), mỗi sách một LongAdder
+ * - Top-N được tính lại tối đa mỗi popularity.snapshot-seconds, request chỉ đọc snapshot
+ * - Dựng lại từ database khi khởi động và mỗi đêm (sửa sai lệch như đơn bị xóa); trong lúc dựng, sự kiện mới được
+ *   ghi vào cả bộ đếm hiện tại lẫn bộ đếm đang dựng nên không bị mất khi thay thế
+ * - Đơn hàng mới được đọc số lượng trên recommendationTaskExecutor, không chiếm thread đang commit của request
+ */
+@Service
+public class PopularityService {
+
+    private static final Logger log = LoggerFactory.getLogger(PopularityService.class);
+    private static final ZoneId ZONE = ZoneId.of("Asia/Ho_Chi_Minh");
+    private static final int MAX_LIMIT = 100;
+
+    // Điểm trending cho mỗi loại hành vi
+    private static final long SOLD_POINTS = 5;     // mỗi cuốn bán ra
+    private static final long FAVORITE_POINTS = 3;
+    private static final long CART_POINTS = 2;
+    private static final long REVIEW_POINTS = 1;
+
+    private final PopularityJdbcRepository popularityRepository;
+    private final Executor executor;
+    private final int windowDays;
+    private final double halfLifeDays;
+    private final long snapshotMillis;
+
+    private final Object loadMonitor = new Object();
+    private volatile boolean loaded = false;
+    private volatile Counters counters;
+    // Bộ đếm đang được dựng từ database (null khi không rebuild) - sự kiện mới ghi vào cả hai
+    private volatile Counters building;
+    private volatile Snapshot trending = Snapshot.EMPTY;
+    private volatile Snapshot bestSellers = Snapshot.EMPTY;
+
+    /**
+     * Điểm hoạt động của một ngày
+     */
+    private static final class DayBucket {
+        private final long epochDay;
+        private final ConcurrentHashMap<Long, LongAdder> points = new ConcurrentHashMap<>();
+
+        private DayBucket(long epochDay) {
+            this.epochDay = epochDay;
+        }
+    }
+
+    /**
+     * Toàn bộ bộ đếm - được thay nguyên khối khi dựng lại từ database
+     */
+    private static final class Counters {
+        private final AtomicReferenceArray<DayBucket> days;
+        private final ConcurrentHashMap<Long, LongAdder> totalSold = new ConcurrentHashMap<>();
+
+        private Counters(int windowDays) {
+            this.days = new AtomicReferenceArray<>(windowDays);
+        }
+    }
+
+    private record Snapshot(List<Long> bookIds, long builtAt) {
+        private static final Snapshot EMPTY = new Snapshot(List.of(), 0L);
+    }
+
+    public PopularityService(PopularityJdbcRepository popularityRepository,
+                             @Qualifier("recommendationTaskExecutor") Executor executor,
+                             @Value("${popularity.window-days:7}") int windowDays,
+                             @Value("${popularity.half-life-days:2}") double halfLifeDays,
+                             @Value("${popularity.snapshot-seconds:60}") long snapshotSeconds) {
+        this.popularityRepository = popularityRepository;
+        this.executor = executor;
+        this.windowDays = Math.max(1, windowDays);
+        this.halfLifeDays = halfLifeDays;
+        this.snapshotMillis = Math.max(0L, snapshotSeconds) * 1000L;
+        this.counters = new Counters(this.windowDays);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        ensureLoaded();
+    }
+
+    public void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (loadMonitor) {
+            if (!loaded) {
+                rebuild();
+            }
+        }
+    }
+
+    /**
+     * Dựng lại bộ đếm định kỳ (mặc định 3h15 sáng theo giờ Việt Nam)
+     */
+    @Scheduled(cron = "${popularity.rebuild-cron:0 15 3 * * ?}", zone = "Asia/Ho_Chi_Minh")
+    public void scheduledRebuild() {
+        log.info("🔄 [SCHEDULER] Dựng lại bộ đếm độ phổ biến...");
+        rebuild();
+    }
+
+    /**
+     * Dựng bộ đếm mới từ database rồi thay thế bộ đếm hiện tại
+     * Sự kiện đến trong lúc dựng được ghi vào cả bộ đếm mới nên không bị mất sau khi thay thế
+     * (sự kiện commit ngay trước khi query kịp đọc có thể bị tính hai lần tới lần dựng lại sau - lệch nhỏ hơn là mất)
+     */
+    public void rebuild() {
+        synchronized (loadMonitor) {
+            Counters fresh = new Counters(windowDays);
+            building = fresh;
+            try {
+                load(fresh);
+            } finally {
+                building = null;
+            }
+        }
+    }
+
+    private void load(Counters fresh) {
+        long start = System.currentTimeMillis();
+        long today = today();
+        LocalDate since = LocalDate.ofEpochDay(today - windowDays + 1);
+
+        for (PopularityJdbcRepository.BookCount row : popularityRepository.findTotalSold()) {
+            add(fresh.totalSold, row.bookId(), row.count());
+        }
+        for (PopularityJdbcRepository.DailyCount row : popularityRepository.findDailySold(since)) {
+            addPoints(fresh, row.day().toEpochDay(), row.bookId(), row.count() * SOLD_POINTS);
+        }
+        for (PopularityJdbcRepository.DailyCount row : popularityRepository.findDailyFavorites(since)) {
+            addPoints(fresh, row.day().toEpochDay(), row.bookId(), row.count() * FAVORITE_POINTS);
+        }
+        for (PopularityJdbcRepository.DailyCount row : popularityRepository.findDailyReviews(since)) {
+            addPoints(fresh, row.day().toEpochDay(), row.bookId(), row.count() * REVIEW_POINTS);
+        }
+        // Giỏ hàng không có mốc thời gian -> tính như hoạt động của hôm nay
+        for (PopularityJdbcRepository.BookCount row : popularityRepository.findCartCounts()) {
+            addPoints(fresh, today, row.bookId(), row.count() * CART_POINTS);
+        }
+
+        counters = fresh;
+        trending = Snapshot.EMPTY;
+        bestSellers = Snapshot.EMPTY;
+        loaded = true;
+        log.info("✅ Đã dựng bộ đếm độ phổ biến: {} sách đã bán, cửa sổ trending {} ngày ({} ms)",
+                fresh.totalSold.size(), windowDays, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Sách đang thịnh hành trong cửa sổ trượt, giảm dần theo điểm
+     */
+    public List<Long> trendingBookIds(int limit) {
+        ensureLoaded();
+        Snapshot snapshot = trending;
+        if (isStale(snapshot)) {
+            snapshot = new Snapshot(computeTrending(), System.currentTimeMillis());
+            trending = snapshot;
+        }
+        return head(snapshot.bookIds(), limit);
+    }
+
+    /**
+     * Sách bán chạy nhất (tổng số cuốn đã bán), giảm dần
+     */
+    public List<Long> bestSellerBookIds(int limit) {
+        ensureLoaded();
+        Snapshot snapshot = bestSellers;
+        if (isStale(snapshot)) {
+            snapshot = new Snapshot(computeBestSellers(), System.currentTimeMillis());
+            bestSellers = snapshot;
+        }
+        return head(snapshot.bookIds(), limit);
+    }
+
+    /**
+     * Tổng số cuốn đã bán của một sách
+     */
+    public long soldCount(long bookId) {
+        ensureLoaded();
+        LongAdder sold = counters.totalSold.get(bookId);
+        return sold != null ? sold.sum() : 0L;
+    }
+
+    /**
+     * Xóa sách khỏi mọi bộ đếm (khi sách bị xóa)
+     */
+    public void remove(Long bookId) {
+        if (bookId == null) {
+            return;
+        }
+        forEachTarget(current -> {
+            current.totalSold.remove(bookId);
+            for (int slot = 0; slot < current.days.length(); slot++) {
+                DayBucket bucket = current.days.get(slot);
+                if (bucket != null) {
+                    bucket.points.remove(bookId);
+                }
+            }
+        });
+        trending = Snapshot.EMPTY;
+        bestSellers = Snapshot.EMPTY;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onOrderCreated(OrderCreatedEvent event) {
+        try {
+            executor.execute(() -> countOrder(event.orderId()));
+        } catch (RejectedExecutionException e) {
+            // Không chặn thread commit; bộ đếm được sửa ở lần dựng lại tiếp theo
+            log.warn("⚠️ Executor đang quá tải, bỏ qua cập nhật độ phổ biến cho đơn {}", event.orderId());
+        }
+    }
+
+    private void countOrder(Long orderId) {
+        try {
+            List<PopularityJdbcRepository.BookCount> rows = popularityRepository.findOrderQuantities(orderId);
+            long today = today();
+            forEachTarget(current -> {
+                for (PopularityJdbcRepository.BookCount row : rows) {
+                    add(current.totalSold, row.bookId(), row.count());
+                    addPoints(current, today, row.bookId(), row.count() * SOLD_POINTS);
+                }
+            });
+        } catch (Exception e) {
+            log.warn("⚠️ Không thể cập nhật độ phổ biến cho đơn {}: {}", orderId, e.getMessage());
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserInteraction(UserInteractionEvent event) {
+        if (event.bookId() == null) {
+            return;
+        }
+        long points = switch (event.type()) {
+            case CART_ADDED -> CART_POINTS;
+            case FAVORITE_ADDED -> FAVORITE_POINTS;
+            case REVIEW_CREATED -> REVIEW_POINTS;
+            default -> 0L;
+        };
+        if (points > 0) {
+            long today = today();
+            forEachTarget(current -> addPoints(current, today, event.bookId(), points));
+        }
+    }
+
+    // Ghi vào bộ đếm hiện tại và bộ đếm đang dựng (nếu có, mỗi bộ một lần)
+    private void forEachTarget(Consumer<Counters> update) {
+        Counters current = counters;
+        Counters pending = building;
+        update.accept(current);
+        if (pending != null && pending != current) {
+            update.accept(pending);
+        }
+    }
+
+    private List<Long> computeTrending() {
+        Counters current = counters;
+        long today = today();
+        Map<Long, Double> scores = new HashMap<>();
+        for (int slot = 0; slot < current.days.length(); slot++) {
+            DayBucket bucket = current.days.get(slot);
+            if (bucket == null) {
+                continue;
+            }
+            long age = today - bucket.epochDay;
+            if (age < 0 || age >= windowDays) {
+                continue; // Bucket của ngày đã trượt ra khỏi cửa sổ
+            }
+            double weight = halfLifeDays > 0 ? Math.pow(0.5, age / halfLifeDays) : 1.0;
+            bucket.points.forEach((bookId, adder) -> scores.merge(bookId, adder.sum() * weight, Double::sum));
+        }
+        TopKCollector collector = new TopKCollector(MAX_LIMIT);
+        scores.forEach((bookId, score) -> {
+            if (score > 0) {
+                collector.offer(bookId, score);
+            }
+        });
+        return toIds(collector);
+    }
+
+    private List<Long> computeBestSellers() {
+        TopKCollector collector = new TopKCollector(MAX_LIMIT);
+        counters.totalSold.forEach((bookId, adder) -> {
+            long sold = adder.sum();
+            if (sold > 0) {
+                collector.offer(bookId, sold);
+            }
+        });
+        return toIds(collector);
+    }
+
+    private void addPoints(Counters target, long epochDay, long bookId, long points) {
+        DayBucket bucket = bucket(target, epochDay);
+        if (bucket != null) {
+            add(bucket.points, bookId, points);
+        }
+    }
+
+    /**
+     * Lấy bucket của ngày; slot còn giữ ngày cũ hơn thì thay bằng bucket mới (CAS, không khóa)
+     * @return null nếu ngày đã nằm ngoài cửa sổ
+     */
+    private DayBucket bucket(Counters target, long epochDay) {
+        int slot = (int) Math.floorMod(epochDay, (long) target.days.length());
+        while (true) {
+            DayBucket current = target.days.get(slot);
+            if (current != null && current.epochDay == epochDay) {
+                return current;
+            }
+            if (current != null && current.epochDay > epochDay) {
+                return null;
+            }
+            DayBucket fresh = new DayBucket(epochDay);
+            if (target.days.compareAndSet(slot, current, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private boolean isStale(Snapshot snapshot) {
+        return snapshot == Snapshot.EMPTY || System.currentTimeMillis() - snapshot.builtAt() >= snapshotMillis;
+    }
+
+    private static void add(ConcurrentHashMap<Long, LongAdder> target, long bookId, long value) {
+        target.computeIfAbsent(bookId, id -> new LongAdder()).add(value);
+    }
+
+    private static List<Long> toIds(TopKCollector collector) {
+        List<Long> ids = new ArrayList<>(collector.size());
+        for (VectorHit hit : collector.toSortedList()) {
+            ids.add(hit.bookId());
+        }
+        return List.copyOf(ids);
+    }
+
+    private static List<Long> head(List<Long> ids, int limit) {
+        return ids.subList(0, Math.min(ids.size(), Math.max(0, limit)));
+    }
+
+    private static long today() {
+        return LocalDate.now(ZONE).toEpochDay();
+    }
+}
@@ -0,0 +1,202 @@
+package iuh.fit.haitebooks_backend.service;
+
+import iuh.fit.haitebooks_backend.dtos.response.OrderResponse;
+import iuh.fit.haitebooks_backend.mapper.OrderMapper;
+import iuh.fit.haitebooks_backend.model.Order;
+import iuh.fit.haitebooks_backend.model.Order_Item;
+import iuh.fit.haitebooks_backend.repository.OrderRepository;
+import iuh.fit.haitebooks_backend.repository.projection.OrderItemRow;
+import iuh.fit.haitebooks_backend.repository.projection.OrderSummaryRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.temporal.Temporal;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * So sánh chi phí của endpoint danh sách đơn hàng: đường entity (@EntityGraph fetch join user, orderItems.book, promotion)
+ * với đường projection (chỉ các cột OrderMapper cần)
+ * - rows: số dòng JDBC trả về
+ * - bytes: ước lượng dữ liệu đọc lên (chuỗi 2 byte / ký tự, số / ngày 8 byte) của các entity hoặc projection
+ * - allocatedBytes: bộ nhớ cấp phát trên thread hiện tại (trung bình mỗi lượt, gồm cả map sang DTO)
+ * Chạy trên dữ liệu thật, chỉ dùng để đo (Admin)
+ */
+@Service
+public class ProjectionBenchmarkService {
+
+    private static final Logger log = LoggerFactory.getLogger(ProjectionBenchmarkService.class);
+    private static final int MAX_ITERATIONS = 50;
+
+    private final OrderRepository orderRepository;
+    private final OrderService orderService;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public ProjectionBenchmarkService(OrderRepository orderRepository, OrderService orderService,
+                                      PlatformTransactionManager transactionManager) {
+        this.orderRepository = orderRepository;
+        this.orderService = orderService;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    private record Volume(long rows, long bytes) {
+    }
+
+    /**
+     * @param iterations Số lượt đo cho mỗi đường (lượt đầu dùng để warm-up, không tính)
+     */
+    public Map<String, Object> compareOrderList(int iterations) {
+        int runs = Math.max(1, Math.min(iterations, MAX_ITERATIONS));
+        Map<String, Object> entity = measure(runs,
+                () -> readOnlyTransaction.execute(status -> orderRepository.findAll().stream()
+                        .map(OrderMapper::toOrderResponse)
+                        .toList()),
+                () -> readOnlyTransaction.execute(status -> entityVolume()));
+        Map<String, Object> projection = measure(runs, orderService::getAllOrders,
+                () -> readOnlyTransaction.execute(status -> projectionVolume()));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("iterations", runs);
+        result.put("entity", entity);
+        result.put("projection", projection);
+        result.put("bytesRatio", ratio(projection.get("bytes"), entity.get("bytes")));
+        result.put("allocationRatio", ratio(projection.get("allocatedBytes"), entity.get("allocatedBytes")));
+        log.info("📊 Benchmark danh sách đơn hàng: entity={}, projection={}", entity, projection);
+        return result;
+    }
+
+    // Đường cũ: findAll với @EntityGraph (fetch join user, orderItems.book, appliedPromotion)
+    private Volume entityVolume() {
+        List<Order> orders = orderRepository.findAll();
+
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        long rows = 0;
+        long bytes = 0;
+        for (Order order : orders) {
+            List<Order_Item> items = order.getOrderItems() != null ? order.getOrderItems() : List.of();
+            // Fetch join collection: mỗi dòng sản phẩm là một dòng JDBC (đơn không có sản phẩm vẫn là một dòng)
+            rows += Math.max(1, items.size());
+            bytes += entityBytes(order, seen) + entityBytes(order.getUser(), seen)
+                    + entityBytes(order.getAppliedPromotion(), seen);
+            for (Order_Item item : items) {
+                bytes += entityBytes(item, seen) + entityBytes(item.getBook(), seen);
+            }
+        }
+        return new Volume(rows, bytes);
+    }
+
+    // Đường mới (OrderService.getAllOrders): projection phần đầu đơn + dòng sản phẩm
+    // (khuyến mãi được load riêng theo ID - vài dòng, không tính)
+    private Volume projectionVolume() {
+        List<OrderSummaryRow> summaries = orderRepository.findAllSummaryRows();
+        List<OrderItemRow> items = orderRepository.findAllItemRows();
+        long bytes = 0;
+        for (OrderSummaryRow row : summaries) {
+            bytes += valueBytes(row.getId()) + valueBytes(row.getUserId()) + valueBytes(row.getUserName())
+                    + valueBytes(row.getUserEmail()) + valueBytes(row.getTotal()) + valueBytes(row.getStatus())
+                    + valueBytes(row.getOrderDate()) + valueBytes(row.getAddress()) + valueBytes(row.getNote())
+                    + valueBytes(row.getPaymentMethod()) + valueBytes(row.getPromotionId());
+        }
+        for (OrderItemRow item : items) {
+            bytes += valueBytes(item.getOrderId()) + valueBytes(item.getBookId()) + valueBytes(item.getBookTitle())
+                    + valueBytes(item.getQuantity()) + valueBytes(item.getPrice());
+        }
+        return new Volume(summaries.size() + items.size(), bytes);
+    }
+
+    /**
+     * @param path Lời gọi được đo thời gian và bộ nhớ cấp phát (trả về danh sách DTO)
+     * @param volume Đếm số dòng / byte đọc lên (chạy riêng, không tính vào thời gian)
+     */
+    private Map<String, Object> measure(int runs, Supplier<List<OrderResponse>> path, Supplier<Volume> volume) {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        long threadId = Thread.currentThread().getId();
+        path.get(); // warm-up
+
+        int results = 0;
+        long allocated = 0;
+        long nanos = 0;
+        for (int i = 0; i < runs; i++) {
+            long allocatedBefore = threads != null ? threads.getThreadAllocatedBytes(threadId) : 0L;
+            long start = System.nanoTime();
+            results = path.get().size();
+            nanos += System.nanoTime() - start;
+            allocated += threads != null ? threads.getThreadAllocatedBytes(threadId) - allocatedBefore : 0L;
+        }
+        Volume read = volume.get();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("results", results);
+        result.put("rows", read.rows());
+        result.put("bytes", read.bytes());
+        result.put("allocatedBytes", threads != null ? allocated / runs : -1L);
+        result.put("avgMillis", nanos / runs / 1_000_000.0);
+        return result;
+    }
+
+    // Ước lượng các cột đã đọc của một entity (bỏ qua quan hệ và collection), mỗi entity tính một lần
+    private static long entityBytes(Object entity, Set<Object> seen) {
+        if (entity == null || !seen.add(entity)) {
+            return 0;
+        }
+        long bytes = 0;
+        for (Class<?> type = entity.getClass(); type != null && type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || !isColumnType(field.getType())) {
+                    continue;
+                }
+                try {
+                    field.setAccessible(true);
+                    bytes += valueBytes(field.get(entity));
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    // Trường không đọc được -> bỏ qua
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static boolean isColumnType(Class<?> type) {
+        return type.isPrimitive() || type == String.class || Number.class.isAssignableFrom(type)
+                || type == Boolean.class || type.isEnum() || Temporal.class.isAssignableFrom(type);
+    }
+
+    private static long valueBytes(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String text) {
+            return 2L * text.length();
+        }
+        if (value instanceof Enum<?> constant) {
+            return 2L * constant.name().length();
+        }
+        return 8;
+    }
+
+    private static double ratio(Object numerator, Object denominator) {
+        long top = ((Number) numerator).longValue();
+        long bottom = ((Number) denominator).longValue();
+        return bottom > 0 ? (double) top / bottom : 0.0;
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+            return bean;
+        }
+        return null;
+    }
+}
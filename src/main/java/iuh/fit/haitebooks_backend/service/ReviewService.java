@@ -1,7 +1,9 @@
 package iuh.fit.haitebooks_backend.service;
 
 import iuh.fit.haitebooks_backend.dtos.request.ReviewRequest;
+import iuh.fit.haitebooks_backend.dtos.response.CursorPageResponse;
 import iuh.fit.haitebooks_backend.dtos.response.ReviewResponse;
+import iuh.fit.haitebooks_backend.event.UserInteractionEvent;
 import iuh.fit.haitebooks_backend.exception.ConflictException;
 import iuh.fit.haitebooks_backend.exception.NotFoundException;
 import iuh.fit.haitebooks_backend.mapper.ReviewMapper;
@@ -10,7 +12,11 @@ import iuh.fit.haitebooks_backend.model.Review;
 import iuh.fit.haitebooks_backend.model.User;
 import iuh.fit.haitebooks_backend.repository.BookRepository;
 import iuh.fit.haitebooks_backend.repository.ReviewRepository;
+import iuh.fit.haitebooks_backend.repository.projection.ReviewRow;
 import iuh.fit.haitebooks_backend.repository.UserRepository;
+import iuh.fit.haitebooks_backend.util.CursorPaging;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -22,13 +28,16 @@ public class ReviewService {
     private final ReviewRepository reviewRepository;
     private final UserRepository userRepository;
     private final BookRepository bookRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     public ReviewService(ReviewRepository reviewRepository,
                          UserRepository userRepository,
-                         BookRepository bookRepository) {
+                         BookRepository bookRepository,
+                         ApplicationEventPublisher eventPublisher) {
         this.reviewRepository = reviewRepository;
         this.userRepository = userRepository;
         this.bookRepository = bookRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     // ✅ Tạo mới review
@@ -48,6 +57,8 @@ public class ReviewService {
 
         Review review = ReviewMapper.toEntity(request, user, book);
         review = reviewRepository.save(review);
+        eventPublisher.publishEvent(new UserInteractionEvent(user.getId(), UserInteractionEvent.Type.REVIEW_CREATED,
+                book.getId(), review.getRating()));
         
         // User và book đã được set trực tiếp, không cần trigger load
         return ReviewMapper.toResponse(review);
@@ -56,19 +67,27 @@ public class ReviewService {
     // ✅ Lấy tất cả review
     @Transactional(readOnly = true)
     public List<ReviewResponse> getAll() {
-        // Với @EntityGraph trong repository, book và user đã được eager fetch
-        List<Review> reviews = reviewRepository.findAll();
-        return reviews.stream()
+        // Projection: chỉ đọc các cột ReviewMapper cần, không hydrate User / Book entity
+        return reviewRepository.findAllRows().stream()
                 .map(ReviewMapper::toResponse)
                 .toList();
     }
 
+    // ✅ Phân trang keyset (review mới nhất trước)
+    @Transactional(readOnly = true)
+    public CursorPageResponse<ReviewResponse> getAllAfter(String after, Integer size) {
+        int pageSize = CursorPaging.pageSize(size);
+        List<ReviewRow> reviews = reviewRepository.findPageAfter(CursorPaging.decodeId(after),
+                PageRequest.of(0, pageSize + 1));
+        return CursorPaging.toPage(reviews, pageSize, ReviewMapper::toResponse,
+                review -> CursorPaging.encodeId(review.getId()));
+    }
+
     // ✅ Lấy review theo sách
     @Transactional(readOnly = true)
     public List<ReviewResponse> findByBook(Long bookId) {
-        // Với @EntityGraph trong repository, book và user đã được eager fetch
-        List<Review> reviews = reviewRepository.findByBookId(bookId);
-        return reviews.stream()
+        // Projection: chỉ đọc các cột ReviewMapper cần, không hydrate User / Book entity
+        return reviewRepository.findRowsByBookId(bookId).stream()
                 .map(ReviewMapper::toResponse)
                 .toList();
     }
@@ -76,9 +95,8 @@ public class ReviewService {
     // ✅ Lấy review theo user
     @Transactional(readOnly = true)
     public List<ReviewResponse> findByUser(Long userId) {
-        // Với @EntityGraph trong repository, book và user đã được eager fetch
-        List<Review> reviews = reviewRepository.findByUserId(userId);
-        return reviews.stream()
+        // Projection: chỉ đọc các cột ReviewMapper cần, không hydrate User / Book entity
+        return reviewRepository.findRowsByUserId(userId).stream()
                 .map(ReviewMapper::toResponse)
                 .toList();
     }
@@ -95,6 +113,7 @@ public class ReviewService {
         review.setComment(request.getComment());
         
         review = reviewRepository.save(review);
+        publishReviewChanged(review, UserInteractionEvent.Type.REVIEW_UPDATED);
         return ReviewMapper.toResponse(review);
     }
 
@@ -104,6 +123,14 @@ public class ReviewService {
         Review review = reviewRepository.findById(id)
                 .orElseThrow(() -> new NotFoundException("Review not found with id " + id));
         reviewRepository.delete(review);
+        publishReviewChanged(review, UserInteractionEvent.Type.REVIEW_DELETED);
+    }
+
+    private void publishReviewChanged(Review review, UserInteractionEvent.Type type) {
+        if (review.getUser() != null) {
+            Long bookId = review.getBook() != null ? review.getBook().getId() : null;
+            eventPublisher.publishEvent(new UserInteractionEvent(review.getUser().getId(), type, bookId, review.getRating()));
+        }
     }
 
 }
@@ -0,0 +1,200 @@
+package iuh.fit.haitebooks_backend.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Cache LRU trong bộ nhớ có giới hạn theo số entry, theo dung lượng (byte ước lượng) và theo TTL
+ * - Entry hết hạn bị loại khi đọc tới hoặc khi cần chỗ trống
+ * - Thống kê hit / miss / eviction / expiration để theo dõi hiệu quả
+ * @param <K> Kiểu key
+ * @param <V> Kiểu value
+ */
+public class BoundedTtlCache<K, V> {
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlNanos;
+    private final ToLongFunction<V> weigher;
+    private final LongSupplier nanoClock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // accessOrder = true -> phần tử đầu là phần tử ít được dùng gần đây nhất
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes = 0L;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    private record Entry<V>(V value, long weight, long expiresAtNanos) {
+    }
+
+    /**
+     * Thống kê tại một thời điểm
+     */
+    public record Stats(long hits, long misses, long evictions, long expirations,
+                        int size, long bytes, int maxEntries, long maxBytes) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+
+    /**
+     * @param maxEntries Số entry tối đa
+     * @param maxBytes Tổng dung lượng tối đa theo weigher (<= 0 = không giới hạn)
+     * @param ttlMillis Thời gian sống của entry (<= 0 = không hết hạn)
+     * @param weigher Ước lượng số byte của một value
+     */
+    public BoundedTtlCache(int maxEntries, long maxBytes, long ttlMillis, ToLongFunction<V> weigher) {
+        this(maxEntries, maxBytes, ttlMillis, weigher, System::nanoTime);
+    }
+
+    public BoundedTtlCache(int maxEntries, long maxBytes, long ttlMillis, ToLongFunction<V> weigher,
+                           LongSupplier nanoClock) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+        this.ttlNanos = ttlMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(ttlMillis) : Long.MAX_VALUE;
+        this.weigher = weigher;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Lấy value, null nếu không có hoặc đã hết hạn
+     */
+    public V get(K key) {
+        lock.lock();
+        try {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            if (isExpired(entry, nanoClock.getAsLong())) {
+                removeEntry(key, entry);
+                expirations.incrementAndGet();
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.value();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(K key, V value) {
+        if (key == null || value == null) {
+            return;
+        }
+        long weight = Math.max(0L, weigher.applyAsLong(value));
+        if (weight > maxBytes) {
+            return; // Một entry lớn hơn cả cache -> không lưu
+        }
+        lock.lock();
+        try {
+            long now = nanoClock.getAsLong();
+            long expiresAt = ttlNanos == Long.MAX_VALUE ? Long.MAX_VALUE : now + ttlNanos;
+            Entry<V> previous = entries.put(key, new Entry<>(value, weight, expiresAt));
+            if (previous != null) {
+                currentBytes -= previous.weight();
+            }
+            currentBytes += weight;
+            evictIfNeeded(now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                removeEntry(key, entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Xóa các entry có key thỏa điều kiện
+     */
+    public void invalidateIf(Predicate<K> predicate) {
+        lock.lock();
+        try {
+            Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<K, Entry<V>> e = iterator.next();
+                if (predicate.test(e.getKey())) {
+                    currentBytes -= e.getValue().weight();
+                    iterator.remove();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            entries.clear();
+            currentBytes = 0L;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats stats() {
+        lock.lock();
+        try {
+            return new Stats(hits.get(), misses.get(), evictions.get(), expirations.get(),
+                    entries.size(), currentBytes, maxEntries, maxBytes == Long.MAX_VALUE ? 0 : maxBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void evictIfNeeded(long now) {
+        if (entries.size() <= maxEntries && currentBytes <= maxBytes) {
+            return;
+        }
+        // Ưu tiên loại entry đã hết hạn, sau đó loại theo LRU
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext() && (entries.size() > maxEntries || currentBytes > maxBytes)) {
+            Map.Entry<K, Entry<V>> e = iterator.next();
+            if (isExpired(e.getValue(), now)) {
+                currentBytes -= e.getValue().weight();
+                iterator.remove();
+                expirations.incrementAndGet();
+            }
+        }
+        iterator = entries.entrySet().iterator();
+        while (iterator.hasNext() && (entries.size() > maxEntries || currentBytes > maxBytes)) {
+            Map.Entry<K, Entry<V>> e = iterator.next();
+            currentBytes -= e.getValue().weight();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return entry.expiresAtNanos() != Long.MAX_VALUE && now - entry.expiresAtNanos() >= 0;
+    }
+
+    private void removeEntry(K key, Entry<V> entry) {
+        entries.remove(key);
+        currentBytes -= entry.weight();
+    }
+}
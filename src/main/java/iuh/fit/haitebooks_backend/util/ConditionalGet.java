@@ -0,0 +1,37 @@
+package iuh.fit.haitebooks_backend.util;
+
+import iuh.fit.haitebooks_backend.service.CatalogVersionService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.function.Supplier;
+
+/**
+ * GET có điều kiện (If-None-Match / If-Modified-Since) cho các endpoint catalog
+ * Phiên bản được so sánh trước khi load dữ liệu nên request 304 không chạy query nào
+ */
+public final class ConditionalGet {
+
+    private ConditionalGet() {
+    }
+
+    /**
+     * @param request Request hiện tại (chứa header điều kiện)
+     * @param version Phiên bản hiện tại của tài nguyên
+     * @param body Load nội dung - chỉ được gọi khi client chưa có bản mới nhất
+     */
+    public static <T> ResponseEntity<T> respond(WebRequest request, CatalogVersionService.Version version,
+                                                Supplier<T> body) {
+        if (request.checkNotModified(version.etag(), version.lastModified())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
+        // no-cache: client được lưu nhưng phải hỏi lại server (nhận 304 nếu không đổi)
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(version.etag())
+                .lastModified(version.lastModified())
+                .body(body.get());
+    }
+}
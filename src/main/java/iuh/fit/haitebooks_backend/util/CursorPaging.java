@@ -0,0 +1,122 @@
+package iuh.fit.haitebooks_backend.util;
+
+import iuh.fit.haitebooks_backend.dtos.response.CursorPageResponse;
+import iuh.fit.haitebooks_backend.exception.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Phân trang keyset (cursor): trang sau được lọc bằng WHERE theo khóa của dòng cuối trang trước
+ * thay vì OFFSET + COUNT, nên trang sâu tốn chi phí như trang đầu
+ * - Cursor là chuỗi base64url không trong suốt với client: "id" hoặc "createdAt|id"
+ * - Repository lấy size + 1 dòng để biết còn trang sau hay không
+ */
+public final class CursorPaging {
+
+    public static final int DEFAULT_SIZE = 20;
+    public static final int MAX_SIZE = 100;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private CursorPaging() {
+    }
+
+    /**
+     * Vị trí theo (createdAt, id) - id phân biệt các dòng trùng thời điểm
+     */
+    public record TimeCursor(LocalDateTime createdAt, long id) {
+    }
+
+    /**
+     * Chuẩn hóa kích thước trang (mặc định 20, tối đa 100)
+     */
+    public static int pageSize(Integer size) {
+        if (size == null || size <= 0) {
+            return DEFAULT_SIZE;
+        }
+        return Math.min(size, MAX_SIZE);
+    }
+
+    public static String encodeId(long id) {
+        return encode(Long.toString(id));
+    }
+
+    /**
+     * @return null nếu không có cursor (trang đầu)
+     */
+    public static Long decodeId(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(decode(cursor));
+        } catch (NumberFormatException e) {
+            throw invalid();
+        }
+    }
+
+    public static String encodeTime(LocalDateTime createdAt, long id) {
+        return encode(createdAt + "|" + id);
+    }
+
+    /**
+     * @return null nếu không có cursor (trang đầu)
+     */
+    public static TimeCursor decodeTime(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        String value = decode(cursor);
+        int separator = value.lastIndexOf('|');
+        if (separator <= 0) {
+            throw invalid();
+        }
+        try {
+            return new TimeCursor(LocalDateTime.parse(value.substring(0, separator)),
+                    Long.parseLong(value.substring(separator + 1)));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw invalid();
+        }
+    }
+
+    /**
+     * Dựng trang kết quả từ size + 1 dòng đọc được
+     * @param rows Các dòng theo đúng thứ tự của khóa phân trang (tối đa size + 1)
+     * @param mapper Chuyển entity sang DTO
+     * @param cursorOf Cursor của một dòng (dùng cho dòng cuối trang)
+     */
+    public static <E, T> CursorPageResponse<T> toPage(List<E> rows, int size,
+                                                      Function<E, T> mapper, Function<E, String> cursorOf) {
+        boolean hasNext = rows.size() > size;
+        List<E> pageRows = hasNext ? rows.subList(0, size) : rows;
+        List<T> items = new ArrayList<>(pageRows.size());
+        for (E row : pageRows) {
+            items.add(mapper.apply(row));
+        }
+        String nextCursor = hasNext ? cursorOf.apply(pageRows.get(pageRows.size() - 1)) : null;
+        return new CursorPageResponse<>(items, nextCursor, hasNext, items.size());
+    }
+
+    private static String encode(String value) {
+        return ENCODER.encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String cursor) {
+        try {
+            return new String(DECODER.decode(cursor.trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw invalid();
+        }
+    }
+
+    private static BadRequestException invalid() {
+        return new BadRequestException("Cursor phân trang không hợp lệ");
+    }
+}
@@ -0,0 +1,118 @@
+package iuh.fit.haitebooks_backend.util;
+
+import iuh.fit.haitebooks_backend.model.EmbeddingFormat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Mã hóa / giải mã vector embedding ở dạng nhị phân
+ * - FLOAT32: mỗi chiều 4 byte little-endian (gọn hơn JSON ~4-5 lần, không mất độ chính xác)
+ * - INT8: lượng tử hóa đối xứng về [-127, 127] với scale = max|v| / 127 (gọn hơn ~4 lần nữa)
+ */
+public final class EmbeddingCodec {
+
+    private EmbeddingCodec() {
+    }
+
+    /**
+     * Kết quả mã hóa: dữ liệu nhị phân + scale (chỉ dùng cho INT8)
+     */
+    public record Encoded(byte[] data, EmbeddingFormat format, float scale) {
+    }
+
+    public static Encoded encode(float[] vector, EmbeddingFormat format) {
+        if (format == EmbeddingFormat.INT8) {
+            return encodeInt8(vector);
+        }
+        return new Encoded(encodeFloat32(vector), EmbeddingFormat.FLOAT32, 1.0f);
+    }
+
+    public static byte[] encodeFloat32(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (float v : vector) {
+            buffer.putFloat(v);
+        }
+        return buffer.array();
+    }
+
+    public static Encoded encodeInt8(float[] vector) {
+        float maxAbs = 0f;
+        for (float v : vector) {
+            maxAbs = Math.max(maxAbs, Math.abs(v));
+        }
+        float scale = maxAbs > 0f ? maxAbs / 127f : 1.0f;
+        byte[] data = new byte[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            int q = Math.round(vector[i] / scale);
+            data[i] = (byte) Math.max(-127, Math.min(127, q));
+        }
+        return new Encoded(data, EmbeddingFormat.INT8, scale);
+    }
+
+    /**
+     * Giải mã thẳng ra float[] (không qua List<Double>)
+     * @param format null được coi là FLOAT32
+     * @param scale Scale của INT8 (null = 1.0)
+     */
+    public static float[] decode(byte[] data, EmbeddingFormat format, Float scale) {
+        if (data == null || data.length == 0) {
+            return new float[0];
+        }
+        if (format == EmbeddingFormat.INT8) {
+            float s = scale != null ? scale : 1.0f;
+            float[] result = new float[data.length];
+            for (int i = 0; i < data.length; i++) {
+                result[i] = data[i] * s;
+            }
+            return result;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        float[] result = new float[data.length / Float.BYTES];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = buffer.getFloat();
+        }
+        return result;
+    }
+
+    /**
+     * Parse chuỗi JSON cũ "[a, b, c]" thành float[] mà không tạo List<Double> trung gian
+     */
+    public static float[] parseJson(String json) {
+        if (json == null || json.isEmpty()) {
+            return new float[0];
+        }
+        int count = 1;
+        for (int i = 0; i < json.length(); i++) {
+            if (json.charAt(i) == ',') {
+                count++;
+            }
+        }
+        float[] result = new float[count];
+        int index = 0;
+        int start = -1;
+        for (int i = 0; i <= json.length(); i++) {
+            char c = i < json.length() ? json.charAt(i) : ',';
+            if (c == ',' || c == ']') {
+                if (start >= 0) {
+                    result[index++] = Float.parseFloat(json.substring(start, i).trim());
+                    start = -1;
+                }
+            } else if (c != '[' && start < 0 && !Character.isWhitespace(c)) {
+                start = i;
+            }
+        }
+        return index == count ? result : Arrays.copyOf(result, index);
+    }
+
+    /**
+     * Đọc vector từ cột nhị phân, nếu chưa migrate thì fallback về JSON
+     */
+    public static float[] read(byte[] data, EmbeddingFormat format, Float scale, String json) {
+        if (data != null && data.length > 0) {
+            return decode(data, format, scale);
+        }
+        return parseJson(json);
+    }
+}
@@ -0,0 +1,63 @@
+package iuh.fit.haitebooks_backend.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cửa sổ trượt các mẫu latency gần nhất (vòng tròn cố định kích thước) để tính avg / p50 / p95 / p99 / max
+ * Thread-safe, chi phí ghi O(1); tính percentile khi đọc (sắp xếp bản sao của cửa sổ)
+ */
+public class LatencyWindow {
+
+    private final long[] samples;
+    private int next;
+    private long count;
+
+    public LatencyWindow(int size) {
+        this.samples = new long[Math.max(1, size)];
+    }
+
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count++;
+    }
+
+    /**
+     * @return count (tổng số mẫu từ đầu) và avg / p50 / p95 / p99 / max (ms) trên cửa sổ hiện tại
+     */
+    public Map<String, Object> summary() {
+        long[] sorted;
+        long total;
+        synchronized (this) {
+            sorted = Arrays.copyOf(samples, (int) Math.min(count, samples.length));
+            total = count;
+        }
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long value : sorted) {
+            sum += value;
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", total);
+        summary.put("avgMillis", sorted.length > 0 ? millis(sum / sorted.length) : 0.0);
+        summary.put("p50Millis", millis(percentile(sorted, 0.50)));
+        summary.put("p95Millis", millis(percentile(sorted, 0.95)));
+        summary.put("p99Millis", millis(percentile(sorted, 0.99)));
+        summary.put("maxMillis", sorted.length > 0 ? millis(sorted[sorted.length - 1]) : 0.0);
+        return summary;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+}
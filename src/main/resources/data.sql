@@ -45,7 +45,8 @@ CREATE TABLE book_categories
 (
     id          BIGINT AUTO_INCREMENT PRIMARY KEY,
     name        VARCHAR(100) NOT NULL UNIQUE,
-    description TEXT
+    description TEXT,
+    updated_at  DATETIME DEFAULT CURRENT_TIMESTAMP
 );
 
 INSERT INTO book_categories (name, description)
@@ -69,6 +70,7 @@ CREATE TABLE books
     description VARCHAR(1000) NOT NULL,
     image_url   VARCHAR(255),
     category_id BIGINT        NOT NULL,
+    updated_at  DATETIME DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (category_id) REFERENCES book_categories (id)
 );
 
@@ -373,6 +375,7 @@ CREATE TABLE reviews
     rating     INT CHECK (rating BETWEEN 1 AND 5),
     comment    VARCHAR(1000),
     created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    updated_at DATETIME DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (book_id) REFERENCES books (id),
     FOREIGN KEY (user_id) REFERENCES users (id)
 );
@@ -387,10 +390,14 @@ VALUES (1, 2, 5, 'Sách cực hay, đáng đọc!'),
 -- ========================
 CREATE TABLE book_embeddings
 (
-    id             BIGINT AUTO_INCREMENT PRIMARY KEY,
-    book_id        BIGINT NOT NULL UNIQUE,
-    embedding_json MEDIUMTEXT,
-    created_at     DATETIME DEFAULT CURRENT_TIMESTAMP,
+    id               BIGINT AUTO_INCREMENT PRIMARY KEY,
+    book_id          BIGINT NOT NULL UNIQUE,
+    embedding_json   MEDIUMTEXT,
+    embedding_blob   MEDIUMBLOB,
+    embedding_format VARCHAR(10),
+    embedding_scale  FLOAT,
+    dimension        INT,
+    created_at       DATETIME DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (book_id) REFERENCES books (id)
 );
 
@@ -406,6 +413,7 @@ CREATE TABLE notifications
     is_read     BOOLEAN  DEFAULT FALSE,
     sender_id   BIGINT       NULL,
     receiver_id BIGINT       NOT NULL,
+    INDEX idx_notifications_receiver_created (receiver_id, created_at, id),
     FOREIGN KEY (sender_id) REFERENCES users (id),
     FOREIGN KEY (receiver_id) REFERENCES users (id)
 );
@@ -451,4 +459,60 @@ VALUES (@last_order_id_vnpay, 1, 1, 350000);
 INSERT INTO payments (order_id, method, amount, status_payment, vnp_txn_ref, vnp_transaction_no, vnp_response_code,
                       vnp_bank_code, vnp_pay_date)
 VALUES (@last_order_id_vnpay, 'VNPAY', 350000, 'SUCCESS',
-        'VNP123456', '987654321', '00', 'NCB', '20250101123045');
\ No newline at end of file
+        'VNP123456', '987654321', '00', 'NCB', '20250101123045');
+
+-- ========================
+-- 1️⃣6️⃣ EMBEDDING JOBS
+-- ========================
+CREATE TABLE embedding_jobs
+(
+    id                     BIGINT AUTO_INCREMENT PRIMARY KEY,
+    status                 VARCHAR(20) NOT NULL,
+    last_processed_book_id BIGINT      NOT NULL DEFAULT 0,
+    total_books            INT         NOT NULL DEFAULT 0,
+    created_count          INT         NOT NULL DEFAULT 0,
+    skipped_count          INT         NOT NULL DEFAULT 0,
+    failed_count           INT         NOT NULL DEFAULT 0,
+    error_message          TEXT,
+    started_at             DATETIME    NOT NULL,
+    updated_at             DATETIME,
+    finished_at            DATETIME
+);
+
+-- ========================
+-- 1️⃣7️⃣ BOOK CO-PURCHASES
+-- ========================
+CREATE TABLE book_co_purchases
+(
+    book_id       BIGINT NOT NULL,
+    other_book_id BIGINT NOT NULL,
+    pair_count    INT    NOT NULL DEFAULT 0,
+    PRIMARY KEY (book_id, other_book_id)
+);
+
+-- ========================
+-- 1️⃣8️⃣ USER TASTE PROFILES
+-- ========================
+CREATE TABLE user_taste_profiles
+(
+    user_id      BIGINT PRIMARY KEY,
+    vector_sum   MEDIUMBLOB NOT NULL,
+    dimension    INT        NOT NULL,
+    total_weight DOUBLE     NOT NULL,
+    signal_count INT        NOT NULL DEFAULT 0,
+    updated_at   DATETIME   NOT NULL,
+    version      BIGINT
+);
+
+-- ========================
+-- 1️⃣9️⃣ CHAT CONVERSATIONS
+-- ========================
+CREATE TABLE chat_conversations
+(
+    id         VARCHAR(64) PRIMARY KEY,
+    user_id    BIGINT,
+    summary    TEXT,
+    turns      TEXT,
+    book_ids   VARCHAR(255),
+    updated_at DATETIME NOT NULL
+);
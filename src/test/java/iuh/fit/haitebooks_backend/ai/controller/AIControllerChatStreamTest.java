@@ -0,0 +1,141 @@
+package iuh.fit.haitebooks_backend.ai.controller;
+
+import iuh.fit.haitebooks_backend.ai.client.AiHttpClient;
+import iuh.fit.haitebooks_backend.ai.service.AIService;
+import iuh.fit.haitebooks_backend.ai.service.BookRecommendationService;
+import iuh.fit.haitebooks_backend.ai.service.BookSearchService;
+import iuh.fit.haitebooks_backend.ai.service.ChatPipelineMetrics;
+import iuh.fit.haitebooks_backend.ai.service.ChatStreamService;
+import iuh.fit.haitebooks_backend.ai.service.ChatbotService;
+import iuh.fit.haitebooks_backend.ai.service.CoPurchaseService;
+import iuh.fit.haitebooks_backend.ai.service.CohereEmbeddingService;
+import iuh.fit.haitebooks_backend.ai.service.ConversationStore;
+import iuh.fit.haitebooks_backend.ai.service.EmbeddingJobService;
+import iuh.fit.haitebooks_backend.ai.service.EmbeddingStorageMigrator;
+import iuh.fit.haitebooks_backend.ai.service.HnswVectorIndex;
+import iuh.fit.haitebooks_backend.ai.service.MatrixFactorizationRecommender;
+import iuh.fit.haitebooks_backend.ai.service.QueryEmbeddingCache;
+import iuh.fit.haitebooks_backend.ai.service.SemanticAnswerCache;
+import iuh.fit.haitebooks_backend.ai.service.UserRecommendationCache;
+import iuh.fit.haitebooks_backend.ai.service.VectorSearchRouter;
+import iuh.fit.haitebooks_backend.ai.stub.CohereStubServer;
+import iuh.fit.haitebooks_backend.repository.BookRepository;
+import iuh.fit.haitebooks_backend.repository.ChatConversationRepository;
+import iuh.fit.haitebooks_backend.service.OrderService;
+import iuh.fit.haitebooks_backend.service.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.web.method.annotation.AuthenticationPrincipalArgumentResolver;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+/**
+ * POST /api/ai/chat/stream với ChatStreamService, ChatbotService và AiHttpClient thật, Cohere là CohereStubServer
+ * Kiểm tra thứ tự event SSE: token..., sau đó done; stream bị đứt giữa chừng -> token..., sau đó error
+ */
+class AIControllerChatStreamTest {
+
+    private static final Pattern EVENT_NAME = Pattern.compile("^event:(\\S+)$", Pattern.MULTILINE);
+    private static final long ASYNC_TIMEOUT_MS = 10_000;
+
+    private CohereStubServer stub;
+    private ThreadPoolTaskExecutor chatStreamExecutor;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new CohereStubServer(1);
+        stub.start();
+
+        chatStreamExecutor = new ThreadPoolTaskExecutor();
+        chatStreamExecutor.setCorePoolSize(2);
+        chatStreamExecutor.setThreadNamePrefix("chat-stream-test-");
+        chatStreamExecutor.initialize();
+
+        AiHttpClient aiHttpClient = new AiHttpClient(2000, 5000, 5000, 2000, 2, 2, 1000, 1, 10, 10, 100, 1);
+        ConversationStore conversationStore = new ConversationStore(mock(ChatConversationRepository.class),
+                100, 1 << 20, 60, false);
+        ChatPipelineMetrics metrics = new ChatPipelineMetrics();
+        // Không có sách nào (mock trả danh sách rỗng) -> context "cửa hàng chưa có sách phù hợp"
+        ChatbotService chatbotService = new ChatbotService(mock(BookRepository.class),
+                mock(CohereEmbeddingService.class), mock(OrderService.class), aiHttpClient,
+                mock(BookSearchService.class), stub.baseUrl(), Runnable::run, metrics, mock(AIService.class),
+                mock(SemanticAnswerCache.class), conversationStore, 2000, 2000);
+        ReflectionTestUtils.setField(chatbotService, "cohereApiKey", "test-key");
+        ChatStreamService chatStreamService = new ChatStreamService(chatbotService, chatStreamExecutor, 10_000);
+
+        AIController controller = new AIController(mock(BookSearchService.class),
+                mock(BookRecommendationService.class), mock(EmbeddingJobService.class), chatbotService,
+                mock(UserService.class), mock(VectorSearchRouter.class), mock(HnswVectorIndex.class),
+                mock(EmbeddingStorageMigrator.class), mock(QueryEmbeddingCache.class), mock(CoPurchaseService.class),
+                mock(UserRecommendationCache.class), mock(MatrixFactorizationRecommender.class), chatStreamService,
+                metrics, mock(SemanticAnswerCache.class), conversationStore, aiHttpClient);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setCustomArgumentResolvers(new AuthenticationPrincipalArgumentResolver())
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        chatStreamExecutor.shutdown();
+        stub.stop();
+    }
+
+    @Test
+    void streamsTokensThenDone() throws Exception {
+        String body = streamChat("Có sách lập trình Java không?");
+
+        List<String> events = eventNames(body);
+        assertThat(events).hasSizeGreaterThan(1);
+        assertThat(events.subList(0, events.size() - 1)).containsOnly("token");
+        assertThat(events.get(events.size() - 1)).isEqualTo("done");
+        assertThat(body).contains("Cohere stub");
+    }
+
+    @Test
+    void brokenUpstreamStreamEndsWithError() throws Exception {
+        stub.breakStreamAfter(3);
+
+        String body = streamChat("Có sách lập trình Java không?");
+
+        List<String> events = eventNames(body);
+        assertThat(events).containsExactly("token", "token", "token", "error");
+        assertThat(body).doesNotContain("event:done");
+    }
+
+    private String streamChat(String message) throws Exception {
+        MvcResult result = mockMvc.perform(post("/api/ai/chat/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"message\": \"" + message + "\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        // Chờ emitter hoàn tất (sau event done / error)
+        result.getAsyncResult(ASYNC_TIMEOUT_MS);
+        return result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> eventNames(String body) {
+        List<String> names = new ArrayList<>();
+        Matcher matcher = EVENT_NAME.matcher(body);
+        while (matcher.find()) {
+            names.add(matcher.group(1));
+        }
+        return names;
+    }
+}
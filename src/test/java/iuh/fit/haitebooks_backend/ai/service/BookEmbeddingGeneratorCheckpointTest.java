@@ -0,0 +1,59 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import iuh.fit.haitebooks_backend.model.EmbeddingFormat;
+import iuh.fit.haitebooks_backend.repository.BookEmbeddingJdbcRepository;
+import iuh.fit.haitebooks_backend.repository.BookEmbeddingRepository;
+import iuh.fit.haitebooks_backend.repository.BookRepository;
+import iuh.fit.haitebooks_backend.repository.projection.BookTextRow;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checkpoint của backfill embedding không vượt qua sách bị lỗi, để lần resume thử lại sách đó
+ */
+class BookEmbeddingGeneratorCheckpointTest {
+
+    private final BookRepository bookRepository = mock(BookRepository.class);
+    private final AIService aiService = mock(AIService.class);
+    private final BookEmbeddingGenerator generator = new BookEmbeddingGenerator(bookRepository,
+            mock(BookEmbeddingRepository.class), aiService, mock(BookVectorIndex.class),
+            mock(BookEmbeddingJdbcRepository.class), EmbeddingFormat.FLOAT32, 1);
+
+    @Test
+    void checkpointStopsBeforeFirstFailedBook() {
+        List<BookTextRow> rows = List.of(row(1L, "Sách 1"), row(2L, "Sách 2"), row(3L, ""), row(4L, "Sách 4"));
+        when(bookRepository.findTextRowsWithoutEmbedding(0L)).thenReturn(rows);
+        // Sách 2 không tạo được embedding (VD: 429 hết lượt thử), các sách còn lại thành công
+        when(aiService.generateEmbeddings(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            return texts.contains("Sách 2") ? List.of() : List.of(new float[]{1f, 0f});
+        });
+
+        List<Long> checkpoints = new ArrayList<>();
+        List<Integer> failed = new ArrayList<>();
+        generator.generateAllEmbeddings(0L, new BookEmbeddingGenerator.ProgressListener() {
+            @Override
+            public void onBatch(long lastBookId, int created, int skipped, int failedCount) {
+                checkpoints.add(lastBookId);
+                failed.add(failedCount);
+            }
+        });
+
+        assertThat(failed).containsExactly(0, 1, 0);
+        assertThat(checkpoints).containsExactly(1L, 1L, 1L);
+    }
+
+    private static BookTextRow row(long id, String title) {
+        BookTextRow row = mock(BookTextRow.class);
+        when(row.getId()).thenReturn(id);
+        when(row.getTitle()).thenReturn(title);
+        return row;
+    }
+}
@@ -0,0 +1,175 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import iuh.fit.haitebooks_backend.model.Book;
+import iuh.fit.haitebooks_backend.model.BookCategory;
+import iuh.fit.haitebooks_backend.model.Order;
+import iuh.fit.haitebooks_backend.model.Order_Item;
+import iuh.fit.haitebooks_backend.model.Status_Order;
+import iuh.fit.haitebooks_backend.model.User;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Số câu SQL của một lần tính gợi ý cho user không phụ thuộc kích thước catalog
+ * Đếm bằng Hibernate statistics (PrepareStatementCount) trên H2, các phần ngoài DB (vector index, ma trận đồng mua,
+ * matrix factorization) được mock
+ */
+@DataJpaTest(properties = {
+        "spring.sql.init.mode=never",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import({CollaborativeFilteringService.class, BookRecommendationService.class})
+class BookRecommendationQueryCountTest {
+
+    private static final int CATEGORIES = 4;
+    private static final int AUTHORS = 10;
+    private static final int PURCHASED_PER_USER = 3;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private BookRecommendationService recommendationService;
+
+    @MockBean
+    private BookEmbeddingLookup embeddingLookup;
+
+    @MockBean
+    private AIService aiService;
+
+    @MockBean
+    private BookVectorIndex vectorIndex;
+
+    @MockBean
+    private VectorSearchRouter vectorSearchRouter;
+
+    @MockBean
+    private UserRecommendationCache recommendationCache;
+
+    @MockBean
+    private UserTasteProfileService tasteProfileService;
+
+    @MockBean
+    private MatrixFactorizationRecommender matrixFactorization;
+
+    @MockBean
+    private CoPurchaseService coPurchaseService;
+
+    private final List<BookCategory> categories = new ArrayList<>();
+    private final List<Book> books = new ArrayList<>();
+    private int users = 0;
+
+    @BeforeEach
+    void setUp() {
+        when(recommendationCache.topN()).thenReturn(50);
+        when(tasteProfileService.getProfileVector(any())).thenReturn(new float[]{1f, 0f, 0f});
+        when(vectorIndex.nearest(any(), anyInt(), anyDouble(), any())).thenReturn(List.of());
+
+        for (int i = 0; i < CATEGORIES; i++) {
+            BookCategory category = new BookCategory();
+            category.setName("Thể loại " + i);
+            categories.add(entityManager.persist(category));
+        }
+    }
+
+    @Test
+    void recommendationQueryCountDoesNotGrowWithCatalogue() {
+        addBooks(20);
+        long smallCatalogue = countQueriesForNewBuyer();
+
+        addBooks(480);
+        long largeCatalogue = countQueriesForNewBuyer();
+
+        assertThat(smallCatalogue).isPositive();
+        assertThat(largeCatalogue).isEqualTo(smallCatalogue);
+    }
+
+    /**
+     * User mới mua PURCHASED_PER_USER sách đầu catalog, đếm số câu SQL khi tính danh sách gợi ý cho user đó
+     */
+    private long countQueriesForNewBuyer() {
+        User user = new User();
+        user.setUsername("reader" + users);
+        user.setPassword("secret");
+        user.setEmail("reader" + users + "@haitebooks.test");
+        user.setFullName("Reader " + users);
+        users++;
+        entityManager.persist(user);
+
+        Order order = new Order();
+        order.setUser(user);
+        order.setStatus(Status_Order.COMPLETED);
+        List<Order_Item> items = new ArrayList<>();
+        for (Book book : books.subList(0, PURCHASED_PER_USER)) {
+            Order_Item item = new Order_Item();
+            item.setOrder(order);
+            item.setBook(book);
+            item.setQuantity(1);
+            item.setPrice(book.getPrice());
+            items.add(item);
+        }
+        order.setOrderItems(items);
+        order.setTotal(items.stream().mapToDouble(Order_Item::getPrice).sum());
+        entityManager.persist(order);
+        entityManager.flush();
+        entityManager.clear();
+
+        // Lấy loader mà recommendForUser giao cho cache, chạy trực tiếp và chỉ đếm phần tính gợi ý
+        recommendationService.recommendForUser(user.getId(), 10);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Supplier<List<Long>>> loader = ArgumentCaptor.forClass(Supplier.class);
+        verify(recommendationCache).refreshAsync(eq(user.getId()), loader.capture());
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        List<Long> recommended = loader.getValue().get();
+        long queries = statistics.getPrepareStatementCount();
+        entityManager.clear();
+
+        // Cùng category / tác giả với sách đã mua -> có gợi ý, không gồm sách đã mua
+        assertThat(recommended).isNotEmpty();
+        assertThat(recommended).doesNotContainAnyElementsOf(books.subList(0, PURCHASED_PER_USER).stream()
+                .map(Book::getId).toList());
+        return queries;
+    }
+
+    private void addBooks(int count) {
+        for (int i = 0; i < count; i++) {
+            int index = books.size();
+            Book book = new Book();
+            book.setTitle("Sách " + index);
+            book.setAuthor("Tác giả " + (index % AUTHORS));
+            book.setPrice(50_000 + index);
+            book.setStock(10);
+            book.setDescription("Mô tả sách " + index);
+            book.setBarcode("893" + String.format("%010d", index));
+            book.setCategory(categories.get(index % CATEGORIES));
+            books.add(entityManager.persist(book));
+        }
+        entityManager.flush();
+    }
+}
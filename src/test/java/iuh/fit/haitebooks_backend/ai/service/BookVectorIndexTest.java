@@ -0,0 +1,214 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import iuh.fit.haitebooks_backend.model.EmbeddingFormat;
+import iuh.fit.haitebooks_backend.repository.BookEmbeddingRepository;
+import iuh.fit.haitebooks_backend.repository.projection.BookEmbeddingRow;
+import iuh.fit.haitebooks_backend.util.EmbeddingCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * BookVectorIndex
+ * - upsert / remove xảy ra trong lúc rebuild đọc database không bị mất khi đổi sang dữ liệu mới
+ * - Top-K chấm điểm song song theo partition trả về đúng kết quả như quét tuần tự
+ * - Benchmark tuần tự / song song ở 10k, 20k, 100k, 1M vector để chọn ai.vector.parallel-threshold
+ *   (chỉ chạy khi bật: mvn test -Dtest=BookVectorIndexTest -Dvector.benchmark=true)
+ */
+class BookVectorIndexTest {
+
+    private final BookEmbeddingRepository repository = mock(BookEmbeddingRepository.class);
+    private final BookVectorIndex index = new BookVectorIndex(repository, 20_000);
+
+    @Test
+    void changesDuringRebuildAreReplayedAfterSwap() {
+        List<BookEmbeddingRow> page = List.of(row(1L, 1L, new float[]{1f, 0f}), row(2L, 2L, new float[]{0f, 1f}));
+        when(repository.count()).thenReturn(2L);
+        when(repository.findRowsAfter(eq(0L), any())).thenAnswer(invocation -> {
+            // Trang đầu đã đọc xong (còn sách 1), embedding mới của sách 3 và lệnh xóa sách 1 đến giữa chừng
+            index.upsert(3L, new float[]{0.6f, 0.8f});
+            index.remove(1L);
+            index.upsert(2L, new float[]{0.8f, 0.6f});
+            return page;
+        });
+        when(repository.findRowsAfter(eq(2L), any())).thenReturn(List.of());
+
+        index.rebuild();
+
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.contains(1L)).isFalse();
+        assertThat(index.getVector(3L)).containsExactly(0.6f, 0.8f);
+        assertThat(index.getVector(2L)).containsExactly(0.8f, 0.6f);
+    }
+
+    @Test
+    void parallelTopKMatchesSequentialScan() {
+        // Ít nhất 2 CPU thì catalog 40.000 vector mới thực sự được chia partition
+        assumeTrue(Runtime.getRuntime().availableProcessors() >= 2, "Cần ít nhất 2 CPU để chạy song song");
+        BookEmbeddingRepository emptyRepository = emptyRepository();
+        BookVectorIndex sequential = new BookVectorIndex(emptyRepository, Integer.MAX_VALUE);
+        BookVectorIndex parallel = new BookVectorIndex(emptyRepository, 1);
+        sequential.rebuild();
+        parallel.rebuild();
+        Random random = new Random(7);
+        float[] previous = null;
+        for (long bookId = 1; bookId <= 40_000; bookId++) {
+            // Thỉnh thoảng lặp lại vector trước đó -> có điểm bằng nhau, thứ tự phải theo bookId như nhau
+            float[] vector = previous != null && bookId % 97 == 0 ? previous : randomVector(random, 32);
+            sequential.upsert(bookId, vector);
+            parallel.upsert(bookId, vector);
+            previous = vector;
+        }
+
+        BookVectorIndex.HybridScorer scorer = (cosine, bookId) -> cosine * 0.6 + (bookId % 7 == 0 ? 0.4 : 0.0);
+        Set<Long> candidates = new HashSet<>();
+        for (int i = 0; i < 2_000; i++) {
+            candidates.add(1L + random.nextInt(40_000));
+        }
+        for (int i = 0; i < 20; i++) {
+            float[] query = randomVector(random, 32);
+            for (int k : new int[]{1, 10, 100, 1_000}) {
+                long excluded = 1L + random.nextInt(40_000);
+                List<VectorHit> expected = sequential.nearest(query, k, -1.0, excluded);
+                assertThat(expected).hasSize(k);
+                assertThat(parallel.nearest(query, k, -1.0, excluded)).isEqualTo(expected);
+                assertThat(parallel.nearest(query, k, 0.3, null)).isEqualTo(sequential.nearest(query, k, 0.3, null));
+                assertThat(parallel.search(query, k, 0.1, scorer))
+                        .isEqualTo(sequential.search(query, k, 0.1, scorer));
+                assertThat(parallel.search(query, k, 0.1, scorer, candidates))
+                        .isEqualTo(sequential.search(query, k, 0.1, scorer, candidates));
+            }
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "vector.benchmark", matches = "true")
+    void benchmarkSequentialVersusParallelTopK() {
+        int dimension = Integer.getInteger("vector.benchmark.dimension", 1024);
+        Random random = new Random(11);
+        System.out.printf("top-10 exact, %d chiều, %d CPU%n", dimension, Runtime.getRuntime().availableProcessors());
+        for (int vectors : new int[]{10_000, 20_000, 100_000, 1_000_000}) {
+            long required = (long) vectors * dimension * Float.BYTES;
+            if (required * 2 > Runtime.getRuntime().maxMemory()) {
+                System.out.printf("%,9d vector: bỏ qua, cần ~%d MB heap (-Dvector.benchmark.dimension nhỏ hơn)%n",
+                        vectors, required * 2 / (1 << 20));
+                continue;
+            }
+            BookVectorIndex benchmarkIndex = new BookVectorIndex(generatedRepository(vectors, dimension), 0);
+            benchmarkIndex.rebuild();
+            List<float[]> queries = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                queries.add(randomVector(random, dimension));
+            }
+            // Đủ số lần để mỗi lần đo chạy khoảng 2 tỷ phép nhân (không quá lâu ở 1M)
+            int iterations = (int) Math.max(5, 2_000_000_000L / ((long) vectors * dimension));
+
+            ReflectionTestUtils.setField(benchmarkIndex, "parallelThreshold", Integer.MAX_VALUE);
+            double sequentialMillis = timePerQuery(benchmarkIndex, queries, iterations);
+            ReflectionTestUtils.setField(benchmarkIndex, "parallelThreshold", 1);
+            double parallelMillis = timePerQuery(benchmarkIndex, queries, iterations);
+
+            System.out.printf("%,9d vector: tuần tự %8.3f ms, song song %8.3f ms, nhanh hơn x%.2f%n",
+                    vectors, sequentialMillis, parallelMillis, sequentialMillis / parallelMillis);
+            assertThat(benchmarkIndex.size()).isEqualTo(vectors);
+        }
+    }
+
+    private static double timePerQuery(BookVectorIndex index, List<float[]> queries, int iterations) {
+        // Làm nóng JIT trước khi đo
+        for (int i = 0; i < iterations; i++) {
+            index.nearest(queries.get(i % queries.size()), 10, 0.0, null);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            index.nearest(queries.get(i % queries.size()), 10, 0.0, null);
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / iterations;
+    }
+
+    private static BookEmbeddingRepository emptyRepository() {
+        BookEmbeddingRepository repository = mock(BookEmbeddingRepository.class);
+        when(repository.count()).thenReturn(0L);
+        when(repository.findRowsAfter(anyLong(), any())).thenReturn(List.of());
+        return repository;
+    }
+
+    // Sinh từng trang vector ngẫu nhiên khi rebuild đọc, không giữ cả catalog trong bộ nhớ hai lần
+    private static BookEmbeddingRepository generatedRepository(int vectors, int dimension) {
+        BookEmbeddingRepository repository = mock(BookEmbeddingRepository.class);
+        when(repository.count()).thenReturn((long) vectors);
+        Random random = new Random(vectors);
+        when(repository.findRowsAfter(anyLong(), any())).thenAnswer(invocation -> {
+            long afterId = invocation.getArgument(0);
+            List<BookEmbeddingRow> page = new ArrayList<>();
+            for (long id = afterId + 1; id <= Math.min(vectors, afterId + 500); id++) {
+                page.add(new GeneratedRow(id, EmbeddingCodec.encodeFloat32(randomVector(random, dimension))));
+            }
+            return page;
+        });
+        return repository;
+    }
+
+    private record GeneratedRow(Long id, byte[] blob) implements BookEmbeddingRow {
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public Long getBookId() {
+            return id;
+        }
+
+        @Override
+        public byte[] getEmbeddingBlob() {
+            return blob;
+        }
+
+        @Override
+        public EmbeddingFormat getEmbeddingFormat() {
+            return EmbeddingFormat.FLOAT32;
+        }
+
+        @Override
+        public Float getEmbeddingScale() {
+            return null;
+        }
+
+        @Override
+        public String getEmbeddingJson() {
+            return null;
+        }
+    }
+
+    private static float[] randomVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static BookEmbeddingRow row(long id, long bookId, float[] vector) {
+        BookEmbeddingRow row = mock(BookEmbeddingRow.class);
+        when(row.getId()).thenReturn(id);
+        when(row.getBookId()).thenReturn(bookId);
+        when(row.getEmbeddingBlob()).thenReturn(EmbeddingCodec.encodeFloat32(vector));
+        when(row.getEmbeddingFormat()).thenReturn(EmbeddingFormat.FLOAT32);
+        return row;
+    }
+}
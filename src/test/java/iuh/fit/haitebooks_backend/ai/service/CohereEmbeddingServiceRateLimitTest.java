@@ -0,0 +1,77 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import iuh.fit.haitebooks_backend.ai.client.AiHttpClient;
+import iuh.fit.haitebooks_backend.ai.stub.CohereStubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * AdaptiveRateLimiter của CohereEmbeddingService với CohereStubServer trả về 429
+ * - Backfill: chờ theo Retry-After, giảm tốc rồi thử lại tới khi thành công
+ * - Câu truy vấn: không chờ limiter, bị 429 thì trả về rỗng ngay
+ */
+class CohereEmbeddingServiceRateLimitTest {
+
+    private static final double MAX_RATE = 5.0;
+
+    private CohereStubServer stub;
+    private CohereEmbeddingService embeddingService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new CohereStubServer(0);
+        stub.start();
+        AiHttpClient aiHttpClient = new AiHttpClient(2000, 5000, 5000, 2000, 4, 4, 1000, 1, 10, 10, 100, 1);
+        embeddingService = new CohereEmbeddingService(aiHttpClient, stub.baseUrl(), MAX_RATE, 0.1, MAX_RATE);
+        ReflectionTestUtils.setField(embeddingService, "cohereApiKey", "test-key");
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.stop();
+    }
+
+    @Test
+    void backfillWaitsForRetryAfterAndSlowsDown() {
+        stub.throttleEmbeds(2, 0.3);
+
+        long start = System.nanoTime();
+        List<float[]> embeddings = embeddingService.generateEmbeddings(List.of("Sách một", "Sách hai"));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertThat(embeddings).hasSize(2);
+        assertThat(embeddings.get(0)).hasSize(1024);
+        assertThat(stub.embedRequests()).isEqualTo(3);
+        assertThat(elapsedMs).isGreaterThanOrEqualTo(550);
+        AdaptiveRateLimiter limiter = embeddingService.getRateLimiter();
+        assertThat(limiter.throttledCount()).isEqualTo(2);
+        assertThat(limiter.currentRate()).isLessThan(MAX_RATE / 2);
+    }
+
+    @Test
+    void queryEmbeddingFailsFastOnRateLimitAndSkipsTheLimiter() {
+        stub.throttleEmbeds(1, 5);
+
+        long start = System.nanoTime();
+        float[] throttled = embeddingService.generateQueryEmbedding("sách lập trình");
+        long throttledMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertThat(throttled).isEmpty();
+        assertThat(throttledMs).isLessThan(1000);
+        // 429 của câu truy vấn vẫn làm backfill giảm tốc và tạm dừng 5 giây
+        assertThat(embeddingService.getRateLimiter().throttledCount()).isEqualTo(1);
+
+        start = System.nanoTime();
+        float[] vector = embeddingService.generateQueryEmbedding("sách lập trình");
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertThat(vector).hasSize(1024);
+        assertThat(elapsedMs).isLessThan(1000);
+    }
+}
@@ -0,0 +1,47 @@
+package iuh.fit.haitebooks_backend.ai.service;
+
+import iuh.fit.haitebooks_backend.repository.ChatConversationRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Hội thoại tách theo (userId, conversationId): không đọc / ghi đè được hội thoại của người khác,
+ * khách chỉ dùng được ID do server cấp
+ */
+class ConversationStoreTest {
+
+    private final ConversationStore store = new ConversationStore(mock(ChatConversationRepository.class),
+            100, 1 << 20, 60, false);
+
+    @Test
+    void sameIdFromAnotherUserDoesNotReadOrOverwriteHistory() {
+        store.append("shared", 1L, "Câu hỏi của A", "Trả lời A", List.of(10L));
+
+        String idForB = store.resolveId("shared", 2L);
+        assertThat(store.get(idForB, 2L).hasHistory()).isFalse();
+        store.append(idForB, 2L, "Câu hỏi của B", "Trả lời B", List.of(20L));
+
+        ConversationStore.Conversation ofA = store.get("shared", 1L);
+        assertThat(ofA.turns()).extracting(ConversationStore.Turn::question).containsExactly("Câu hỏi của A");
+        assertThat(ofA.bookIds()).containsExactly(10L);
+    }
+
+    @Test
+    void guestsOnlyKeepServerIssuedIds() {
+        String chosen = store.resolveId("1", null);
+        assertThat(chosen).isNotEqualTo("1");
+
+        store.append(chosen, null, "Câu hỏi", "Trả lời", List.of());
+        assertThat(store.resolveId(chosen, null)).isEqualTo(chosen);
+        assertThat(store.get(chosen, null).turns()).hasSize(1);
+
+        // Khách khác gửi ID tự chọn -> không thấy lịch sử của ai
+        assertThat(store.resolveId("1", null)).isNotEqualTo("1");
+        // User đăng nhập dùng ID của khách -> hội thoại riêng, trống
+        assertThat(store.get(store.resolveId(chosen, 5L), 5L).hasHistory()).isFalse();
+    }
+}
@@ -0,0 +1,195 @@
+package iuh.fit.haitebooks_backend.ai.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server giả lập Cohere API cho test, không cần API key và không tốn quota
+ * - POST /v1/chat: stream = true -> mỗi dòng một JSON event (stream-start, text-generation..., stream-end)
+ *   cách nhau tokenDelayMs; stream = false -> {"text": ...}
+ * - POST /v1/embed: vector 1024 chiều xác định theo nội dung text (cùng text -> cùng vector)
+ * - breakStreamAfter(n): stream đóng kết nối sau n token, không gửi stream-end (giả lập stream bị đứt)
+ * - throttleEmbeds(n, retryAfter): n request embed tiếp theo nhận 429 kèm Retry-After (giả lập rate limit)
+ * Lắng nghe trên port trống bất kỳ, trỏ cohere.api.base-url tới baseUrl()
+ */
+public class CohereStubServer {
+
+    private static final Logger log = LoggerFactory.getLogger(CohereStubServer.class);
+    private static final int EMBEDDING_DIMENSIONS = 1024;
+
+    private final long tokenDelayMs;
+    private volatile int breakAfterTokens = -1;
+    private final AtomicInteger throttledEmbeds = new AtomicInteger();
+    private final AtomicInteger embedRequests = new AtomicInteger();
+    private volatile String retryAfter = "1";
+    private HttpServer server;
+    private ExecutorService workers;
+
+    public CohereStubServer(long tokenDelayMs) {
+        this.tokenDelayMs = tokenDelayMs;
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        workers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "cohere-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(workers);
+        server.createContext("/v1/chat", this::handleChat);
+        server.createContext("/v1/embed", this::handleEmbed);
+        server.start();
+        log.info("🧪 Cohere stub server đang chạy tại {}", baseUrl());
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @param tokens Số token gửi trước khi đóng stream (âm -> stream đầy đủ)
+     */
+    public void breakStreamAfter(int tokens) {
+        this.breakAfterTokens = tokens;
+    }
+
+    /**
+     * @param requests Số request embed tiếp theo bị trả về 429
+     * @param retryAfterSeconds Giá trị header Retry-After (giây, có thể là số thập phân)
+     */
+    public void throttleEmbeds(int requests, double retryAfterSeconds) {
+        this.retryAfter = String.valueOf(retryAfterSeconds);
+        this.throttledEmbeds.set(requests);
+    }
+
+    /**
+     * Số request embed đã nhận (kể cả bị 429)
+     */
+    public int embedRequests() {
+        return embedRequests.get();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            workers.shutdownNow();
+        }
+    }
+
+    private void handleChat(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            JSONObject request = new JSONObject(readBody(exchange));
+            String answer = "Đây là câu trả lời mẫu từ Cohere stub cho câu hỏi: \""
+                    + request.optString("message") + "\". Cửa hàng HaiTeBooks có nhiều sách phù hợp với bạn.";
+
+            if (!request.optBoolean("stream", false)) {
+                writeJson(exchange, new JSONObject()
+                        .put("generation_id", UUID.randomUUID().toString())
+                        .put("text", answer)
+                        .put("finish_reason", "COMPLETE"));
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/stream+json");
+            exchange.sendResponseHeaders(200, 0); // chunked
+            OutputStream out = exchange.getResponseBody();
+            writeEvent(out, new JSONObject().put("is_finished", false).put("event_type", "stream-start")
+                    .put("generation_id", UUID.randomUUID().toString()));
+            // Mỗi từ (kèm khoảng trắng phía trước) là một token
+            int breakAfter = breakAfterTokens;
+            int sent = 0;
+            for (String token : answer.split("(?=\\s)")) {
+                if (breakAfter >= 0 && sent++ >= breakAfter) {
+                    return; // Đóng kết nối, không có stream-end
+                }
+                sleep(tokenDelayMs);
+                writeEvent(out, new JSONObject().put("is_finished", false).put("event_type", "text-generation")
+                        .put("text", token));
+            }
+            writeEvent(out, new JSONObject().put("is_finished", true).put("event_type", "stream-end")
+                    .put("finish_reason", "COMPLETE")
+                    .put("response", new JSONObject().put("text", answer)));
+        } catch (IOException e) {
+            // Client (ChatbotService) đã đóng stream sớm
+            log.debug("🧪 Stub chat: client đóng kết nối: {}", e.getMessage());
+        }
+    }
+
+    private void handleEmbed(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            embedRequests.incrementAndGet();
+            JSONArray texts = new JSONObject(readBody(exchange)).optJSONArray("texts");
+            if (throttledEmbeds.getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0) {
+                byte[] bytes = "{\"message\": \"rate limited\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.getResponseHeaders().set("Retry-After", retryAfter);
+                exchange.sendResponseHeaders(429, bytes.length);
+                exchange.getResponseBody().write(bytes);
+                return;
+            }
+            JSONArray embeddings = new JSONArray();
+            for (int i = 0; texts != null && i < texts.length(); i++) {
+                embeddings.put(embed(texts.getString(i)));
+            }
+            writeJson(exchange, new JSONObject()
+                    .put("id", UUID.randomUUID().toString())
+                    .put("embeddings", embeddings));
+        }
+    }
+
+    // Vector chuẩn hóa (norm = 1) sinh từ hash của text
+    private static JSONArray embed(String text) {
+        SplittableRandom random = new SplittableRandom(text.hashCode());
+        double[] values = new double[EMBEDDING_DIMENSIONS];
+        double norm = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextDouble(-1.0, 1.0);
+            norm += values[i] * values[i];
+        }
+        norm = Math.sqrt(norm);
+        JSONArray vector = new JSONArray();
+        for (double value : values) {
+            vector.put(value / norm);
+        }
+        return vector;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        return new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static void writeJson(HttpExchange exchange, JSONObject json) throws IOException {
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void writeEvent(OutputStream out, JSONObject event) throws IOException {
+        out.write((event + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
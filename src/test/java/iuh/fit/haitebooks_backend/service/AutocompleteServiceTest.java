@@ -0,0 +1,177 @@
+package iuh.fit.haitebooks_backend.service;
+
+import iuh.fit.haitebooks_backend.dtos.response.SuggestionResponse;
+import iuh.fit.haitebooks_backend.repository.BookRepository;
+import iuh.fit.haitebooks_backend.repository.projection.BookSearchRow;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * AutocompleteService: gợi ý bị gỡ được thay bằng gợi ý kế tiếp, thay đổi trong lúc dựng lại không bị mất,
+ * upsert giữ điểm thịnh hành, và độ trễ tra cứu p99 dưới 5 ms trên catalog 50.000 sách
+ */
+class AutocompleteServiceTest {
+
+    private static final String[] WORDS = {"lập", "trình", "java", "python", "cơ", "sở", "dữ", "liệu", "kinh", "tế",
+            "học", "tiếng", "anh", "giao", "tiếp", "nghệ", "thuật", "sống", "tâm", "lý", "lịch", "sử", "việt", "nam",
+            "thế", "giới", "khoa", "toán", "vật", "hóa", "sinh", "văn", "thơ", "truyện", "ngắn", "tiểu", "thuyết"};
+
+    private record SearchRow(Long id, String title, String author, Long categoryId, String categoryName)
+            implements BookSearchRow {
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public String getTitle() {
+            return title;
+        }
+
+        @Override
+        public String getAuthor() {
+            return author;
+        }
+
+        @Override
+        public String getDescription() {
+            return null;
+        }
+
+        @Override
+        public Long getCategoryId() {
+            return categoryId;
+        }
+
+        @Override
+        public String getCategoryName() {
+            return categoryName;
+        }
+    }
+
+    private final BookRepository bookRepository = mock(BookRepository.class);
+    private final PopularityService popularityService = mock(PopularityService.class);
+    private final AutocompleteService service = new AutocompleteService(bookRepository, popularityService);
+
+    @BeforeEach
+    void setUp() {
+        // Sách id lớn bán nhiều hơn -> xếp trước
+        when(popularityService.soldCount(anyLong())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(popularityService.trendingBookIds(anyInt())).thenReturn(List.of());
+    }
+
+    @Test
+    void removedSuggestionIsReplacedByTheNextBest() {
+        List<BookSearchRow> rows = new ArrayList<>();
+        for (long id = 1; id <= 20; id++) {
+            rows.add(new SearchRow(id, "Java tập " + id, "Nguyễn Văn A", 1L, "Lập trình"));
+        }
+        when(bookRepository.findAllSearchRows()).thenReturn(rows);
+        service.rebuild();
+        assertThat(titleIds("java", 16)).containsExactly(20L, 19L, 18L, 17L, 16L, 15L, 14L, 13L,
+                12L, 11L, 10L, 9L, 8L, 7L, 6L, 5L);
+
+        service.remove(20L);
+        service.remove(18L);
+
+        assertThat(titleIds("java", 16)).containsExactly(19L, 17L, 16L, 15L, 14L, 13L, 12L, 11L,
+                10L, 9L, 8L, 7L, 6L, 5L, 4L, 3L);
+        assertThat(titleIds("java tap 2", 16)).doesNotContain(20L);
+    }
+
+    @Test
+    void upsertKeepsTheTrendingBoost() {
+        when(popularityService.soldCount(anyLong())).thenReturn(0L);
+        when(popularityService.trendingBookIds(anyInt())).thenReturn(List.of(2L));
+        when(bookRepository.findAllSearchRows()).thenReturn(List.of());
+        service.rebuild();
+
+        // Không có điểm thịnh hành thì "Python a" (ngắn bằng, đứng trước theo chữ cái) xếp trước
+        service.upsert(new SearchRow(1L, "Python a", "Tác giả", 1L, "Lập trình"));
+        service.upsert(new SearchRow(2L, "Python b", "Tác giả", 1L, "Lập trình"));
+
+        assertThat(titleIds("python", 8)).containsExactly(2L, 1L);
+    }
+
+    @Test
+    void changesDuringRebuildAreReplayedOnTheNewTrie() {
+        List<BookSearchRow> rows = List.of(new SearchRow(1L, "Kinh tế học", "Tác giả", 1L, "Kinh tế"),
+                new SearchRow(2L, "Kinh tế vĩ mô", "Tác giả", 1L, "Kinh tế"));
+        when(bookRepository.findAllSearchRows()).thenAnswer(invocation -> {
+            // Đã đọc xong database, sách mới và lệnh xóa sách 1 đến trước khi trie mới được công bố
+            service.upsert(new SearchRow(3L, "Kotlin cơ bản", "Tác giả", 2L, "Lập trình"));
+            service.remove(1L);
+            return rows;
+        });
+
+        service.rebuild();
+
+        assertThat(titleIds("kotlin", 8)).containsExactly(3L);
+        assertThat(titleIds("kinh te", 8)).containsExactly(2L);
+    }
+
+    @Test
+    void suggestP99StaysUnderFiveMillisecondsOnLargeCatalogue() {
+        Random random = new Random(42);
+        int books = 50_000;
+        List<BookSearchRow> rows = new ArrayList<>(books);
+        for (long id = 1; id <= books; id++) {
+            rows.add(new SearchRow(id, randomText(random, 2 + random.nextInt(5)) + " " + id,
+                    randomText(random, 2), (long) random.nextInt(50), "Thể loại " + random.nextInt(50)));
+        }
+        when(bookRepository.findAllSearchRows()).thenReturn(rows);
+        service.rebuild();
+
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < 22_000; i++) {
+            String title = rows.get(random.nextInt(books)).getTitle();
+            queries.add(title.substring(0, 1 + random.nextInt(Math.min(title.length(), 15))));
+        }
+        // Làm nóng JIT trước khi đo
+        for (String query : queries.subList(0, 2_000)) {
+            service.suggest(query, 8);
+        }
+        List<String> measured = queries.subList(2_000, queries.size());
+        long[] nanos = new long[measured.size()];
+        for (int i = 0; i < nanos.length; i++) {
+            long start = System.nanoTime();
+            service.suggest(measured.get(i), 8);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        double p99Millis = nanos[(int) Math.ceil(nanos.length * 0.99) - 1] / 1_000_000.0;
+
+        System.out.printf("autocomplete %d sách: p50 %.3f ms, p99 %.3f ms%n",
+                books, nanos[nanos.length / 2] / 1_000_000.0, p99Millis);
+        assertThat(p99Millis).isLessThan(5.0);
+    }
+
+    private List<Long> titleIds(String query, int limit) {
+        return service.suggest(query, limit).stream()
+                .filter(suggestion -> "TITLE".equals(suggestion.getType()))
+                .map(SuggestionResponse::getBookId)
+                .toList();
+    }
+
+    private static String randomText(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+}
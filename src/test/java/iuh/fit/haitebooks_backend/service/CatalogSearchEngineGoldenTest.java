@@ -0,0 +1,198 @@
+package iuh.fit.haitebooks_backend.service;
+
+import iuh.fit.haitebooks_backend.repository.BookRepository;
+import iuh.fit.haitebooks_backend.repository.projection.BookSearchRow;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Golden test: điểm văn bản của hybrid search (CatalogSearchEngine.textScores) so với cách chấm cũ
+ * của BookSearchService (quét contains() trên title / description / author đã lowercase)
+ * - Mọi sách cách cũ chấm > 0 vẫn được tìm thấy
+ * - Sách đứng đầu giữ nguyên khi cách cũ có một sách cao điểm nhất
+ * - Boost "cả cụm từ nằm trong title" bật đúng trên những sách như trước
+ * Khác biệt có chủ đích: query không dấu giờ khớp sách có dấu (cách cũ trả về rỗng)
+ */
+class CatalogSearchEngineGoldenTest {
+
+    private record SearchRow(Long id, String title, String author, String description, Long categoryId,
+                             String categoryName) implements BookSearchRow {
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public String getTitle() {
+            return title;
+        }
+
+        @Override
+        public String getAuthor() {
+            return author;
+        }
+
+        @Override
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public Long getCategoryId() {
+            return categoryId;
+        }
+
+        @Override
+        public String getCategoryName() {
+            return categoryName;
+        }
+    }
+
+    private static final List<BookSearchRow> CORPUS = List.of(
+            new SearchRow(1L, "Lập trình Java cơ bản", "Nguyễn Văn An",
+                    "Giáo trình nhập môn lập trình hướng đối tượng với Java", 1L, "Công nghệ"),
+            new SearchRow(2L, "Java nâng cao", "Trần Minh",
+                    "Các chủ đề nâng cao: luồng, bộ nhớ, hiệu năng", 1L, "Công nghệ"),
+            new SearchRow(3L, "Cơ sở dữ liệu", "Lê Hoa",
+                    "Thiết kế và truy vấn cơ sở dữ liệu quan hệ", 1L, "Công nghệ"),
+            new SearchRow(4L, "Kinh tế học vĩ mô", "Phạm Quốc",
+                    "Lạm phát, tăng trưởng và chính sách tiền tệ", 2L, "Kinh tế"),
+            new SearchRow(5L, "Lịch sử Việt Nam", "Đỗ Bình",
+                    "Từ thời dựng nước đến hiện đại", 3L, "Lịch sử"),
+            new SearchRow(6L, "Đắc nhân tâm", "Dale Carnegie",
+                    "Nghệ thuật giao tiếp và ứng xử", 4L, "Kỹ năng sống"));
+
+    // Query gồm các từ trọn vẹn - cách cũ còn khớp cả chuỗi con giữa từ ("anh" trong "thanh"), engine mới thì không
+    private static final List<String> QUERIES = List.of("java", "lập trình", "java nâng cao", "cơ sở dữ liệu",
+            "kinh tế", "giao tiếp", "lịch sử việt nam", "đắc nhân tâm");
+
+    private final BookRepository bookRepository = mock(BookRepository.class);
+    private final CatalogSearchEngine engine = new CatalogSearchEngine(bookRepository);
+
+    @BeforeEach
+    void setUp() {
+        when(bookRepository.findAllSearchRows()).thenReturn(CORPUS);
+        engine.rebuild();
+    }
+
+    @Test
+    void everyBookTheLegacyScorerMatchedIsStillFound() {
+        for (String query : QUERIES) {
+            Map<Long, Double> legacy = legacyScores(query);
+            Map<Long, CatalogSearchEngine.TextScore> scores = engine.textScores(query);
+
+            assertThat(legacy).as(query).isNotEmpty();
+            assertThat(scores.keySet()).as(query).containsAll(legacy.keySet());
+        }
+    }
+
+    @Test
+    void topHitMatchesTheLegacyScorer() {
+        for (String query : QUERIES) {
+            Map<Long, Double> legacy = legacyScores(query);
+            double best = Collections.max(legacy.values());
+            List<Long> legacyTop = legacy.entrySet().stream()
+                    .filter(entry -> entry.getValue() == best)
+                    .map(Map.Entry::getKey)
+                    .toList();
+            if (legacyTop.size() > 1) {
+                continue; // Cách cũ hòa điểm (bị chặn ở 1.0) - không có thứ tự để so
+            }
+
+            Long top = engine.textScores(query).entrySet().stream()
+                    .max(Map.Entry.comparingByValue(Comparator.comparingDouble(CatalogSearchEngine.TextScore::score)))
+                    .map(Map.Entry::getKey)
+                    .orElse(null);
+            assertThat(top).as(query).isEqualTo(legacyTop.get(0));
+        }
+    }
+
+    @Test
+    void titlePhraseBoostFiresOnTheSameBooks() {
+        for (String query : QUERIES) {
+            String queryLower = query.toLowerCase();
+            Set<Long> legacyPhrase = new HashSet<>();
+            for (BookSearchRow row : CORPUS) {
+                if (row.getTitle().toLowerCase().contains(queryLower)) {
+                    legacyPhrase.add(row.getId());
+                }
+            }
+
+            Set<Long> phrase = new HashSet<>();
+            engine.textScores(query).forEach((bookId, score) -> {
+                if (score.titlePhrase()) {
+                    phrase.add(bookId);
+                }
+            });
+            assertThat(phrase).as(query).isEqualTo(legacyPhrase);
+        }
+    }
+
+    @Test
+    void unaccentedQueryNowMatchesAccentedTitle() {
+        assertThat(legacyScores("lap trinh")).isEmpty();
+
+        Map<Long, CatalogSearchEngine.TextScore> scores = engine.textScores("lap trinh");
+        assertThat(scores).containsKey(1L);
+        assertThat(scores.get(1L).titlePhrase()).isTrue();
+    }
+
+    /**
+     * Bản sao cách chấm điểm văn bản cũ của BookSearchService.calculateTextMatchScore (trước khi dùng index)
+     */
+    private static Map<Long, Double> legacyScores(String query) {
+        String queryLower = query.toLowerCase().trim();
+        String[] queryWords = queryLower.split("\\s+");
+        Map<Long, Double> scores = new HashMap<>();
+        for (BookSearchRow row : CORPUS) {
+            String title = row.getTitle().toLowerCase();
+            String description = row.getDescription().toLowerCase();
+            String author = row.getAuthor().toLowerCase();
+            double score = 0.0;
+
+            if (title.contains(queryLower)) {
+                score += 0.8;
+            }
+            int wordsInTitle = 0;
+            for (String word : queryWords) {
+                if (title.contains(word)) {
+                    wordsInTitle++;
+                }
+            }
+            if (wordsInTitle == queryWords.length) {
+                score += 0.6;
+            } else if (wordsInTitle > 0) {
+                score += (wordsInTitle * 0.2) / queryWords.length;
+            }
+            if (description.contains(queryLower)) {
+                score += 0.3;
+            }
+            int wordsInDescription = 0;
+            for (String word : queryWords) {
+                if (description.contains(word)) {
+                    wordsInDescription++;
+                }
+            }
+            if (wordsInDescription > 0) {
+                score += (wordsInDescription * 0.15) / queryWords.length;
+            }
+            for (String word : queryWords) {
+                if (author.contains(word)) {
+                    score += 0.05;
+                    break;
+                }
+            }
+
+            if (score > 0) {
+                scores.put(row.getId(), Math.min(score, 1.0));
+            }
+        }
+        return scores;
+    }
+}